@@ -0,0 +1,204 @@
+package org.mozilla.vrbrowser;
+
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Named startup initialization tasks with dependencies.
+ *
+ * Critical tasks are needed to render the first frame and run synchronously, in the order they are
+ * added, when {@link #runCritical()} is called from the main thread. Background tasks run in parallel
+ * on the background executor as soon as their dependencies complete. Deferred tasks run on the main
+ * thread once {@link #runDeferred()} is called after the first frame.
+ *
+ * Every task is timed, the timeline of all the tasks is logged once they have all completed so
+ * startups can be compared across builds.
+ */
+public class StartupTasks {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(StartupTasks.class);
+
+    public enum Stage {
+        CRITICAL,
+        BACKGROUND,
+        DEFERRED
+    }
+
+    private static class Task {
+        final String name;
+        final Stage stage;
+        final Runnable runnable;
+        final String[] dependencies;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        String thread;
+        long start = -1;
+        long duration = -1;
+
+        Task(@NonNull String aName, @NonNull Stage aStage, @NonNull Runnable aRunnable, @NonNull String[] aDependencies) {
+            name = aName;
+            stage = aStage;
+            runnable = aRunnable;
+            dependencies = aDependencies;
+        }
+    }
+
+    private final Executor mBackgroundExecutor;
+    private final Executor mMainExecutor;
+    private final LinkedHashMap<String, Task> mTasks = new LinkedHashMap<>();
+    private final List<Task> mPending = new ArrayList<>();
+    private boolean mDeferredStarted;
+    private boolean mTimelineLogged;
+
+    public StartupTasks(@NonNull Executor aBackgroundExecutor, @NonNull Executor aMainExecutor) {
+        mBackgroundExecutor = aBackgroundExecutor;
+        mMainExecutor = aMainExecutor;
+    }
+
+    /**
+     * Adds a task. Dependencies must have been added before, critical tasks can only depend on
+     * critical tasks.
+     */
+    @NonNull
+    public synchronized StartupTasks add(@NonNull String aName, @NonNull Stage aStage,
+                                         @NonNull Runnable aRunnable, @NonNull String... aDependencies) {
+        if (mTasks.containsKey(aName)) {
+            throw new IllegalArgumentException("Startup task " + aName + " already added");
+        }
+        for (String dependency : aDependencies) {
+            Task task = mTasks.get(dependency);
+            if (task == null) {
+                throw new IllegalArgumentException("Startup task " + aName + " depends on unknown task " + dependency);
+            }
+            if (aStage == Stage.CRITICAL && task.stage != Stage.CRITICAL) {
+                throw new IllegalArgumentException("Critical startup task " + aName + " depends on " + aStage + " task " + dependency);
+            }
+        }
+        Task task = new Task(aName, aStage, aRunnable, aDependencies);
+        mTasks.put(aName, task);
+        mPending.add(task);
+        return this;
+    }
+
+    /**
+     * Runs the critical tasks added since the last call and starts the background ones.
+     * Also starts the deferred tasks if {@link #runDeferred()} has already been called.
+     */
+    public void runCritical() {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            throw new IllegalStateException("Critical startup tasks must be run from the main thread");
+        }
+        List<Task> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(mPending);
+            mPending.clear();
+        }
+        for (Task task : pending) {
+            switch (task.stage) {
+                case CRITICAL:
+                    run(task);
+                    break;
+                case BACKGROUND:
+                    schedule(task, mBackgroundExecutor);
+                    break;
+                case DEFERRED:
+                    if (mDeferredStarted) {
+                        schedule(task, mMainExecutor);
+                    } else {
+                        synchronized (this) {
+                            mPending.add(task);
+                        }
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Starts the deferred tasks, called once the first frame has been rendered.
+     */
+    public void runDeferred() {
+        synchronized (this) {
+            mDeferredStarted = true;
+        }
+        runCritical();
+    }
+
+    private void schedule(@NonNull Task aTask, @NonNull Executor aExecutor) {
+        CompletableFuture<?>[] dependencies = new CompletableFuture<?>[aTask.dependencies.length];
+        for (int i = 0; i < dependencies.length; i++) {
+            dependencies[i] = getTask(aTask.dependencies[i]).done;
+        }
+        CompletableFuture.allOf(dependencies).whenCompleteAsync((result, error) -> run(aTask), aExecutor);
+    }
+
+    private void run(@NonNull Task aTask) {
+        long start = SystemClock.elapsedRealtime();
+        try {
+            aTask.runnable.run();
+        } catch (RuntimeException e) {
+            if (aTask.stage == Stage.CRITICAL) {
+                throw e;
+            }
+            Log.e(LOGTAG, "Startup task " + aTask.name + " failed: " + e.getMessage());
+        } finally {
+            synchronized (this) {
+                aTask.thread = Thread.currentThread().getName();
+                aTask.start = start - Process.getStartElapsedRealtime();
+                aTask.duration = SystemClock.elapsedRealtime() - start;
+            }
+            aTask.done.complete(null);
+            logTimelineIfDone();
+        }
+    }
+
+    private synchronized Task getTask(@NonNull String aName) {
+        return mTasks.get(aName);
+    }
+
+    private void logTimelineIfDone() {
+        String timeline;
+        synchronized (this) {
+            if (mTimelineLogged || !mDeferredStarted || !mPending.isEmpty()) {
+                return;
+            }
+            for (Task task : mTasks.values()) {
+                if (task.duration < 0) {
+                    return;
+                }
+            }
+            mTimelineLogged = true;
+            timeline = getTimeline();
+        }
+        Log.i(LOGTAG, timeline);
+    }
+
+    /**
+     * Timeline of the completed tasks, one line per task with its stage, thread, start time since the
+     * process start and duration, in milliseconds.
+     */
+    @NonNull
+    public synchronized String getTimeline() {
+        StringBuilder builder = new StringBuilder("Startup timeline " + BuildConfig.VERSION_NAME + "-" + BuildConfig.GIT_HASH);
+        for (Task task : mTasks.values()) {
+            if (task.duration < 0) {
+                continue;
+            }
+            builder.append(String.format(Locale.US, "\n%-16s %-10s %-18s +%6dms %6dms",
+                    task.name, task.stage, task.thread, task.start, task.duration));
+        }
+        return builder.toString();
+    }
+}
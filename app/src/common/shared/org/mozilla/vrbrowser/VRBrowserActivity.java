@@ -45,6 +45,7 @@ import org.json.JSONObject;
 import org.mozilla.geckoview.GeckoRuntime;
 import org.mozilla.geckoview.GeckoSession;
 import org.mozilla.geckoview.GeckoVRManager;
+import org.mozilla.vrbrowser.StartupTasks.Stage;
 import org.mozilla.vrbrowser.audio.AudioEngine;
 import org.mozilla.vrbrowser.browser.Accounts;
 import org.mozilla.vrbrowser.browser.PermissionDelegate;
@@ -154,6 +155,8 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
     static final int GestureSwipeRight = 1;
     static final int SwipeDelay = 1000; // milliseconds
     static final long RESET_CRASH_COUNT_DELAY = 5000;
+    // Deferred startup work runs after this delay if no widget has painted yet.
+    static final long FIRST_PAINT_TIMEOUT = 5000;
 
     static final String LOGTAG = SystemUtils.createLogtag(VRBrowserActivity.class);
     HashMap<Integer, Widget> mWidgets;
@@ -184,6 +187,10 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
     private boolean mIsPresentingImmersive = false;
     private Thread mUiThread;
     private LinkedList<Pair<Object, Float>> mBrightnessQueue;
+    private StartupTasks mStartupTasks;
+    private LinkedList<Runnable> mFirstPaintRunnables = new LinkedList<>();
+    private boolean mFirstPaintDone;
+    private Runnable mFirstPaintTimeout = this::onFirstPaint;
     private Pair<Object, Float> mCurrentBrightness;
     private SearchEngineWrapper mSearchEngineWrapper;
     private SettingsStore mSettings;
@@ -228,7 +235,8 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
-        ((VRBrowserApplication)getApplication()).onActivityCreate();
+        mStartupTasks = new StartupTasks(getServicesProvider().getExecutors().diskIO(), getServicesProvider().getExecutors().mainThread());
+        ((VRBrowserApplication)getApplication()).onActivityCreate(mStartupTasks);
         SettingsStore.getInstance(getBaseContext()).setPid(Process.myPid());
         // Fix for infinite restart on startup crashes.
         long count = SettingsStore.getInstance(getBaseContext()).getCrashRestartCount();
@@ -249,13 +257,15 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         }
         mUiThread = Thread.currentThread();
 
-        BitmapCache.getInstance(this).onCreate();
-
         Bundle extras = getIntent() != null ? getIntent().getExtras() : null;
-        SessionStore.get().setContext(this, extras);
-        SessionStore.get().initializeServices();
-        SessionStore.get().initializeStores(this);
-        SessionStore.get().setLocales(LocaleUtils.getPreferredLanguageTags(this));
+        mStartupTasks.add("bitmapCacheLoad", Stage.CRITICAL, () -> BitmapCache.getInstance(this).onCreate())
+                .add("sessionStore", Stage.CRITICAL, () -> {
+                    SessionStore.get().setContext(this, extras);
+                    SessionStore.get().initializeServices();
+                    SessionStore.get().initializeStores(this);
+                    SessionStore.get().setLocales(LocaleUtils.getPreferredLanguageTags(this));
+                }, "places", "services", "accounts");
+        mStartupTasks.runCritical();
 
         EngineProvider.INSTANCE.getOrCreateRuntime(this).appendAppNotesToCrashReport("Firefox Reality " + BuildConfig.VERSION_NAME + "-" + BuildConfig.VERSION_CODE + "-" + BuildConfig.FLAVOR + "-" + BuildConfig.BUILD_TYPE + " (" + BuildConfig.GIT_HASH + ")");
 
@@ -306,9 +316,6 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
 
         // Setup the search engine
         mSearchEngineWrapper = SearchEngineWrapper.get(this);
-        mSearchEngineWrapper.registerForUpdates();
-
-        GeolocationWrapper.INSTANCE.update(this);
 
         mConnectivityReceiver = new ConnectivityReceiver();
         mPoorPerformanceAllowList = new HashSet<>();
@@ -316,7 +323,13 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
 
         mLifeCycle.setCurrentState(Lifecycle.State.CREATED);
 
-        getServicesProvider().getDownloadsManager().init();
+        // Not needed to render the first frame.
+        mStartupTasks.add("remoteProps", Stage.DEFERRED, mSettings::update)
+                .add("searchEngineUpdates", Stage.DEFERRED, mSearchEngineWrapper::registerForUpdates)
+                .add("geolocation", Stage.DEFERRED, () -> GeolocationWrapper.INSTANCE.update(this))
+                .add("downloadsInit", Stage.DEFERRED, () -> getServicesProvider().getDownloadsManager().init(), "downloads");
+        mStartupTasks.runCritical();
+        runAfterFirstPaint(mStartupTasks::runDeferred);
     }
 
     protected void initializeWidgets() {
@@ -462,6 +475,10 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         mAudioEngine.pauseEngine();
 
         mWindows.onPause();
+        // The visits written on pause go to the search index too, save it once they are in.
+        SessionStore.get().getHistoryStore().flushWrites()
+                .thenRun(() -> SessionStore.get().getLocalSearchIndex().flush());
+        SettingsStore.getInstance(this).flush();
 
         for (Widget widget: mWidgets.values()) {
             widget.onPause();
@@ -817,6 +834,34 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         }
     }
 
+    /**
+     * Runs startup work that is not needed to render the first frame once a widget has painted.
+     * Must be called from the UI thread.
+     */
+    public void runAfterFirstPaint(@NonNull Runnable aRunnable) {
+        if (mFirstPaintDone) {
+            mHandler.post(aRunnable);
+            return;
+        }
+        if (mFirstPaintRunnables.isEmpty()) {
+            mHandler.postDelayed(mFirstPaintTimeout, FIRST_PAINT_TIMEOUT);
+        }
+        mFirstPaintRunnables.add(aRunnable);
+    }
+
+    private void onFirstPaint() {
+        if (mFirstPaintDone) {
+            return;
+        }
+        mFirstPaintDone = true;
+        mHandler.removeCallbacks(mFirstPaintTimeout);
+        // Posted so the deferred work doesn't delay the frame that triggered it.
+        for (Runnable runnable : mFirstPaintRunnables) {
+            mHandler.post(runnable);
+        }
+        mFirstPaintRunnables.clear();
+    }
+
     @Keep
     @SuppressWarnings("unused")
     void dispatchCreateWidget(final int aHandle, final SurfaceTexture aTexture, final int aWidth, final int aHeight) {
@@ -833,6 +878,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
                     if (!widget.isFirstPaintReady()) {
                         widget.setFirstPaintReady(true);
                         updateWidget(widget);
+                        onFirstPaint();
                     }
                 };
                 widget.setSurfaceTexture(aTexture, aWidth, aHeight, aFirstDrawCallback);
@@ -862,6 +908,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
                 if (aSurface != null && !widget.isFirstPaintReady()) {
                     widget.setFirstPaintReady(true);
                     updateWidget(widget);
+                    onFirstPaint();
                 }
             };
 
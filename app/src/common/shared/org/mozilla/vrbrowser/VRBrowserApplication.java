@@ -9,8 +9,11 @@ import android.app.Application;
 import android.content.Context;
 import android.content.res.Configuration;
 
+import androidx.annotation.NonNull;
+
 import com.mozilla.speechlibrary.SpeechService;
 
+import org.mozilla.vrbrowser.StartupTasks.Stage;
 import org.mozilla.vrbrowser.browser.Accounts;
 import org.mozilla.vrbrowser.browser.Places;
 import org.mozilla.vrbrowser.browser.Services;
@@ -38,18 +41,27 @@ public class VRBrowserApplication extends Application implements AppServicesProv
     public void onCreate() {
         super.onCreate();
         mAppExecutors = new AppExecutors();
-        mBitmapCache = new BitmapCache(this, mAppExecutors.diskIO(), mAppExecutors.mainThread());
 
-        TelemetryWrapper.init(this);
-        GleanMetricsService.init(this);
+        StartupTasks tasks = new StartupTasks(mAppExecutors.diskIO(), mAppExecutors.mainThread());
+        tasks.add("bitmapCache", Stage.CRITICAL, () -> mBitmapCache = new BitmapCache(this, mAppExecutors.diskIO(), mAppExecutors.mainThread()))
+                .add("telemetry", Stage.CRITICAL, () -> TelemetryWrapper.init(this))
+                .add("glean", Stage.CRITICAL, () -> GleanMetricsService.init(this))
+                .add("database", Stage.BACKGROUND, this::getRepository);
+        tasks.runCritical();
+        tasks.runDeferred();
     }
 
-    protected void onActivityCreate() {
-        mPlaces = new Places(this);
-        mServices = new Services(this, mPlaces);
-        mAccounts = new Accounts(this);
-        mDownloadsManager = new DownloadsManager(this);
-        mSpeechService = new SpeechService(this);
+    /**
+     * Adds the services needed by the activity to its startup tasks.
+     */
+    protected void onActivityCreate(@NonNull StartupTasks aTasks) {
+        aTasks.add("places", Stage.CRITICAL, () -> mPlaces = new Places(this))
+                .add("services", Stage.CRITICAL, () -> mServices = new Services(this, mPlaces), "places")
+                .add("accounts", Stage.CRITICAL, () -> mAccounts = new Accounts(this), "services")
+                .add("downloads", Stage.CRITICAL, () -> mDownloadsManager = new DownloadsManager(this));
+        aTasks.runCritical();
+        // Only needed for voice search, it's created for the new activity the first time it's used.
+        mSpeechService = null;
     }
 
     @Override
@@ -101,6 +113,9 @@ public class VRBrowserApplication extends Application implements AppServicesProv
 
     @Override
     public SpeechService getSpeechService() {
+        if (mSpeechService == null) {
+            mSpeechService = new SpeechService(this);
+        }
         return mSpeechService;
     }
 }
@@ -20,7 +20,9 @@ import mozilla.components.support.base.log.logger.Logger
 import org.mozilla.vrbrowser.R
 import org.mozilla.vrbrowser.VRBrowserApplication
 import org.mozilla.vrbrowser.utils.SystemUtils
+import java.util.Locale
 import java.util.concurrent.CompletableFuture
+import java.util.concurrent.atomic.AtomicInteger
 
 const val DESKTOP_ROOT = "fake_desktop_root"
 
@@ -64,22 +66,42 @@ class BookmarksStore constructor(val context: Context) {
     private var titles = rootTitles(context)
     private val accountManager = (context.applicationContext as VRBrowserApplication).services.accountManager
 
-    // Bookmarks might have changed during sync, so notify our listeners.
+    // Bookmarks might have changed during sync, so notify our listeners of the changes.
     private val syncStatusObserver = object : SyncStatusObserver {
         override fun onStarted() {}
 
         override fun onIdle() {
-            Logger(LOGTAG).debug("Detected that sync is finished, notifying listeners")
-            notifyListeners()
+            Logger(LOGTAG).debug("Detected that sync is finished, reloading the bookmarks")
+            GlobalScope.future { loadSnapshot() }
         }
 
         override fun onError(error: Exception?) {}
     }
 
+    // In memory copy of the bookmarks tree and the set of bookmarked urls, null until loaded.
+    @Volatile
+    private var snapshot: Snapshot? = null
+    private val snapshotGeneration = AtomicInteger(0)
+    private val snapshotLock = Any()
+
+    private class Snapshot(
+            val root: BookmarkNode?,
+            val nodes: Map<String, BookmarkNode>,
+            val items: List<BookmarkNode>,
+            val urls: Set<String>)
+
+    // Full text index used for the URL bar suggestions, shared with the history store.
+    var searchIndex: LocalSearchIndex? = null
+        set(value) {
+            field = value
+            snapshot?.let { value?.setBookmarks(it.items) }
+        }
+
     init {
         accountManager.registerForSyncEvents(
             syncStatusObserver, ProcessLifecycleOwner.get(), false
         )
+        GlobalScope.future { loadSnapshot() }
     }
 
     // Update the folder strings after a language update
@@ -88,7 +110,11 @@ class BookmarksStore constructor(val context: Context) {
     }
 
     interface BookmarkListener {
-        fun onBookmarksUpdated()
+        /**
+         * Called on the main thread after bookmarks change.
+         * @param changes Added, removed and updated bookmarks, or null if anything might have changed.
+         */
+        fun onBookmarksUpdated(changes: PlacesChangeSet?)
         fun onBookmarkAdded()
     }
 
@@ -108,7 +134,9 @@ class BookmarksStore constructor(val context: Context) {
 
     internal fun updateStorage() {
         storage = (context.applicationContext as VRBrowserApplication).places.bookmarks
-        notifyListeners()
+        snapshot = null
+        // Without a previous snapshot the listeners are told that anything might have changed.
+        GlobalScope.future { loadSnapshot() }
     }
 
     fun getBookmarks(guid: String): CompletableFuture<List<BookmarkNode>?> = GlobalScope.future {
@@ -146,6 +174,7 @@ class BookmarksStore constructor(val context: Context) {
 
     fun addBookmark(aURL: String, aTitle: String) = GlobalScope.future {
         storage.addItem(BookmarkRoot.Mobile.id, aURL, aTitle, null)
+        loadSnapshot()
         notifyAddedListeners()
     }
 
@@ -154,25 +183,138 @@ class BookmarksStore constructor(val context: Context) {
         if (bookmark != null) {
             storage.deleteNode(bookmark.guid)
         }
-        notifyListeners()
+        loadSnapshot()
     }
 
     fun deleteBookmarkById(aId: String) = GlobalScope.future {
         storage.deleteNode(aId)
-        notifyListeners()
+        loadSnapshot()
+    }
+
+    fun isBookmarked(aURL: String): CompletableFuture<Boolean> {
+        val current = snapshot
+        if (current != null) {
+            return CompletableFuture.completedFuture(current.urls.contains(aURL))
+        }
+        return GlobalScope.future {
+            getBookmarkByUrl(aURL) != null
+        }
+    }
+
+    /**
+     * Returns whether the url is bookmarked using the in memory snapshot, or null if it isn't loaded yet.
+     */
+    fun isBookmarkedSync(aURL: String): Boolean? {
+        return snapshot?.urls?.contains(aURL)
+    }
+
+    fun getTree(guid: String, recursive: Boolean): CompletableFuture<List<BookmarkNode>?> {
+        val current = snapshot
+        if (current?.root != null && guid == BookmarkRoot.Root.id && recursive) {
+            // The snapshot is the full tree, it's kept up to date after every change.
+            return CompletableFuture.completedFuture(current.root.children
+                    ?.map { it.copy(title = titles[it.guid]) })
+        }
+        return GlobalScope.future {
+            storage.getTree(guid, recursive)?.children
+                    ?.map { it.copy(title = titles[it.guid]) }
+        }
+    }
+
+    fun searchBookmarks(query: String, limit: Int): CompletableFuture<List<BookmarkNode>> {
+        val current = snapshot
+        if (current != null) {
+            return CompletableFuture.completedFuture(searchSnapshot(current, query, limit))
+        }
+        return GlobalScope.future {
+            storage.searchBookmarks(query, limit)
+        }
     }
 
-    fun isBookmarked(aURL: String): CompletableFuture<Boolean> = GlobalScope.future {
-        getBookmarkByUrl(aURL) != null
+    // Same matching as Places: every word of the query must be in the title or the url.
+    private fun searchSnapshot(aSnapshot: Snapshot, query: String, limit: Int): List<BookmarkNode> {
+        val words = query.toLowerCase(Locale.ROOT).split(' ').filter { it.isNotEmpty() }
+        if (words.isEmpty()) {
+            return emptyList()
+        }
+        return aSnapshot.items.asSequence().filter { node ->
+            val title = node.title?.toLowerCase(Locale.ROOT) ?: ""
+            val url = node.url?.toLowerCase(Locale.ROOT) ?: ""
+            words.all { title.contains(it) || url.contains(it) }
+        }.take(limit).toList()
     }
 
-    fun getTree(guid: String, recursive: Boolean): CompletableFuture<List<BookmarkNode>?> = GlobalScope.future {
-        storage.getTree(guid, recursive)?.children
-                ?.map { it.copy(title = titles[it.guid]) }
+    /**
+     * Reloads the in memory snapshot from storage and notifies the listeners of the changes.
+     * Loads started before a newer one are dropped: the newer load reads the storage after their
+     * changes were written, so it reports them whoever started it.
+     */
+    private suspend fun loadSnapshot() {
+        val generation = snapshotGeneration.incrementAndGet()
+        try {
+            val root = storage.getTree(BookmarkRoot.Root.id, true)
+            val nodes = HashMap<String, BookmarkNode>()
+            val items = ArrayList<BookmarkNode>()
+            val urls = HashSet<String>()
+            collectNodes(root, nodes, items, urls)
+            synchronized(snapshotLock) {
+                if (generation != snapshotGeneration.get()) {
+                    return
+                }
+                val previous = snapshot
+                val current = Snapshot(root, nodes, items, urls)
+                snapshot = current
+                val changes = previous?.let { diffSnapshots(it, current) }
+                if (changes == null || !changes.isEmpty) {
+                    searchIndex?.setBookmarks(items)
+                }
+                // Null when there is no previous snapshot to compare with.
+                notifyListeners(changes)
+            }
+        } catch (e: Exception) {
+            Logger(LOGTAG).error("Error loading the bookmarks snapshot", e)
+            snapshot = null
+            notifyListeners(null)
+        }
     }
 
-    fun searchBookmarks(query: String, limit: Int): CompletableFuture<List<BookmarkNode>> = GlobalScope.future {
-        storage.searchBookmarks(query, limit)
+    private fun collectNodes(node: BookmarkNode?, nodes: MutableMap<String, BookmarkNode>,
+                             items: MutableList<BookmarkNode>, urls: MutableSet<String>) {
+        if (node == null) {
+            return
+        }
+        nodes[node.guid] = node
+        if (node.type == BookmarkNodeType.ITEM && node.url != null) {
+            items.add(node)
+            urls.add(node.url!!)
+        }
+        node.children?.forEach { collectNodes(it, nodes, items, urls) }
+    }
+
+    private fun diffSnapshots(previous: Snapshot, current: Snapshot): PlacesChangeSet {
+        val added = HashSet<String>()
+        val removed = HashSet<String>()
+        val updated = HashSet<String>()
+        val urls = HashSet<String>()
+        for ((guid, node) in current.nodes) {
+            val old = previous.nodes[guid]
+            if (old == null) {
+                added.add(guid)
+                node.url?.let { urls.add(it) }
+            } else if (old.type != node.type || old.parentGuid != node.parentGuid ||
+                    old.position != node.position || old.title != node.title || old.url != node.url) {
+                updated.add(guid)
+                node.url?.let { urls.add(it) }
+                old.url?.let { urls.add(it) }
+            }
+        }
+        for ((guid, node) in previous.nodes) {
+            if (!current.nodes.containsKey(guid)) {
+                removed.add(guid)
+                node.url?.let { urls.add(it) }
+            }
+        }
+        return PlacesChangeSet(added, removed, updated, urls)
     }
 
     private suspend fun getBookmarkByUrl(aURL: String): BookmarkNode? {
@@ -190,12 +332,19 @@ class BookmarksStore constructor(val context: Context) {
         return null
     }
 
-    private fun notifyListeners() {
+    /**
+     * Notifies the listeners on the main thread, unless nothing changed.
+     * @param changes The changes or null if anything might have changed.
+     */
+    private fun notifyListeners(changes: PlacesChangeSet?) {
+        if (changes != null && changes.isEmpty) {
+            return
+        }
         if (listeners.size > 0) {
             val listenersCopy = ArrayList(listeners)
             Handler(Looper.getMainLooper()).post {
                 for (listener in listenersCopy) {
-                    listener.onBookmarksUpdated()
+                    listener.onBookmarksUpdated(changes)
                 }
             }
         }
@@ -0,0 +1,173 @@
+package org.mozilla.vrbrowser.browser;
+
+import android.util.Pair;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.mozilla.vrbrowser.utils.UrlUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+import mozilla.components.concept.storage.VisitInfo;
+import mozilla.components.concept.storage.VisitType;
+
+/**
+ * Inline URL bar autocomplete index for the hosts the user has visited.
+ *
+ * Every prefix of a visited host (with and without "www.") maps to the host with the highest
+ * frecency score for that prefix, so lookups are a single hash map access per keystroke.
+ * Scores only grow when new visits are recorded, so the prefix table is updated in place.
+ * The shipped domains list is still used as a fallback by the URL bar.
+ *
+ * Rebuilds are numbered: only the latest one started with {@link #startRebuild()} is applied, and a
+ * {@link #clear()} discards the ones in progress, so a rebuild from visits queried before history was
+ * deleted can't bring the deleted hosts back.
+ */
+public class DomainAutocompleteIndex {
+
+    private static final String WWW_PREFIX = "www.";
+
+    private static class Entry {
+        final String domain;
+        final double score;
+
+        Entry(String aDomain, double aScore) {
+            domain = aDomain;
+            score = aScore;
+        }
+    }
+
+    private volatile ConcurrentHashMap<String, Double> mHostScores = new ConcurrentHashMap<>();
+    private volatile ConcurrentHashMap<String, Entry> mPrefixes = new ConcurrentHashMap<>();
+    // Guarded by this. Visits recorded while a rebuild is in progress are added to the rebuilt maps.
+    private int mGeneration;
+    private boolean mRebuilding;
+    private final List<Pair<String, VisitType>> mRecordedVisits = new ArrayList<>();
+
+    /**
+     * Returns the text to autocomplete for the typed text or null if there is no visited host for it.
+     * The result keeps the typed text as is and appends the rest of the domain.
+     */
+    @Nullable
+    public String getAutocompleteSuggestion(@NonNull String aText) {
+        if (aText.isEmpty()) {
+            return null;
+        }
+        Entry entry = mPrefixes.get(aText.toLowerCase(Locale.ROOT));
+        // Lower casing can change the length of the text, only complete a domain that starts with
+        // the typed text so the typed case is kept and the rest is sliced at the right index.
+        if (entry == null || !entry.domain.regionMatches(true, 0, aText, 0, aText.length())) {
+            return null;
+        }
+        return aText + entry.domain.substring(aText.length());
+    }
+
+    public int size() {
+        return mHostScores.size();
+    }
+
+    /**
+     * Starts a rebuild, to be called before querying the visits it is built from.
+     * @return The generation to pass to {@link #rebuild(int, List)}.
+     */
+    public synchronized int startRebuild() {
+        mGeneration++;
+        mRebuilding = true;
+        mRecordedVisits.clear();
+        return mGeneration;
+    }
+
+    /**
+     * Replaces the index contents with the hosts from the given visits, unless a newer rebuild or a
+     * clear started after this one.
+     */
+    public void rebuild(int aGeneration, @Nullable List<VisitInfo> aVisits) {
+        ConcurrentHashMap<String, Double> scores = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, Entry> prefixes = new ConcurrentHashMap<>();
+        if (aVisits != null) {
+            final long now = System.currentTimeMillis();
+            for (VisitInfo visit : aVisits) {
+                String host = getHost(visit.getUrl());
+                if (host != null) {
+                    scores.merge(host, Frecency.visitScore(visit.getVisitType(), now - visit.getVisitTime()), Double::sum);
+                }
+            }
+            for (ConcurrentHashMap.Entry<String, Double> host : scores.entrySet()) {
+                addPrefixes(prefixes, host.getKey(), host.getValue());
+            }
+        }
+        synchronized (this) {
+            if (aGeneration != mGeneration) {
+                return;
+            }
+            for (Pair<String, VisitType> visit : mRecordedVisits) {
+                double score = scores.merge(visit.first, Frecency.visitScore(visit.second, 0), Double::sum);
+                addPrefixes(prefixes, visit.first, score);
+            }
+            mRecordedVisits.clear();
+            mRebuilding = false;
+            mPrefixes = prefixes;
+            mHostScores = scores;
+        }
+    }
+
+    /**
+     * Adds a new visit to the index.
+     */
+    public void recordVisit(@NonNull String aUrl, @NonNull VisitType aVisitType) {
+        String host = getHost(aUrl);
+        if (host == null) {
+            return;
+        }
+        synchronized (this) {
+            double score = mHostScores.merge(host, Frecency.visitScore(aVisitType, 0), Double::sum);
+            addPrefixes(mPrefixes, host, score);
+            if (mRebuilding) {
+                mRecordedVisits.add(new Pair<>(host, aVisitType));
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        mGeneration++;
+        mRebuilding = false;
+        mRecordedVisits.clear();
+        mHostScores = new ConcurrentHashMap<>();
+        mPrefixes = new ConcurrentHashMap<>();
+    }
+
+    private static void addPrefixes(ConcurrentHashMap<String, Entry> aPrefixes, String aHost, double aScore) {
+        addPrefixesFor(aPrefixes, aHost, aScore);
+        if (aHost.startsWith(WWW_PREFIX)) {
+            addPrefixesFor(aPrefixes, aHost.substring(WWW_PREFIX.length()), aScore);
+        }
+    }
+
+    private static void addPrefixesFor(ConcurrentHashMap<String, Entry> aPrefixes, String aDomain, double aScore) {
+        Entry entry = new Entry(aDomain, aScore);
+        for (int i = 1; i <= aDomain.length(); i++) {
+            aPrefixes.merge(aDomain.substring(0, i), entry, (current, candidate) -> {
+                if (current.domain.equals(candidate.domain) || candidate.score > current.score) {
+                    return candidate;
+                }
+                return current;
+            });
+        }
+    }
+
+    @Nullable
+    private static String getHost(@Nullable String aUrl) {
+        if (aUrl == null || !(aUrl.startsWith("http://") || aUrl.startsWith("https://"))) {
+            return null;
+        }
+        String host = UrlUtils.getHost(aUrl);
+        if (host == null || host.isEmpty() || host.equals(aUrl)) {
+            return null;
+        }
+        return host.toLowerCase(Locale.ROOT);
+    }
+}
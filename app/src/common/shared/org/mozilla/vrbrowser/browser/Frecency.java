@@ -0,0 +1,53 @@
+package org.mozilla.vrbrowser.browser;
+
+import androidx.annotation.Nullable;
+
+import mozilla.components.concept.storage.VisitType;
+
+/**
+ * Frecency weights shared by the local history indexes, so the URL bar autocompletion and the
+ * suggestions rank visits the same way. The values follow the Places frecency buckets.
+ */
+final class Frecency {
+
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+
+    private Frecency() {}
+
+    /**
+     * Weight of a visit based on how the page was reached.
+     */
+    static double visitWeight(@Nullable VisitType aVisitType) {
+        if (aVisitType == VisitType.TYPED) {
+            return 2.0;
+        } else if (aVisitType == VisitType.BOOKMARK) {
+            return 1.4;
+        } else if (aVisitType == VisitType.LINK) {
+            return 1.0;
+        }
+        return 0.5;
+    }
+
+    /**
+     * Weight of a visit based on its age.
+     */
+    static double recencyWeight(long aAgeMs) {
+        if (aAgeMs < 4 * DAY_MS) {
+            return 100;
+        } else if (aAgeMs < 14 * DAY_MS) {
+            return 70;
+        } else if (aAgeMs < 31 * DAY_MS) {
+            return 50;
+        } else if (aAgeMs < 90 * DAY_MS) {
+            return 30;
+        }
+        return 10;
+    }
+
+    /**
+     * Frecency score of a single visit, based on the visit type and its age.
+     */
+    static double visitScore(@Nullable VisitType aVisitType, long aAgeMs) {
+        return recencyWeight(aAgeMs) * visitWeight(aVisitType);
+    }
+}
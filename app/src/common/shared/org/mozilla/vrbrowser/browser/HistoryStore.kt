@@ -10,7 +10,10 @@ import android.os.Handler
 import android.os.Looper
 import androidx.lifecycle.ProcessLifecycleOwner
 import kotlinx.coroutines.GlobalScope
+import kotlinx.coroutines.delay
 import kotlinx.coroutines.future.future
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
 import mozilla.components.concept.storage.*
 import mozilla.components.service.fxa.sync.SyncStatusObserver
 import mozilla.components.support.base.log.logger.Logger
@@ -20,18 +23,108 @@ import java.util.concurrent.CompletableFuture
 
 class HistoryStore constructor(val context: Context) {
 
+    companion object {
+        // Most recent visits used to build the domain autocomplete index and the top sites table.
+        private const val RECENT_VISITS = 2000L
+        // Most recent visits used to rebuild the local search index.
+        private const val SEARCH_INDEX_VISITS = 20000L
+        // Visits and observations recorded within this window are written together.
+        private const val WRITE_BATCH_DELAY_MS = 500L
+    }
+
+    private sealed class PendingWrite(val url: String) {
+        class Visit(url: String, val visit: PageVisit) : PendingWrite(url)
+        class Observation(url: String, val observation: PageObservation) : PendingWrite(url)
+    }
+
+    /**
+     * Changes merged into a pending notification. A url keeps its latest state, so a url added and
+     * then removed before the notification is delivered is only reported as removed.
+     */
+    private class PendingChanges {
+        val added = HashSet<String>()
+        val removed = HashSet<String>()
+        val updated = HashSet<String>()
+
+        fun merge(changes: PlacesChangeSet) {
+            added.removeAll(changes.removed)
+            updated.removeAll(changes.removed)
+            removed.removeAll(changes.added)
+            removed.removeAll(changes.updated)
+            added.addAll(changes.added)
+            removed.addAll(changes.removed)
+            changes.updated.filterNotTo(updated) { added.contains(it) }
+        }
+
+        fun toChangeSet(): PlacesChangeSet {
+            val urls = HashSet<String>(added)
+            urls.addAll(removed)
+            urls.addAll(updated)
+            return PlacesChangeSet(added, removed, updated, urls)
+        }
+    }
+
     private val LOGTAG = SystemUtils.createLogtag(HistoryStore::class.java)
 
     private var listeners = ArrayList<HistoryListener>()
+    private val mainHandler = Handler(Looper.getMainLooper())
+
+    // Write batching, guarded by writeLock
+    private val writeLock = Any()
+    private var pendingWrites = ArrayList<PendingWrite>()
+    private var pendingWritesFuture: CompletableFuture<Unit>? = null
+    // Serializes the batches so a flush and the delayed write don't write at the same time.
+    private val writeMutex = Mutex()
+
+    // Notification coalescing, guarded by notifyLock. Null changes means anything might have changed.
+    private val notifyLock = Any()
+    private var notifyPending = false
+    private var notifyChanges: PendingChanges? = PendingChanges()
     private var storage = (context.applicationContext as VRBrowserApplication).places.history
 
-    // Bookmarks might have changed during sync, so notify our listeners.
+    // Recent visits the indexes were last built from, used to find what a sync changed, and the
+    // urls visited locally since then. Guarded by recentVisitsLock.
+    private val recentVisitsLock = Any()
+    private var recentVisits: List<VisitInfo>? = null
+    private var locallyVisitedUrls = HashSet<String>()
+
+    // Visited hosts used for inline URL bar autocompletion.
+    val domainAutocompleteIndex = DomainAutocompleteIndex()
+
+    // Frecency table backing the top sites.
+    private val topSitesTable = TopSitesTable()
+
+    // Full text index used for the URL bar suggestions, shared with the bookmarks store.
+    var searchIndex: LocalSearchIndex? = null
+        set(value) {
+            field = value
+            value?.let { index ->
+                GlobalScope.future {
+                    if (!index.load()) {
+                        rebuildSearchIndex()
+                    }
+                }
+            }
+        }
+
+    // History might have changed during sync, so notify our listeners of the changes.
     private val syncStatusObserver = object : SyncStatusObserver {
         override fun onStarted() {}
 
         override fun onIdle() {
-            Logger(LOGTAG).debug("Detected that sync is finished, notifying listeners")
-            notifyListeners()
+            val generation = domainAutocompleteIndex.startRebuild()
+            getVisitsPaginated(0, RECENT_VISITS).thenAccept { visits ->
+                val changes = diffRecentVisits(visits)
+                Logger(LOGTAG).debug("Detected that sync is finished: $changes")
+                if (changes != null && changes.isEmpty) {
+                    // Still finish the rebuild, it may have replaced one started by a deletion.
+                    domainAutocompleteIndex.rebuild(generation, visits)
+                    return@thenAccept
+                }
+                applyRecentVisits(visits, generation)
+                rebuildSearchIndex()
+                notifyListeners(changes)
+            }
         }
 
         override fun onError(error: Exception?) {}
@@ -41,10 +134,16 @@ class HistoryStore constructor(val context: Context) {
         (context.applicationContext as VRBrowserApplication).services.accountManager.registerForSyncEvents(
                 syncStatusObserver, ProcessLifecycleOwner.get(), false
         )
+        rebuildVisitIndexes()
     }
 
     interface HistoryListener {
-        fun onHistoryUpdated()
+        /**
+         * Called on the main thread after history changes.
+         * @param changes Urls with new visits, removed urls and urls with new observations or deleted
+         * visits, or null if anything might have changed.
+         */
+        fun onHistoryUpdated(changes: PlacesChangeSet?)
     }
 
     fun addListener(aListener: HistoryListener) {
@@ -63,9 +162,19 @@ class HistoryStore constructor(val context: Context) {
 
     internal fun updateStorage() {
         storage = (context.applicationContext as VRBrowserApplication).places.history
+        rebuildVisitIndexes()
+        rebuildSearchIndex()
         notifyListeners()
     }
 
+    /**
+     * Returns the most frecent pages, sorted by descending score. The table is maintained
+     * incrementally and decayed when it is read, so this doesn't query the storage.
+     */
+    fun getTopSites(limit: Int = TopSitesTable.MAX_TOP_SITES): List<TopSitesTable.Site> {
+        return topSitesTable.getTopSites(limit)
+    }
+
     fun getHistory(): CompletableFuture<List<String>?> = GlobalScope.future {
         storage.getVisited()
     }
@@ -92,38 +201,125 @@ class HistoryStore constructor(val context: Context) {
                 VisitType.REDIRECT_PERMANENT))
     }
 
-    fun recordVisit(aURL: String, pageVisit: PageVisit) = GlobalScope.future {
-        storage.recordVisit(aURL, pageVisit)
-        notifyListeners()
+    fun recordVisit(aURL: String, pageVisit: PageVisit): CompletableFuture<Unit> {
+        return enqueueWrite(PendingWrite.Visit(aURL, pageVisit))
     }
 
-    fun recordObservation(aURL: String, observation: PageObservation) = GlobalScope.future {
-        storage.recordObservation(aURL, observation)
-        notifyListeners()
+    fun recordObservation(aURL: String, observation: PageObservation): CompletableFuture<Unit> {
+        return enqueueWrite(PendingWrite.Observation(aURL, observation))
+    }
+
+    /**
+     * Writes the buffered visits and observations now.
+     */
+    fun flushWrites(): CompletableFuture<Unit> = GlobalScope.future {
+        writePending()
+    }
+
+    private fun enqueueWrite(write: PendingWrite): CompletableFuture<Unit> {
+        synchronized(writeLock) {
+            pendingWrites.add(write)
+            pendingWritesFuture?.let { return it }
+            val future = GlobalScope.future {
+                delay(WRITE_BATCH_DELAY_MS)
+                writePending()
+            }
+            pendingWritesFuture = future
+            return future
+        }
+    }
+
+    private suspend fun writePending() = writeMutex.withLock {
+        val writes: List<PendingWrite>
+        synchronized(writeLock) {
+            writes = pendingWrites
+            pendingWrites = ArrayList()
+            pendingWritesFuture = null
+        }
+        if (writes.isEmpty()) {
+            return@withLock
+        }
+
+        // Only the latest observation of each url needs to be written.
+        val lastObservation = HashMap<String, Int>()
+        writes.forEachIndexed { index, write ->
+            if (write is PendingWrite.Observation) {
+                lastObservation[write.url] = index
+            }
+        }
+        val visited = HashSet<String>()
+        val observed = HashSet<String>()
+        writes.forEachIndexed { index, write ->
+            try {
+                when (write) {
+                    is PendingWrite.Visit -> {
+                        storage.recordVisit(write.url, write.visit)
+                        domainAutocompleteIndex.recordVisit(write.url, write.visit.visitType)
+                        searchIndex?.addVisit(write.url, write.visit.visitType)
+                        topSitesTable.recordVisit(write.url, write.visit.visitType)
+                        synchronized(recentVisitsLock) {
+                            locallyVisitedUrls.add(write.url)
+                        }
+                        visited.add(write.url)
+                    }
+                    is PendingWrite.Observation -> {
+                        if (lastObservation[write.url] == index) {
+                            storage.recordObservation(write.url, write.observation)
+                            searchIndex?.setTitle(write.url, write.observation.title)
+                            topSitesTable.setTitle(write.url, write.observation.title)
+                        }
+                        observed.add(write.url)
+                    }
+                }
+            } catch (e: Exception) {
+                Logger(LOGTAG).error("Error writing history for ${write.url}", e)
+            }
+        }
+        val urls = HashSet<String>(visited)
+        urls.addAll(observed)
+        notifyListeners(PlacesChangeSet(visited, emptySet(), observed, urls))
     }
 
     fun deleteHistory(aUrl: String, timestamp: Long) = GlobalScope.future {
         storage.deleteVisit(aUrl, timestamp)
-        notifyListeners()
+        rebuildVisitIndexes()
+        val url = setOf(aUrl)
+        if (!storage.getVisited(listOf(aUrl)).getOrElse(0) { false }) {
+            searchIndex?.removeHistory(aUrl)
+            notifyListeners(PlacesChangeSet(emptySet(), url, emptySet(), url))
+        } else {
+            notifyListeners(PlacesChangeSet(emptySet(), emptySet(), url, url))
+        }
     }
 
     fun deleteVisitsFor(aUrl: String) = GlobalScope.future {
         storage.deleteVisitsFor(aUrl)
-        notifyListeners()
+        rebuildVisitIndexes()
+        searchIndex?.removeHistory(aUrl)
+        topSitesTable.remove(aUrl)
+        val url = setOf(aUrl)
+        notifyListeners(PlacesChangeSet(emptySet(), url, emptySet(), url))
     }
 
     fun deleteEverything() = GlobalScope.future {
         storage.deleteEverything()
+        domainAutocompleteIndex.clear()
+        topSitesTable.clear()
+        searchIndex?.setHistory(null)
         notifyListeners()
     }
 
     fun deleteVisitsSince(since: Long) = GlobalScope.future {
         storage.deleteVisitsSince(since)
+        rebuildVisitIndexes()
+        rebuildSearchIndex()
         notifyListeners()
     }
 
     fun deleteVisitsBetween(startTime: Long, endTime: Long) = GlobalScope.future {
         storage.deleteVisitsBetween(startTime, endTime)
+        rebuildVisitIndexes()
+        rebuildSearchIndex()
         notifyListeners()
     }
 
@@ -140,13 +336,114 @@ class HistoryStore constructor(val context: Context) {
         storage.getSuggestions(query, limit)
     }
 
-    private fun notifyListeners() {
-        if (listeners.size > 0) {
-            val listenersCopy = ArrayList(listeners)
-            Handler(Looper.getMainLooper()).post {
-                for (listener in listenersCopy) {
-                    listener.onHistoryUpdated()
+    private fun rebuildVisitIndexes() {
+        val generation = domainAutocompleteIndex.startRebuild()
+        getVisitsPaginated(0, RECENT_VISITS).thenAccept { visits ->
+            applyRecentVisits(visits, generation)
+        }
+    }
+
+    private fun applyRecentVisits(visits: List<VisitInfo>?, generation: Int) {
+        synchronized(recentVisitsLock) {
+            recentVisits = visits
+            locallyVisitedUrls = HashSet()
+        }
+        domainAutocompleteIndex.rebuild(generation, visits)
+        topSitesTable.rebuild(visits)
+    }
+
+    /**
+     * Compares the recent visits with the ones the indexes were built from. Visits older than the
+     * oldest one in both lists are not compared, and new visits to locally visited urls are
+     * expected, their titles are still compared. Sync changes to older visits are picked up by the next rebuild.
+     * @return The added, removed and updated urls, or null if there is nothing to compare with.
+     */
+    private fun diffRecentVisits(visits: List<VisitInfo>?): PlacesChangeSet? {
+        val previous: List<VisitInfo>
+        val localUrls: Set<String>
+        synchronized(recentVisitsLock) {
+            previous = recentVisits ?: return null
+            localUrls = HashSet(locallyVisitedUrls)
+        }
+        val current = visits ?: emptyList()
+        var since = Long.MIN_VALUE
+        if (current.size >= RECENT_VISITS) {
+            since = maxOf(since, current.last().visitTime)
+        }
+        if (previous.size >= RECENT_VISITS) {
+            since = maxOf(since, previous.last().visitTime)
+        }
+
+        val previousVisits = HashMap<String, HashSet<Long>>()
+        val previousTitles = HashMap<String, String?>()
+        previous.filter { it.visitTime > since }.forEach {
+            previousVisits.getOrPut(it.url) { HashSet() }.add(it.visitTime)
+            previousTitles[it.url] = it.title
+        }
+        val currentVisits = HashMap<String, HashSet<Long>>()
+        val currentTitles = HashMap<String, String?>()
+        current.filter { it.visitTime > since }.forEach {
+            currentVisits.getOrPut(it.url) { HashSet() }.add(it.visitTime)
+            currentTitles[it.url] = it.title
+        }
+
+        val added = HashSet<String>()
+        val removed = HashSet<String>()
+        val updated = HashSet<String>()
+        for ((url, times) in currentVisits) {
+            val old = previousVisits[url]
+            val local = localUrls.contains(url)
+            if (old == null) {
+                if (!local) {
+                    added.add(url)
                 }
+            } else {
+                val visitsChanged = if (local) !times.containsAll(old) else times != old
+                if (visitsChanged || currentTitles[url] != previousTitles[url]) {
+                    updated.add(url)
+                }
+            }
+        }
+        previousVisits.keys.filterTo(removed) { !currentVisits.containsKey(it) }
+        val urls = HashSet<String>(added)
+        urls.addAll(removed)
+        urls.addAll(updated)
+        return PlacesChangeSet(added, removed, updated, urls)
+    }
+
+    private fun rebuildSearchIndex() {
+        val index = searchIndex ?: return
+        getVisitsPaginated(0, SEARCH_INDEX_VISITS).thenAccept { visits ->
+            index.setHistory(visits)
+        }
+    }
+
+    /**
+     * Notifies the listeners on the main thread. Changes reported before a pending notification
+     * is delivered are merged into it.
+     * @param changes Changes to report or null if anything might have changed.
+     */
+    private fun notifyListeners(changes: PlacesChangeSet? = null) {
+        synchronized(notifyLock) {
+            if (changes == null) {
+                notifyChanges = null
+            } else {
+                notifyChanges?.merge(changes)
+            }
+            if (notifyPending) {
+                return
+            }
+            notifyPending = true
+        }
+        mainHandler.post {
+            val changes: PlacesChangeSet?
+            synchronized(notifyLock) {
+                changes = notifyChanges?.toChangeSet()
+                notifyChanges = PendingChanges()
+                notifyPending = false
+            }
+            for (listener in ArrayList(listeners)) {
+                listener.onHistoryUpdated(changes)
             }
         }
     }
@@ -0,0 +1,640 @@
+package org.mozilla.vrbrowser.browser;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import mozilla.components.concept.storage.BookmarkNode;
+import mozilla.components.concept.storage.VisitInfo;
+import mozilla.components.concept.storage.VisitType;
+
+/**
+ * On-device inverted index over the titles, urls and hosts of history and bookmarks.
+ *
+ * Text is split in words, CJK text is indexed as single characters and character bigrams so titles
+ * without spaces can still be matched. A query matches a document when every query token is a prefix
+ * of one of the document tokens. The most selective query token is looked up in a sorted term map
+ * and the rest of the tokens are checked against the candidates, so a query only touches the
+ * documents that can match.
+ *
+ * Only the documents are persisted, in a compact binary file; postings are rebuilt when it is loaded.
+ * Changes are saved together after a delay, or when {@link #flush()} is called on pause. The documents
+ * are copied under the lock and written outside it, so searches don't wait for the disk.
+ * Removed documents are kept as tombstones until they are a quarter of the index and then compacted.
+ */
+public class LocalSearchIndex {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(LocalSearchIndex.class);
+
+    private static final int FILE_MAGIC = 0x4c534958;
+    private static final int FILE_VERSION = 2;
+    private static final int MAX_URL_LENGTH = 2048;
+    // Guards the allocation when reading a corrupt file.
+    private static final int MAX_STRING_BYTES = 1 << 24;
+    private static final float BOOKMARK_BONUS = 50;
+    private static final long SAVE_DELAY_MS = 10000;
+
+    private static final int FLAG_HISTORY = 1;
+    private static final int FLAG_BOOKMARK = 2;
+
+    public static class Result {
+        public final String url;
+        public final String title;
+        public final boolean isBookmark;
+        public final boolean isHistory;
+        public final int score;
+
+        Result(@NonNull Document aDocument) {
+            url = aDocument.url;
+            title = aDocument.title;
+            isBookmark = (aDocument.flags & FLAG_BOOKMARK) != 0;
+            isHistory = (aDocument.flags & FLAG_HISTORY) != 0;
+            score = Math.round(aDocument.score);
+        }
+    }
+
+    private static class Document {
+        final int id;
+        final String url;
+        String title;
+        int flags;
+        float score;
+        String[] tokens;
+
+        Document(int aId, @NonNull String aUrl) {
+            id = aId;
+            url = aUrl;
+        }
+
+        boolean isRemoved() {
+            return flags == 0;
+        }
+    }
+
+    private static class IntList {
+        int[] values = new int[2];
+        int size;
+
+        void add(int aValue) {
+            if (size > 0 && values[size - 1] == aValue) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = aValue;
+        }
+    }
+
+    private final Object mLock = new Object();
+    private List<Document> mDocuments = new ArrayList<>();
+    private HashMap<String, Document> mUrls = new HashMap<>();
+    private TreeMap<String, IntList> mPostings = new TreeMap<>();
+    private int mRemoved;
+    private boolean mHistorySet;
+    private boolean mBookmarksSet;
+    private volatile boolean mReady;
+
+    private File mFile;
+    private Executor mDiskExecutor;
+    private AtomicBoolean mSavePending = new AtomicBoolean(false);
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mSaveRunnable = () -> mDiskExecutor.execute(this::save);
+
+    /**
+     * @param aFile File used to persist the index or null to keep it in memory.
+     * @param aDiskExecutor Executor used to load and save the index file.
+     */
+    public LocalSearchIndex(@Nullable File aFile, @NonNull Executor aDiskExecutor) {
+        mFile = aFile;
+        mDiskExecutor = aDiskExecutor;
+    }
+
+    /**
+     * Loads the persisted index.
+     * @return false if there was no usable index file and it needs to be built from storage.
+     */
+    public boolean load() {
+        if (mFile == null || !mFile.exists()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                return false;
+            }
+            int count = in.readInt();
+            synchronized (mLock) {
+                // The stores may have already pushed newer data, the file only fills what is missing.
+                int ignoredFlags = (mHistorySet ? FLAG_HISTORY : 0) | (mBookmarksSet ? FLAG_BOOKMARK : 0);
+                for (int i = 0; i < count; i++) {
+                    String url = readString(in);
+                    String title = readString(in);
+                    int flags = in.readByte() & ~ignoredFlags;
+                    float score = in.readFloat();
+                    if (flags == 0) {
+                        continue;
+                    }
+                    Document document = getOrCreateLocked(url);
+                    if (document.title == null && !title.isEmpty()) {
+                        document.title = title;
+                    }
+                    document.flags |= flags;
+                    if ((flags & FLAG_HISTORY) != 0) {
+                        document.score += score;
+                    }
+                    indexLocked(document);
+                }
+            }
+            mReady = true;
+            return true;
+
+        } catch (IOException e) {
+            Log.w(LOGTAG, "Error loading the local search index: " + e.getLocalizedMessage());
+            mFile.delete();
+            return false;
+        }
+    }
+
+    public boolean isReady() {
+        return mReady;
+    }
+
+    public int size() {
+        synchronized (mLock) {
+            return mUrls.size();
+        }
+    }
+
+    /**
+     * Replaces the history documents with the given visits. Only the documents of urls that are
+     * no longer visited or whose title changed are removed or reindexed.
+     */
+    public void setHistory(@Nullable List<VisitInfo> aVisits) {
+        HashMap<String, Float> scores = new HashMap<>();
+        HashMap<String, String> titles = new HashMap<>();
+        if (aVisits != null) {
+            for (VisitInfo visit : aVisits) {
+                String url = visit.getUrl();
+                if (url == null || url.length() > MAX_URL_LENGTH) {
+                    continue;
+                }
+                scores.merge(url, (float) Frecency.visitWeight(visit.getVisitType()), Float::sum);
+                // The visits are sorted by date, the most recent title wins.
+                if (visit.getTitle() != null && !visit.getTitle().isEmpty()) {
+                    titles.putIfAbsent(url, visit.getTitle());
+                }
+            }
+        }
+        synchronized (mLock) {
+            for (Document document : mDocuments) {
+                if ((document.flags & FLAG_HISTORY) != 0 && !scores.containsKey(document.url)) {
+                    document.score = 0;
+                    removeFlagLocked(document, FLAG_HISTORY);
+                }
+            }
+            for (HashMap.Entry<String, Float> entry : scores.entrySet()) {
+                Document document = getOrCreateLocked(entry.getKey());
+                boolean reindex = document.tokens == null;
+                document.flags |= FLAG_HISTORY;
+                document.score = entry.getValue();
+                String title = titles.get(entry.getKey());
+                if (title != null && !title.equals(document.title)) {
+                    document.title = title;
+                    reindex = true;
+                }
+                if (reindex) {
+                    indexLocked(document);
+                }
+            }
+            mHistorySet = true;
+            compactIfNeededLocked();
+        }
+        mReady = true;
+        scheduleSave();
+    }
+
+    public void addVisit(@NonNull String aUrl, @Nullable VisitType aVisitType) {
+        synchronized (mLock) {
+            addVisitLocked(aUrl, null, aVisitType);
+        }
+        scheduleSave();
+    }
+
+    public void setTitle(@NonNull String aUrl, @Nullable String aTitle) {
+        synchronized (mLock) {
+            Document document = mUrls.get(aUrl);
+            if (document == null || aTitle == null || aTitle.equals(document.title)) {
+                return;
+            }
+            document.title = aTitle;
+            indexLocked(document);
+        }
+        scheduleSave();
+    }
+
+    public void removeHistory(@NonNull String aUrl) {
+        synchronized (mLock) {
+            Document document = mUrls.get(aUrl);
+            if (document != null) {
+                document.score = 0;
+                removeFlagLocked(document, FLAG_HISTORY);
+                compactIfNeededLocked();
+            }
+        }
+        scheduleSave();
+    }
+
+    /**
+     * Replaces the bookmark documents with the given bookmark items.
+     */
+    public void setBookmarks(@NonNull List<BookmarkNode> aBookmarks) {
+        synchronized (mLock) {
+            for (Document document : mDocuments) {
+                if ((document.flags & FLAG_BOOKMARK) != 0) {
+                    removeFlagLocked(document, FLAG_BOOKMARK);
+                }
+            }
+            for (BookmarkNode bookmark : aBookmarks) {
+                String url = bookmark.getUrl();
+                if (url == null || url.length() > MAX_URL_LENGTH) {
+                    continue;
+                }
+                Document document = getOrCreateLocked(url);
+                document.flags |= FLAG_BOOKMARK;
+                if (bookmark.getTitle() != null && !bookmark.getTitle().isEmpty()) {
+                    document.title = bookmark.getTitle();
+                }
+                indexLocked(document);
+            }
+            mBookmarksSet = true;
+            compactIfNeededLocked();
+        }
+        scheduleSave();
+    }
+
+    public void clear() {
+        synchronized (mLock) {
+            clearLocked();
+        }
+        scheduleSave();
+    }
+
+    /**
+     * Returns the best scored bookmarks matching every token of the query.
+     */
+    @NonNull
+    public List<Result> searchBookmarks(@NonNull String aQuery, int aLimit) {
+        return search(aQuery, aLimit, FLAG_BOOKMARK);
+    }
+
+    /**
+     * Returns the best scored history documents matching every token of the query.
+     */
+    @NonNull
+    public List<Result> searchHistory(@NonNull String aQuery, int aLimit) {
+        return search(aQuery, aLimit, FLAG_HISTORY);
+    }
+
+    /**
+     * Documents without the flag are dropped before the limit so the other kind can't push them out.
+     */
+    @NonNull
+    private List<Result> search(@NonNull String aQuery, int aLimit, int aFlag) {
+        List<String> tokens = new ArrayList<>(tokenize(aQuery));
+        if (tokens.isEmpty() || aLimit <= 0) {
+            return Collections.emptyList();
+        }
+        // The longest token is usually the most selective one.
+        String driver = tokens.get(0);
+        for (String token : tokens) {
+            if (token.length() > driver.length()) {
+                driver = token;
+            }
+        }
+        tokens.remove(driver);
+
+        PriorityQueue<Document> best = new PriorityQueue<>(aLimit + 1, (a, b) -> Float.compare(score(a), score(b)));
+        synchronized (mLock) {
+            boolean[] visited = new boolean[mDocuments.size()];
+            SortedMap<String, IntList> terms = mPostings.subMap(driver, driver + Character.MAX_VALUE);
+            for (IntList postings : terms.values()) {
+                for (int i = 0; i < postings.size; i++) {
+                    int id = postings.values[i];
+                    if (visited[id]) {
+                        continue;
+                    }
+                    visited[id] = true;
+                    Document document = mDocuments.get(id);
+                    if (document.isRemoved() || (document.flags & aFlag) == 0 || !matchesAll(document.tokens, tokens)) {
+                        continue;
+                    }
+                    best.add(document);
+                    if (best.size() > aLimit) {
+                        best.poll();
+                    }
+                }
+            }
+
+            List<Result> results = new ArrayList<>(best.size());
+            while (!best.isEmpty()) {
+                results.add(new Result(best.poll()));
+            }
+            Collections.reverse(results);
+            return results;
+        }
+    }
+
+    private static float score(@NonNull Document aDocument) {
+        return aDocument.score + ((aDocument.flags & FLAG_BOOKMARK) != 0 ? BOOKMARK_BONUS : 0);
+    }
+
+    /**
+     * Returns true if a document with the given title and url would match every token of the query,
+     * so results of a previous search can be filtered without searching again.
+     */
+    public static boolean matches(@Nullable String aTitle, @NonNull String aUrl, @NonNull String aQuery) {
+        Set<String> queryTokens = tokenize(aQuery);
+        if (queryTokens.isEmpty()) {
+            return false;
+        }
+        Set<String> tokens = tokenize(aTitle != null ? aTitle : "");
+        tokens.addAll(tokenize(stripScheme(aUrl)));
+        return matchesAll(tokens.toArray(new String[0]), queryTokens);
+    }
+
+    private static boolean matchesAll(@NonNull String[] aDocumentTokens, @NonNull Collection<String> aTokens) {
+        for (String token : aTokens) {
+            boolean found = false;
+            for (String documentToken : aDocumentTokens) {
+                if (documentToken.startsWith(token)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addVisitLocked(@Nullable String aUrl, @Nullable String aTitle, @Nullable VisitType aVisitType) {
+        if (aUrl == null || aUrl.length() > MAX_URL_LENGTH) {
+            return;
+        }
+        Document document = getOrCreateLocked(aUrl);
+        boolean reindex = document.tokens == null;
+        document.flags |= FLAG_HISTORY;
+        document.score += (float) Frecency.visitWeight(aVisitType);
+        if (aTitle != null && !aTitle.isEmpty() && !aTitle.equals(document.title)) {
+            document.title = aTitle;
+            reindex = true;
+        }
+        if (reindex) {
+            indexLocked(document);
+        }
+    }
+
+    private Document getOrCreateLocked(@NonNull String aUrl) {
+        Document document = mUrls.get(aUrl);
+        if (document == null) {
+            document = new Document(mDocuments.size(), aUrl);
+            mDocuments.add(document);
+            mUrls.put(aUrl, document);
+        }
+        return document;
+    }
+
+    private void removeFlagLocked(@NonNull Document aDocument, int aFlag) {
+        aDocument.flags &= ~aFlag;
+        if (aDocument.isRemoved()) {
+            mUrls.remove(aDocument.url);
+            mRemoved++;
+        }
+    }
+
+    /**
+     * Adds the document tokens to the postings. Tokens that are no longer in the document are left
+     * in the postings, candidates are always checked against the current document tokens.
+     */
+    private void indexLocked(@NonNull Document aDocument) {
+        if (aDocument.isRemoved()) {
+            return;
+        }
+        Set<String> tokens = tokenize(aDocument.title != null ? aDocument.title : "");
+        tokens.addAll(tokenize(stripScheme(aDocument.url)));
+        aDocument.tokens = tokens.toArray(new String[0]);
+        for (String token : aDocument.tokens) {
+            IntList postings = mPostings.get(token);
+            if (postings == null) {
+                postings = new IntList();
+                mPostings.put(token, postings);
+            }
+            postings.add(aDocument.id);
+        }
+    }
+
+    private void compactIfNeededLocked() {
+        if (mRemoved * 4 < mDocuments.size()) {
+            return;
+        }
+        List<Document> documents = mDocuments;
+        clearLocked();
+        for (Document old : documents) {
+            if (old.isRemoved()) {
+                continue;
+            }
+            Document document = getOrCreateLocked(old.url);
+            document.title = old.title;
+            document.flags = old.flags;
+            document.score = old.score;
+            indexLocked(document);
+        }
+    }
+
+    private void clearLocked() {
+        mDocuments = new ArrayList<>();
+        mUrls = new HashMap<>();
+        mPostings = new TreeMap<>();
+        mRemoved = 0;
+    }
+
+    /**
+     * Saves the pending changes now, called when the browser is paused.
+     */
+    public void flush() {
+        if (mFile != null && mSavePending.get()) {
+            mHandler.removeCallbacks(mSaveRunnable);
+            mDiskExecutor.execute(this::save);
+        }
+    }
+
+    private void scheduleSave() {
+        if (mFile != null && mSavePending.compareAndSet(false, true)) {
+            mHandler.postDelayed(mSaveRunnable, SAVE_DELAY_MS);
+        }
+    }
+
+    private void save() {
+        if (!mSavePending.getAndSet(false)) {
+            // Already saved by a flush.
+            return;
+        }
+        String[] urls;
+        String[] titles;
+        int[] flags;
+        float[] scores;
+        synchronized (mLock) {
+            int count = mUrls.size();
+            urls = new String[count];
+            titles = new String[count];
+            flags = new int[count];
+            scores = new float[count];
+            int i = 0;
+            for (Document document : mDocuments) {
+                if (document.isRemoved()) {
+                    continue;
+                }
+                urls[i] = document.url;
+                titles[i] = document.title != null ? document.title : "";
+                flags[i] = document.flags;
+                scores[i] = document.score;
+                i++;
+            }
+        }
+
+        File temp = new File(mFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(urls.length);
+            for (int i = 0; i < urls.length; i++) {
+                writeString(out, urls[i]);
+                writeString(out, titles[i]);
+                out.writeByte(flags[i]);
+                out.writeFloat(scores[i]);
+            }
+
+        } catch (IOException e) {
+            Log.e(LOGTAG, "Error saving the local search index: " + e.getLocalizedMessage());
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(mFile)) {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Writes the string as length prefixed UTF-8, writeUTF can't write titles longer than 64KB.
+     */
+    private static void writeString(@NonNull DataOutputStream aOut, @NonNull String aValue) throws IOException {
+        byte[] bytes = aValue.getBytes(StandardCharsets.UTF_8);
+        aOut.writeInt(bytes.length);
+        aOut.write(bytes);
+    }
+
+    @NonNull
+    private static String readString(@NonNull DataInputStream aIn) throws IOException {
+        int length = aIn.readInt();
+        if (length < 0 || length > MAX_STRING_BYTES) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        aIn.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @NonNull
+    private static String stripScheme(@NonNull String aUrl) {
+        int index = aUrl.indexOf("://");
+        String url = index >= 0 ? aUrl.substring(index + 3) : aUrl;
+        return url.startsWith("www.") ? url.substring(4) : url;
+    }
+
+    private static boolean isCJK(int aCodePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(aCodePoint);
+        return script == Character.UnicodeScript.HAN ||
+                script == Character.UnicodeScript.HIRAGANA ||
+                script == Character.UnicodeScript.KATAKANA ||
+                script == Character.UnicodeScript.HANGUL;
+    }
+
+    /**
+     * Splits the text in lower case words. CJK characters are emitted as single characters and as
+     * bigrams of consecutive characters.
+     */
+    @NonNull
+    static Set<String> tokenize(@NonNull String aText) {
+        Set<String> tokens = new LinkedHashSet<>();
+        String text = aText.toLowerCase(Locale.ROOT);
+        StringBuilder word = new StringBuilder();
+        int previousCJK = -1;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (isCJK(codePoint)) {
+                addWord(tokens, word);
+                String character = new String(Character.toChars(codePoint));
+                tokens.add(character);
+                if (previousCJK >= 0) {
+                    tokens.add(new String(Character.toChars(previousCJK)) + character);
+                }
+                previousCJK = codePoint;
+
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                word.appendCodePoint(codePoint);
+                previousCJK = -1;
+
+            } else {
+                addWord(tokens, word);
+                previousCJK = -1;
+            }
+        }
+        addWord(tokens, word);
+        return tokens;
+    }
+
+    private static void addWord(@NonNull Set<String> aTokens, @NonNull StringBuilder aWord) {
+        if (aWord.length() > 0) {
+            aTokens.add(aWord.toString());
+            aWord.setLength(0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (mLock) {
+            return "LocalSearchIndex documents=" + mUrls.size() + " terms=" + mPostings.size() + " removed=" + mRemoved;
+        }
+    }
+}
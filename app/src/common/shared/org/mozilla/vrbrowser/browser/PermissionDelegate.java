@@ -9,15 +9,16 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.lifecycle.Observer;
 
 import org.mozilla.geckoview.GeckoSession;
 import org.mozilla.vrbrowser.PlatformActivity;
 import org.mozilla.vrbrowser.R;
+import org.mozilla.vrbrowser.VRBrowserApplication;
 import org.mozilla.vrbrowser.browser.engine.Session;
 import org.mozilla.vrbrowser.browser.engine.SessionState;
 import org.mozilla.vrbrowser.browser.engine.SessionStore;
 import org.mozilla.vrbrowser.db.SitePermission;
+import org.mozilla.vrbrowser.db.SitePermissionCache;
 import org.mozilla.vrbrowser.ui.viewmodel.SitePermissionViewModel;
 import org.mozilla.vrbrowser.ui.widgets.WidgetManagerDelegate;
 import org.mozilla.vrbrowser.ui.widgets.WindowWidget;
@@ -27,7 +28,6 @@ import org.mozilla.vrbrowser.utils.UrlUtils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
 public class PermissionDelegate implements GeckoSession.PermissionDelegate, WidgetManagerDelegate.PermissionListener {
 
@@ -40,7 +40,7 @@ public class PermissionDelegate implements GeckoSession.PermissionDelegate, Widg
     private GeckoSession.PermissionDelegate.Callback mCallback;
     private PermissionWidget mPermissionWidget;
     private SitePermissionViewModel mSitePermissionModel;
-    private List<SitePermission> mSitePermissions;
+    private SitePermissionCache mSitePermissions;
 
     public PermissionDelegate(Context aContext, WidgetManagerDelegate aWidgetManager) {
         mContext = aContext;
@@ -48,7 +48,7 @@ public class PermissionDelegate implements GeckoSession.PermissionDelegate, Widg
         mWidgetManager.addPermissionListener(this);
         SessionStore.get().setPermissionDelegate(this);
         mSitePermissionModel = new SitePermissionViewModel((Application)aContext.getApplicationContext());
-        mSitePermissionModel.getAll().observeForever(mSitePermissionObserver);
+        mSitePermissions = ((VRBrowserApplication)aContext.getApplicationContext()).getRepository().getSitePermissionCache();
     }
 
     public void setParentWidgetHandle(int aHandle) {
@@ -85,10 +85,6 @@ public class PermissionDelegate implements GeckoSession.PermissionDelegate, Widg
         mPermissionWidget.showPrompt(aUri, aType, aCallback);
     }
 
-    private Observer<List<SitePermission>> mSitePermissionObserver = sites -> {
-        mSitePermissions = sites;
-    };
-
     void handleWebXRPermission(GeckoSession aGeckoSession, final String aUri, final Callback aCallback) {
         Session session = SessionStore.get().getSession(aGeckoSession);
         if (session == null || !SettingsStore.getInstance(mContext).isWebXREnabled()) {
@@ -97,15 +93,7 @@ public class PermissionDelegate implements GeckoSession.PermissionDelegate, Widg
         }
         final String domain = UrlUtils.getHost(aUri);
 
-        @Nullable SitePermission site = null;
-        if (mSitePermissions != null) {
-            site = mSitePermissions.stream()
-                    .filter(sitePermission -> sitePermission.category == SitePermission.SITE_PERMISSION_WEBXR &&
-                            sitePermission.url.equalsIgnoreCase(domain))
-                    .findFirst().orElse(null);
-        }
-
-        if (site == null) {
+        if (!mSitePermissions.contains(domain, SitePermission.SITE_PERMISSION_WEBXR)) {
             aCallback.grant();
             session.setWebXRState(SessionState.WEBXR_ALLOWED);
         } else {
@@ -115,7 +103,6 @@ public class PermissionDelegate implements GeckoSession.PermissionDelegate, Widg
     }
 
     public void release() {
-        mSitePermissionModel.getAll().removeObserver(mSitePermissionObserver);
         mWidgetManager.removePermissionListener(this);
         SessionStore.get().setPermissionDelegate(null);
         mCallback = null;
@@ -300,13 +287,9 @@ public class PermissionDelegate implements GeckoSession.PermissionDelegate, Widg
         }
     }
     public void addPermissionException(@NonNull String uri, @SitePermission.Category int category) {
-        @Nullable SitePermission site = mSitePermissions.stream()
-                .filter((item) -> item.category == category && item.url.equals(uri))
-                .findFirst().orElse(null);
-
+        @Nullable SitePermission site = mSitePermissions.get(uri, category);
         if (site == null) {
             site = new SitePermission(uri, "", category);
-            mSitePermissions.add(site);
         }
         mSitePermissionModel.insertSite(site);
 
@@ -321,11 +304,7 @@ public class PermissionDelegate implements GeckoSession.PermissionDelegate, Widg
     }
 
     public void removePermissionException(String uri, @SitePermission.Category int category) {
-        @Nullable SitePermission site = mSitePermissions.stream()
-                .filter((item) -> item.category == category && item.url.equals(uri))
-                .findFirst().orElse(null);
-
-        mSitePermissions.removeIf(sitePermission -> sitePermission.url.equals(uri));
+        @Nullable SitePermission site = mSitePermissions.get(uri, category);
         if (site != null) {
             mSitePermissionModel.deleteSite(site);
         }
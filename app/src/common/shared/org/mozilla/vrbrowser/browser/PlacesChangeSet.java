@@ -0,0 +1,62 @@
+package org.mozilla.vrbrowser.browser;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Changes applied to a Places store, reported to the store listeners so they can update
+ * what they show instead of reloading everything.
+ *
+ * Bookmark changes are identified by guid, history changes by url. The urls of all the
+ * changed entries are also collected so url keyed caches can be invalidated.
+ */
+public class PlacesChangeSet {
+
+    public static final PlacesChangeSet EMPTY = new PlacesChangeSet(
+            Collections.emptySet(), Collections.emptySet(), Collections.emptySet(), Collections.emptySet());
+
+    private final Set<String> mAdded;
+    private final Set<String> mRemoved;
+    private final Set<String> mUpdated;
+    private final Set<String> mUrls;
+
+    public PlacesChangeSet(@NonNull Set<String> aAdded, @NonNull Set<String> aRemoved,
+                           @NonNull Set<String> aUpdated, @NonNull Set<String> aUrls) {
+        mAdded = Collections.unmodifiableSet(aAdded);
+        mRemoved = Collections.unmodifiableSet(aRemoved);
+        mUpdated = Collections.unmodifiableSet(aUpdated);
+        mUrls = Collections.unmodifiableSet(aUrls);
+    }
+
+    @NonNull
+    public Set<String> getAdded() {
+        return mAdded;
+    }
+
+    @NonNull
+    public Set<String> getRemoved() {
+        return mRemoved;
+    }
+
+    @NonNull
+    public Set<String> getUpdated() {
+        return mUpdated;
+    }
+
+    @NonNull
+    public Set<String> getUrls() {
+        return mUrls;
+    }
+
+    public boolean isEmpty() {
+        return mAdded.isEmpty() && mRemoved.isEmpty() && mUpdated.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "PlacesChangeSet added=" + mAdded.size() + " removed=" + mRemoved.size() +
+                " updated=" + mUpdated.size() + " urls=" + mUrls.size();
+    }
+}
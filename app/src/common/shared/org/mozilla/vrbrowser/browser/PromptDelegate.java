@@ -1,21 +1,20 @@
 package org.mozilla.vrbrowser.browser;
 
-import android.app.Application;
 import android.content.Context;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.lifecycle.Observer;
 
 import org.mozilla.geckoview.AllowOrDeny;
 import org.mozilla.geckoview.GeckoResult;
 import org.mozilla.geckoview.GeckoSession;
 import org.mozilla.geckoview.SlowScriptResponse;
 import org.mozilla.vrbrowser.R;
+import org.mozilla.vrbrowser.VRBrowserApplication;
 import org.mozilla.vrbrowser.browser.engine.Session;
 import org.mozilla.vrbrowser.browser.engine.SessionState;
 import org.mozilla.vrbrowser.db.SitePermission;
-import org.mozilla.vrbrowser.ui.viewmodel.SitePermissionViewModel;
+import org.mozilla.vrbrowser.db.SitePermissionCache;
 import org.mozilla.vrbrowser.ui.widgets.UIWidget;
 import org.mozilla.vrbrowser.ui.widgets.WidgetPlacement;
 import org.mozilla.vrbrowser.ui.widgets.WindowWidget;
@@ -28,9 +27,6 @@ import org.mozilla.vrbrowser.ui.widgets.prompts.TextPromptWidget;
 import org.mozilla.vrbrowser.utils.StringUtils;
 import org.mozilla.vrbrowser.utils.UrlUtils;
 
-import java.util.ArrayList;
-import java.util.List;
-
 public class PromptDelegate implements
         GeckoSession.PromptDelegate,
         WindowWidget.WindowListener,
@@ -41,13 +37,11 @@ public class PromptDelegate implements
     private ConfirmPromptWidget mSlowScriptPrompt;
     private Context mContext;
     private WindowWidget mAttachedWindow;
-    private List<SitePermission> mAllowedPopUpSites;
-    private SitePermissionViewModel mViewModel;
+    private SitePermissionCache mAllowedPopUpSites;
 
     public PromptDelegate(@NonNull Context context) {
         mContext = context;
-        mViewModel = new SitePermissionViewModel(((Application)context.getApplicationContext()));
-        mAllowedPopUpSites = new ArrayList<>();
+        mAllowedPopUpSites = ((VRBrowserApplication)context.getApplicationContext()).getRepository().getSitePermissionCache();
     }
 
     public void attachToWindow(@NonNull WindowWidget window) {
@@ -58,7 +52,6 @@ public class PromptDelegate implements
 
         mAttachedWindow = window;
         mAttachedWindow.addWindowListener(this);
-        mViewModel.getAll(SitePermission.SITE_PERMISSION_POPUP).observeForever(mPopUpSiteObserver);
 
         if (getSession() != null) {
             setUpSession(getSession());
@@ -74,7 +67,6 @@ public class PromptDelegate implements
             mAttachedWindow.removeWindowListener(this);
             mAttachedWindow = null;
         }
-        mViewModel.getAll(SitePermission.SITE_PERMISSION_POPUP).removeObserver(mPopUpSiteObserver);
     }
 
     private Session getSession() {
@@ -234,10 +226,6 @@ public class PromptDelegate implements
         return result;
     }
 
-    private Observer<List<SitePermission>> mPopUpSiteObserver = sites -> {
-        mAllowedPopUpSites = sites;
-    };
-
     @Nullable
     @Override
     public GeckoResult<PromptResponse> onPopupPrompt(@NonNull GeckoSession geckoSession, @NonNull PopupPrompt popupPrompt) {
@@ -250,8 +238,7 @@ public class PromptDelegate implements
             Session session = mAttachedWindow.getSession();
             if (session != null) {
                 final String uri = UrlUtils.getHost(session.getCurrentUri());
-                SitePermission site = mAllowedPopUpSites.stream().filter((item) -> UrlUtils.getHost(item.url).equals(uri)).findFirst().orElse(null);
-                if (site != null) {
+                if (mAllowedPopUpSites.contains(uri, SitePermission.SITE_PERMISSION_POPUP)) {
                     result.complete(popupPrompt.confirm(AllowOrDeny.ALLOW));
                     session.setPopUpState(SessionState.POPUP_ALLOWED);
                 } else {
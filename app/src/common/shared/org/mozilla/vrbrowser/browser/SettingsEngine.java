@@ -0,0 +1,238 @@
+package org.mozilla.vrbrowser.browser;
+
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Typed in-memory settings backed by a SharedPreferences file.
+ *
+ * All the values are read once when the engine is created, so getters never touch the preferences.
+ * Setters update the snapshot and queue the change, queued changes are written together in a single
+ * commit on a background thread shortly after. Code that needs a value on disk right away, like the
+ * crash restart counter, calls {@link #flush()}.
+ *
+ * The values use the same keys and types as the preferences written before the engine, so the
+ * existing file is used as is. Changes are reported through {@link SettingListener} as soon as the
+ * snapshot is updated, preference change listeners only hear about them once the batch is written.
+ */
+public class SettingsEngine {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(SettingsEngine.class);
+
+    // Delay used to batch the writes of the settings changed together.
+    private static final long WRITE_DELAY_MS = 200;
+
+    public interface SettingListener {
+        /**
+         * Called on the main thread after the setting changes.
+         */
+        void onSettingChanged(@NonNull String aKey);
+    }
+
+    // Marks a removed value in the pending writes.
+    private static final Object REMOVED = new Object();
+
+    private final SharedPreferences mPrefs;
+    private final ConcurrentHashMap<String, Object> mValues = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CopyOnWriteArrayList<SettingListener>> mListeners = new ConcurrentHashMap<>();
+    private final Object mLock = new Object();
+    private final Object mFlushLock = new Object();
+    private HashMap<String, Object> mPending = new HashMap<>();
+    private boolean mWriteScheduled;
+    private Handler mWriteHandler;
+    private Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    public SettingsEngine(@NonNull SharedPreferences aPrefs) {
+        mPrefs = aPrefs;
+        for (Map.Entry<String, ?> entry : mPrefs.getAll().entrySet()) {
+            if (entry.getValue() != null) {
+                mValues.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    public boolean contains(@NonNull String aKey) {
+        return mValues.containsKey(aKey);
+    }
+
+    public boolean getBoolean(@NonNull String aKey, boolean aDefault) {
+        Object value = mValues.get(aKey);
+        return value instanceof Boolean ? (Boolean) value : aDefault;
+    }
+
+    public int getInt(@NonNull String aKey, int aDefault) {
+        Object value = mValues.get(aKey);
+        return value instanceof Number ? ((Number) value).intValue() : aDefault;
+    }
+
+    public long getLong(@NonNull String aKey, long aDefault) {
+        Object value = mValues.get(aKey);
+        return value instanceof Number ? ((Number) value).longValue() : aDefault;
+    }
+
+    public float getFloat(@NonNull String aKey, float aDefault) {
+        Object value = mValues.get(aKey);
+        return value instanceof Number ? ((Number) value).floatValue() : aDefault;
+    }
+
+    @Nullable
+    public String getString(@NonNull String aKey, @Nullable String aDefault) {
+        Object value = mValues.get(aKey);
+        return value instanceof String ? (String) value : aDefault;
+    }
+
+    public void putBoolean(@NonNull String aKey, boolean aValue) {
+        put(aKey, aValue);
+    }
+
+    public void putInt(@NonNull String aKey, int aValue) {
+        put(aKey, aValue);
+    }
+
+    public void putLong(@NonNull String aKey, long aValue) {
+        put(aKey, aValue);
+    }
+
+    public void putFloat(@NonNull String aKey, float aValue) {
+        put(aKey, aValue);
+    }
+
+    /**
+     * Sets a string value, null removes the setting.
+     */
+    public void putString(@NonNull String aKey, @Nullable String aValue) {
+        if (aValue == null) {
+            remove(aKey);
+        } else {
+            put(aKey, aValue);
+        }
+    }
+
+    private void put(@NonNull String aKey, @NonNull Object aValue) {
+        Object previous = mValues.put(aKey, aValue);
+        if (!aValue.equals(previous)) {
+            enqueue(aKey, aValue);
+        }
+    }
+
+    public void remove(@NonNull String aKey) {
+        if (mValues.remove(aKey) != null) {
+            enqueue(aKey, REMOVED);
+        }
+    }
+
+    public void addListener(@NonNull String aKey, @NonNull SettingListener aListener) {
+        mListeners.computeIfAbsent(aKey, key -> new CopyOnWriteArrayList<>()).addIfAbsent(aListener);
+    }
+
+    public void removeListener(@NonNull String aKey, @NonNull SettingListener aListener) {
+        List<SettingListener> listeners = mListeners.get(aKey);
+        if (listeners != null) {
+            listeners.remove(aListener);
+        }
+    }
+
+    /**
+     * Writes the queued changes now, on the calling thread.
+     */
+    public void flush() {
+        // Commits are serialized so an older batch never overwrites a newer one.
+        synchronized (mFlushLock) {
+            HashMap<String, Object> pending;
+            synchronized (mLock) {
+                pending = mPending;
+                mPending = new HashMap<>();
+                mWriteScheduled = false;
+            }
+            if (pending.isEmpty()) {
+                return;
+            }
+            SharedPreferences.Editor editor = mPrefs.edit();
+            for (Map.Entry<String, Object> entry : pending.entrySet()) {
+                write(editor, entry.getKey(), entry.getValue());
+            }
+            if (!editor.commit()) {
+                Log.e(LOGTAG, "Error writing " + pending.size() + " settings");
+            }
+        }
+    }
+
+    /**
+     * Writes the queued changes on the background thread without waiting for the batching delay.
+     */
+    public void flushAsync() {
+        synchronized (mLock) {
+            if (mPending.isEmpty()) {
+                return;
+            }
+            mWriteScheduled = true;
+            getWriteHandler().post(this::flush);
+        }
+    }
+
+    private void enqueue(@NonNull String aKey, @NonNull Object aValue) {
+        synchronized (mLock) {
+            mPending.put(aKey, aValue);
+            if (!mWriteScheduled) {
+                mWriteScheduled = true;
+                getWriteHandler().postDelayed(this::flush, WRITE_DELAY_MS);
+            }
+        }
+        notifyListeners(aKey);
+    }
+
+    private Handler getWriteHandler() {
+        if (mWriteHandler == null) {
+            HandlerThread thread = new HandlerThread("SettingsWriter");
+            thread.start();
+            mWriteHandler = new Handler(thread.getLooper());
+        }
+        return mWriteHandler;
+    }
+
+    private void notifyListeners(@NonNull String aKey) {
+        List<SettingListener> listeners = mListeners.get(aKey);
+        if (listeners == null || listeners.isEmpty()) {
+            return;
+        }
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            for (SettingListener listener : listeners) {
+                listener.onSettingChanged(aKey);
+            }
+        } else {
+            mMainHandler.post(() -> notifyListeners(aKey));
+        }
+    }
+
+    private static void write(@NonNull SharedPreferences.Editor aEditor, @NonNull String aKey, @NonNull Object aValue) {
+        if (aValue == REMOVED) {
+            aEditor.remove(aKey);
+        } else if (aValue instanceof Boolean) {
+            aEditor.putBoolean(aKey, (Boolean) aValue);
+        } else if (aValue instanceof Integer) {
+            aEditor.putInt(aKey, (Integer) aValue);
+        } else if (aValue instanceof Long) {
+            aEditor.putLong(aKey, (Long) aValue);
+        } else if (aValue instanceof Float) {
+            aEditor.putFloat(aKey, (Float) aValue);
+        } else if (aValue instanceof String) {
+            aEditor.putString(aKey, (String) aValue);
+        } else {
+            Log.e(LOGTAG, "Unsupported setting type for " + aKey + ": " + aValue.getClass().getSimpleName());
+        }
+    }
+}
@@ -1,14 +1,16 @@
 package org.mozilla.vrbrowser.browser;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.graphics.Color;
 import android.os.StrictMode;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.util.Log;
 
 import androidx.annotation.IntDef;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.StringRes;
 import androidx.lifecycle.ViewModelProvider;
 
 import org.json.JSONArray;
@@ -35,7 +37,9 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
 
+import mozilla.components.concept.fetch.MutableHeaders;
 import mozilla.components.concept.fetch.Request;
 import mozilla.components.concept.fetch.Response;
 
@@ -62,8 +66,12 @@ public class SettingsStore {
     public static final int EXTERNAL = 1;
 
     private Context mContext;
-    private SharedPreferences mPrefs;
+    private SettingsEngine mSettings;
+    // Settings keys by string resource id, so the getters don't resolve resources.
+    private ConcurrentHashMap<Integer, String> mKeys = new ConcurrentHashMap<>();
     private SettingsViewModel mSettingsViewModel;
+    // Last remote properties set in the model, only accessed from the background thread.
+    private String mRemotePropsJson;
 
     // Developer options default values
     public final static boolean REMOTE_DEBUGGING_DEFAULT = false;
@@ -120,7 +128,38 @@ public class SettingsStore {
 
     public SettingsStore(Context aContext) {
         mContext = aContext;
-        mPrefs = PreferenceManager.getDefaultSharedPreferences(aContext);
+        // Loading the settings snapshot requires a disk read.
+        final StrictMode.ThreadPolicy threadPolicy = StrictMode.allowThreadDiskReads();
+        try {
+            mSettings = new SettingsEngine(PreferenceManager.getDefaultSharedPreferences(aContext));
+        } finally {
+            StrictMode.setThreadPolicy(threadPolicy);
+        }
+    }
+
+    @NonNull
+    private String key(@StringRes int aKeyId) {
+        String key = mKeys.get(aKeyId);
+        if (key == null) {
+            key = mContext.getString(aKeyId);
+            mKeys.put(aKeyId, key);
+        }
+        return key;
+    }
+
+    /**
+     * Returns the typed settings, listeners can be added for individual keys.
+     */
+    @NonNull
+    public SettingsEngine getSettings() {
+        return mSettings;
+    }
+
+    /**
+     * Writes the pending settings changes on the background thread without waiting for the batching delay.
+     */
+    public void flush() {
+        mSettings.flushAsync();
     }
 
     public void initModel(@NonNull Context context) {
@@ -129,19 +168,36 @@ public class SettingsStore {
                 ViewModelProvider.AndroidViewModelFactory.getInstance(((VRBrowserActivity) context).getApplication()))
                 .get(SettingsViewModel.class);
         mSettingsViewModel.refresh();
-        update();
+        // The cached properties are used until the remote ones are revalidated by update().
+        ((VRBrowserApplication) mContext.getApplicationContext()).getExecutors().backgroundThread().post(() ->
+                setProps(mSettings.getString(key(R.string.settings_key_remote_props), null)));
     }
 
     /**
      * Synchronizes the remote properties with the settings storage and notifies the model.
      * Any consumer listening to the SettingsViewModel will get notified of the properties updates.
+     *
+     * The request is conditional on the ETag and Last-Modified of the stored properties, so when they
+     * haven't changed the server answers 304 without a body and the model is not updated. Called after
+     * the first frame as the properties are not needed to render it.
      */
-    private void update() {
+    public void update() {
         ((VRBrowserApplication) mContext.getApplicationContext()).getExecutors().backgroundThread().post(() -> {
+            MutableHeaders headers = new MutableHeaders();
+            if (mSettings.contains(key(R.string.settings_key_remote_props))) {
+                String etag = mSettings.getString(key(R.string.settings_key_remote_props_etag), null);
+                if (etag != null) {
+                    headers.set("If-None-Match", etag);
+                }
+                String lastModified = mSettings.getString(key(R.string.settings_key_remote_props_last_modified), null);
+                if (lastModified != null) {
+                    headers.set("If-Modified-Since", lastModified);
+                }
+            }
             Request request = new Request(
                     BuildConfig.PROPS_ENDPOINT,
                     Request.Method.GET,
-                    null,
+                    headers,
                     null,
                     null,
                     null,
@@ -149,53 +205,52 @@ public class SettingsStore {
                     Request.CookiePolicy.INCLUDE,
                     false
             );
-            try {
-                Response response = EngineProvider.INSTANCE.getDefaultClient(mContext).fetch(request);
+            long start = SystemClock.elapsedRealtime();
+            try (Response response = EngineProvider.INSTANCE.getDefaultClient(mContext).fetch(request)) {
                 if (response.getStatus() == 200) {
                     String json = response.getBody().string(StandardCharsets.UTF_8);
-                    SharedPreferences.Editor editor = mPrefs.edit();
-                    editor.putString(mContext.getString(R.string.settings_key_remote_props), json);
-                    editor.commit();
-
-                    mSettingsViewModel.setProps(json);
+                    Log.d(LOGTAG, "Remote properties fetched in " + (SystemClock.elapsedRealtime() - start) + "ms");
+                    mSettings.putString(key(R.string.settings_key_remote_props), json);
+                    mSettings.putString(key(R.string.settings_key_remote_props_etag), response.getHeaders().get("ETag"));
+                    mSettings.putString(key(R.string.settings_key_remote_props_last_modified), response.getHeaders().get("Last-Modified"));
+                    setProps(json);
 
                 } else {
-                    String json = mPrefs.getString(mContext.getString(R.string.settings_key_remote_props), null);
-                    mSettingsViewModel.setProps(json);
+                    Log.d(LOGTAG, "Remote properties revalidated in " + (SystemClock.elapsedRealtime() - start) + "ms, status: " + response.getStatus());
                 }
 
             } catch (IOException e) {
-                String json = mPrefs.getString(mContext.getString(R.string.settings_key_remote_props), null);
-                mSettingsViewModel.setProps(json);
+                Log.e(LOGTAG, "Remote properties fetch error: " + e.getMessage());
             }
         });
     }
 
+    /**
+     * Sets the remote properties in the model. Parsing and notifying the model are skipped when the
+     * properties are the ones already set.
+     */
+    private void setProps(@Nullable String json) {
+        if (json == null || json.equals(mRemotePropsJson)) {
+            return;
+        }
+        mRemotePropsJson = json;
+        mSettingsViewModel.setProps(json);
+    }
+
     public boolean isCrashReportingEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_crash), CRASH_REPORTING_DEFAULT);
+        return mSettings.getBoolean(key(R.string.settings_key_crash), CRASH_REPORTING_DEFAULT);
     }
 
     public void setCrashReportingEnabled(boolean isEnabled) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_crash), isEnabled);
-        editor.commit();
+        mSettings.putBoolean(key(R.string.settings_key_crash), isEnabled);
     }
 
     public boolean isTelemetryEnabled() {
-        // The first access to shared preferences will require a disk read.
-        final StrictMode.ThreadPolicy threadPolicy = StrictMode.allowThreadDiskReads();
-        try {
-            return mPrefs.getBoolean(
-                    mContext.getString(R.string.settings_key_telemetry), TELEMETRY_DEFAULT);
-        } finally {
-            StrictMode.setThreadPolicy(threadPolicy);
-        }
+        return mSettings.getBoolean(key(R.string.settings_key_telemetry), TELEMETRY_DEFAULT);
     }
 
     public void setTelemetryEnabled(boolean isEnabled) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_telemetry), isEnabled);
-        editor.commit();
+        mSettings.putBoolean(key(R.string.settings_key_telemetry), isEnabled);
 
         // We send before disabling in case of opting-out
         if (!isEnabled) {
@@ -224,80 +279,64 @@ public class SettingsStore {
     }
 
     public boolean telemetryStatusSaved() {
-        return mPrefs.contains(mContext.getString(R.string.settings_key_telemetry));
+        return mSettings.contains(key(R.string.settings_key_telemetry));
     }
 
     public boolean isTelemetryPingUpdateSent() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_telemetry_status_update_sent), TELEMETRY_STATUS_UPDATE_SENT_DEFAULT);
+        return mSettings.getBoolean(key(R.string.settings_key_telemetry_status_update_sent), TELEMETRY_STATUS_UPDATE_SENT_DEFAULT);
     }
 
     public void setTelemetryPingUpdateSent(boolean isSent) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_telemetry_status_update_sent), isSent);
-        editor.commit();
+        mSettings.putBoolean(key(R.string.settings_key_telemetry_status_update_sent), isSent);
     }
 
     public void setGeolocationData(String aGeolocationData) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putString(mContext.getString(R.string.settings_key_geolocation_data), aGeolocationData);
-        editor.commit();
+        mSettings.putString(key(R.string.settings_key_geolocation_data), aGeolocationData);
     }
 
     public String getGeolocationData() {
-        return mPrefs.getString(mContext.getString(R.string.settings_key_geolocation_data), "");
+        return mSettings.getString(key(R.string.settings_key_geolocation_data), "");
     }
 
     public boolean isRemoteDebuggingEnabled() {
-        return mPrefs.getBoolean(
-                mContext.getString(R.string.settings_key_remote_debugging), REMOTE_DEBUGGING_DEFAULT);
+        return mSettings.getBoolean(key(R.string.settings_key_remote_debugging), REMOTE_DEBUGGING_DEFAULT);
     }
 
     public void setRemoteDebuggingEnabled(boolean isEnabled) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_remote_debugging), isEnabled);
-        editor.commit();
+        mSettings.putBoolean(key(R.string.settings_key_remote_debugging), isEnabled);
     }
 
 
     public boolean isDrmContentPlaybackEnabled() {
-        return mPrefs.getBoolean(
-                mContext.getString(R.string.settings_key_drm_playback), DRM_PLAYBACK_DEFAULT);
+        return mSettings.getBoolean(key(R.string.settings_key_drm_playback), DRM_PLAYBACK_DEFAULT);
     }
 
     public boolean isDrmContentPlaybackSet() {
-        return mPrefs.contains(mContext.getString(R.string.settings_key_drm_playback));
+        return mSettings.contains(key(R.string.settings_key_drm_playback));
     }
 
     public void setDrmContentPlaybackEnabled(boolean isEnabled) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_drm_playback), isEnabled);
-        editor.commit();
+        mSettings.putBoolean(key(R.string.settings_key_drm_playback), isEnabled);
 
         mSettingsViewModel.setIsDrmEnabled(isEnabled);
     }
 
     public int getTrackingProtectionLevel() {
-        return mPrefs.getInt(
-                mContext.getString(R.string.settings_key_tracking_protection_level), TRACKING_DEFAULT);
+        return mSettings.getInt(key(R.string.settings_key_tracking_protection_level), TRACKING_DEFAULT);
     }
 
     public void setTrackingProtectionLevel(int level) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_tracking_protection_level), level);
-        editor.commit();
+        mSettings.putInt(key(R.string.settings_key_tracking_protection_level), level);
 
         mSettingsViewModel.setIsTrackingProtectionEnabled(level != ContentBlocking.EtpLevel.NONE);
     }
 
     public boolean isEnvironmentOverrideEnabled() {
-        return mPrefs.getBoolean(
-                mContext.getString(R.string.settings_key_environment_override), ENV_OVERRIDE_DEFAULT);
+        return mSettings.getBoolean(key(R.string.settings_key_environment_override), ENV_OVERRIDE_DEFAULT);
     }
 
     public void setEnvironmentOverrideEnabled(boolean isEnabled) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_environment_override), isEnabled);
-        editor.commit();
+        mSettings.putBoolean(key(R.string.settings_key_environment_override), isEnabled);
     }
 
     public boolean isUIHardwareAccelerationEnabled() {
@@ -305,40 +344,32 @@ public class SettingsStore {
         if (DeviceType.isWaveBuild()) {
             defaultValue = UI_HARDWARE_ACCELERATION_DEFAULT_WAVEVR;
         }
-        return mPrefs.getBoolean(
-                mContext.getString(R.string.settings_key_ui_hardware_acceleration), defaultValue);
+        return mSettings.getBoolean(key(R.string.settings_key_ui_hardware_acceleration), defaultValue);
     }
 
     public void setUIHardwareAccelerationEnabled(boolean isEnabled) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_ui_hardware_acceleration), isEnabled);
-        editor.commit();
+        mSettings.putBoolean(key(R.string.settings_key_ui_hardware_acceleration), isEnabled);
     }
 
     public boolean isPerformanceMonitorEnabled() {
         // Disabling Performance Monitor until it can properly handle multi-window
-        return false; // mPrefs.getBoolean(mContext.getString(R.string.settings_key_performance_monitor), PERFORMANCE_MONITOR_DEFAULT);
+        return false; // mSettings.getBoolean(key(R.string.settings_key_performance_monitor), PERFORMANCE_MONITOR_DEFAULT);
     }
 
     public void setPerformanceMonitorEnabled(boolean isEnabled) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_performance_monitor), isEnabled);
-        editor.commit();
+        mSettings.putBoolean(key(R.string.settings_key_performance_monitor), isEnabled);
     }
 
     public boolean isServoEnabled() {
-        return isServoAvailable() && mPrefs.getBoolean(mContext.getString(R.string.settings_key_servo), SERVO_DEFAULT);
+        return isServoAvailable() && mSettings.getBoolean(key(R.string.settings_key_servo), SERVO_DEFAULT);
     }
 
     public void setServoEnabled(boolean isEnabled) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_servo), isEnabled);
-        editor.commit();
+        mSettings.putBoolean(key(R.string.settings_key_servo), isEnabled);
     }
 
     public int getUaMode() {
-        return mPrefs.getInt(
-                mContext.getString(R.string.settings_key_user_agent_version), UA_MODE_DEFAULT);
+        return mSettings.getInt(key(R.string.settings_key_user_agent_version), UA_MODE_DEFAULT);
     }
 
     public void setUaMode(int mode) {
@@ -347,43 +378,32 @@ public class SettingsStore {
             Log.e(LOGTAG, "User agent mode: " + mode + " is not supported.");
             checkedMode = UA_MODE_DEFAULT;
         }
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_user_agent_version), checkedMode);
-        editor.commit();
+        mSettings.putInt(key(R.string.settings_key_user_agent_version), checkedMode);
     }
 
     public int getInputMode() {
-        return mPrefs.getInt(
-                mContext.getString(R.string.settings_key_input_mode), INPUT_MODE_DEFAULT);
+        return mSettings.getInt(key(R.string.settings_key_input_mode), INPUT_MODE_DEFAULT);
     }
 
     public void setInputMode(int aTouchMode) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_input_mode), aTouchMode);
-        editor.commit();
+        mSettings.putInt(key(R.string.settings_key_input_mode), aTouchMode);
     }
 
     public String getHomepage() {
-        return mPrefs.getString(
-                mContext.getString(R.string.settings_key_homepage),
+        return mSettings.getString(key(R.string.settings_key_homepage),
                 mContext.getString(R.string.homepage_url));
     }
 
     public void setHomepage(String aHomepage) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putString(mContext.getString(R.string.settings_key_homepage), aHomepage);
-        editor.commit();
+        mSettings.putString(key(R.string.settings_key_homepage), aHomepage);
     }
 
     public float getDisplayDensity() {
-        return mPrefs.getFloat(
-                mContext.getString(R.string.settings_key_display_density), DISPLAY_DENSITY_DEFAULT);
+        return mSettings.getFloat(key(R.string.settings_key_display_density), DISPLAY_DENSITY_DEFAULT);
     }
 
     public void setDisplayDensity(float aDensity) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putFloat(mContext.getString(R.string.settings_key_display_density), aDensity);
-        editor.commit();
+        mSettings.putFloat(key(R.string.settings_key_display_density), aDensity);
     }
 
     public int getWindowWidth() {
@@ -399,14 +419,11 @@ public class SettingsStore {
     }
 
     public int getDisplayDpi() {
-        return mPrefs.getInt(
-                mContext.getString(R.string.settings_key_display_dpi), DISPLAY_DPI_DEFAULT);
+        return mSettings.getInt(key(R.string.settings_key_display_dpi), DISPLAY_DPI_DEFAULT);
     }
 
     public void setDisplayDpi(int aDpi) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_display_dpi), aDpi);
-        editor.commit();
+        mSettings.putInt(key(R.string.settings_key_display_dpi), aDpi);
     }
 
     public int getMaxWindowWidth() {
@@ -418,50 +435,40 @@ public class SettingsStore {
     }
 
     public String getEnvironment() {
-        return mPrefs.getString(mContext.getString(R.string.settings_key_env), ENV_DEFAULT);
+        return mSettings.getString(key(R.string.settings_key_env), ENV_DEFAULT);
     }
 
     public void setEnvironment(String aEnv) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putString(mContext.getString(R.string.settings_key_env), aEnv);
-        editor.commit();
+        mSettings.putString(key(R.string.settings_key_env), aEnv);
     }
 
     public int getPointerColor() {
-        return mPrefs.getInt(
-                mContext.getString(R.string.settings_key_pointer_color), POINTER_COLOR_DEFAULT_DEFAULT);
+        return mSettings.getInt(key(R.string.settings_key_pointer_color), POINTER_COLOR_DEFAULT_DEFAULT);
     }
 
     public void setPointerColor(int color) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_pointer_color), color);
-        editor.commit();
+        mSettings.putInt(key(R.string.settings_key_pointer_color), color);
     }
 
     public int getScrollDirection() {
         if (mCachedScrollDirection < 0) {
-            mCachedScrollDirection = mPrefs.getInt(mContext.getString(R.string.settings_key_scroll_direction), SCROLL_DIRECTION_DEFAULT);
+            mCachedScrollDirection = mSettings.getInt(key(R.string.settings_key_scroll_direction), SCROLL_DIRECTION_DEFAULT);
         }
         return mCachedScrollDirection;
     }
 
     public void setScrollDirection(int aScrollDirection) {
         mCachedScrollDirection = aScrollDirection;
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_scroll_direction), aScrollDirection);
-        editor.commit();
+        mSettings.putInt(key(R.string.settings_key_scroll_direction), aScrollDirection);
     }
 
 
     public int getMSAALevel() {
-        return mPrefs.getInt(
-                mContext.getString(R.string.settings_key_msaa), MSAA_DEFAULT_LEVEL);
+        return mSettings.getInt(key(R.string.settings_key_msaa), MSAA_DEFAULT_LEVEL);
     }
 
     public void setMSAALevel(int level) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_msaa), level);
-        editor.commit();
+        mSettings.putInt(key(R.string.settings_key_msaa), level);
     }
 
     public boolean getLayersEnabled() {
@@ -478,44 +485,35 @@ public class SettingsStore {
     }
 
     public boolean isAudioEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_audio), AUDIO_ENABLED);
+        return mSettings.getBoolean(key(R.string.settings_key_audio), AUDIO_ENABLED);
     }
 
     public void setAudioEnabled(boolean isEnabled) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_audio), isEnabled);
-        editor.commit();
+        mSettings.putBoolean(key(R.string.settings_key_audio), isEnabled);
     }
 
     public String getVoiceSearchLocale() {
-        String language = mPrefs.getString(
-                mContext.getString(R.string.settings_key_voice_search_language), null);
+        String language = mSettings.getString(key(R.string.settings_key_voice_search_language), null);
         return language;
     }
 
     public void setVoiceSearchLocale(String language) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putString(mContext.getString(R.string.settings_key_voice_search_language), language);
-        editor.commit();
+        mSettings.putString(key(R.string.settings_key_voice_search_language), language);
     }
 
     public String getDisplayLocale() {
-        String language = mPrefs.getString(
-                mContext.getString(R.string.settings_key_display_language), null);
+        String language = mSettings.getString(key(R.string.settings_key_display_language), null);
         return language;
     }
 
     public void setDisplayLocale(String language) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putString(mContext.getString(R.string.settings_key_display_language), language);
-        editor.commit();
+        mSettings.putString(key(R.string.settings_key_display_language), language);
     }
 
     public ArrayList<String> getContentLocales() {
         ArrayList<String> result = new ArrayList<>();
 
-        String json = mPrefs.getString(
-                mContext.getString(R.string.settings_key_content_languages),
+        String json = mSettings.getString(key(R.string.settings_key_content_languages),
                 null);
 
         try {
@@ -533,19 +531,15 @@ public class SettingsStore {
 
     public void setContentLocales(List<String> languages) {
         JSONArray json = new JSONArray(languages);
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putString(mContext.getString(R.string.settings_key_content_languages), json.toString());
-        editor.commit();
+        mSettings.putString(key(R.string.settings_key_content_languages), json.toString());
     }
 
     public float getCylinderDensity() {
-        return mPrefs.getFloat(mContext.getString(R.string.settings_key_cylinder_density),  0);
+        return mSettings.getFloat(key(R.string.settings_key_cylinder_density),  0);
     }
 
     public void setCylinderDensity(float aDensity) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putFloat(mContext.getString(R.string.settings_key_cylinder_density), aDensity);
-        editor.commit();
+        mSettings.putFloat(key(R.string.settings_key_cylinder_density), aDensity);
     }
 
     public boolean isCurvedModeEnabled() {
@@ -553,13 +547,11 @@ public class SettingsStore {
     }
 
     public void setSelectedKeyboard(Locale aLocale) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putString(mContext.getString(R.string.settings_key_keyboard_locale), aLocale.toLanguageTag());
-        editor.commit();
+        mSettings.putString(key(R.string.settings_key_keyboard_locale), aLocale.toLanguageTag());
     }
 
     public Locale getKeyboardLocale() {
-        String value = mPrefs.getString(mContext.getString(R.string.settings_key_keyboard_locale), null);
+        String value = mSettings.getString(key(R.string.settings_key_keyboard_locale), null);
         if (StringUtils.isEmpty(value)) {
             return null;
         }
@@ -567,144 +559,116 @@ public class SettingsStore {
     }
 
     public synchronized long getCrashRestartCount() {
-        long count = mPrefs.getLong(mContext.getString(R.string.settings_key_crash_restart_count), 0);
+        long count = mSettings.getLong(key(R.string.settings_key_crash_restart_count), 0);
         if (count > 0) {
-            final long timestamp = mPrefs.getLong(mContext.getString(R.string.settings_key_crash_restart_count_timestamp), -1);
+            final long timestamp = mSettings.getLong(key(R.string.settings_key_crash_restart_count_timestamp), -1);
             if (System.currentTimeMillis() - timestamp > CRASH_RESTART_DELTA) {
                 count = 0;
-                SharedPreferences.Editor editor = mPrefs.edit();
-                editor.putLong(mContext.getString(R.string.settings_key_crash_restart_count), count);
-                editor.putLong(mContext.getString(R.string.settings_key_crash_restart_count_timestamp), -1);
-                editor.commit();
+                mSettings.putLong(key(R.string.settings_key_crash_restart_count), count);
+                mSettings.putLong(key(R.string.settings_key_crash_restart_count_timestamp), -1);
             }
         }
         return count;
     }
 
     public synchronized void incrementCrashRestartCount() {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        long count = mPrefs.getLong(mContext.getString(R.string.settings_key_crash_restart_count), 0);
+        long count = mSettings.getLong(key(R.string.settings_key_crash_restart_count), 0);
         count++;
-        editor.putLong(mContext.getString(R.string.settings_key_crash_restart_count), count);
-        editor.putLong(mContext.getString(R.string.settings_key_crash_restart_count_timestamp), System.currentTimeMillis());
-        editor.commit();
+        mSettings.putLong(key(R.string.settings_key_crash_restart_count), count);
+        mSettings.putLong(key(R.string.settings_key_crash_restart_count_timestamp), System.currentTimeMillis());
+        // The count is read after the crash, it must be on disk before then.
+        mSettings.flush();
     }
 
     public synchronized void resetCrashRestartCount() {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putLong(mContext.getString(R.string.settings_key_crash_restart_count), 0);
-        editor.commit();
+        mSettings.putLong(key(R.string.settings_key_crash_restart_count), 0);
     }
 
     public boolean isSpeechDataCollectionEnabled() {
-        return mPrefs.getBoolean(
-                mContext.getString(R.string.settings_key_speech_data_collection), SPEECH_DATA_COLLECTION_DEFAULT);
+        return mSettings.getBoolean(key(R.string.settings_key_speech_data_collection), SPEECH_DATA_COLLECTION_DEFAULT);
     }
 
     public void setSpeechDataCollectionEnabled(boolean isEnabled) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_speech_data_collection), isEnabled);
-        editor.commit();
+        mSettings.putBoolean(key(R.string.settings_key_speech_data_collection), isEnabled);
     }
 
     public boolean isNotificationsEnabled() {
-        return mPrefs.getBoolean(
-                mContext.getString(R.string.settings_key_notifications), NOTIFICATIONS_DEFAULT);
+        return mSettings.getBoolean(key(R.string.settings_key_notifications), NOTIFICATIONS_DEFAULT);
     }
 
     public void setNotificationsEnabled(boolean isEnabled) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_notifications), isEnabled);
-        editor.commit();
+        mSettings.putBoolean(key(R.string.settings_key_notifications), isEnabled);
     }
 
     public boolean isSpeechDataCollectionReviewed() {
-        return mPrefs.getBoolean(
-                mContext.getString(R.string.settings_key_speech_data_collection_reviewed), SPEECH_DATA_COLLECTION_REVIEWED_DEFAULT);
+        return mSettings.getBoolean(key(R.string.settings_key_speech_data_collection_reviewed), SPEECH_DATA_COLLECTION_REVIEWED_DEFAULT);
     }
 
     public void setSpeechDataCollectionReviewed(boolean isEnabled) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_speech_data_collection_reviewed), isEnabled);
-        editor.commit();
+        mSettings.putBoolean(key(R.string.settings_key_speech_data_collection_reviewed), isEnabled);
     }
 
     public boolean isDebugLoggingEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_debug_logging), DEBUG_LOGGING_DEFAULT);
+        return mSettings.getBoolean(key(R.string.settings_key_debug_logging), DEBUG_LOGGING_DEFAULT);
     }
 
     public void setDebugLoggingEnabled(boolean isEnabled) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_debug_logging), isEnabled);
-        editor.commit();
+        mSettings.putBoolean(key(R.string.settings_key_debug_logging), isEnabled);
     }
 
     public boolean isAutoplayEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_autoplay), AUTOPLAY_ENABLED);
+        return mSettings.getBoolean(key(R.string.settings_key_autoplay), AUTOPLAY_ENABLED);
     }
 
     public void setAutoplayEnabled(boolean isEnabled) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_autoplay), isEnabled);
-        editor.commit();
+        mSettings.putBoolean(key(R.string.settings_key_autoplay), isEnabled);
     }
 
     public void setPid(int aPid) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_pid), aPid);
-        editor.commit();
+        mSettings.putInt(key(R.string.settings_key_pid), aPid);
     }
 
     public int getPid() {
-        return mPrefs.getInt(mContext.getString(R.string.settings_key_pid), 0);
+        return mSettings.getInt(key(R.string.settings_key_pid), 0);
     }
 
     public boolean isPopUpsBlockingEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_pop_up_blocking), POP_UPS_BLOCKING_DEFAULT);
+        return mSettings.getBoolean(key(R.string.settings_key_pop_up_blocking), POP_UPS_BLOCKING_DEFAULT);
     }
 
     public void setPopUpsBlockingEnabled(boolean isEnabled) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_pop_up_blocking), isEnabled);
-        editor.commit();
+        mSettings.putBoolean(key(R.string.settings_key_pop_up_blocking), isEnabled);
 
         mSettingsViewModel.setIsPopUpBlockingEnabled(isEnabled);
     }
 
     public boolean isWebXREnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_webxr), WEBXR_ENABLED_DEFAULT);
+        return mSettings.getBoolean(key(R.string.settings_key_webxr), WEBXR_ENABLED_DEFAULT);
     }
 
     public void setWebXREnabled(boolean isEnabled) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_webxr), isEnabled);
-        editor.commit();
+        mSettings.putBoolean(key(R.string.settings_key_webxr), isEnabled);
 
         mSettingsViewModel.setIsWebXREnabled(isEnabled);
     }
 
     public void setWhatsNewDisplayed(boolean isEnabled) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_whats_new_displayed), isEnabled);
-        editor.commit();
+        mSettings.putBoolean(key(R.string.settings_key_whats_new_displayed), isEnabled);
     }
 
     public boolean isWhatsNewDisplayed() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_whats_new_displayed), WHATS_NEW_DISPLAYED);
+        return mSettings.getBoolean(key(R.string.settings_key_whats_new_displayed), WHATS_NEW_DISPLAYED);
     }
 
     public void setFxALastSync(@NonNull String email, long timestamp) {
-        String json = mPrefs.getString(
-                mContext.getString(R.string.settings_key_fxa_last_sync),
+        String json = mSettings.getString(key(R.string.settings_key_fxa_last_sync),
                 new JSONObject().toString());
 
         try {
             JSONObject jsonObject = new JSONObject(json);
             jsonObject.put(email, timestamp);
 
-            SharedPreferences.Editor editor = mPrefs.edit();
-            editor.putString(mContext.getString(R.string.settings_key_fxa_last_sync), jsonObject.toString());
-            editor.commit();
+            mSettings.putString(key(R.string.settings_key_fxa_last_sync), jsonObject.toString());
 
         } catch (Exception e) {
             Log.d(LOGTAG, e.getMessage());
@@ -712,8 +676,7 @@ public class SettingsStore {
     }
 
     public long getFxALastSync(@NonNull String email) {
-        String json = mPrefs.getString(
-                mContext.getString(R.string.settings_key_fxa_last_sync),
+        String json = mSettings.getString(key(R.string.settings_key_fxa_last_sync),
                 null);
 
         try {
@@ -734,65 +697,53 @@ public class SettingsStore {
     }
 
     public void setRestoreTabsEnabled(boolean isEnabled) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_restore_tabs), isEnabled);
-        editor.commit();
+        mSettings.putBoolean(key(R.string.settings_key_restore_tabs), isEnabled);
     }
 
     public boolean isRestoreTabsEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_restore_tabs), RESTORE_TABS_ENABLED);
+        return mSettings.getBoolean(key(R.string.settings_key_restore_tabs), RESTORE_TABS_ENABLED);
     }
 
     public void setBypassCacheOnReload(boolean isEnabled) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_bypass_cache_on_reload), isEnabled);
-        editor.commit();
+        mSettings.putBoolean(key(R.string.settings_key_bypass_cache_on_reload), isEnabled);
     }
 
     public boolean isBypassCacheOnReloadEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_bypass_cache_on_reload), BYPASS_CACHE_ON_RELOAD);
+        return mSettings.getBoolean(key(R.string.settings_key_bypass_cache_on_reload), BYPASS_CACHE_ON_RELOAD);
     }
 
     public void setMultiE10s(boolean isEnabled) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_multi_e10s), isEnabled);
-        editor.commit();
+        mSettings.putBoolean(key(R.string.settings_key_multi_e10s), isEnabled);
     }
 
     public boolean isMultiE10s() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_multi_e10s), MULTI_E10S);
+        return mSettings.getBoolean(key(R.string.settings_key_multi_e10s), MULTI_E10S);
     }
 
     public void setDownloadsStorage(@Storage int storage) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_downloads_external), storage);
-        editor.commit();
+        mSettings.putInt(key(R.string.settings_key_downloads_external), storage);
     }
 
     public @Storage int getDownloadsStorage() {
-        return mPrefs.getInt(mContext.getString(R.string.settings_key_downloads_external), DOWNLOADS_STORAGE_DEFAULT);
+        return mSettings.getInt(key(R.string.settings_key_downloads_external), DOWNLOADS_STORAGE_DEFAULT);
     }
 
     public void setDownloadsSortingOrder(@SortingContextMenuWidget.Order int order) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_downloads_sorting_order), order);
-        editor.commit();
+        mSettings.putInt(key(R.string.settings_key_downloads_sorting_order), order);
     }
 
     public @Storage int getDownloadsSortingOrder() {
-        return mPrefs.getInt(mContext.getString(R.string.settings_key_downloads_sorting_order), DOWNLOADS_SORTING_ORDER_DEFAULT);
+        return mSettings.getInt(key(R.string.settings_key_downloads_sorting_order), DOWNLOADS_SORTING_ORDER_DEFAULT);
     }
 
     public void setRemotePropsVersionName(String versionName) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putString(mContext.getString(R.string.settings_key_remote_props_version_name), versionName);
-        editor.commit();
+        mSettings.putString(key(R.string.settings_key_remote_props_version_name), versionName);
 
         mSettingsViewModel.setPropsVersionName(versionName);
     }
 
     public String getRemotePropsVersionName() {
-        return mPrefs.getString(mContext.getString(R.string.settings_key_remote_props_version_name), "0");
+        return mSettings.getString(key(R.string.settings_key_remote_props_version_name), "0");
     }
 
 }
@@ -0,0 +1,238 @@
+package org.mozilla.vrbrowser.browser;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import mozilla.components.concept.storage.VisitInfo;
+import mozilla.components.concept.storage.VisitType;
+
+/**
+ * Frecency table of the visited pages, used for the top sites.
+ *
+ * Every visit adds a weight based on its type, and scores decay exponentially with a two weeks
+ * half-life. New visits only update their own entry and the small top list. Scores are kept relative
+ * to the last decay, so the decay doesn't change the ranking and is only applied, lazily when the top
+ * sites are read, to drop the negligible entries. The top list is published as an immutable snapshot
+ * so reading the top sites usually doesn't touch the table.
+ */
+public class TopSitesTable {
+
+    public static final int MAX_TOP_SITES = 24;
+
+    private static final long HALF_LIFE_MS = 14 * 24 * 60 * 60 * 1000L;
+    // Minimum interval between decays of the whole table.
+    private static final long DECAY_INTERVAL_MS = 60 * 60 * 1000L;
+    // Entries decayed below this score are dropped from the table.
+    private static final double MIN_SCORE = 0.01;
+
+    public static class Site {
+        public final String url;
+        public final String title;
+        public final double score;
+
+        Site(@NonNull String aUrl, @Nullable String aTitle, double aScore) {
+            url = aUrl;
+            title = aTitle;
+            score = aScore;
+        }
+    }
+
+    private static class Entry {
+        final String url;
+        String title;
+        double score;
+
+        Entry(@NonNull String aUrl) {
+            url = aUrl;
+        }
+    }
+
+    private final Object mLock = new Object();
+    private HashMap<String, Entry> mEntries = new HashMap<>();
+    private ArrayList<Entry> mTop = new ArrayList<>();
+    private volatile long mLastDecay = System.currentTimeMillis();
+    private volatile List<Site> mTopSites = Collections.emptyList();
+
+    /**
+     * Returns the top sites snapshot, sorted by descending score. The table is decayed first if the
+     * last decay is older than an hour.
+     */
+    @NonNull
+    public List<Site> getTopSites(int aLimit) {
+        if (System.currentTimeMillis() - mLastDecay >= DECAY_INTERVAL_MS) {
+            decay();
+        }
+        List<Site> sites = mTopSites;
+        return aLimit < sites.size() ? sites.subList(0, aLimit) : sites;
+    }
+
+    public int size() {
+        synchronized (mLock) {
+            return mEntries.size();
+        }
+    }
+
+    /**
+     * Replaces the table contents with the given visits.
+     */
+    public void rebuild(@Nullable List<VisitInfo> aVisits) {
+        HashMap<String, Entry> entries = new HashMap<>();
+        final long now = System.currentTimeMillis();
+        if (aVisits != null) {
+            for (VisitInfo visit : aVisits) {
+                double weight = visitWeight(visit.getUrl(), visit.getVisitType());
+                if (weight <= 0) {
+                    continue;
+                }
+                Entry entry = entries.get(visit.getUrl());
+                if (entry == null) {
+                    entry = new Entry(visit.getUrl());
+                    entries.put(visit.getUrl(), entry);
+                }
+                entry.score += weight * decayFactor(now - visit.getVisitTime());
+                if (entry.title == null && visit.getTitle() != null && !visit.getTitle().isEmpty()) {
+                    entry.title = visit.getTitle();
+                }
+            }
+        }
+        synchronized (mLock) {
+            mEntries = entries;
+            mLastDecay = now;
+            recomputeTopLocked();
+        }
+    }
+
+    /**
+     * Adds a new visit to the table.
+     */
+    public void recordVisit(@NonNull String aUrl, @Nullable VisitType aVisitType) {
+        double weight = visitWeight(aUrl, aVisitType);
+        if (weight <= 0) {
+            return;
+        }
+        synchronized (mLock) {
+            Entry entry = mEntries.get(aUrl);
+            if (entry == null) {
+                entry = new Entry(aUrl);
+                mEntries.put(aUrl, entry);
+            }
+            // Scores are relative to the last decay, so the weight is scaled up by the time elapsed since.
+            entry.score += weight / decayFactor(System.currentTimeMillis() - mLastDecay);
+            updateTopLocked(entry);
+        }
+    }
+
+    public void setTitle(@NonNull String aUrl, @Nullable String aTitle) {
+        if (aTitle == null || aTitle.isEmpty()) {
+            return;
+        }
+        synchronized (mLock) {
+            Entry entry = mEntries.get(aUrl);
+            if (entry == null || aTitle.equals(entry.title)) {
+                return;
+            }
+            entry.title = aTitle;
+            if (mTop.contains(entry)) {
+                publishLocked();
+            }
+        }
+    }
+
+    public void remove(@NonNull String aUrl) {
+        synchronized (mLock) {
+            Entry entry = mEntries.remove(aUrl);
+            if (entry != null && mTop.contains(entry)) {
+                recomputeTopLocked();
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (mLock) {
+            mEntries = new HashMap<>();
+            recomputeTopLocked();
+        }
+    }
+
+    /**
+     * Applies the decay for the time elapsed since the last one and drops the negligible entries.
+     */
+    public void decay() {
+        synchronized (mLock) {
+            final long now = System.currentTimeMillis();
+            double factor = decayFactor(now - mLastDecay);
+            mLastDecay = now;
+            mEntries.values().removeIf(entry -> {
+                entry.score *= factor;
+                return entry.score < MIN_SCORE;
+            });
+            recomputeTopLocked();
+        }
+    }
+
+    private void updateTopLocked(@NonNull Entry aEntry) {
+        int index = mTop.indexOf(aEntry);
+        if (index < 0) {
+            if (mTop.size() >= MAX_TOP_SITES && aEntry.score <= mTop.get(mTop.size() - 1).score) {
+                return;
+            }
+            index = mTop.size();
+            mTop.add(aEntry);
+        }
+        // Scores only grow here, so the entry moves up.
+        while (index > 0 && mTop.get(index - 1).score < aEntry.score) {
+            mTop.set(index, mTop.get(index - 1));
+            index--;
+        }
+        mTop.set(index, aEntry);
+        if (mTop.size() > MAX_TOP_SITES) {
+            mTop.remove(mTop.size() - 1);
+        }
+        publishLocked();
+    }
+
+    private void recomputeTopLocked() {
+        ArrayList<Entry> top = new ArrayList<>(mEntries.values());
+        top.sort((a, b) -> Double.compare(b.score, a.score));
+        mTop = new ArrayList<>(top.subList(0, Math.min(MAX_TOP_SITES, top.size())));
+        publishLocked();
+    }
+
+    private void publishLocked() {
+        List<Site> sites = new ArrayList<>(mTop.size());
+        for (Entry entry : mTop) {
+            sites.add(new Site(entry.url, entry.title, entry.score));
+        }
+        mTopSites = Collections.unmodifiableList(sites);
+    }
+
+    private static double decayFactor(long aAgeMs) {
+        return Math.pow(0.5, (double) Math.max(aAgeMs, 0) / HALF_LIFE_MS);
+    }
+
+    private static double visitWeight(@Nullable String aUrl, @Nullable VisitType aVisitType) {
+        if (aUrl == null || !(aUrl.startsWith("http://") || aUrl.startsWith("https://"))) {
+            return 0;
+        }
+        if (aVisitType == null) {
+            return Frecency.visitWeight(null);
+        }
+        switch (aVisitType) {
+            case NOT_A_VISIT:
+            case DOWNLOAD:
+            case RELOAD:
+            case EMBED:
+            case FRAMED_LINK:
+            case REDIRECT_PERMANENT:
+            case REDIRECT_TEMPORARY:
+                return 0;
+            default:
+                return Frecency.visitWeight(aVisitType);
+        }
+    }
+}
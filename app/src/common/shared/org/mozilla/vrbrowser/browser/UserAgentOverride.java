@@ -1,9 +1,11 @@
 package org.mozilla.vrbrowser.browser;
 
-import android.app.Activity;
-import android.text.TextUtils;
-import android.util.ArrayMap;
+import android.content.Context;
 import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -11,139 +13,222 @@ import org.mozilla.vrbrowser.utils.SystemUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
-
+import java.util.Locale;
+
+/**
+ * User agent overrides by domain. The override file maps the SHA-512 hex digest of a domain to the
+ * user agent used for that domain and its subdomains.
+ *
+ * The digests are compiled into a table sorted by their first 8 bytes when the file is loaded, so a
+ * lookup hashes each suffix of the host with the same digest and binary searches the table, without
+ * building strings. Results are kept in a bounded LRU cache by host.
+ */
 public class UserAgentOverride {
     private final static String LOGTAG = SystemUtils.createLogtag(UserAgentOverride.class);
     private static final String NO_OVERRIDE_FOUND = "NO OVERRIDE USER AGENT FOUND";
-    private ArrayMap<String, String> mOverrideMap;
-    private ArrayMap<String, String> mOverrideCache;
+    private static final int DIGEST_LENGTH = 64;
+    private static final int MAX_CACHED_HOSTS = 128;
+
+    // Table sorted by mKeys, the first 8 bytes of each digest.
+    private long[] mKeys = new long[0];
+    private byte[][] mDigests = new byte[0][];
+    private String[] mOverrides = new String[0];
+    private final LruCache<String, String> mOverrideCache = new LruCache<>(MAX_CACHED_HOSTS);
+    private MessageDigest mDigest;
+
     public UserAgentOverride() {
-        mOverrideMap = new ArrayMap<>();
-        mOverrideCache = new ArrayMap<>();
+        try {
+            mDigest = MessageDigest.getInstance("SHA-512");
+        } catch (NoSuchAlgorithmException e) {
+            Log.e(LOGTAG, "Error while trying to create the domain digest: " + e.getMessage());
+        }
     }
 
-    public void loadOverridesFromAssets(Activity aActivity, String aFileName) {
-        String json = null;
-        try (InputStream is = aActivity.getAssets().open(aFileName)) {
+    public void loadOverridesFromAssets(Context aContext, String aFileName) {
+        try (InputStream is = aContext.getAssets().open(aFileName)) {
             int size = is.available();
             byte[] buffer = new byte[size];
             is.read(buffer);
-            is.close();
-            json = new String(buffer, "UTF-8");
-            importJSONData(json);
+            loadOverrides(new String(buffer, StandardCharsets.UTF_8));
         } catch (IOException e) {
             Log.e(LOGTAG, "Failed reading user agent override file: " + aFileName + " Error: " + e.getMessage());
         }
     }
 
-    public String lookupOverride(final String aUri) {
-        if (aUri == null) {
-            return null;
-        }
-        Log.d(LOGTAG, "lookupOverride for: " + aUri);
-        URI uri;
+    /**
+     * Compiles the overrides from the JSON data of an override file, replacing the current ones.
+     */
+    public synchronized void loadOverrides(@NonNull String aJson) {
+        ArrayList<byte[]> digests = new ArrayList<>();
+        ArrayList<String> overrides = new ArrayList<>();
         try {
-            uri = new URI(aUri);
-        } catch (URISyntaxException e) {
-            Log.d(LOGTAG, "Error parsing URL: " + aUri + " " + e.getMessage());
+            JSONObject json = new JSONObject(aJson);
+            Iterator<String> iter = json.keys();
+            while (iter.hasNext()) {
+                String key = iter.next();
+                byte[] digest = parseDigest(key);
+                if (digest == null) {
+                    Log.e(LOGTAG, "Invalid domain hash in UA Override file: " + key);
+                    continue;
+                }
+                try {
+                    overrides.add(json.getString(key));
+                    digests.add(digest);
+                } catch (JSONException e) {
+                    Log.e(LOGTAG, "Failed to find UA Override while parsing file for key: " + key);
+                }
+            }
+
+        } catch (JSONException e) {
+            Log.e(LOGTAG, "Failed to import user agent override JSON data: " + e.getMessage());
+        }
+
+        Integer[] order = new Integer[digests.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(key(digests.get(a)), key(digests.get(b))));
+        mKeys = new long[order.length];
+        mDigests = new byte[order.length][];
+        mOverrides = new String[order.length];
+        for (int i = 0; i < order.length; i++) {
+            mDigests[i] = digests.get(order[i]);
+            mKeys[i] = key(mDigests[i]);
+            mOverrides[i] = overrides.get(order[i]);
+        }
+        mOverrideCache.evictAll();
+    }
+
+    @Nullable
+    public synchronized String lookupOverride(final String aUri) {
+        if (aUri == null) {
             return null;
         }
-        String fullDomain = uri.getHost();
-        if (fullDomain == null) {
+        String host = getHost(aUri);
+        if (host == null) {
             return null;
         }
 
-        fullDomain = fullDomain.toLowerCase();
-
-        String override = mOverrideCache.get(fullDomain);
-
-        if (override != null) {
-            Log.d(LOGTAG, "Found override: " + override);
-            return override.equals(NO_OVERRIDE_FOUND) ? null : override;
+        String override = mOverrideCache.get(host);
+        if (override == null) {
+            override = findOverride(host);
+            mOverrideCache.put(host, override != null ? override : NO_OVERRIDE_FOUND);
         }
+        return NO_OVERRIDE_FOUND.equals(override) ? null : override;
+    }
 
-        List<String> domains = Arrays.asList(fullDomain.split("\\."));
-        final int domainCount = domains.size();
-        String[] checkedDomains = new String[domainCount];
-
-        for (int ix = 0; ix < domainCount; ix++) {
-            String domain = TextUtils.join(".", domains.subList(ix, domainCount));
-            checkedDomains[ix] = domain;
-            override = mOverrideCache.get(domain);
-            if (override != null) {
-                Log.d(LOGTAG, "found cached override: " + override);
-                addToCache(checkedDomains, override);
-                return override.equals(NO_OVERRIDE_FOUND) ? null : override;
-            }
-            String domainHash = hashDomain(domain);
-            if (domainHash == null) {
-                Log.d(LOGTAG, "Failed to hash domain: " + domain);
-                return null;
-            }
-            Log.d(LOGTAG, "hash: " + domainHash);
-            override = mOverrideMap.get(domainHash);
+    /**
+     * Looks up the host and its parent domains, from the longest to the shortest.
+     */
+    @Nullable
+    private String findOverride(@NonNull String aHost) {
+        if (mDigest == null || mKeys.length == 0) {
+            return null;
+        }
+        // '.' is never part of a multi byte UTF-8 sequence, so the suffixes can be found in the bytes.
+        byte[] bytes = aHost.getBytes(StandardCharsets.UTF_8);
+        int offset = 0;
+        while (offset < bytes.length) {
+            mDigest.update(bytes, offset, bytes.length - offset);
+            String override = findDigest(mDigest.digest());
             if (override != null) {
-                Log.d(LOGTAG, "found override from hash: " + override);
-                addToCache(checkedDomains, override);
                 return override;
             }
+            while (offset < bytes.length && bytes[offset] != '.') {
+                offset++;
+            }
+            offset++;
         }
-        addToCache(checkedDomains, NO_OVERRIDE_FOUND);
         return null;
     }
 
-    private void addToCache(String[] aDomains, String aOverride) {
-        for (String domain: aDomains) {
-            if (domain == null) {
-                Log.d(LOGTAG, "Found null domain in checked list");
-                continue;
-            } else {
-                Log.d(LOGTAG, domain + " override: " + aOverride);
+    @Nullable
+    private String findDigest(@NonNull byte[] aDigest) {
+        long key = key(aDigest);
+        int index = Arrays.binarySearch(mKeys, key);
+        if (index < 0) {
+            return null;
+        }
+        // Digests sharing the first 8 bytes are next to each other.
+        while (index > 0 && mKeys[index - 1] == key) {
+            index--;
+        }
+        for (; index < mKeys.length && mKeys[index] == key; index++) {
+            if (Arrays.equals(mDigests[index], aDigest)) {
+                return mOverrides[index];
             }
-            mOverrideCache.put(domain, aOverride);
         }
+        return null;
     }
 
-    private String hashDomain(String aDomain) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-512");
-            byte[] digest = md.digest(aDomain.getBytes());
-            StringBuilder sb = new StringBuilder();
-            for (int value: digest) {
-                sb.append(Integer.toString((value & 0xff) + 0x100, 16).substring(1));
+    /**
+     * Lower case host of a hierarchical URI without a trailing dot, or null if it doesn't have one.
+     */
+    @Nullable
+    static String getHost(@NonNull String aUri) {
+        int start = aUri.indexOf("://");
+        if (start < 0) {
+            return null;
+        }
+        start += 3;
+        int end = start;
+        while (end < aUri.length()) {
+            char c = aUri.charAt(end);
+            if (c == '/' || c == '?' || c == '#') {
+                break;
             }
-
-            return sb.toString();
-        } catch (NoSuchAlgorithmException e) {
-            Log.e(LOGTAG, "Error while trying to hash domain: " + e.getMessage());
+            end++;
         }
-        return null;
+        int userInfo = aUri.lastIndexOf('@', end - 1);
+        if (userInfo >= start) {
+            start = userInfo + 1;
+        }
+        if (start < end && aUri.charAt(start) == '[') {
+            // IPv6 addresses are never overridden.
+            return null;
+        }
+        int port = aUri.indexOf(':', start);
+        if (port >= 0 && port < end) {
+            end = port;
+        }
+        if (end > start && aUri.charAt(end - 1) == '.') {
+            // The fully qualified form of a domain gets the same override.
+            end--;
+        }
+        if (start >= end) {
+            return null;
+        }
+        return aUri.substring(start, end).toLowerCase(Locale.ROOT);
     }
 
-    private void importJSONData(final String aData) {
-        try {
-            JSONObject json = new JSONObject(aData);
-            Iterator<String> iter = json.keys();
-            while (iter.hasNext()) {
-                String key = iter.next();
-                try {
-                    String value = json.getString(key);
-                    Log.d(LOGTAG, "User agent override: " + key + " -> " + value);
-                    mOverrideMap.put(key, value);
-                } catch (JSONException e) {
-                    Log.e(LOGTAG, "Failed to find UA Override while parsing file for key: " + key);
-                }
+    @Nullable
+    private static byte[] parseDigest(@NonNull String aHex) {
+        if (aHex.length() != DIGEST_LENGTH * 2) {
+            return null;
+        }
+        byte[] digest = new byte[DIGEST_LENGTH];
+        for (int i = 0; i < DIGEST_LENGTH; i++) {
+            int high = Character.digit(aHex.charAt(i * 2), 16);
+            int low = Character.digit(aHex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
             }
+            digest[i] = (byte) ((high << 4) | low);
+        }
+        return digest;
+    }
 
-        } catch (JSONException e) {
-            Log.e(LOGTAG, "Failed to import user agent override JSON data: " + e.getMessage());
+    private static long key(@NonNull byte[] aDigest) {
+        long key = 0;
+        for (int i = 0; i < 8; i++) {
+            key = (key << 8) | (aDigest[i] & 0xff);
         }
+        return key;
     }
 }
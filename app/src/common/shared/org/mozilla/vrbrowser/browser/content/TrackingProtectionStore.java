@@ -2,8 +2,6 @@ package org.mozilla.vrbrowser.browser.content;
 
 import android.app.Application;
 import android.content.Context;
-import android.content.SharedPreferences;
-import android.preference.PreferenceManager;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -20,9 +18,12 @@ import org.mozilla.geckoview.ContentBlockingController.ContentBlockingException;
 import org.mozilla.geckoview.GeckoRuntime;
 import org.mozilla.vrbrowser.R;
 import org.mozilla.vrbrowser.VRBrowserActivity;
+import org.mozilla.vrbrowser.VRBrowserApplication;
+import org.mozilla.vrbrowser.browser.SettingsEngine;
 import org.mozilla.vrbrowser.browser.SettingsStore;
 import org.mozilla.vrbrowser.browser.engine.Session;
 import org.mozilla.vrbrowser.db.SitePermission;
+import org.mozilla.vrbrowser.db.SitePermissionCache;
 import org.mozilla.vrbrowser.ui.viewmodel.SitePermissionViewModel;
 
 import java.util.ArrayList;
@@ -33,7 +34,7 @@ import java.util.stream.Collectors;
 import static org.mozilla.vrbrowser.db.SitePermission.SITE_PERMISSION_TRACKING;
 
 public class TrackingProtectionStore implements DefaultLifecycleObserver,
-        SharedPreferences.OnSharedPreferenceChangeListener {
+        SettingsEngine.SettingListener {
 
     public interface TrackingProtectionListener {
         default void onExcludedTrackingProtectionChange(@NonNull String url, boolean excluded, boolean isPrivate) {};
@@ -41,8 +42,8 @@ public class TrackingProtectionStore implements DefaultLifecycleObserver,
     }
 
     @Override
-    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
-        if (key.equals(mContext.getString(R.string.settings_key_tracking_protection_level))) {
+    public void onSettingChanged(@NonNull String aKey) {
+        if (aKey.equals(mContext.getString(R.string.settings_key_tracking_protection_level))) {
             setTrackingProtectionLevel(SettingsStore.getInstance(mContext).getTrackingProtectionLevel());
         }
     }
@@ -53,8 +54,8 @@ public class TrackingProtectionStore implements DefaultLifecycleObserver,
     private Lifecycle mLifeCycle;
     private SitePermissionViewModel mViewModel;
     private List<TrackingProtectionListener> mListeners;
-    private SharedPreferences mPrefs;
-    private List<SitePermission> mSitePermissions;
+    private SettingsEngine mSettings;
+    private SitePermissionCache mSitePermissions;
     private boolean mIsFirstUpdate;
 
     public TrackingProtectionStore(@NonNull Context context,
@@ -63,7 +64,7 @@ public class TrackingProtectionStore implements DefaultLifecycleObserver,
         mRuntime = runtime;
         mContentBlockingController = mRuntime.getContentBlockingController();
         mListeners = new ArrayList<>();
-        mSitePermissions = new ArrayList<>();
+        mSitePermissions = ((VRBrowserApplication)context.getApplicationContext()).getRepository().getSitePermissionCache();
         mIsFirstUpdate = true;
 
         mLifeCycle = ((VRBrowserActivity) context).getLifecycle();
@@ -71,8 +72,8 @@ public class TrackingProtectionStore implements DefaultLifecycleObserver,
 
         mViewModel = new SitePermissionViewModel(((Application)context.getApplicationContext()));
 
-        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
-        mPrefs.registerOnSharedPreferenceChangeListener(this);
+        mSettings = SettingsStore.getInstance(mContext).getSettings();
+        mSettings.addListener(mContext.getString(R.string.settings_key_tracking_protection_level), this);
 
         setTrackingProtectionLevel(SettingsStore.getInstance(mContext).getTrackingProtectionLevel());
     }
@@ -99,8 +100,6 @@ public class TrackingProtectionStore implements DefaultLifecycleObserver,
         @Override
         public void onChanged(List<SitePermission> sitePermissions) {
             if (sitePermissions != null) {
-                mSitePermissions = sitePermissions;
-
                 // Restore the site list on the permissions storage notification
                 if (mIsFirstUpdate) {
                     List<ContentBlockingException> exceptions = sitePermissions
@@ -117,7 +116,7 @@ public class TrackingProtectionStore implements DefaultLifecycleObserver,
     @Override
     public void onDestroy(@NonNull LifecycleOwner owner) {
         mLifeCycle.removeObserver(this);
-        mPrefs.unregisterOnSharedPreferenceChangeListener(this);
+        mSettings.removeListener(mContext.getString(R.string.settings_key_tracking_protection_level), this);
     }
 
     public void contains(@NonNull Session session, Function<Boolean, Void> onResult) {
@@ -178,7 +177,7 @@ public class TrackingProtectionStore implements DefaultLifecycleObserver,
 
     public void removeAll() {
         // We can't use clearExceptionList as that clears also the private browsing exceptions
-        mSitePermissions.forEach(permission -> {
+        mSitePermissions.getAll(SITE_PERMISSION_TRACKING).forEach(permission -> {
             ContentBlockingException exception = toContentBlockingException(permission);
             if (exception != null) {
                 mContentBlockingController.removeException(exception);
@@ -193,15 +192,16 @@ public class TrackingProtectionStore implements DefaultLifecycleObserver,
 
     private void saveExceptions() {
         mRuntime.getContentBlockingController().saveExceptionList().accept(contentBlockingExceptions -> {
-            mViewModel.deleteAll(SITE_PERMISSION_TRACKING);
+            List<SitePermission> permissions = new ArrayList<>();
             if (contentBlockingExceptions != null) {
                 contentBlockingExceptions.forEach(exception -> {
                     SitePermission permission = toSitePermission(exception);
                     if (permission != null) {
-                        mViewModel.insertSite(permission);
+                        permissions.add(permission);
                     }
                 });
             }
+            mViewModel.replaceAll(SITE_PERMISSION_TRACKING, permissions);
         });
     }
 
@@ -5,11 +5,8 @@
 
 package org.mozilla.vrbrowser.browser.engine;
 
-import android.app.Activity;
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.graphics.Bitmap;
-import android.preference.PreferenceManager;
 import android.util.Log;
 import android.view.Surface;
 import android.view.inputmethod.CursorAnchorInfo;
@@ -34,6 +31,7 @@ import org.mozilla.geckoview.WebRequestError;
 import org.mozilla.vrbrowser.R;
 import org.mozilla.vrbrowser.browser.Media;
 import org.mozilla.vrbrowser.browser.SessionChangeListener;
+import org.mozilla.vrbrowser.browser.SettingsEngine;
 import org.mozilla.vrbrowser.browser.SettingsStore;
 import org.mozilla.vrbrowser.browser.UserAgentOverride;
 import org.mozilla.vrbrowser.browser.VideoAvailabilityListener;
@@ -64,7 +62,7 @@ import static org.mozilla.vrbrowser.utils.ServoUtils.isServoAvailable;
 public class Session implements ContentBlocking.Delegate, GeckoSession.NavigationDelegate,
         GeckoSession.ProgressDelegate, GeckoSession.ContentDelegate, GeckoSession.TextInputDelegate,
         GeckoSession.PromptDelegate, GeckoSession.MediaDelegate, GeckoSession.HistoryDelegate, GeckoSession.PermissionDelegate,
-        GeckoSession.SelectionActionDelegate, SharedPreferences.OnSharedPreferenceChangeListener, SessionChangeListener {
+        GeckoSession.SelectionActionDelegate, SettingsEngine.SettingListener, SessionChangeListener {
 
     private static final String LOGTAG = SystemUtils.createLogtag(Session.class);
     private static UserAgentOverride sUserAgentOverride;
@@ -88,7 +86,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     private transient GeckoSession.PromptDelegate mPromptDelegate;
     private transient GeckoSession.HistoryDelegate mHistoryDelegate;
     private transient Context mContext;
-    private transient SharedPreferences mPrefs;
+    private transient SettingsEngine mSettingsEngine;
     private transient GeckoRuntime mRuntime;
     private transient byte[] mPrivatePage;
     private transient boolean mFirstContentfulPaint;
@@ -144,18 +142,15 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         mPopUpStateStateListeners = new CopyOnWriteArrayList<>();
         mDrmStateStateListeners = new CopyOnWriteArrayList<>();
 
-        if (mPrefs != null) {
-            mPrefs.registerOnSharedPreferenceChangeListener(this);
-        }
-
-        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mSettingsEngine = SettingsStore.getInstance(mContext).getSettings();
+        mSettingsEngine.addListener(mContext.getString(R.string.settings_key_geolocation_data), this);
 
         InternalPages.PageResources pageResources = InternalPages.PageResources.create(R.raw.private_mode, R.raw.private_style);
         mPrivatePage = InternalPages.createAboutPage(mContext, pageResources);
 
         if (sUserAgentOverride == null) {
             sUserAgentOverride = new UserAgentOverride();
-            sUserAgentOverride.loadOverridesFromAssets((Activity)mContext, mContext.getString(R.string.user_agent_override_file));
+            sUserAgentOverride.loadOverridesFromAssets(mContext, mContext.getString(R.string.user_agent_override_file));
         }
     }
 
@@ -191,8 +186,8 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         mPopUpStateStateListeners.clear();
         mDrmStateStateListeners.clear();
 
-        if (mPrefs != null) {
-            mPrefs.unregisterOnSharedPreferenceChangeListener(this);
+        if (mSettingsEngine != null) {
+            mSettingsEngine.removeListener(mContext.getString(R.string.settings_key_geolocation_data), this);
         }
     }
 
@@ -994,6 +989,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
 
     public void updateLastUse() {
         mState.mLastUse = System.currentTimeMillis();
+        SessionStore.get().sessionStateChanged(this);
     }
 
     public long getLastUse() {
@@ -1017,6 +1013,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
 
         mState.mPreviousUri = mState.mUri;
         mState.mUri = aUri;
+        SessionStore.get().sessionStateChanged(this);
 
         for (GeckoSession.NavigationDelegate listener : mNavigationListeners) {
             listener.onLocationChange(aSession, aUri);
@@ -1186,6 +1183,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
                                      @NonNull GeckoSession.SessionState aSessionState) {
         if (mState.mSession == aSession) {
             mState.mSessionState = aSessionState;
+            SessionStore.get().sessionStateChanged(this);
         }
     }
 
@@ -1198,6 +1196,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         }
 
         mState.mTitle = aTitle;
+        SessionStore.get().sessionStateChanged(this);
 
         for (GeckoSession.ContentDelegate listener : mContentListeners) {
             listener.onTitleChange(aSession, aTitle);
@@ -1621,13 +1620,13 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     }
 
 
-    // SharedPreferences.OnSharedPreferenceChangeListener
+    // SettingsEngine.SettingListener
 
     @Override
-    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+    public void onSettingChanged(@NonNull String aKey) {
         if (mContext != null) {
-            if (key.equals(mContext.getString(R.string.settings_key_geolocation_data))) {
-                GeolocationData data = GeolocationData.parse(sharedPreferences.getString(key, null));
+            if (aKey.equals(mContext.getString(R.string.settings_key_geolocation_data))) {
+                GeolocationData data = GeolocationData.parse(mSettingsEngine.getString(aKey, null));
                 if (data != null) {
                     setRegion(data.getCountryCode());
                 }
@@ -4,11 +4,20 @@ import android.content.Context;
 
 import androidx.annotation.NonNull;
 
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
 import org.mozilla.geckoview.GeckoSessionSettings;
 import org.mozilla.vrbrowser.browser.SettingsStore;
 import org.mozilla.vrbrowser.browser.content.TrackingProtectionStore;
 import org.mozilla.vrbrowser.browser.content.TrackingProtectionPolicy;
 
+import java.io.IOException;
+
+@JsonAdapter(SessionSettings.SessionSettingsAdapter.class)
 class SessionSettings {
 
     private boolean isPrivateBrowsingEnabled;
@@ -143,4 +152,76 @@ class SessionSettings {
             return new SessionSettings(this);
         }
     }
+
+    /**
+     * Writes and reads the settings by field name, without reflection.
+     */
+    static class SessionSettingsAdapter extends TypeAdapter<SessionSettings> {
+        @Override
+        public void write(JsonWriter out, SessionSettings settings) throws IOException {
+            if (settings == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("isPrivateBrowsingEnabled").value(settings.isPrivateBrowsingEnabled);
+            out.name("isTrackingProtectionEnabled").value(settings.isTrackingProtectionEnabled);
+            out.name("isSuspendMediaWhenInactiveEnabled").value(settings.isSuspendMediaWhenInactiveEnabled);
+            out.name("userAgentMode").value(settings.userAgentMode);
+            out.name("viewportMode").value(settings.viewportMode);
+            out.name("isServoEnabled").value(settings.isServoEnabled);
+            out.name("userAgentOverride").value(settings.userAgentOverride);
+            out.endObject();
+        }
+
+        @Override
+        public SessionSettings read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            // The builder fields are set directly, its methods would derive the tracking protection.
+            Builder builder = new Builder();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                try {
+                    switch (name) {
+                        case "isPrivateBrowsingEnabled":
+                            builder.isPrivateBrowsingEnabled = in.nextBoolean();
+                            break;
+                        case "isTrackingProtectionEnabled":
+                            builder.isTrackingProtectionEnabled = in.nextBoolean();
+                            break;
+                        case "isSuspendMediaWhenInactiveEnabled":
+                            builder.isSuspendMediaWhenInactiveEnabled = in.nextBoolean();
+                            break;
+                        case "userAgentMode":
+                            builder.userAgentMode = in.nextInt();
+                            break;
+                        case "viewportMode":
+                            builder.viewportMode = in.nextInt();
+                            break;
+                        case "isServoEnabled":
+                            builder.isServoEnabled = in.nextBoolean();
+                            break;
+                        case "userAgentOverride":
+                            builder.userAgentOverride = in.nextString();
+                            break;
+                        default:
+                            in.skipValue();
+                    }
+                } catch (IllegalStateException | NumberFormatException e) {
+                    // Keep the default for a value of the wrong type, the rest of the settings still apply.
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return builder.build();
+        }
+    }
 }
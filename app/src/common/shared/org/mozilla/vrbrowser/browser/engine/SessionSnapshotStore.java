@@ -0,0 +1,517 @@
+package org.mozilla.vrbrowser.browser.engine;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import org.json.JSONException;
+import org.mozilla.geckoview.GeckoSession;
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+
+/**
+ * Crash-safe snapshot of the regular sessions, updated as they navigate.
+ *
+ * The windows state file is only written on pause, so the sessions opened or navigated since then
+ * would be lost if the browser crashes. This store keeps a record per session in a memory mapped file
+ * with a fixed layout: every session owns a pair of slots and each update is written to the slot not
+ * holding the latest record, with a sequence number and a CRC32. A record torn by a crash fails its
+ * checksum and the previous one in the pair is used, so the file always holds a consistent record of
+ * every session. Writes to the mapping reach the page cache right away and survive the process dying.
+ *
+ * The header holds the sequence number of the last write before the windows state was saved. Only
+ * the sessions opened, navigated or closed after it are reported to the next run, a clean exit
+ * followed by last use or title updates doesn't need them. Closed sessions leave a tombstone record
+ * until the next save, so a crash doesn't bring back a tab that is still in the saved state.
+ *
+ * The file is loaded and the records are encoded and written on the store executor. The sessions of
+ * the previous run are read on the main thread once the load has completed.
+ */
+class SessionSnapshotStore {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(SessionSnapshotStore.class);
+
+    private static final int FILE_MAGIC = 0x46525353;
+    private static final int FILE_VERSION = 2;
+    // Magic, version, number of sessions, slot size and the sequence number of the last save.
+    static final int HEADER_SIZE = 32;
+    private static final int SAVED_SEQUENCE_OFFSET = 16;
+    private static final int RECORD_MAGIC = 0x52454331;
+    // Magic, payload length, sequence number and checksum.
+    static final int RECORD_HEADER_SIZE = 20;
+    // The session was closed, the record only holds its id.
+    private static final int FLAG_CLOSED = 1;
+    // The session was opened, navigated or closed since the last save.
+    private static final int FLAG_CHANGED = 2;
+    static final int MAX_SESSIONS = 64;
+    static final int SLOT_SIZE = 16 * 1024;
+    private static final int FILE_SIZE = HEADER_SIZE + MAX_SESSIONS * 2 * SLOT_SIZE;
+
+    /**
+     * Latest record of a session, only the fields needed to restore it.
+     */
+    private static class Record {
+        final String id;
+        final String uri;
+        final String title;
+        final String parentId;
+        final long lastUse;
+        final SessionSettings settings;
+        final GeckoSession.SessionState sessionState;
+        final int flags;
+
+        Record(@NonNull SessionState aState) {
+            id = aState.mId;
+            uri = aState.mUri;
+            title = aState.mTitle;
+            parentId = aState.mParentId;
+            lastUse = aState.mLastUse;
+            settings = aState.mSettings;
+            sessionState = aState.mSessionState;
+            flags = 0;
+        }
+
+        Record(@NonNull String aId, String aUri, String aTitle, String aParentId, long aLastUse,
+               SessionSettings aSettings, GeckoSession.SessionState aSessionState, int aFlags) {
+            id = aId;
+            uri = aUri;
+            title = aTitle;
+            parentId = aParentId;
+            lastUse = aLastUse;
+            settings = aSettings;
+            sessionState = aSessionState;
+            flags = aFlags;
+        }
+    }
+
+    private final File mFile;
+    private final Executor mExecutor;
+    private final Gson mGson = new Gson();
+    private final CompletableFuture<Void> mLoaded = new CompletableFuture<>();
+    private final CRC32 mCrc = new CRC32();
+    private final ConcurrentHashMap<String, Record> mPending = new ConcurrentHashMap<>();
+    // The fields below are only accessed from the executor, or after the load has completed.
+    private MappedByteBuffer mBuffer;
+    private final HashMap<String, Integer> mPairs = new HashMap<>();
+    // Sequence number of the latest record of each pair, including the freed ones.
+    private final HashMap<Integer, Long> mPairSequences = new HashMap<>();
+    private final LinkedList<Integer> mFreePairs = new LinkedList<>();
+    private long mSequence;
+    private long mSavedSequence;
+    // Sessions whose pair holds a tombstone.
+    private final LinkedHashSet<String> mTombstones = new LinkedHashSet<>();
+    // Hash of the url and history last written for each session in this run.
+    private final HashMap<String, Integer> mSignatures = new HashMap<>();
+    // Sessions opened or navigated since the last save.
+    private final HashSet<String> mChanged = new HashSet<>();
+    private final List<Record> mRestored = new ArrayList<>();
+    private final Set<String> mClosed = new HashSet<>();
+
+    SessionSnapshotStore(@NonNull File aFile, @NonNull Executor aExecutor) {
+        mFile = aFile;
+        mExecutor = aExecutor;
+    }
+
+    /**
+     * Maps the file and reads the records left by the previous run on the store executor. Called once
+     * before any update.
+     */
+    void load() {
+        mExecutor.execute(() -> {
+            try {
+                mapFile();
+            } finally {
+                mLoaded.complete(null);
+            }
+        });
+    }
+
+    /**
+     * Completes once the records of the previous run have been read.
+     */
+    @NonNull
+    CompletableFuture<Void> getLoaded() {
+        return mLoaded;
+    }
+
+    private void mapFile() {
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            boolean valid = file.length() == FILE_SIZE;
+            mBuffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+            if (valid && mBuffer.getInt(0) == FILE_MAGIC && mBuffer.getInt(4) == FILE_VERSION) {
+                mSavedSequence = mBuffer.getLong(SAVED_SEQUENCE_OFFSET);
+                readRecords();
+            } else {
+                mBuffer.putInt(0, FILE_MAGIC);
+                mBuffer.putInt(4, FILE_VERSION);
+                mBuffer.putInt(8, MAX_SESSIONS);
+                mBuffer.putInt(12, SLOT_SIZE);
+                mBuffer.putLong(SAVED_SEQUENCE_OFFSET, 0);
+            }
+
+        } catch (IOException e) {
+            Log.e(LOGTAG, "Error mapping the session snapshots: " + e.getMessage());
+            mBuffer = null;
+        }
+        for (int pair = 0; pair < MAX_SESSIONS; pair++) {
+            if (!mPairs.containsValue(pair)) {
+                mFreePairs.add(pair);
+            }
+        }
+    }
+
+    /**
+     * Sessions opened or navigated by the previous run after its last save, most recently used first.
+     * Empty until the load has completed.
+     */
+    @NonNull
+    List<SessionState> getRestoredSessions() {
+        List<SessionState> result = new ArrayList<>();
+        if (!mLoaded.isDone()) {
+            return result;
+        }
+        for (Record record : mRestored) {
+            SessionState state = new SessionState();
+            state.mId = record.id;
+            state.mUri = record.uri;
+            state.mTitle = record.title;
+            state.mParentId = record.parentId;
+            state.mLastUse = record.lastUse;
+            state.mSettings = record.settings;
+            state.mSessionState = record.sessionState;
+            result.add(state);
+        }
+        return result;
+    }
+
+    /**
+     * Ids of the sessions closed by the previous run after its last save. Empty until the load has completed.
+     */
+    @NonNull
+    Set<String> getClosedSessions() {
+        return mLoaded.isDone() ? new HashSet<>(mClosed) : new HashSet<>();
+    }
+
+    /**
+     * Records the current state of a session. Must be called from the main thread.
+     */
+    void update(@NonNull SessionState aState) {
+        if (aState.mSettings == null || aState.mSettings.isPrivateBrowsingEnabled()) {
+            return;
+        }
+        // Updates queued for the same session are coalesced, only the latest one is written.
+        if (mPending.put(aState.mId, new Record(aState)) == null) {
+            mExecutor.execute(() -> {
+                Record record = mPending.remove(aState.mId);
+                if (record != null && mBuffer != null) {
+                    write(record);
+                }
+            });
+        }
+    }
+
+    /**
+     * Replaces the record of a closed session with a tombstone, kept until the next save.
+     */
+    void remove(@NonNull String aId) {
+        mPending.remove(aId);
+        mExecutor.execute(() -> {
+            if (mBuffer == null) {
+                return;
+            }
+            mSignatures.remove(aId);
+            mChanged.remove(aId);
+            Integer pair = mPairs.get(aId);
+            if (pair == null) {
+                // Private or never recorded.
+                return;
+            }
+            Record tombstone = new Record(aId, null, null, null, 0, null, null, FLAG_CLOSED | FLAG_CHANGED);
+            writeSlot(pair, encode(tombstone, null));
+            mTombstones.add(aId);
+        });
+    }
+
+    /**
+     * Called after the windows state has been saved: the records written so far are part of it and
+     * the tombstones are no longer needed.
+     */
+    void markSaved() {
+        mExecutor.execute(() -> {
+            if (mBuffer == null) {
+                return;
+            }
+            for (String id : new ArrayList<>(mTombstones)) {
+                free(id);
+            }
+            mChanged.clear();
+            mSavedSequence = mSequence;
+            mBuffer.putLong(SAVED_SEQUENCE_OFFSET, mSavedSequence);
+        });
+    }
+
+    /**
+     * Removes the records of the sessions that are not in the given list, called once the previous
+     * sessions have been restored or discarded.
+     */
+    void retain(@NonNull Collection<String> aIds) {
+        Set<String> ids = new HashSet<>(aIds);
+        mExecutor.execute(() -> {
+            if (mBuffer == null) {
+                return;
+            }
+            for (String id : new ArrayList<>(mPairs.keySet())) {
+                if (!ids.contains(id)) {
+                    free(id);
+                }
+            }
+        });
+    }
+
+    private void free(@NonNull String aId) {
+        mTombstones.remove(aId);
+        mSignatures.remove(aId);
+        mChanged.remove(aId);
+        Integer pair = mPairs.remove(aId);
+        if (pair != null) {
+            // An empty record frees the pair.
+            writeSlot(pair, new byte[0]);
+            mFreePairs.add(pair);
+        }
+    }
+
+    /**
+     * Returns a free pair, taking the one of the oldest tombstone if there are none left.
+     */
+    @Nullable
+    private Integer allocatePair() {
+        Integer pair = mFreePairs.poll();
+        if (pair == null && !mTombstones.isEmpty()) {
+            String id = mTombstones.iterator().next();
+            mTombstones.remove(id);
+            pair = mPairs.remove(id);
+        }
+        if (pair == null) {
+            Log.w(LOGTAG, "No free session snapshot slots");
+        }
+        return pair;
+    }
+
+    private void write(@NonNull Record aRecord) {
+        mTombstones.remove(aRecord.id);
+        Integer pair = mPairs.get(aRecord.id);
+        if (pair == null) {
+            pair = allocatePair();
+            if (pair == null) {
+                return;
+            }
+            mPairs.put(aRecord.id, pair);
+        }
+        String history = aRecord.sessionState != null ? aRecord.sessionState.toString() : null;
+        // Last use and title updates alone don't make the session differ from the saved state.
+        Integer signature = Objects.hash(aRecord.uri, aRecord.parentId, history);
+        if (!signature.equals(mSignatures.put(aRecord.id, signature))) {
+            mChanged.add(aRecord.id);
+        }
+        Record record = new Record(aRecord.id, aRecord.uri, aRecord.title, aRecord.parentId, aRecord.lastUse,
+                aRecord.settings, aRecord.sessionState, mChanged.contains(aRecord.id) ? FLAG_CHANGED : 0);
+        byte[] payload = encode(record, history);
+        if (payload.length > SLOT_SIZE - RECORD_HEADER_SIZE) {
+            // The session history doesn't fit, the session can still be restored from its url.
+            payload = encode(record, null);
+            if (payload.length > SLOT_SIZE - RECORD_HEADER_SIZE) {
+                Log.w(LOGTAG, "Session snapshot too large: " + payload.length);
+                return;
+            }
+        }
+        writeSlot(pair, payload);
+    }
+
+    private void writeSlot(int aPair, @NonNull byte[] aPayload) {
+        long sequence = ++mSequence;
+        // Overwrite the slot that doesn't hold the latest record of the pair.
+        Long current = mPairSequences.get(aPair);
+        int slot = aPair * 2 + (current != null && slotSequence(aPair * 2) == current ? 1 : 0);
+        int offset = HEADER_SIZE + slot * SLOT_SIZE;
+
+        mBuffer.putInt(offset, 0);
+        mBuffer.position(offset + RECORD_HEADER_SIZE);
+        mBuffer.put(aPayload);
+        mBuffer.putInt(offset + 4, aPayload.length);
+        mBuffer.putLong(offset + 8, sequence);
+        mBuffer.putInt(offset + 16, checksum(sequence, aPayload, 0, aPayload.length));
+        // The magic is written last so a record is never valid before it's complete.
+        mBuffer.putInt(offset, RECORD_MAGIC);
+        mPairSequences.put(aPair, sequence);
+    }
+
+    private long slotSequence(int aSlot) {
+        int offset = HEADER_SIZE + aSlot * SLOT_SIZE;
+        return mBuffer.getInt(offset) == RECORD_MAGIC ? mBuffer.getLong(offset + 8) : -1;
+    }
+
+    private void readRecords() {
+        byte[] payload = new byte[SLOT_SIZE];
+        for (int pair = 0; pair < MAX_SESSIONS; pair++) {
+            // The latest valid record of the pair.
+            long sequence = -1;
+            int length = 0;
+            for (int slot = pair * 2; slot <= pair * 2 + 1; slot++) {
+                int offset = HEADER_SIZE + slot * SLOT_SIZE;
+                if (mBuffer.getInt(offset) != RECORD_MAGIC) {
+                    continue;
+                }
+                int slotLength = mBuffer.getInt(offset + 4);
+                long slotSequence = mBuffer.getLong(offset + 8);
+                if (slotLength < 0 || slotLength > SLOT_SIZE - RECORD_HEADER_SIZE || slotSequence <= sequence) {
+                    continue;
+                }
+                mBuffer.position(offset + RECORD_HEADER_SIZE);
+                mBuffer.get(payload, 0, slotLength);
+                if (checksum(slotSequence, payload, 0, slotLength) != mBuffer.getInt(offset + 16)) {
+                    Log.w(LOGTAG, "Discarding torn session snapshot in slot " + slot);
+                    continue;
+                }
+                sequence = slotSequence;
+                length = slotLength;
+            }
+            mSequence = Math.max(mSequence, sequence);
+            if (sequence >= 0) {
+                mPairSequences.put(pair, sequence);
+            }
+            if (length == 0) {
+                // Free pair, either never used or its session was closed.
+                continue;
+            }
+            int slot = slotSequence(pair * 2) == sequence ? pair * 2 : pair * 2 + 1;
+            mBuffer.position(HEADER_SIZE + slot * SLOT_SIZE + RECORD_HEADER_SIZE);
+            mBuffer.get(payload, 0, length);
+            Record record = decode(ByteBuffer.wrap(payload, 0, length));
+            if (record == null || mPairs.containsKey(record.id)) {
+                continue;
+            }
+            mPairs.put(record.id, pair);
+            // Records written before the last save are part of the saved state.
+            boolean unsaved = sequence > mSavedSequence && (record.flags & FLAG_CHANGED) != 0;
+            if ((record.flags & FLAG_CLOSED) != 0) {
+                mTombstones.add(record.id);
+                if (unsaved) {
+                    mClosed.add(record.id);
+                }
+            } else if (unsaved) {
+                mRestored.add(record);
+            }
+        }
+        mRestored.sort((o1, o2) -> Long.compare(o2.lastUse, o1.lastUse));
+        Log.d(LOGTAG, "Loaded " + mRestored.size() + " session snapshots and " + mClosed.size() + " closed sessions");
+    }
+
+    private int checksum(long aSequence, @NonNull byte[] aPayload, int aOffset, int aLength) {
+        mCrc.reset();
+        for (int i = 0; i < 8; i++) {
+            mCrc.update((int) (aSequence >>> (i * 8)) & 0xff);
+        }
+        mCrc.update(aPayload, aOffset, aLength);
+        return (int) mCrc.getValue();
+    }
+
+    @NonNull
+    private byte[] encode(@NonNull Record aRecord, @Nullable String aHistory) {
+        byte[][] strings = {
+                bytes(aRecord.id),
+                bytes(aRecord.uri),
+                bytes(aRecord.title),
+                bytes(aRecord.parentId),
+                aRecord.settings != null ? bytes(mGson.toJson(aRecord.settings)) : null,
+                bytes(aHistory)
+        };
+        int size = 12;
+        for (byte[] string : strings) {
+            size += 4 + (string != null ? string.length : 0);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putLong(aRecord.lastUse);
+        buffer.putInt(aRecord.flags);
+        for (byte[] string : strings) {
+            if (string == null) {
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(string.length);
+                buffer.put(string);
+            }
+        }
+        return buffer.array();
+    }
+
+    @Nullable
+    private Record decode(@NonNull ByteBuffer aBuffer) {
+        try {
+            long lastUse = aBuffer.getLong();
+            int flags = aBuffer.getInt();
+            String id = string(aBuffer);
+            String uri = string(aBuffer);
+            String title = string(aBuffer);
+            String parentId = string(aBuffer);
+            String json = string(aBuffer);
+            SessionSettings settings = json != null ? mGson.fromJson(json, SessionSettings.class) : null;
+            String history = string(aBuffer);
+            GeckoSession.SessionState sessionState = null;
+            if (history != null) {
+                try {
+                    sessionState = GeckoSession.SessionState.fromString(history);
+                } catch (JSONException e) {
+                    Log.w(LOGTAG, "Invalid session history in snapshot: " + e.getMessage());
+                }
+            }
+            if (id == null || (settings == null && (flags & FLAG_CLOSED) == 0)) {
+                return null;
+            }
+            return new Record(id, uri, title, parentId, lastUse, settings, sessionState, flags);
+
+        } catch (BufferUnderflowException | IllegalArgumentException | JsonParseException e) {
+            Log.w(LOGTAG, "Invalid session snapshot: " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Nullable
+    private static byte[] bytes(@Nullable String aString) {
+        return aString != null ? aString.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    @Nullable
+    private static String string(@NonNull ByteBuffer aBuffer) {
+        int length = aBuffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String result = new String(aBuffer.array(), aBuffer.arrayOffset() + aBuffer.position(), length, StandardCharsets.UTF_8);
+        aBuffer.position(aBuffer.position() + length);
+        return result;
+    }
+}
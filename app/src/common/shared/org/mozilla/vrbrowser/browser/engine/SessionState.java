@@ -1,27 +1,30 @@
 package org.mozilla.vrbrowser.browser.engine;
 
+import android.util.Log;
+
 import androidx.annotation.IntDef;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonParser;
 import com.google.gson.TypeAdapter;
-import com.google.gson.TypeAdapterFactory;
 import com.google.gson.annotations.JsonAdapter;
-import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.google.gson.stream.JsonWriter;
 
 import org.json.JSONException;
 import org.mozilla.geckoview.GeckoDisplay;
 import org.mozilla.geckoview.GeckoSession;
 import org.mozilla.vrbrowser.browser.Media;
+import org.mozilla.vrbrowser.utils.SystemUtils;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.UUID;
 
-@JsonAdapter(SessionState.SessionStateAdapterFactory.class)
+@JsonAdapter(SessionState.SessionStateAdapter.class)
 public class SessionState {
+    private static final String LOGTAG = SystemUtils.createLogtag(SessionState.class);
+
     @IntDef(value = { WEBXR_UNUSED, WEBXR_ALLOWED, WEBXR_BLOCKED})
     public @interface WebXRState {}
     public static final int WEBXR_UNUSED = 0;
@@ -57,7 +60,6 @@ public class SessionState {
     public transient @WebXRState int mWebXRState = WEBXR_UNUSED;
     public transient @PopupState int mPopUpState = POPUP_UNUSED;
     public transient @PopupState int mDrmState = DRM_UNUSED;
-    @JsonAdapter(SessionState.GeckoSessionStateAdapter.class)
     public GeckoSession.SessionState mSessionState;
     public long mLastUse;
     public String mRegion;
@@ -79,22 +81,90 @@ public class SessionState {
         return result;
     }
 
+    /**
+     * Keeps the Gecko session state as an opaque raw JSON value. It is written as is and read by
+     * copying the tokens, so the history is never parsed into an intermediate tree.
+     */
     public static class GeckoSessionStateAdapter extends TypeAdapter<GeckoSession.SessionState> {
         @Override
         public void write(JsonWriter out, GeckoSession.SessionState session) throws IOException {
-            out.jsonValue(session.toString());
+            if (session == null) {
+                out.nullValue();
+            } else {
+                out.jsonValue(session.toString());
+            }
         }
 
         @Override
-        public GeckoSession.SessionState read(JsonReader in) {
+        public GeckoSession.SessionState read(JsonReader in) throws IOException {
+            String session;
+            switch (in.peek()) {
+                case NULL:
+                    in.nextNull();
+                    return null;
+                case STRING:
+                    session = in.nextString();
+                    break;
+                default:
+                    StringWriter raw = new StringWriter();
+                    copyValue(in, new JsonWriter(raw));
+                    session = raw.toString();
+            }
             try {
-                String session = new JsonParser().parse(in).toString();
                 return GeckoSession.SessionState.fromString(session);
 
             } catch (JSONException e) {
                 return null;
             }
         }
+
+        private static void copyValue(JsonReader in, JsonWriter out) throws IOException {
+            int depth = 0;
+            do {
+                switch (in.peek()) {
+                    case BEGIN_ARRAY:
+                        in.beginArray();
+                        out.beginArray();
+                        depth++;
+                        break;
+                    case END_ARRAY:
+                        in.endArray();
+                        out.endArray();
+                        depth--;
+                        break;
+                    case BEGIN_OBJECT:
+                        in.beginObject();
+                        out.beginObject();
+                        depth++;
+                        break;
+                    case END_OBJECT:
+                        in.endObject();
+                        out.endObject();
+                        depth--;
+                        break;
+                    case NAME:
+                        out.name(in.nextName());
+                        break;
+                    case STRING:
+                        out.value(in.nextString());
+                        break;
+                    case NUMBER:
+                        // Keeps the number as it was written.
+                        out.jsonValue(in.nextString());
+                        break;
+                    case BOOLEAN:
+                        out.value(in.nextBoolean());
+                        break;
+                    case NULL:
+                        in.nextNull();
+                        out.nullValue();
+                        break;
+                    default:
+                        throw new IOException("Unexpected end of session state");
+                }
+            } while (depth > 0);
+            out.flush();
+        }
     }
 
     boolean isActive() {
@@ -109,65 +179,111 @@ public class SessionState {
         SessionStore.get().sessionActiveStateChanged();
     }
 
-    public class SessionStateAdapterFactory implements TypeAdapterFactory {
-        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
-            final TypeAdapter<T> delegate = gson.getDelegateAdapter(this, type);
-            final TypeAdapter<GeckoSession.SessionState> gsDelegate = new GeckoSessionStateAdapter();
-
-            return new TypeAdapter<T>() {
-                public void write(JsonWriter out, T value) throws IOException {
-                    try {
-                        if (value instanceof SessionState) {
-                            SessionState session = (SessionState) value;
-                            out.beginObject();
-                            out.name("mCanGoBack").value(session.mCanGoBack);
-                            out.name("mCanGoForward").value(session.mCanGoForward);
-                            out.name("mIsLoading").value(session.mIsLoading);
-                            out.name("mIsInputActive").value(session.mIsInputActive);
-                            out.name("mUri").value(session.mUri);
-                            out.name("mPreviousUri").value(session.mPreviousUri);
-                            out.name("mTitle").value(session.mTitle);
-                            out.name("mSettings").jsonValue(gson.toJson(session.mSettings));
-                            out.name("mLastUse").value(session.mLastUse);
-                            out.name("mRegion").value(session.mRegion);
-                            out.name("mId").value(session.mId);
-                            out.name("mParentId").value(session.mParentId);
-                            if (session.mSettings != null) {
-                                if (session.mSettings.isPrivateBrowsingEnabled()) {
-                                    out.name("mSessionState").jsonValue(null);
-
-                                } else {
-                                    if (session.mSessionState != null) {
-                                        out.name("mSessionState").jsonValue(gsDelegate.toJson(session.mSessionState));
-
-                                    } else {
-                                        out.name("mSessionState").jsonValue(null);
-                                    }
-                                }
-                            }
-                            if (session.mSettings != null) {
-                                out.name("mSettings").jsonValue(gson.toJson(session.mSettings));
-                            }
-                            out.endObject();
-
-                        } else {
-                            delegate.write(out, null);
-                        }
-
-                    } catch (IOException e) {
-                        delegate.write(out, null);
-                    }
-                }
+    /**
+     * Writes and reads the persisted fields by name, without reflection. Unknown fields are skipped
+     * and the state of private sessions is never written.
+     */
+    public static class SessionStateAdapter extends TypeAdapter<SessionState> {
+        private final TypeAdapter<SessionSettings> mSettingsAdapter = new SessionSettings.SessionSettingsAdapter();
+        private final TypeAdapter<GeckoSession.SessionState> mGeckoStateAdapter = new GeckoSessionStateAdapter();
 
-                public T read(JsonReader in) throws IOException {
-                    try {
-                        return delegate.read(in);
-                    } catch (Exception e) {
-                        in.skipValue();
-                        return null;
+        @Override
+        public void write(JsonWriter out, SessionState session) throws IOException {
+            if (session == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("mCanGoBack").value(session.mCanGoBack);
+            out.name("mCanGoForward").value(session.mCanGoForward);
+            out.name("mIsLoading").value(session.mIsLoading);
+            out.name("mIsInputActive").value(session.mIsInputActive);
+            out.name("mUri").value(session.mUri);
+            out.name("mPreviousUri").value(session.mPreviousUri);
+            out.name("mTitle").value(session.mTitle);
+            out.name("mSettings");
+            mSettingsAdapter.write(out, session.mSettings);
+            out.name("mLastUse").value(session.mLastUse);
+            out.name("mRegion").value(session.mRegion);
+            out.name("mId").value(session.mId);
+            out.name("mParentId").value(session.mParentId);
+            out.name("mSessionState");
+            if (session.mSettings != null && session.mSettings.isPrivateBrowsingEnabled()) {
+                out.nullValue();
+            } else {
+                mGeckoStateAdapter.write(out, session.mSessionState);
+            }
+            out.endObject();
+        }
+
+        @Override
+        public SessionState read(JsonReader in) throws IOException {
+            if (in.peek() != JsonToken.BEGIN_OBJECT) {
+                in.skipValue();
+                return null;
+            }
+            SessionState session = new SessionState();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    // Null fields keep their defaults.
+                    in.nextNull();
+                    continue;
+                }
+                try {
+                    switch (name) {
+                        case "mCanGoBack":
+                            session.mCanGoBack = in.nextBoolean();
+                            break;
+                        case "mCanGoForward":
+                            session.mCanGoForward = in.nextBoolean();
+                            break;
+                        case "mIsLoading":
+                            session.mIsLoading = in.nextBoolean();
+                            break;
+                        case "mIsInputActive":
+                            session.mIsInputActive = in.nextBoolean();
+                            break;
+                        case "mUri":
+                            session.mUri = in.nextString();
+                            break;
+                        case "mPreviousUri":
+                            session.mPreviousUri = in.nextString();
+                            break;
+                        case "mTitle":
+                            session.mTitle = in.nextString();
+                            break;
+                        case "mSettings":
+                            session.mSettings = mSettingsAdapter.read(in);
+                            break;
+                        case "mLastUse":
+                            session.mLastUse = in.nextLong();
+                            break;
+                        case "mRegion":
+                            session.mRegion = in.nextString();
+                            break;
+                        case "mId":
+                            session.mId = in.nextString();
+                            break;
+                        case "mParentId":
+                            session.mParentId = in.nextString();
+                            break;
+                        case "mSessionState":
+                            session.mSessionState = mGeckoStateAdapter.read(in);
+                            break;
+                        default:
+                            in.skipValue();
                     }
+                } catch (IllegalStateException | NumberFormatException e) {
+                    // A value of the wrong type is still pending in the reader, skip it and keep the
+                    // default so one bad field doesn't lose the tab or the rest of the saved tabs.
+                    Log.w(LOGTAG, "Skipping malformed session field " + name + ": " + e.getMessage());
+                    in.skipValue();
                 }
-            };
+            }
+            in.endObject();
+            return session;
         }
     }
 }
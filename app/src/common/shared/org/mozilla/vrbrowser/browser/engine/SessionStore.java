@@ -13,6 +13,7 @@ import org.mozilla.geckoview.GeckoSession;
 import org.mozilla.vrbrowser.VRBrowserApplication;
 import org.mozilla.vrbrowser.browser.BookmarksStore;
 import org.mozilla.vrbrowser.browser.HistoryStore;
+import org.mozilla.vrbrowser.browser.LocalSearchIndex;
 import org.mozilla.vrbrowser.browser.PermissionDelegate;
 import org.mozilla.vrbrowser.browser.Services;
 import org.mozilla.vrbrowser.browser.content.TrackingProtectionStore;
@@ -20,15 +21,22 @@ import org.mozilla.vrbrowser.db.SitePermission;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 import org.mozilla.vrbrowser.utils.UrlUtils;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 public class SessionStore implements GeckoSession.PermissionDelegate{
     private static final String LOGTAG = SystemUtils.createLogtag(SessionStore.class);
     private static final int MAX_GECKO_SESSIONS = 5;
+    private static final String LOCAL_SEARCH_INDEX_FILE = "local_search_index.bin";
+    private static final String SESSION_SNAPSHOTS_FILE = "session_snapshots.bin";
 
     private static SessionStore mInstance;
 
@@ -47,6 +55,8 @@ public class SessionStore implements GeckoSession.PermissionDelegate{
     private PermissionDelegate mPermissionDelegate;
     private BookmarksStore mBookmarksStore;
     private HistoryStore mHistoryStore;
+    private LocalSearchIndex mLocalSearchIndex;
+    private SessionSnapshotStore mSessionSnapshots;
     private Services mServices;
     private boolean mSuspendPending;
     private TrackingProtectionStore mTrackingProtectionStore;
@@ -98,6 +108,17 @@ public class SessionStore implements GeckoSession.PermissionDelegate{
     public void initializeStores(Context context) {
         mBookmarksStore = new BookmarksStore(context);
         mHistoryStore = new HistoryStore(context);
+
+        Executor diskIO = ((VRBrowserApplication)context.getApplicationContext()).getExecutors().diskIO();
+        mLocalSearchIndex = new LocalSearchIndex(new File(context.getFilesDir(), LOCAL_SEARCH_INDEX_FILE), diskIO);
+        mBookmarksStore.setSearchIndex(mLocalSearchIndex);
+        mHistoryStore.setSearchIndex(mLocalSearchIndex);
+
+        // The snapshots get their own thread: the windows are restored once they are loaded, they
+        // can't wait behind the other disk tasks.
+        mSessionSnapshots = new SessionSnapshotStore(new File(context.getFilesDir(), SESSION_SNAPSHOTS_FILE),
+                Executors.newSingleThreadExecutor());
+        mSessionSnapshots.load();
     }
 
     @NonNull
@@ -106,6 +127,7 @@ public class SessionStore implements GeckoSession.PermissionDelegate{
         aSession.addNavigationListener(mServices);
         mSessions.add(aSession);
         sessionActiveStateChanged();
+        sessionStateChanged(aSession);
         return aSession;
     }
 
@@ -144,6 +166,66 @@ public class SessionStore implements GeckoSession.PermissionDelegate{
         mSessions.remove(aSession);
         if (aSession != null) {
             shutdownSession(aSession);
+            if (mSessionSnapshots != null) {
+                mSessionSnapshots.remove(aSession.getId());
+            }
+        }
+    }
+
+    /**
+     * Records the session in the crash recovery snapshots, called when its url, title, history or
+     * last use change.
+     */
+    void sessionStateChanged(@NonNull Session aSession) {
+        if (mSessionSnapshots != null) {
+            mSessionSnapshots.update(aSession.getSessionState());
+        }
+    }
+
+    /**
+     * Completes once the session snapshots of the previous run have been loaded.
+     */
+    @NonNull
+    public CompletableFuture<Void> getSessionSnapshotsLoaded() {
+        return mSessionSnapshots != null ? mSessionSnapshots.getLoaded() : CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Regular sessions opened or navigated by the previous run after the windows state was last
+     * saved, most recently used first. Empty after a clean exit.
+     */
+    @NonNull
+    public List<SessionState> getSessionSnapshots() {
+        return mSessionSnapshots != null ? mSessionSnapshots.getRestoredSessions() : new ArrayList<>();
+    }
+
+    /**
+     * Ids of the sessions closed by the previous run after the windows state was last saved.
+     */
+    @NonNull
+    public Set<String> getClosedSessionSnapshots() {
+        return mSessionSnapshots != null ? mSessionSnapshots.getClosedSessions() : new HashSet<>();
+    }
+
+    /**
+     * Called after the windows state has been saved, the session snapshots written so far are part of it.
+     */
+    public void onWindowsStateSaved() {
+        if (mSessionSnapshots != null) {
+            mSessionSnapshots.markSaved();
+        }
+    }
+
+    /**
+     * Drops the snapshots of the previous run sessions that were not restored.
+     */
+    public void discardStaleSessionSnapshots() {
+        if (mSessionSnapshots != null) {
+            List<String> ids = new ArrayList<>();
+            for (Session session : mSessions) {
+                ids.add(session.getId());
+            }
+            mSessionSnapshots.retain(ids);
         }
     }
 
@@ -249,6 +331,11 @@ public class SessionStore implements GeckoSession.PermissionDelegate{
         return mHistoryStore;
     }
 
+    @Nullable
+    public LocalSearchIndex getLocalSearchIndex() {
+        return mLocalSearchIndex;
+    }
+
     public TrackingProtectionStore getTrackingProtectionStore() {
         return mTrackingProtectionStore;
     }
@@ -13,12 +13,12 @@ import androidx.sqlite.db.SupportSQLiteDatabase;
 
 import org.mozilla.vrbrowser.AppExecutors;
 
-@Database(entities = {SitePermission.class}, version = 4)
+@Database(entities = {SitePermission.class}, version = 5)
 public abstract class AppDatabase extends RoomDatabase {
 
     private static final String DATABASE_NAME = "app";
 
-    private static AppDatabase mInstance = null;
+    private static volatile AppDatabase mInstance = null;
 
     private final MutableLiveData<Boolean> mIsDatabaseCreated = new MutableLiveData<>();
 
@@ -27,8 +27,12 @@ public abstract class AppDatabase extends RoomDatabase {
     public static AppDatabase getAppDatabase(Context context, final AppExecutors executors) {
         if (mInstance == null) {
             synchronized (AppDatabase.class) {
-                mInstance = buildDatabase(context.getApplicationContext(), executors);
-                mInstance.updateDatabaseCreated(context);
+                // The database is also opened from a background startup task.
+                if (mInstance == null) {
+                    AppDatabase database = buildDatabase(context.getApplicationContext(), executors);
+                    database.updateDatabaseCreated(context);
+                    mInstance = database;
+                }
             }
         }
 
@@ -38,7 +42,7 @@ public abstract class AppDatabase extends RoomDatabase {
     @NonNull
     private static AppDatabase buildDatabase(final @NonNull Context appContext, final @NonNull AppExecutors executors) {
         return Room.databaseBuilder(appContext, AppDatabase.class, DATABASE_NAME)
-                .addMigrations(MIGRATION_1_2, MIGRATION_2_4)
+                .addMigrations(MIGRATION_1_2, MIGRATION_2_4, MIGRATION_4_5)
                 .addCallback(new Callback() {
                     @Override
                     public void onCreate(@NonNull SupportSQLiteDatabase db) {
@@ -95,4 +99,11 @@ public abstract class AppDatabase extends RoomDatabase {
         }
     };
 
+    private static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_SitePermission_category_url` ON `SitePermission` (`category`, `url`)");
+        }
+    };
+
 }
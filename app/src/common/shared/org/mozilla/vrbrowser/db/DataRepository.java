@@ -9,17 +9,20 @@ import androidx.lifecycle.MediatorLiveData;
 
 import org.mozilla.vrbrowser.AppExecutors;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 public class DataRepository implements LifecycleOwner {
 
-    private static DataRepository sInstance;
+    private static volatile DataRepository sInstance;
 
     private final AppExecutors mExecutors;
     private final AppDatabase mDatabase;
     private final LifecycleRegistry mLifeCycle;
     private MediatorLiveData<List<SitePermission>> mObservablePopUps;
+    private final SitePermissionCache mSitePermissionCache;
 
     private DataRepository(final @NonNull AppDatabase database, final @NonNull AppExecutors executors) {
         mDatabase = database;
@@ -34,6 +37,9 @@ public class DataRepository implements LifecycleOwner {
                         mObservablePopUps.postValue(sites);
                     }
                 });
+
+        mSitePermissionCache = new SitePermissionCache();
+        mExecutors.diskIO().execute(() -> mSitePermissionCache.load(mDatabase.sitePermissionDao().getAll()));
     }
 
     public static DataRepository getInstance(final @NonNull AppDatabase database, final AppExecutors executors) {
@@ -58,26 +64,64 @@ public class DataRepository implements LifecycleOwner {
         return mObservablePopUps;
     }
 
+    /**
+     * Site permissions indexed by category and host, kept up to date by the repository writes.
+     */
+    @NonNull
+    public SitePermissionCache getSitePermissionCache() {
+        return mSitePermissionCache;
+    }
+
     public CompletableFuture<SitePermission> getSitePermission(String aURL, @SitePermission.Category int category) {
-        CompletableFuture<SitePermission> future = new CompletableFuture<>();
-        mExecutors.diskIO().execute(() -> mDatabase.sitePermissionDao().findByUrl(aURL, category));
-        return future;
+        return mSitePermissionCache.getLoaded().thenApply(loaded -> mSitePermissionCache.get(aURL, category));
     }
 
+    /**
+     * The cache and the database get their own copies of the sites: the database writes update
+     * the ids on the disk thread while the cached sites are read from any thread.
+     */
     public void insertSitePermission(final @NonNull SitePermission site) {
-        mExecutors.diskIO().execute(() -> mDatabase.sitePermissionDao().insert(site));
+        mSitePermissionCache.put(new SitePermission(site));
+        final SitePermission row = new SitePermission(site);
+        mExecutors.diskIO().execute(() -> mDatabase.sitePermissionDao().insertOrReplace(row));
+    }
+
+    /**
+     * Replaces the sites of a category, only the changed rows are written.
+     */
+    public void replaceSitePermissions(@SitePermission.Category int category, final @NonNull List<SitePermission> sites) {
+        mSitePermissionCache.replaceAll(category, copy(sites, category));
+        final List<SitePermission> rows = copy(sites, category);
+        mExecutors.diskIO().execute(() -> mDatabase.sitePermissionDao().replaceAll(category, rows));
     }
 
     public void deleteSitePermission(final @NonNull SitePermission site) {
-        mExecutors.diskIO().execute(() -> mDatabase.sitePermissionDao().delete(site));
+        mSitePermissionCache.remove(site);
+        final String url = site.url;
+        final @SitePermission.Category int category = site.category;
+        mExecutors.diskIO().execute(() -> mDatabase.sitePermissionDao().deleteByUrl(url, category));
     }
 
     public void deleteSites(final @NonNull List<SitePermission> sites) {
-        mExecutors.diskIO().execute(() -> mDatabase.sitePermissionDao().delete(sites));
+        sites.forEach(mSitePermissionCache::remove);
+        final List<SitePermission> rows = sites.stream().map(SitePermission::new).collect(Collectors.toList());
+        mExecutors.diskIO().execute(() -> mDatabase.sitePermissionDao().deleteAllByUrl(rows));
     }
 
     public void deleteAllSitePermission(@SitePermission.Category int category) {
+        mSitePermissionCache.removeAll(category);
         mExecutors.diskIO().execute(() -> mDatabase.sitePermissionDao().deleteAll(category));
     }
 
+    @NonNull
+    private static List<SitePermission> copy(@NonNull List<SitePermission> aSites, @SitePermission.Category int aCategory) {
+        List<SitePermission> result = new ArrayList<>(aSites.size());
+        for (SitePermission site : aSites) {
+            SitePermission copy = new SitePermission(site);
+            copy.category = aCategory;
+            result.add(copy);
+        }
+        return result;
+    }
+
 }
@@ -5,9 +5,11 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
-@Entity
+@Entity(indices = {@Index(value = {"category", "url"})})
 public class SitePermission {
     @IntDef(value = { SITE_PERMISSION_POPUP, SITE_PERMISSION_WEBXR, SITE_PERMISSION_TRACKING, SITE_PERMISSION_DRM})
     public @interface Category {}
@@ -23,6 +25,15 @@ public class SitePermission {
         this.allowed = false;
     }
 
+    @Ignore
+    public SitePermission(@NonNull SitePermission other) {
+        this.id = other.id;
+        this.url = other.url;
+        this.principal = other.principal;
+        this.allowed = other.allowed;
+        this.category = other.category;
+    }
+
     @PrimaryKey(autoGenerate = true)
     public int id;
 
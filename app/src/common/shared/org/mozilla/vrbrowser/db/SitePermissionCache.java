@@ -0,0 +1,170 @@
+package org.mozilla.vrbrowser.db;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.mozilla.vrbrowser.utils.UrlUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory copy of the site permissions indexed by category and url, and by category and normalized host.
+ *
+ * The cache is loaded once from the database and then kept up to date by the repository writes,
+ * so lookups are a single hash map access and can be done from any thread, including the
+ * GeckoSession delegate callbacks. Writes made before the load completes win over the loaded rows,
+ * removed sites are remembered until then so the load doesn't bring them back.
+ */
+public class SitePermissionCache {
+
+    private final Object mLock = new Object();
+    // Sites by category and exact url.
+    private final ConcurrentHashMap<String, SitePermission> mSites = new ConcurrentHashMap<>();
+    // Number of sites by category and normalized host.
+    private final ConcurrentHashMap<String, Integer> mHosts = new ConcurrentHashMap<>();
+    private final CompletableFuture<Void> mLoaded = new CompletableFuture<>();
+    // Removals made before the load completed, guarded by mLock.
+    private final HashSet<String> mRemovedKeys = new HashSet<>();
+    private final HashSet<Integer> mClearedCategories = new HashSet<>();
+
+    /**
+     * Completes once the cache has been loaded from the database.
+     */
+    @NonNull
+    public CompletableFuture<Void> getLoaded() {
+        return mLoaded;
+    }
+
+    public boolean isLoaded() {
+        return mLoaded.isDone();
+    }
+
+    /**
+     * Returns the site stored with this exact url.
+     */
+    @Nullable
+    public SitePermission get(@NonNull String aUrl, @SitePermission.Category int aCategory) {
+        return mSites.get(key(aUrl, aCategory));
+    }
+
+    /**
+     * Checks if any site is stored for the host of the url.
+     */
+    public boolean contains(@NonNull String aUrl, @SitePermission.Category int aCategory) {
+        return mHosts.containsKey(hostKey(aUrl, aCategory));
+    }
+
+    @NonNull
+    public List<SitePermission> getAll(@SitePermission.Category int aCategory) {
+        List<SitePermission> result = new ArrayList<>();
+        for (SitePermission site : mSites.values()) {
+            if (site.category == aCategory) {
+                result.add(site);
+            }
+        }
+        return result;
+    }
+
+    void load(@NonNull Collection<SitePermission> aSites) {
+        synchronized (mLock) {
+            for (SitePermission site : aSites) {
+                String key = key(site.url, site.category);
+                if (mRemovedKeys.contains(key) || mClearedCategories.contains(site.category)) {
+                    continue;
+                }
+                // Sites written before the load finished are newer than the loaded ones.
+                if (!mSites.containsKey(key)) {
+                    putLocked(key, site);
+                }
+            }
+            mRemovedKeys.clear();
+            mClearedCategories.clear();
+            mLoaded.complete(null);
+        }
+    }
+
+    void put(@NonNull SitePermission aSite) {
+        synchronized (mLock) {
+            String key = key(aSite.url, aSite.category);
+            mRemovedKeys.remove(key);
+            putLocked(key, aSite);
+        }
+    }
+
+    void remove(@NonNull SitePermission aSite) {
+        synchronized (mLock) {
+            String key = key(aSite.url, aSite.category);
+            removeLocked(key);
+            if (!mLoaded.isDone()) {
+                mRemovedKeys.add(key);
+            }
+        }
+    }
+
+    void removeAll(@SitePermission.Category int aCategory) {
+        synchronized (mLock) {
+            removeAllLocked(aCategory);
+        }
+    }
+
+    void replaceAll(@SitePermission.Category int aCategory, @NonNull List<SitePermission> aSites) {
+        synchronized (mLock) {
+            removeAllLocked(aCategory);
+            for (SitePermission site : aSites) {
+                putLocked(key(site.url, site.category), site);
+            }
+        }
+    }
+
+    private void putLocked(@NonNull String aKey, @NonNull SitePermission aSite) {
+        if (mSites.put(aKey, aSite) == null) {
+            mHosts.merge(hostKey(aSite.url, aSite.category), 1, Integer::sum);
+        }
+    }
+
+    private void removeLocked(@NonNull String aKey) {
+        SitePermission site = mSites.remove(aKey);
+        if (site != null) {
+            // Returning null from the merge removes the host.
+            mHosts.computeIfPresent(hostKey(site.url, site.category), (host, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    private void removeAllLocked(@SitePermission.Category int aCategory) {
+        for (SitePermission site : getAll(aCategory)) {
+            removeLocked(key(site.url, site.category));
+        }
+        if (!mLoaded.isDone()) {
+            mClearedCategories.add(aCategory);
+        }
+    }
+
+    /**
+     * Site permissions are stored either with a host or a full url, both map to the lower case host.
+     */
+    @NonNull
+    static String normalizeHost(@NonNull String aUrl) {
+        String host = aUrl.contains("://") ? UrlUtils.getHost(aUrl) : aUrl;
+        if (host == null) {
+            host = aUrl;
+        }
+        host = host.toLowerCase(Locale.ROOT);
+        return host.endsWith(".") ? host.substring(0, host.length() - 1) : host;
+    }
+
+    @NonNull
+    private static String key(@NonNull String aUrl, @SitePermission.Category int aCategory) {
+        return aCategory + ":" + aUrl;
+    }
+
+    @NonNull
+    private static String hostKey(@NonNull String aUrl, @SitePermission.Category int aCategory) {
+        return aCategory + ":" + normalizeHost(aUrl);
+    }
+}
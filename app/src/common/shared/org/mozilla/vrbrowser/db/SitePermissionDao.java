@@ -6,30 +6,122 @@ import androidx.room.Delete;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.Transaction;
+import androidx.room.Update;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 
 @Dao
-public interface SitePermissionDao {
+public abstract class SitePermissionDao {
     @Query("SELECT * FROM SitePermission")
-    LiveData<List<SitePermission>> loadAll();
+    public abstract LiveData<List<SitePermission>> loadAll();
 
-    @Query("SELECT * FROM SitePermission WHERE category = :category AND url LIKE :url LIMIT 1")
-    LiveData<SitePermission> findByUrl(String url, @SitePermission.Category int category);
+    @Query("SELECT * FROM SitePermission")
+    public abstract List<SitePermission> getAll();
+
+    @Query("SELECT * FROM SitePermission WHERE category = :category")
+    public abstract List<SitePermission> getAll(@SitePermission.Category int category);
+
+    @Query("SELECT * FROM SitePermission WHERE category = :category AND url = :url LIMIT 1")
+    public abstract LiveData<SitePermission> findByUrl(String url, @SitePermission.Category int category);
 
     @Insert(onConflict = OnConflictStrategy.REPLACE)
-    void insert(SitePermission site);
+    public abstract long insert(SitePermission site);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    public abstract long[] insert(List<SitePermission> sites);
+
+    @Update
+    public abstract void update(List<SitePermission> sites);
 
     @Delete
-    void delete(SitePermission site);
+    public abstract void delete(SitePermission site);
 
     @Delete
-    void delete(List<SitePermission> sites);
+    public abstract void delete(List<SitePermission> sites);
 
     @Query("DELETE FROM SitePermission WHERE url = :url AND category = :category")
-    void deleteByUrl(String url, @SitePermission.Category int category);
+    public abstract void deleteByUrl(String url, @SitePermission.Category int category);
 
     @Query("DELETE FROM SitePermission WHERE category = :category")
-    void deleteAll(@SitePermission.Category int category);
-}
+    public abstract void deleteAll(@SitePermission.Category int category);
+
+    /**
+     * Inserts the site, replacing the rows stored with the same url and category.
+     * The id of the given site is updated.
+     */
+    @Transaction
+    public long insertOrReplace(SitePermission site) {
+        deleteByUrl(site.url, site.category);
+        site.id = 0;
+        site.id = (int) insert(site);
+        return site.id;
+    }
+
+    /**
+     * Deletes the rows stored with the url and category of the given sites.
+     */
+    @Transaction
+    public void deleteAllByUrl(List<SitePermission> sites) {
+        for (SitePermission site : sites) {
+            deleteByUrl(site.url, site.category);
+        }
+    }
 
+    /**
+     * Replaces the sites of a category in a single transaction. Only the rows that changed are
+     * written: sites already stored with the same url keep their row, rows for urls that are not
+     * in the list are deleted and new urls are inserted. The ids of the given sites are updated.
+     * @return The number of inserted, updated and deleted rows.
+     */
+    @Transaction
+    public int replaceAll(@SitePermission.Category int category, List<SitePermission> sites) {
+        HashMap<String, SitePermission> stored = new HashMap<>();
+        List<SitePermission> deleted = new ArrayList<>();
+        for (SitePermission site : getAll(category)) {
+            if (stored.putIfAbsent(site.url, site) != null) {
+                // Duplicated url, only one row is kept.
+                deleted.add(site);
+            }
+        }
+
+        List<SitePermission> inserted = new ArrayList<>();
+        List<SitePermission> updated = new ArrayList<>();
+        HashSet<String> urls = new HashSet<>();
+        for (SitePermission site : sites) {
+            if (!urls.add(site.url)) {
+                continue;
+            }
+            site.category = category;
+            SitePermission current = stored.remove(site.url);
+            if (current == null) {
+                site.id = 0;
+                inserted.add(site);
+                continue;
+            }
+            site.id = current.id;
+            if (current.allowed != site.allowed || !Objects.equals(current.principal, site.principal)) {
+                updated.add(site);
+            }
+        }
+        deleted.addAll(stored.values());
+
+        if (!deleted.isEmpty()) {
+            delete(deleted);
+        }
+        if (!updated.isEmpty()) {
+            update(updated);
+        }
+        if (!inserted.isEmpty()) {
+            long[] ids = insert(inserted);
+            for (int i = 0; i < ids.length; i++) {
+                inserted.get(i).id = (int) ids[i];
+            }
+        }
+        return inserted.size() + updated.size() + deleted.size();
+    }
+}
@@ -67,7 +67,11 @@ public class DownloadsManager {
     }
 
     public void end() {
-        mContext.unregisterReceiver(mDownloadReceiver);
+        try {
+            // init() is deferred until after the first frame so the receiver may not be registered.
+            mContext.unregisterReceiver(mDownloadReceiver);
+
+        } catch (IllegalArgumentException ignored) {}
     }
 
     public void addListener(@NonNull DownloadsListener listener) {
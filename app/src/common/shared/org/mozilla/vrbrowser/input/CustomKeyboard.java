@@ -13,6 +13,7 @@ import android.view.KeyEvent;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class CustomKeyboard extends Keyboard {
@@ -22,6 +23,14 @@ public class CustomKeyboard extends Keyboard {
     private Key mModeChangeKey;
     private int mMaxColumns;
     private int[] mDisabledKeysIndexes;
+    private int[][] mProximityCells;
+    private int[][] mKeyIndices;
+    private int mProximityCellWidth;
+    private int mProximityCellHeight;
+
+    private static final int PROXIMITY_GRID_COLUMNS = 12;
+    private static final int PROXIMITY_GRID_ROWS = 6;
+    private static final int[] EMPTY_KEY_INDICES = new int[0];
 
     public static final int KEYCODE_SYMBOLS_CHANGE = -10;
     public static final int KEYCODE_VOICE_INPUT = -11;
@@ -188,15 +197,59 @@ public class CustomKeyboard extends Keyboard {
     // Override to fix the bug of not all the touch area covered in wide buttons (e.g. space)
     @Override
     public int[] getNearestKeys(int x, int y) {
+        if (mProximityCells == null) {
+            computeProximityCells();
+        }
         List<Key> keys = getKeys();
-        Key[] mKeys = keys.toArray(new Key[keys.size()]);
-        int i = 0;
-        for (Key key : mKeys) {
-            if(key.isInside(x, y))
-                return new int[]{i};
-            i++;
+        int column = Math.max(0, Math.min(PROXIMITY_GRID_COLUMNS - 1, x / mProximityCellWidth));
+        int row = Math.max(0, Math.min(PROXIMITY_GRID_ROWS - 1, y / mProximityCellHeight));
+        for (int index : mProximityCells[row * PROXIMITY_GRID_COLUMNS + column]) {
+            if (keys.get(index).isInside(x, y)) {
+                return mKeyIndices[index];
+            }
+        }
+        return EMPTY_KEY_INDICES;
+    }
+
+    /**
+     * Key geometry doesn't change once the layout is loaded so we bucket the keys into a coarse
+     * grid once and reuse it for every hover/touch event instead of scanning all the keys.
+     * Edge keys extend past the keyboard bounds (see {@link Key#isInside}) so the outer cells
+     * are treated as unbounded. Cells may hold a few extra candidates, the final hit test is
+     * still done by {@link Key#isInside}.
+     */
+    private void computeProximityCells() {
+        List<Key> keys = getKeys();
+        mProximityCellWidth = Math.max(1, (getMinWidth() + PROXIMITY_GRID_COLUMNS - 1) / PROXIMITY_GRID_COLUMNS);
+        mProximityCellHeight = Math.max(1, (getHeight() + PROXIMITY_GRID_ROWS - 1) / PROXIMITY_GRID_ROWS);
+        mKeyIndices = new int[keys.size()][];
+        for (int i = 0; i < keys.size(); i++) {
+            mKeyIndices[i] = new int[]{i};
+        }
+
+        int[][] cells = new int[PROXIMITY_GRID_COLUMNS * PROXIMITY_GRID_ROWS][];
+        int[] candidates = new int[keys.size()];
+        for (int row = 0; row < PROXIMITY_GRID_ROWS; row++) {
+            long cellTop = row == 0 ? Long.MIN_VALUE : (long)row * mProximityCellHeight;
+            long cellBottom = row == PROXIMITY_GRID_ROWS - 1 ? Long.MAX_VALUE : (long)(row + 1) * mProximityCellHeight;
+            for (int column = 0; column < PROXIMITY_GRID_COLUMNS; column++) {
+                long cellLeft = column == 0 ? Long.MIN_VALUE : (long)column * mProximityCellWidth;
+                long cellRight = column == PROXIMITY_GRID_COLUMNS - 1 ? Long.MAX_VALUE : (long)(column + 1) * mProximityCellWidth;
+                int count = 0;
+                for (int i = 0; i < keys.size(); i++) {
+                    Key key = keys.get(i);
+                    long keyLeft = (key.edgeFlags & EDGE_LEFT) > 0 ? Long.MIN_VALUE : key.x;
+                    long keyRight = (key.edgeFlags & EDGE_RIGHT) > 0 ? Long.MAX_VALUE : (long)key.x + key.width + 1;
+                    long keyTop = (key.edgeFlags & EDGE_TOP) > 0 ? Long.MIN_VALUE : key.y;
+                    long keyBottom = (key.edgeFlags & EDGE_BOTTOM) > 0 ? Long.MAX_VALUE : (long)key.y + key.height + 1;
+                    if (keyLeft < cellRight && keyRight > cellLeft && keyTop < cellBottom && keyBottom > cellTop) {
+                        candidates[count++] = i;
+                    }
+                }
+                cells[row * PROXIMITY_GRID_COLUMNS + column] = Arrays.copyOf(candidates, count);
+            }
         }
-        return new int[0];
+        mProximityCells = cells;
     }
 
     public boolean setEnterKeyLabel(String aText) {
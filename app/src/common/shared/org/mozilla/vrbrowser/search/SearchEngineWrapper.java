@@ -4,25 +4,29 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.SharedPreferences;
 import android.net.Uri;
-import android.preference.PreferenceManager;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 
 import org.mozilla.vrbrowser.R;
+import org.mozilla.vrbrowser.VRBrowserApplication;
+import org.mozilla.vrbrowser.browser.SettingsEngine;
 import org.mozilla.vrbrowser.browser.SettingsStore;
 import org.mozilla.vrbrowser.geolocation.GeolocationData;
 import org.mozilla.vrbrowser.search.suggestions.SearchSuggestionsCLientKt;
+import org.mozilla.vrbrowser.utils.ConnectivityReceiver;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import kotlinx.coroutines.Dispatchers;
 import mozilla.components.browser.search.SearchEngine;
@@ -33,7 +37,7 @@ import mozilla.components.browser.search.provider.localization.LocaleSearchLocal
 import mozilla.components.browser.search.provider.localization.SearchLocalizationProvider;
 import mozilla.components.browser.search.suggestions.SearchSuggestionClient;
 
-public class SearchEngineWrapper implements SharedPreferences.OnSharedPreferenceChangeListener {
+public class SearchEngineWrapper implements SettingsEngine.SettingListener {
 
     private static final String LOGTAG = SystemUtils.createLogtag(SearchEngineWrapper.class);
 
@@ -48,6 +52,7 @@ public class SearchEngineWrapper implements SharedPreferences.OnSharedPreference
     }};
 
     private static String EMPTY = "";
+    private static final String SUGGESTIONS_CACHE_FILENAME = "search_suggestions.json";
 
     private static SearchEngineWrapper mSearchEngineWrapperInstance;
 
@@ -63,11 +68,17 @@ public class SearchEngineWrapper implements SharedPreferences.OnSharedPreference
     private Context mContext;
     private SearchEngine mSearchEngine;
     private SearchSuggestionClient mSuggestionsClient;
-    private SharedPreferences mPrefs;
+    private SettingsEngine mSettings;
+    private SearchSuggestionsCache mSuggestionsCache;
+    // Incremented when the cache is cleared, requests started before are not cached.
+    private final AtomicInteger mSuggestionsCacheGeneration = new AtomicInteger();
 
     private SearchEngineWrapper(@NonNull Context aContext) {
         mContext = aContext;
-        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mSettings = SettingsStore.getInstance(mContext).getSettings();
+        mSuggestionsCache = new SearchSuggestionsCache(
+                new File(aContext.getCacheDir(), SUGGESTIONS_CACHE_FILENAME),
+                ((VRBrowserApplication)aContext.getApplicationContext()).getExecutors().diskIO());
 
         setupSearchEngine(aContext, EMPTY);
     }
@@ -77,8 +88,8 @@ public class SearchEngineWrapper implements SharedPreferences.OnSharedPreference
             mContext.registerReceiver(
                     mLocaleChangedReceiver,
                     new IntentFilter(Intent.ACTION_LOCALE_CHANGED));
-            if (mPrefs != null) {
-                mPrefs.registerOnSharedPreferenceChangeListener(this);
+            if (mSettings != null) {
+                mSettings.addListener(mContext.getString(R.string.settings_key_geolocation_data), this);
             }
         }
     }
@@ -89,8 +100,8 @@ public class SearchEngineWrapper implements SharedPreferences.OnSharedPreference
                 mContext.unregisterReceiver(mLocaleChangedReceiver);
 
             } catch(IllegalArgumentException ignored) {}
-            if (mPrefs != null) {
-                mPrefs.unregisterOnSharedPreferenceChangeListener(this);
+            if (mSettings != null) {
+                mSettings.removeListener(mContext.getString(R.string.settings_key_geolocation_data), this);
             }
         }
     }
@@ -99,9 +110,53 @@ public class SearchEngineWrapper implements SharedPreferences.OnSharedPreference
         return mSearchEngine.buildSearchUrl(aQuery);
     }
 
-    public CompletableFuture<List<String>> getSuggestions(String aQuery) {
+    /**
+     * @param aPrivate Queries typed in private windows are neither read from nor added to the cache.
+     */
+    public CompletableFuture<List<String>> getSuggestions(String aQuery, boolean aPrivate) {
         String query = mSearchEngine.buildSuggestionsURL(aQuery);
-        return SearchSuggestionsCLientKt.getSuggestionsAsync(mSuggestionsClient, query != null ? query : "");
+        if (aPrivate) {
+            return SearchSuggestionsCLientKt.getSuggestionsAsync(mSuggestionsClient, query != null ? query : "");
+        }
+
+        final String engine = getIdentifier();
+        final int generation = mSuggestionsCacheGeneration.get();
+        final String normalizedQuery = SearchSuggestionsCache.normalize(aQuery);
+        List<String> cached = mSuggestionsCache.get(engine, normalizedQuery, !ConnectivityReceiver.isNetworkAvailable(mContext));
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<List<String>> future = SearchSuggestionsCLientKt.getSuggestionsAsync(mSuggestionsClient, query != null ? query : "");
+        // The client future is returned as is so callers can still cancel the request.
+        future.whenComplete((suggestions, throwable) -> {
+            if (throwable instanceof CancellationException || throwable != null && throwable.getCause() instanceof CancellationException) {
+                return;
+            }
+            if (generation != mSuggestionsCacheGeneration.get()) {
+                // The cache was cleared while the request was running.
+                return;
+            }
+            if (suggestions != null) {
+                mSuggestionsCache.put(engine, normalizedQuery, suggestions);
+            } else {
+                mSuggestionsCache.putFailure(engine, normalizedQuery);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Clears the cached suggestions, called when the history or the browsing data are cleared.
+     */
+    public void clearSuggestionsCache() {
+        mSuggestionsCacheGeneration.incrementAndGet();
+        mSuggestionsCache.clear();
+    }
+
+    @NonNull
+    public SearchSuggestionsCache getSuggestionsCache() {
+        return mSuggestionsCache;
     }
 
     public String getResourceURL() {
@@ -174,13 +229,14 @@ public class SearchEngineWrapper implements SharedPreferences.OnSharedPreference
         return REGION_ENGINE_OVERRIDE.get(aCountryCode);
     }
 
-    // SharedPreferences.OnSharedPreferenceChangeListener
+    // SettingsEngine.SettingListener
 
     @Override
-    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+    public void onSettingChanged(@NonNull String aKey) {
         if (mContext != null) {
-            if (key.equals(mContext.getString(R.string.settings_key_geolocation_data))) {
+            if (aKey.equals(mContext.getString(R.string.settings_key_geolocation_data))) {
                 setupSearchEngine(mContext, EMPTY);
+                clearSuggestionsCache();
             }
         }
     }
@@ -0,0 +1,200 @@
+package org.mozilla.vrbrowser.search;
+
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache for the remote search engine suggestions, keyed by engine identifier and normalized query.
+ * Failed lookups are cached for a shorter time so a flaky network isn't hit on every keystroke.
+ * When a file is provided successful lookups are persisted, and expired entries can still be served
+ * while the device is offline.
+ */
+public class SearchSuggestionsCache {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(SearchSuggestionsCache.class);
+
+    private static final int MAX_ENTRIES = 256;
+    private static final long TTL_MS = 60 * 60 * 1000L;
+    private static final long NEGATIVE_TTL_MS = 60 * 1000L;
+
+    private static class Entry {
+        List<String> suggestions;
+        long timestamp;
+        boolean failed;
+
+        Entry(@NonNull List<String> aSuggestions, long aTimestamp, boolean aFailed) {
+            suggestions = aSuggestions;
+            timestamp = aTimestamp;
+            failed = aFailed;
+        }
+    }
+
+    private LruCache<String, Entry> mEntries = new LruCache<>(MAX_ENTRIES);
+    private File mFile;
+    private Executor mDiskExecutor;
+    private AtomicBoolean mSavePending = new AtomicBoolean(false);
+    // Lookups are made from the UI thread and the suggestions threads.
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mNegativeHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+    /**
+     * @param aFile File used to persist the cache or null to keep it in memory.
+     * @param aDiskExecutor Executor used to load and save the cache file.
+     */
+    public SearchSuggestionsCache(@Nullable File aFile, @NonNull Executor aDiskExecutor) {
+        mFile = aFile;
+        mDiskExecutor = aDiskExecutor;
+        if (mFile != null) {
+            mDiskExecutor.execute(this::load);
+        }
+    }
+
+    /**
+     * Returns the cached suggestions for the query, an empty list for a recently failed lookup or null on a miss.
+     * @param aAllowExpired Serve expired successful lookups, used when the network is not available.
+     */
+    @Nullable
+    public List<String> get(@NonNull String aEngine, @NonNull String aQuery, boolean aAllowExpired) {
+        Entry entry = mEntries.get(key(aEngine, aQuery));
+        if (entry != null) {
+            long age = System.currentTimeMillis() - entry.timestamp;
+            if (entry.failed && age < NEGATIVE_TTL_MS) {
+                mNegativeHits.incrementAndGet();
+                return Collections.emptyList();
+
+            } else if (!entry.failed && (age < TTL_MS || aAllowExpired)) {
+                mHits.incrementAndGet();
+                return entry.suggestions;
+            }
+        }
+        mMisses.incrementAndGet();
+        return null;
+    }
+
+    public void put(@NonNull String aEngine, @NonNull String aQuery, @NonNull List<String> aSuggestions) {
+        mEntries.put(key(aEngine, aQuery), new Entry(Collections.unmodifiableList(new ArrayList<>(aSuggestions)),
+                System.currentTimeMillis(), false));
+        scheduleSave();
+    }
+
+    public void putFailure(@NonNull String aEngine, @NonNull String aQuery) {
+        String key = key(aEngine, aQuery);
+        Entry previous = mEntries.get(key);
+        if (previous != null && !previous.failed) {
+            // Keep the previous results, they can still be served offline.
+            return;
+        }
+        mEntries.put(key, new Entry(Collections.emptyList(), System.currentTimeMillis(), true));
+    }
+
+    /**
+     * Removes all the entries and deletes the cache file.
+     */
+    public void clear() {
+        mEntries.evictAll();
+        if (mFile != null) {
+            mDiskExecutor.execute(() -> {
+                if (mFile.exists() && !mFile.delete()) {
+                    Log.e(LOGTAG, "Error deleting search suggestions cache");
+                }
+            });
+        }
+    }
+
+    public long getHitCount() {
+        return mHits.get();
+    }
+
+    public long getNegativeHitCount() {
+        return mNegativeHits.get();
+    }
+
+    public long getMissCount() {
+        return mMisses.get();
+    }
+
+    /**
+     * Share of the lookups answered from the cache, including the recently failed ones.
+     */
+    public float getHitRate() {
+        long hits = mHits.get() + mNegativeHits.get();
+        long lookups = hits + mMisses.get();
+        return lookups > 0 ? (float) hits / lookups : 0;
+    }
+
+    @NonNull
+    static String normalize(@NonNull String aQuery) {
+        return aQuery.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private static String key(@NonNull String aEngine, @NonNull String aQuery) {
+        return aEngine + '\n' + normalize(aQuery);
+    }
+
+    private void scheduleSave() {
+        if (mFile != null && mSavePending.compareAndSet(false, true)) {
+            mDiskExecutor.execute(this::save);
+        }
+    }
+
+    private void save() {
+        mSavePending.set(false);
+        Map<String, Entry> snapshot = mEntries.snapshot();
+        snapshot.values().removeIf(entry -> entry.failed);
+        try (Writer writer = new FileWriter(mFile)) {
+            new GsonBuilder().create().toJson(snapshot, writer);
+
+        } catch (Exception e) {
+            Log.e(LOGTAG, "Error saving search suggestions cache: " + e.getLocalizedMessage());
+            mFile.delete();
+        }
+    }
+
+    private void load() {
+        if (!mFile.exists()) {
+            return;
+        }
+        try (Reader reader = new FileReader(mFile)) {
+            Gson gson = new GsonBuilder().create();
+            Type type = new TypeToken<Map<String, Entry>>() {}.getType();
+            Map<String, Entry> restored = gson.fromJson(reader, type);
+            if (restored != null) {
+                // The snapshot is ordered from least to most recently used.
+                restored.forEach((key, entry) -> {
+                    if (entry.suggestions != null && mEntries.get(key) == null) {
+                        mEntries.put(key, entry);
+                    }
+                });
+            }
+
+        } catch (Exception e) {
+            Log.w(LOGTAG, "Error restoring search suggestions cache: " + e.getLocalizedMessage());
+            mFile.delete();
+        }
+    }
+}
@@ -4,8 +4,11 @@ import android.content.Context;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import org.mozilla.vrbrowser.VRBrowserApplication;
+import org.mozilla.vrbrowser.browser.LocalSearchIndex;
+import org.mozilla.vrbrowser.browser.engine.Session;
 import org.mozilla.vrbrowser.browser.engine.SessionStore;
 import org.mozilla.vrbrowser.search.SearchEngineWrapper;
 import org.mozilla.vrbrowser.ui.widgets.SuggestionsWidget.SuggestionItem;
@@ -15,14 +18,30 @@ import org.mozilla.vrbrowser.utils.UrlUtils;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
-import java.util.function.Supplier;
 
 public class SuggestionsProvider {
 
     private static final String LOGTAG = SuggestionsProvider.class.getSimpleName();
 
+    // Maximum number of merged suggestions delivered to the UI.
+    private static final int MAX_SUGGESTIONS = 50;
+    private static final int LOCAL_QUERY_LIMIT = 100;
+
+    private static final int SOURCE_SEARCH_ENGINE = 0;
+    private static final int SOURCE_BOOKMARKS = 1;
+    private static final int SOURCE_HISTORY = 2;
+    private static final int SOURCE_COUNT = 3;
+
+    public interface SuggestionsListener {
+        /**
+         * Called on the UI thread every time one of the sources answers, with the merged results so far.
+         */
+        void onSuggestionsUpdated(@NonNull List<SuggestionItem> aItems);
+    }
+
     public static class DefaultSuggestionsComparator implements Comparator<SuggestionItem> {
 
         public int compare(SuggestionItem obj1, SuggestionItem obj2) {
@@ -44,17 +63,79 @@ public class SuggestionsProvider {
         }
     }
 
+    /**
+     * Local results of the last query. Places matches every word of the query as a substring of the
+     * title or url and the local search index matches them as token prefixes, so when the new query
+     * extends the previous one and the previous results were not truncated by the query limit, the
+     * new results are the previous ones filtered the same way the backend that produced them does.
+     */
+    private static class LocalResults {
+        final String query;
+        final List<SuggestionItem> items;
+        final boolean complete;
+        final boolean indexed;
+
+        LocalResults(@NonNull String aQuery, @NonNull List<SuggestionItem> aItems, boolean aComplete, boolean aIndexed) {
+            query = aQuery;
+            items = aItems;
+            complete = aComplete;
+            indexed = aIndexed;
+        }
+
+        @Nullable
+        List<SuggestionItem> filter(@NonNull String aQuery) {
+            if (!complete || !aQuery.startsWith(query)) {
+                return null;
+            }
+            String[] words = aQuery.trim().split("\\s+");
+            List<SuggestionItem> result = new ArrayList<>();
+            for (SuggestionItem item : items) {
+                if (indexed ? matchesIndex(item, aQuery) : matches(item, words)) {
+                    result.add(item);
+                }
+            }
+            return result;
+        }
+
+        private static boolean matchesIndex(@NonNull SuggestionItem aItem, @NonNull String aQuery) {
+            if (aItem.url == null) {
+                return false;
+            }
+            // History items without a title show the url, which is only indexed as the url
+            String title = aItem.url.equals(aItem.title) ? null : aItem.title;
+            return LocalSearchIndex.matches(title, aItem.url, aQuery);
+        }
+
+        private static boolean matches(@NonNull SuggestionItem aItem, @NonNull String[] aWords) {
+            String title = aItem.title != null ? aItem.title.toLowerCase() : "";
+            String url = aItem.url != null ? aItem.url.toLowerCase() : "";
+            for (String word : aWords) {
+                if (!title.contains(word) && !url.contains(word)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     private SearchEngineWrapper mSearchEngineWrapper;
     private String mText;
     private String mFilterText;
     private Comparator<SuggestionItem> mComparator;
     private Executor mUIThreadExecutor;
+    private Executor mBackgroundExecutor;
+    private volatile LocalResults mBookmarkResults;
+    private volatile LocalResults mHistoryResults;
+    private int mGeneration;
+    private List<CompletableFuture<?>> mPendingQueries = new ArrayList<>();
+    private int mPlacesQueries;
 
     public SuggestionsProvider(Context context) {
         mSearchEngineWrapper = SearchEngineWrapper.get(context);
         mFilterText = "";
         mComparator = new DefaultSuggestionsComparator();
         mUIThreadExecutor = ((VRBrowserApplication)context.getApplicationContext()).getExecutors().mainThread();
+        mBackgroundExecutor = ((VRBrowserApplication)context.getApplicationContext()).getExecutors().backgroundThread()::post;
     }
 
     private String getSearchURLOrDomain(String text) {
@@ -77,9 +158,75 @@ public class SuggestionsProvider {
         mComparator = comparator;
     }
 
-    private CompletableFuture<List<SuggestionItem>> getBookmarkSuggestions(@NonNull List<SuggestionItem> items) {
-        CompletableFuture<List<SuggestionItem>> future = new CompletableFuture<>();
-        SessionStore.get().getBookmarkStore().searchBookmarks(mFilterText, 100).thenAcceptAsync((bookmarks) -> {
+    /**
+     * Returns the number of Places queries issued, the rest of the local lookups were served
+     * by filtering the results of a shorter query.
+     */
+    public int getPlacesQueries() {
+        return mPlacesQueries;
+    }
+
+    /**
+     * Drops the cached local results, the next query will go to Places.
+     */
+    public void clearCache() {
+        mBookmarkResults = null;
+        mHistoryResults = null;
+    }
+
+    /**
+     * Cancels the queries in flight. Results of cancelled queries are never delivered.
+     */
+    public void cancel() {
+        mGeneration++;
+        for (CompletableFuture<?> future : mPendingQueries) {
+            future.cancel(true);
+        }
+        mPendingQueries.clear();
+    }
+
+    private <T> CompletableFuture<T> track(@NonNull CompletableFuture<T> aFuture) {
+        mPendingQueries.add(aFuture);
+        return aFuture;
+    }
+
+    /**
+     * Returns the local search index, or null if it isn't built yet.
+     */
+    @Nullable
+    private LocalSearchIndex getLocalIndex() {
+        LocalSearchIndex index = SessionStore.get().getLocalSearchIndex();
+        return index != null && index.isReady() ? index : null;
+    }
+
+    private CompletableFuture<List<SuggestionItem>> getBookmarkSuggestions(@NonNull String aFilterText,
+                                                                           @Nullable LocalSearchIndex aIndex) {
+        LocalResults cached = mBookmarkResults;
+        List<SuggestionItem> filtered = cached != null ? cached.filter(aFilterText) : null;
+        if (filtered != null) {
+            return CompletableFuture.completedFuture(filtered);
+        }
+
+        if (aIndex != null) {
+            return track(CompletableFuture.supplyAsync(() -> aIndex.searchBookmarks(aFilterText, LOCAL_QUERY_LIMIT), mBackgroundExecutor)).thenApply(results -> {
+                List<SuggestionItem> items = new ArrayList<>();
+                results.stream()
+                        .filter(r -> !r.url.startsWith("place:") && !r.url.startsWith("about:reader"))
+                        .forEach(r -> items.add(SuggestionItem.create(
+                                r.title != null ? r.title : "",
+                                r.url,
+                                null,
+                                Type.BOOKMARK,
+                                0
+                        )));
+                mBookmarkResults = new LocalResults(aFilterText, new ArrayList<>(items), results.size() < LOCAL_QUERY_LIMIT, true);
+                return items;
+            });
+        }
+
+        mPlacesQueries++;
+        return track(SessionStore.get().getBookmarkStore().searchBookmarks(aFilterText, LOCAL_QUERY_LIMIT)).thenApply((bookmarks) -> {
+            List<SuggestionItem> items = new ArrayList<>();
             bookmarks.stream()
                     .filter((b) -> b.getUrl() != null && !b.getUrl().startsWith("place:") &&
                             !b.getUrl().startsWith("about:reader"))
@@ -90,54 +237,57 @@ public class SuggestionsProvider {
                             Type.BOOKMARK,
                             0
                     )));
-            if (mComparator != null) {
-                items.sort(mComparator);
-            }
-            future.complete(items);
-
-        }, mUIThreadExecutor).exceptionally(throwable -> {
-            Log.d(LOGTAG, "Error getting bookmarks suggestions: " + throwable.getLocalizedMessage());
-            throwable.printStackTrace();
-            future.complete(items);
-            return null;
+            mBookmarkResults = new LocalResults(aFilterText, new ArrayList<>(items), bookmarks.size() < LOCAL_QUERY_LIMIT, false);
+            return items;
         });
-
-        return future;
     }
 
-    private CompletableFuture<List<SuggestionItem>> getHistorySuggestions(@NonNull final List<SuggestionItem> items) {
-        CompletableFuture<List<SuggestionItem>> future = new CompletableFuture<>();
-        SessionStore.get().getHistoryStore().getSuggestions(mFilterText, 100).thenAcceptAsync((history) -> {
-            history.forEach(h -> items.add(SuggestionItem.create(
-                            h.getTitle(),
-                            h.getUrl(),
-                            null,
-                            Type.HISTORY,
-                            h.getScore()
-                    )));
-            if (mComparator != null) {
-                items.sort(mComparator);
-            }
-            future.complete(items);
+    private CompletableFuture<List<SuggestionItem>> getHistorySuggestions(@NonNull String aFilterText,
+                                                                          @Nullable LocalSearchIndex aIndex) {
+        LocalResults cached = mHistoryResults;
+        List<SuggestionItem> filtered = cached != null ? cached.filter(aFilterText) : null;
+        if (filtered != null) {
+            return CompletableFuture.completedFuture(filtered);
+        }
 
-        }, mUIThreadExecutor).exceptionally(throwable -> {
-            Log.d(LOGTAG, "Error getting history suggestions: " + throwable.getLocalizedMessage());
-            throwable.printStackTrace();
-            future.complete(items);
-            return null;
-        });
+        if (aIndex != null) {
+            return track(CompletableFuture.supplyAsync(() -> aIndex.searchHistory(aFilterText, LOCAL_QUERY_LIMIT), mBackgroundExecutor)).thenApply(results -> {
+                List<SuggestionItem> items = new ArrayList<>();
+                results.forEach(r -> items.add(SuggestionItem.create(
+                        r.title != null ? r.title : r.url,
+                        r.url,
+                        null,
+                        Type.HISTORY,
+                        r.score
+                )));
+                mHistoryResults = new LocalResults(aFilterText, new ArrayList<>(items), results.size() < LOCAL_QUERY_LIMIT, true);
+                return items;
+            });
+        }
 
-        return future;
+        mPlacesQueries++;
+        return track(SessionStore.get().getHistoryStore().getSuggestions(aFilterText, LOCAL_QUERY_LIMIT)).thenApply((history) -> {
+            List<SuggestionItem> items = new ArrayList<>();
+            history.forEach(h -> items.add(SuggestionItem.create(
+                    h.getTitle(),
+                    h.getUrl(),
+                    null,
+                    Type.HISTORY,
+                    h.getScore()
+            )));
+            mHistoryResults = new LocalResults(aFilterText, new ArrayList<>(items), history.size() < LOCAL_QUERY_LIMIT, false);
+            return items;
+        });
     }
 
-    private CompletableFuture<List<SuggestionItem>> getSearchEngineSuggestions(@NonNull final List<SuggestionItem> items) {
-        CompletableFuture<List<SuggestionItem>> future = new CompletableFuture<>();
+    private List<SuggestionItem> getLocalSearchEngineItems(@NonNull String aText, @NonNull String aFilterText) {
+        List<SuggestionItem> items = new ArrayList<>();
 
         // Completion from browser-domains
-        if (!mText.equals(mFilterText)) {
+        if (!aText.equals(aFilterText)) {
             items.add(SuggestionItem.create(
-                    mText,
-                    getSearchURLOrDomain(mText),
+                    aText,
+                    getSearchURLOrDomain(aText),
                     null,
                     Type.COMPLETION,
                     0
@@ -146,15 +296,24 @@ public class SuggestionsProvider {
 
         // Original text
         items.add(SuggestionItem.create(
-                mFilterText,
-                getSearchURLOrDomain(mFilterText),
+                aFilterText,
+                getSearchURLOrDomain(aFilterText),
                 null,
                 Type.SUGGESTION,
                 0
         ));
 
-        // Suggestions
-        mSearchEngineWrapper.getSuggestions(mFilterText).thenAcceptAsync((suggestions) -> {
+        return items;
+    }
+
+    private CompletableFuture<List<SuggestionItem>> getSearchEngineSuggestions(@NonNull List<SuggestionItem> aLocalItems, @NonNull String aFilterText) {
+        Session session = SessionStore.get().getActiveSession();
+        boolean isPrivate = session != null && session.isPrivateMode();
+        return track(mSearchEngineWrapper.getSuggestions(aFilterText, isPrivate)).thenApply((suggestions) -> {
+            List<SuggestionItem> items = new ArrayList<>(aLocalItems);
+            if (suggestions == null) {
+                return items;
+            }
             suggestions.forEach(s -> {
                 String url = mSearchEngineWrapper.getSearchURL(s);
                 items.add(SuggestionItem.create(
@@ -165,26 +324,110 @@ public class SuggestionsProvider {
                         0
                 ));
             });
+            return items;
+        });
+    }
+
+    /**
+     * Keeps the sorted results of every source and merges them into a bounded list.
+     * Sources are sorted once when they answer, merging them is O(MAX_SUGGESTIONS * SOURCE_COUNT).
+     */
+    private static class SuggestionsMerger {
+        private final Comparator<SuggestionItem> mComparator;
+        @SuppressWarnings("unchecked")
+        private final List<SuggestionItem>[] mSources = new List[SOURCE_COUNT];
+
+        SuggestionsMerger(@Nullable Comparator<SuggestionItem> aComparator) {
+            mComparator = aComparator;
+        }
+
+        void setSource(int aSource, @NonNull List<SuggestionItem> aItems) {
             if (mComparator != null) {
-                items.sort(mComparator);
+                aItems.sort(mComparator);
             }
-            future.complete(items);
-
-        }, mUIThreadExecutor).exceptionally(throwable -> {
-            Log.d(LOGTAG, "Error getting search engine suggestions: " + throwable.getLocalizedMessage());
-            throwable.printStackTrace();
-            future.complete(items);
-            return null;
-        });
+            mSources[aSource] = aItems;
+        }
 
-        return future;
+        List<SuggestionItem> merge() {
+            List<SuggestionItem> result = new ArrayList<>();
+            int[] positions = new int[SOURCE_COUNT];
+            while (result.size() < MAX_SUGGESTIONS) {
+                int best = -1;
+                for (int source = 0; source < SOURCE_COUNT; source++) {
+                    List<SuggestionItem> items = mSources[source];
+                    if (items == null || positions[source] >= items.size()) {
+                        continue;
+                    }
+                    // Ties keep the source order (search engine, bookmarks, history).
+                    if (best < 0 || (mComparator != null &&
+                            mComparator.compare(items.get(positions[source]), mSources[best].get(positions[best])) < 0)) {
+                        best = source;
+                    }
+                }
+                if (best < 0) {
+                    break;
+                }
+                result.add(mSources[best].get(positions[best]++));
+            }
+            return result;
+        }
     }
 
     public CompletableFuture<List<SuggestionItem>> getSuggestions() {
-        return CompletableFuture.supplyAsync((Supplier<ArrayList<SuggestionItem>>) ArrayList::new)
-                .thenComposeAsync(this::getSearchEngineSuggestions)
-                .thenComposeAsync(this::getBookmarkSuggestions)
-                .thenComposeAsync(this::getHistorySuggestions);
+        return getSuggestions(null);
+    }
+
+    /**
+     * Queries the search engine, bookmarks and history in parallel. The listener receives the merged
+     * results every time a source answers, so local matches don't wait for the network round trip.
+     * The returned future completes with the final merged list once all the sources have answered.
+     * Starting a new query cancels the previous one.
+     */
+    public CompletableFuture<List<SuggestionItem>> getSuggestions(@Nullable SuggestionsListener aListener) {
+        cancel();
+        final int generation = mGeneration;
+        final String text = mText != null ? mText : mFilterText;
+        final String filterText = mFilterText;
+        final SuggestionsMerger merger = new SuggestionsMerger(mComparator);
+
+        List<SuggestionItem> localItems = getLocalSearchEngineItems(text, filterText);
+        merger.setSource(SOURCE_SEARCH_ENGINE, new ArrayList<>(localItems));
+        if (aListener != null) {
+            aListener.onSuggestionsUpdated(merger.merge());
+        }
+
+        LocalSearchIndex index = getLocalIndex();
+        CompletableFuture<Void> searchEngine = deliver(merger, SOURCE_SEARCH_ENGINE,
+                getSearchEngineSuggestions(localItems, filterText), generation, aListener, "search engine");
+        CompletableFuture<Void> bookmarks = deliver(merger, SOURCE_BOOKMARKS,
+                getBookmarkSuggestions(filterText, index), generation, aListener, "bookmarks");
+        CompletableFuture<Void> history = deliver(merger, SOURCE_HISTORY,
+                getHistorySuggestions(filterText, index), generation, aListener, "history");
+
+        return CompletableFuture.allOf(searchEngine, bookmarks, history).thenApplyAsync(aVoid -> merger.merge(), mUIThreadExecutor);
+    }
+
+    private CompletableFuture<Void> deliver(@NonNull SuggestionsMerger aMerger, int aSource,
+                                            @NonNull CompletableFuture<List<SuggestionItem>> aFuture,
+                                            int aGeneration,
+                                            @Nullable SuggestionsListener aListener,
+                                            @NonNull String aName) {
+        return aFuture.exceptionally(throwable -> {
+            if (throwable instanceof CancellationException || throwable.getCause() instanceof CancellationException) {
+                return null;
+            }
+            Log.d(LOGTAG, "Error getting " + aName + " suggestions: " + throwable.getLocalizedMessage());
+            throwable.printStackTrace();
+            return null;
+        }).thenAcceptAsync(items -> {
+            if (items == null || aGeneration != mGeneration) {
+                return;
+            }
+            aMerger.setSource(aSource, items);
+            if (aListener != null) {
+                aListener.onSuggestionsUpdated(aMerger.merge());
+            }
+        }, mUIThreadExecutor);
     }
 
 }
@@ -0,0 +1,91 @@
+package org.mozilla.vrbrowser.search.suggestions;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+/**
+ * Drives the URL bar suggestions while the user types. Keystrokes are debounced so only the text
+ * the user pauses on is queried, and starting a new query cancels the previous one so stale results
+ * never overwrite newer ones.
+ */
+public class SuggestionsSession {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(SuggestionsSession.class);
+
+    private static final long DEBOUNCE_DELAY_MS = 100;
+
+    private SuggestionsProvider mProvider;
+    private Handler mHandler;
+    private Runnable mPendingQuery;
+    private int mKeystrokes;
+    private int mQueries;
+    private int mPlacesQueriesStart;
+
+    public SuggestionsSession(@NonNull Context aContext) {
+        mProvider = new SuggestionsProvider(aContext);
+        mHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Schedules a query for the current URL bar text. Pending queries for previous keystrokes are dropped.
+     */
+    public void update(@NonNull String aText, @NonNull String aFilterText, @NonNull SuggestionsProvider.SuggestionsListener aListener) {
+        mKeystrokes++;
+        if (mPendingQuery != null) {
+            mHandler.removeCallbacks(mPendingQuery);
+        }
+        mPendingQuery = () -> {
+            mPendingQuery = null;
+            mQueries++;
+            mProvider.setText(aText);
+            mProvider.setFilterText(aFilterText);
+            mProvider.getSuggestions(aListener).exceptionally(throwable -> {
+                Log.d(LOGTAG, "Error getting suggestions: " + throwable.getLocalizedMessage());
+                throwable.printStackTrace();
+                return null;
+            });
+        };
+        mHandler.postDelayed(mPendingQuery, DEBOUNCE_DELAY_MS);
+    }
+
+    /**
+     * Cancels the pending and in flight queries.
+     */
+    public void cancel() {
+        if (mPendingQuery != null) {
+            mHandler.removeCallbacks(mPendingQuery);
+            mPendingQuery = null;
+        }
+        mProvider.cancel();
+    }
+
+    /**
+     * Ends the session when the URL bar loses the suggestions. Cached local results are dropped
+     * so history and bookmarks changes are picked up by the next session.
+     */
+    public void finish() {
+        cancel();
+        if (mKeystrokes > 0) {
+            Log.d(LOGTAG, "Suggestions session: " + mKeystrokes + " keystrokes, " + mQueries +
+                    " queries, " + (mProvider.getPlacesQueries() - mPlacesQueriesStart) + " Places queries");
+        }
+        mKeystrokes = 0;
+        mQueries = 0;
+        mPlacesQueriesStart = mProvider.getPlacesQueries();
+        mProvider.clearCache();
+    }
+
+    public int getKeystrokes() {
+        return mKeystrokes;
+    }
+
+    public int getQueries() {
+        return mQueries;
+    }
+}
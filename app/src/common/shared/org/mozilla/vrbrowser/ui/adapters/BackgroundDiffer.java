@@ -0,0 +1,163 @@
+package org.mozilla.vrbrowser.ui.adapters;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Keeps the list displayed by a RecyclerView adapter and computes the differences with new lists
+ * on a background executor. Every submitted list gets a new generation, results computed for an
+ * older generation are dropped so a slow diff never overwrites a newer list.
+ *
+ * All the methods must be called on the UI thread.
+ */
+public class BackgroundDiffer<T> {
+
+    private RecyclerView.Adapter<?> mAdapter;
+    private DiffUtil.ItemCallback<T> mItemCallback;
+    private Executor mBackgroundExecutor;
+    private Executor mUIThreadExecutor;
+    private List<T> mList = Collections.emptyList();
+    private List<T> mPendingList;
+    private Runnable mPendingCallback;
+    private int mGeneration;
+
+    public BackgroundDiffer(@NonNull RecyclerView.Adapter<?> aAdapter, @NonNull DiffUtil.ItemCallback<T> aItemCallback,
+                            @NonNull Executor aBackgroundExecutor, @NonNull Executor aUIThreadExecutor) {
+        mAdapter = aAdapter;
+        mItemCallback = aItemCallback;
+        mBackgroundExecutor = aBackgroundExecutor;
+        mUIThreadExecutor = aUIThreadExecutor;
+    }
+
+    @NonNull
+    public List<T> getList() {
+        return mList;
+    }
+
+    public boolean isPending() {
+        return mPendingList != null;
+    }
+
+    /**
+     * Returns the list that will be displayed once the pending diff is applied, or the displayed
+     * list if there is nothing pending.
+     */
+    @NonNull
+    public List<T> getLatestList() {
+        return mPendingList != null ? mPendingList : mList;
+    }
+
+    /**
+     * Replaces the displayed list. The adapter is notified once the differences are computed.
+     * @param aCallback Called on the UI thread after the list has been applied, dropped if a newer list is submitted.
+     */
+    public void submitList(@NonNull List<T> aList, @Nullable Runnable aCallback) {
+        final int generation = ++mGeneration;
+        final List<T> newList = Collections.unmodifiableList(new ArrayList<>(aList));
+
+        if (mList.isEmpty() || newList.isEmpty()) {
+            // Nothing to diff
+            int oldSize = mList.size();
+            mList = newList;
+            mPendingList = null;
+            mPendingCallback = null;
+            if (oldSize > 0) {
+                mAdapter.notifyItemRangeRemoved(0, oldSize);
+            }
+            if (!newList.isEmpty()) {
+                mAdapter.notifyItemRangeInserted(0, newList.size());
+            }
+            if (aCallback != null) {
+                aCallback.run();
+            }
+            return;
+        }
+
+        mPendingList = newList;
+        mPendingCallback = aCallback;
+        final List<T> oldList = mList;
+        mBackgroundExecutor.execute(() -> {
+            DiffUtil.DiffResult result = calculateDiff(oldList, newList, mItemCallback);
+            mUIThreadExecutor.execute(() -> {
+                if (generation != mGeneration) {
+                    return;
+                }
+                mList = newList;
+                mPendingList = null;
+                mPendingCallback = null;
+                result.dispatchUpdatesTo(mAdapter);
+                if (aCallback != null) {
+                    aCallback.run();
+                }
+            });
+        });
+    }
+
+    /**
+     * Removes an item from the displayed list and from the pending one, which is then diffed again
+     * against the updated list.
+     */
+    public void removeItem(@NonNull T aItem) {
+        int position = mList.indexOf(aItem);
+        if (position >= 0) {
+            List<T> list = new ArrayList<>(mList);
+            list.remove(position);
+            mList = Collections.unmodifiableList(list);
+            mAdapter.notifyItemRemoved(position);
+        }
+
+        if (mPendingList != null) {
+            List<T> pendingList = new ArrayList<>(mPendingList);
+            if (pendingList.remove(aItem) || position >= 0) {
+                submitList(pendingList, mPendingCallback);
+            }
+        }
+    }
+
+    @NonNull
+    public static <T> DiffUtil.DiffResult calculateDiff(@NonNull List<T> aOldList, @NonNull List<T> aNewList,
+                                                        @NonNull DiffUtil.ItemCallback<T> aItemCallback) {
+        return DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return aOldList.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return aNewList.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                return aItemCallback.areItemsTheSame(aOldList.get(oldItemPosition), aNewList.get(newItemPosition));
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                return aItemCallback.areContentsTheSame(aOldList.get(oldItemPosition), aNewList.get(newItemPosition));
+            }
+        });
+    }
+
+    /**
+     * 64 bit FNV-1a hash used to build stable item ids from string keys.
+     */
+    public static long stableId(@Nullable String aKey) {
+        long hash = 0xcbf29ce484222325L;
+        if (aKey != null) {
+            for (int i = 0; i < aKey.length(); i++) {
+                hash ^= aKey.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+}
@@ -14,7 +14,9 @@ import androidx.databinding.DataBindingUtil;
 import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
+import org.mozilla.vrbrowser.AppExecutors;
 import org.mozilla.vrbrowser.R;
+import org.mozilla.vrbrowser.VRBrowserApplication;
 import org.mozilla.vrbrowser.databinding.BookmarkItemBinding;
 import org.mozilla.vrbrowser.databinding.BookmarkItemFolderBinding;
 import org.mozilla.vrbrowser.databinding.BookmarkSeparatorBinding;
@@ -39,7 +41,24 @@ public class BookmarkAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
     private static final int ICON_ANIMATION_DURATION = 200;
 
     private List<BookmarkNode> mBookmarksList;
-    private List<Bookmark> mDisplayList;
+    /**
+     * Bookmarks are identified by guid, the expanded state of folders is part of their contents.
+     */
+    public static final DiffUtil.ItemCallback<Bookmark> DIFF_CALLBACK = new DiffUtil.ItemCallback<Bookmark>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Bookmark oldItem, @NonNull Bookmark newItem) {
+            return oldItem.getGuid().equals(newItem.getGuid());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Bookmark oldItem, @NonNull Bookmark newItem) {
+            return Objects.equals(newItem.getTitle(), oldItem.getTitle())
+                    && Objects.equals(newItem.getUrl(), oldItem.getUrl())
+                    && newItem.isExpanded() == oldItem.isExpanded();
+        }
+    };
+
+    private BackgroundDiffer<Bookmark> mDiffer;
 
     private int mMinPadding;
     private int mMaxPadding;
@@ -56,13 +75,16 @@ public class BookmarkAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
 
         mIsNarrowLayout = false;
 
-        setHasStableIds(false);
+        AppExecutors executors = ((VRBrowserApplication)aContext.getApplicationContext()).getExecutors();
+        mDiffer = new BackgroundDiffer<>(this, DIFF_CALLBACK, executors.backgroundThread()::post, executors.mainThread());
+
+        setHasStableIds(true);
     }
 
     public void setNarrow(boolean isNarrow) {
         if (mIsNarrowLayout != isNarrow) {
             mIsNarrowLayout = isNarrow;
-            notifyDataSetChanged();
+            notifyItemRangeChanged(0, getItemCount());
         }
     }
 
@@ -70,80 +92,43 @@ public class BookmarkAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
         mBookmarksList = bookmarkList;
 
         List<Bookmark> newDisplayList;
-        if (mDisplayList == null || mDisplayList.isEmpty()) {
+        if (mDiffer.getList().isEmpty() && !mDiffer.isPending()) {
             newDisplayList = Bookmark.getDisplayListTree(mBookmarksList, Collections.singletonList(BookmarkRoot.Mobile.getId()));
-            mDisplayList = newDisplayList;
-            for (Bookmark node : mDisplayList) {
+            mDiffer.submitList(newDisplayList, null);
+            for (Bookmark node : newDisplayList) {
                 if (node.isExpanded()) {
                     if (mBookmarkItemCallback != null) {
                         mBookmarkItemCallback.onFolderOpened(node);
                     }
                 }
             }
-            notifyItemRangeInserted(0, mDisplayList.size());
 
         } else {
-            List<String> openFoldersGuid = Bookmark.getOpenFoldersGuid(mDisplayList);
+            List<String> openFoldersGuid = Bookmark.getOpenFoldersGuid(mDiffer.getLatestList());
             newDisplayList = Bookmark.getDisplayListTree(mBookmarksList, openFoldersGuid);
-            notifyDiff(newDisplayList);
+            mDiffer.submitList(newDisplayList, null);
         }
     }
 
-    private void notifyDiff(List<Bookmark> newDisplayList) {
-        DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffUtil.Callback() {
-            @Override
-            public int getOldListSize() {
-                return mDisplayList.size();
-            }
-
-            @Override
-            public int getNewListSize() {
-                return newDisplayList.size();
-            }
-
-            @Override
-            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
-                return mDisplayList.get(oldItemPosition).getGuid().equals(newDisplayList.get(newItemPosition).getGuid()) &&
-                        mDisplayList.get(oldItemPosition).isExpanded() == newDisplayList.get(newItemPosition).isExpanded();
-            }
-
-            @Override
-            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
-                Bookmark newBookmark = newDisplayList.get(newItemPosition);
-                Bookmark oldBookmark = mDisplayList.get(oldItemPosition);
-                return newBookmark.getGuid().equals(oldBookmark.getGuid())
-                        && Objects.equals(newBookmark.getTitle(), oldBookmark.getTitle())
-                        && Objects.equals(newBookmark.getUrl(), oldBookmark.getUrl())
-                        && newBookmark.isExpanded() == oldBookmark.isExpanded();
-            }
-        });
-
-        mDisplayList = newDisplayList;
-        result.dispatchUpdatesTo(this);
-    }
-
     public void removeItem(Bookmark aBookmark) {
-        int position = mDisplayList.indexOf(aBookmark);
-        if (position >= 0) {
-            mDisplayList.remove(position);
-            notifyItemRemoved(position);
-        }
+        mDiffer.removeItem(aBookmark);
     }
 
     public int itemCount() {
-        return mDisplayList != null ? mDisplayList.size() : 0;
+        return mDiffer.getList().size();
     }
 
     public int getItemPosition(String id) {
-        for (int position=0; position<mDisplayList.size(); position++)
-            if (mDisplayList.get(position).getGuid().equalsIgnoreCase(id))
+        List<Bookmark> displayList = mDiffer.getList();
+        for (int position=0; position<displayList.size(); position++)
+            if (displayList.get(position).getGuid().equalsIgnoreCase(id))
                 return position;
         return 0;
     }
 
     @Override
     public int getItemViewType(int position) {
-        switch (mDisplayList.get(position).getType()) {
+        switch (mDiffer.getList().get(position).getType()) {
             case FOLDER:
                 return BookmarkNodeType.FOLDER.ordinal();
             case ITEM:
@@ -191,7 +176,7 @@ public class BookmarkAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
     @SuppressLint("ClickableViewAccessibility")
     @Override
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
-        Bookmark item = mDisplayList.get(position);
+        Bookmark item = mDiffer.getList().get(position);
 
         if (holder instanceof BookmarkViewHolder) {
             BookmarkViewHolder bookmarkHolder = (BookmarkViewHolder) holder;
@@ -312,13 +297,13 @@ public class BookmarkAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
 
     @Override
     public int getItemCount() {
-        return mDisplayList == null ? 0 : mDisplayList.size();
+        return mDiffer.getList().size();
     }
 
     @Override
     public long getItemId(int position) {
-        Bookmark bookmark = mDisplayList.get(position);
-        return  bookmark.getPosition();
+        Bookmark bookmark = mDiffer.getList().get(position);
+        return BackgroundDiffer.stableId(bookmark.getGuid());
     }
 
     static class BookmarkViewHolder extends RecyclerView.ViewHolder {
@@ -378,11 +363,13 @@ public class BookmarkAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
     private BookmarkItemFolderCallback mBookmarkItemFolderCallback = new BookmarkItemFolderCallback() {
         @Override
         public void onClick(View view, Bookmark item) {
-            List<String> openFoldersGuid = Bookmark.getOpenFoldersGuid(mDisplayList);
+            // Toggle the folder on the list being diffed so a click during a diff isn't lost
+            List<Bookmark> displayList = mDiffer.getLatestList();
+            List<String> openFoldersGuid = Bookmark.getOpenFoldersGuid(displayList);
 
-            for (Bookmark bookmark : mDisplayList) {
+            for (Bookmark bookmark : displayList) {
                 if (bookmark.getGuid().equals(item.getGuid())) {
-                    if (item.isExpanded()) {
+                    if (bookmark.isExpanded()) {
                         openFoldersGuid.remove(bookmark.getGuid());
 
                     } else {
@@ -393,11 +380,11 @@ public class BookmarkAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
             }
 
             List<Bookmark> newDisplayList = Bookmark.getDisplayListTree(mBookmarksList, openFoldersGuid);
-            notifyDiff(newDisplayList);
-
-            if (mBookmarkItemCallback != null) {
-                mBookmarkItemCallback.onFolderOpened(item);
-            }
+            mDiffer.submitList(newDisplayList, () -> {
+                if (mBookmarkItemCallback != null) {
+                    mBookmarkItemCallback.onFolderOpened(item);
+                }
+            });
         }
     };
 
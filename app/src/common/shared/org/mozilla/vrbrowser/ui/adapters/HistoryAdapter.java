@@ -14,7 +14,9 @@ import androidx.databinding.DataBindingUtil;
 import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
+import org.mozilla.vrbrowser.AppExecutors;
 import org.mozilla.vrbrowser.R;
+import org.mozilla.vrbrowser.VRBrowserApplication;
 import org.mozilla.vrbrowser.databinding.HistoryItemBinding;
 import org.mozilla.vrbrowser.databinding.HistoryItemHeaderBinding;
 import org.mozilla.vrbrowser.ui.callbacks.HistoryItemCallback;
@@ -22,6 +24,7 @@ import org.mozilla.vrbrowser.ui.widgets.WidgetPlacement;
 import org.mozilla.vrbrowser.utils.AnimationHelper;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
@@ -37,7 +40,24 @@ public class HistoryAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
 
     private static final int ICON_ANIMATION_DURATION = 200;
 
-    private List<? extends VisitInfo> mHistoryList;
+    /**
+     * Visits are unique by url and section headers use the section title as url.
+     */
+    public static final DiffUtil.ItemCallback<VisitInfo> DIFF_CALLBACK = new DiffUtil.ItemCallback<VisitInfo>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull VisitInfo oldItem, @NonNull VisitInfo newItem) {
+            return Objects.equals(oldItem.getUrl(), newItem.getUrl());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull VisitInfo oldItem, @NonNull VisitInfo newItem) {
+            return oldItem.getVisitTime() == newItem.getVisitTime()
+                    && Objects.equals(oldItem.getTitle(), newItem.getTitle())
+                    && Objects.equals(oldItem.getUrl(), newItem.getUrl());
+        }
+    };
+
+    private BackgroundDiffer<VisitInfo> mDiffer;
 
     private int mMinPadding;
     private int mMaxPadding;
@@ -54,75 +74,39 @@ public class HistoryAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
 
         mIsNarrowLayout = false;
 
+        AppExecutors executors = ((VRBrowserApplication)aContext.getApplicationContext()).getExecutors();
+        mDiffer = new BackgroundDiffer<>(this, DIFF_CALLBACK, executors.backgroundThread()::post, executors.mainThread());
+
         setHasStableIds(true);
     }
 
     public void setNarrow(boolean isNarrow) {
         if (mIsNarrowLayout != isNarrow) {
             mIsNarrowLayout = isNarrow;
-            notifyDataSetChanged();
+            notifyItemRangeChanged(0, getItemCount());
         }
     }
 
     public void setHistoryList(final List<? extends VisitInfo> historyList) {
-        if (mHistoryList == null) {
-            mHistoryList = historyList;
-            notifyItemRangeInserted(0, historyList.size());
-
-        } else {
-            DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffUtil.Callback() {
-                @Override
-                public int getOldListSize() {
-                    return mHistoryList.size();
-                }
-
-                @Override
-                public int getNewListSize() {
-                    return historyList.size();
-                }
-
-                @Override
-                public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
-                    return mHistoryList.get(oldItemPosition).getVisitTime() == historyList.get(newItemPosition).getVisitTime();
-                }
-
-                @Override
-                public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
-                    VisitInfo newHistoryItem = historyList.get(newItemPosition);
-                    VisitInfo oldHistoryItem = mHistoryList.get(oldItemPosition);
-                    return newHistoryItem.getVisitTime() == oldHistoryItem.getVisitTime()
-                            && Objects.equals(newHistoryItem.getTitle(), oldHistoryItem.getTitle())
-                            && Objects.equals(newHistoryItem.getUrl(), oldHistoryItem.getUrl());
-                }
-            });
-
-            mHistoryList = historyList;
-            result.dispatchUpdatesTo(this);
-        }
+        mDiffer.submitList(new ArrayList<>(historyList), null);
     }
 
     public void removeItem(VisitInfo historyItem) {
-        int position = mHistoryList.indexOf(historyItem);
-        if (position >= 0) {
-            mHistoryList.remove(position);
-            notifyItemRemoved(position);
-        }
+        mDiffer.removeItem(historyItem);
     }
 
     public int itemCount() {
-        if (mHistoryList != null) {
-            return mHistoryList.stream().allMatch(item ->
-                    item.getVisitType() == VisitType.NOT_A_VISIT) ?
-                    0 :
-                    mHistoryList.size();
-        }
-
-        return 0;
+        List<VisitInfo> historyList = mDiffer.getList();
+        return historyList.stream().allMatch(item ->
+                item.getVisitType() == VisitType.NOT_A_VISIT) ?
+                0 :
+                historyList.size();
     }
 
     public int getItemPosition(long id) {
-        for (int position=0; position<mHistoryList.size(); position++)
-            if (mHistoryList.get(position).getVisitTime() == id)
+        List<VisitInfo> historyList = mDiffer.getList();
+        for (int position=0; position<historyList.size(); position++)
+            if (historyList.get(position).getVisitTime() == id)
                 return position;
         return 0;
     }
@@ -154,7 +138,7 @@ public class HistoryAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
     @SuppressLint("ClickableViewAccessibility")
     @Override
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
-        VisitInfo item = mHistoryList.get(position);
+        VisitInfo item = mDiffer.getList().get(position);
 
         if (holder instanceof HistoryItemViewHolder) {
             HistoryItemViewHolder historyHolder = (HistoryItemViewHolder) holder;
@@ -253,13 +237,13 @@ public class HistoryAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
 
     @Override
     public int getItemCount() {
-        return mHistoryList == null ? 0 : mHistoryList.size();
+        return mDiffer.getList().size();
     }
 
     @Override
     public long getItemId(int position) {
-        VisitInfo historyItem = mHistoryList.get(position);
-        return  historyItem.getVisitTime();
+        VisitInfo historyItem = mDiffer.getList().get(position);
+        return BackgroundDiffer.stableId(historyItem.getUrl());
     }
 
     @Override
@@ -271,7 +255,7 @@ public class HistoryAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
     }
 
     private boolean isPositionHeader(int position) {
-        return mHistoryList.get(position).getVisitType() == VisitType.NOT_A_VISIT;
+        return mDiffer.getList().get(position).getVisitType() == VisitType.NOT_A_VISIT;
     }
 
     private View.OnHoverListener mIconHoverListener = (view, motionEvent) -> {
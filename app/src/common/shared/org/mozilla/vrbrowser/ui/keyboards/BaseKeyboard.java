@@ -7,12 +7,16 @@ import org.mozilla.vrbrowser.R;
 import org.mozilla.vrbrowser.ui.widgets.WidgetPlacement;
 import org.mozilla.vrbrowser.utils.StringUtils;
 
+import java.util.Arrays;
 import java.util.Locale;
 import java.util.regex.Pattern;
-import java.util.stream.Stream;
 
 public abstract class BaseKeyboard implements KeyboardInterface {
+    private static final String[] DEFAULT_DOMAINS = new String[]{".com", ".net", ".org", ".co"};
+
     protected Context mContext;
+    private String[] mDomains;
+
     BaseKeyboard(Context aContext) {
         mContext = aContext;
     }
@@ -55,7 +59,12 @@ public abstract class BaseKeyboard implements KeyboardInterface {
 
     @Override
     public String[] getDomains(String... domains) {
-        return Stream.of(new String[]{".com", ".net", ".org", ".co"}, domains).flatMap(Stream::of)
-                .toArray(String[]::new);
+        // The extra domains are constant for each keyboard so the merged list is only built once.
+        if (mDomains == null) {
+            String[] result = Arrays.copyOf(DEFAULT_DOMAINS, DEFAULT_DOMAINS.length + domains.length);
+            System.arraycopy(domains, 0, result, DEFAULT_DOMAINS.length, domains.length);
+            mDomains = result;
+        }
+        return mDomains;
     }
 }
@@ -16,6 +16,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.regex.Pattern;
@@ -33,6 +34,7 @@ public class ChinesePinyinKeyboard extends BaseKeyboard {
     private CustomKeyboard mSymbolsKeyboard;
     private SymbolList mSymbolsConverter;  // For Emoji characters.
     private List<Words> mEmojiList = null;
+    private HashSet<String> mEmojiCodes = new HashSet<>();
     private DBHelper mDB;
     private HashMap<String, KeyMap> mKeymaps = new HashMap<>();
     private HashMap<String, KeyMap> mExtraKeymaps = new HashMap<>();
@@ -171,6 +173,7 @@ public class ChinesePinyinKeyboard extends BaseKeyboard {
                 WnnWord word;
                 while ((word = mSymbolsConverter.getNextCandidate()) != null) {
                     words.add(new Words(1, word.stroke, word.candidate));
+                    mEmojiCodes.add(word.stroke);
                 }
                 mEmojiList = words;
             }
@@ -186,12 +189,8 @@ public class ChinesePinyinKeyboard extends BaseKeyboard {
 
     @Override
     public String getComposingText(String aComposing, String aCode) {
-        if (mEmojiList != null) {
-            for (Words word : mEmojiList) {
-                if (word.code.equals(aCode)) {
-                    return "";
-                }
-            }
+        if (mEmojiCodes.contains(aCode)) {
+            return "";
         }
         // If we don't have a text code from the code book,
         // just return an empty string to do composing.
@@ -16,6 +16,7 @@ import org.mozilla.vrbrowser.utils.SystemUtils;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -35,6 +36,7 @@ public class ChineseZhuyinKeyboard extends BaseKeyboard {
     private CustomKeyboard mSymbolsKeyboard;
     private SymbolList mSymbolsConverter;  // For Emoji characters.
     private List<Words> mEmojiList = null;
+    private HashSet<String> mEmojiCodes = new HashSet<>();
     private DBWordHelper mWordDB;
     private DBPhraseHelper mPhraseDB;
     private HashMap<String, KeyMap> mKeymaps = new HashMap<>();
@@ -123,6 +125,7 @@ public class ChineseZhuyinKeyboard extends BaseKeyboard {
                 WnnWord word;
                 while ((word = mSymbolsConverter.getNextCandidate()) != null) {
                     words.add(new Words(1, word.stroke, word.candidate));
+                    mEmojiCodes.add(word.stroke);
                 }
                 mEmojiList = words;
             }
@@ -157,12 +160,8 @@ public class ChineseZhuyinKeyboard extends BaseKeyboard {
             return aComposing.replaceFirst(Pattern.quote(aCode), "");
         }
 
-        if (mEmojiList != null) {
-            for (Words word : mEmojiList) {
-                if (word.code.equals(aCode)) {
-                    return "";
-                }
-            }
+        if (mEmojiCodes.contains(aCode)) {
+            return "";
         }
 
         for (int i = 0; i <= aCode.length() - shift; i += shift) {
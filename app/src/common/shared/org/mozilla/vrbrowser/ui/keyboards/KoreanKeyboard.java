@@ -12,6 +12,7 @@ import org.mozilla.vrbrowser.input.CustomKeyboard;
 import org.mozilla.vrbrowser.utils.StringUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Locale;
 
 public class KoreanKeyboard extends BaseKeyboard {
@@ -39,114 +40,202 @@ public class KoreanKeyboard extends BaseKeyboard {
     private final static int AMOUNT_OF_TAILS = TAILS.length() + 1; // 28
     private final static int AMOUNT_OF_TAILS_THE_AMOUNT_OF_VOWELS = AMOUNT_OF_TAILS * VOWELS.length(); // 588
 
-
-    class DecomposedHangul {
-        int initialIndex = -1;
-        int vowelIndex = -1;
-        int tailIndex = -1;
-
-        boolean isInitial() {
-            return initialIndex >= 0 && vowelIndex < 0;
+    /*
+     * Composition runs as a table driven state machine over code points so no Strings or helper
+     * objects are created while typing. A decomposed character is packed into a single int holding
+     * the initial, vowel and tail indexes (each stored + 1 so that 0 means "none").
+     * All the tables are derived once from the jamo strings above.
+     */
+    private final static int NONE = -1;
+    private final static int JAMO_TABLE_SIZE = 0x100;
+    private final static int CONJOINING_JAMO_START = 0x1100;
+    private final static int COMPATIBILITY_JAMO_START = 0x3100;
+
+    // Jamo code point -> index in INITIALS/VOWELS/TAILS (NONE if not present)
+    private final static int[] INITIAL_INDEX = new int[JAMO_TABLE_SIZE * 2];
+    private final static int[] VOWEL_INDEX = new int[JAMO_TABLE_SIZE * 2];
+    private final static int[] TAIL_INDEX = new int[JAMO_TABLE_SIZE * 2];
+    // [vowel][next vowel] -> combined vowel index, [vowel] -> vowel index without the combined jamo
+    private final static int[][] COMBINE_VOWEL = new int[VOWELS.length()][VOWELS.length()];
+    private final static int[] SPLIT_VOWEL = new int[VOWELS.length()];
+    // [tail][next tail] -> combined tail index, [tail] -> tail index without the combined jamo
+    private final static int[][] COMBINE_TAIL = new int[TAILS.length()][TAILS.length()];
+    private final static int[] SPLIT_TAIL = new int[TAILS.length()];
+    // Conversions between the initial and tail forms of the same consonant
+    private final static int[] INITIAL_TO_TAIL = new int[INITIALS.length()];
+    private final static int[] TAIL_TO_INITIAL = new int[TAILS.length()];
+    // Single <-> double consonant code points, indexed by initial index (0 if not applicable)
+    private final static char[] INITIAL_TO_DOUBLE = new char[INITIALS.length()];
+    private final static char[] INITIAL_TO_SINGLE = new char[INITIALS.length()];
+
+    static {
+        Arrays.fill(INITIAL_INDEX, NONE);
+        Arrays.fill(VOWEL_INDEX, NONE);
+        Arrays.fill(TAIL_INDEX, NONE);
+        for (int i = INITIALS.length() - 1; i >= 0; i--) {
+            INITIAL_INDEX[jamoSlot(INITIALS.charAt(i))] = i;
         }
-
-        boolean isVowel() {
-            return vowelIndex >= 0 && initialIndex < 0 && tailIndex < 0;
+        for (int i = VOWELS.length() - 1; i >= 0; i--) {
+            VOWEL_INDEX[jamoSlot(VOWELS.charAt(i))] = i;
         }
-
-        boolean isTail() {
-            return tailIndex >= 0 && vowelIndex < 0;
+        for (int i = TAILS.length() - 1; i >= 0; i--) {
+            TAIL_INDEX[jamoSlot(TAILS.charAt(i))] = i;
         }
 
-        boolean isCompleteHangul() {
-            return initialIndex >= 0 && vowelIndex >= 0 && tailIndex >= 0;
+        for (int[] row : COMBINE_VOWEL) {
+            Arrays.fill(row, NONE);
         }
-
-        boolean isInitialAndVowel() {
-            return initialIndex >= 0 && vowelIndex >= 0 && tailIndex < 0;
-        }
-
-        boolean combineVowel(String aSufix) {
-            if (!isVowel() && !isInitialAndVowel()) {
-                return false;
+        Arrays.fill(SPLIT_VOWEL, NONE);
+        for (String values : COMBINED_VOWELS) {
+            int combined = VOWELS.indexOf(values.charAt(0));
+            int first = VOWELS.indexOf(values.charAt(1));
+            int second = VOWELS.indexOf(values.charAt(2));
+            if (COMBINE_VOWEL[first][second] == NONE) {
+                COMBINE_VOWEL[first][second] = combined;
             }
-            String prefix = VOWELS.substring(vowelIndex, vowelIndex + 1);
-            for (String values : COMBINED_VOWELS) {
-                if (values.indexOf(prefix) == 1 && values.indexOf(aSufix) == 2) {
-                    vowelIndex = VOWELS.indexOf(values.substring(0, 1));
-                    return true;
-                }
+            if (SPLIT_VOWEL[combined] == NONE) {
+                SPLIT_VOWEL[combined] = first;
             }
-
-            return false;
         }
 
-        boolean combineTail(String aSufix) {
-            if (!isCompleteHangul()) {
-                return false;
+        for (int[] row : COMBINE_TAIL) {
+            Arrays.fill(row, NONE);
+        }
+        Arrays.fill(SPLIT_TAIL, NONE);
+        for (String values : COMBINED_CONSONANTS) {
+            int combined = TAILS.indexOf(values.charAt(0));
+            int first = TAILS.indexOf(values.charAt(1));
+            int second = TAILS.indexOf(values.charAt(2));
+            if (COMBINE_TAIL[first][second] == NONE) {
+                COMBINE_TAIL[first][second] = combined;
             }
-            String prefix = TAILS.substring(tailIndex, tailIndex + 1);
-            for (String values : COMBINED_CONSONANTS) {
-                if (values.indexOf(prefix) == 1 && values.indexOf(aSufix) == 2) {
-                    tailIndex = TAILS.indexOf(values.substring(0, 1));
-                    return true;
-                }
+            if (SPLIT_TAIL[combined] == NONE) {
+                SPLIT_TAIL[combined] = first;
             }
-
-            return false;
         }
 
-        boolean removeCombinedVowel() {
-            if (!isVowel() && !isInitialAndVowel()) {
-                return false;
-            }
+        for (int i = 0; i < INITIALS.length(); i++) {
+            char jamo = INITIALS.charAt(i);
+            INITIAL_TO_TAIL[i] = TAILS.indexOf(jamo);
+            int single = SINGLE_CONSONANTS.indexOf(jamo);
+            INITIAL_TO_DOUBLE[i] = single >= 0 && single < DOUBLE_CONSONANTS.length() ? DOUBLE_CONSONANTS.charAt(single) : 0;
+            int doubled = DOUBLE_CONSONANTS.indexOf(jamo);
+            INITIAL_TO_SINGLE[i] = doubled >= 0 && doubled < SINGLE_CONSONANTS.length() ? SINGLE_CONSONANTS.charAt(doubled) : 0;
+        }
+        for (int i = 0; i < TAILS.length(); i++) {
+            TAIL_TO_INITIAL[i] = INITIALS.indexOf(TAILS.charAt(i));
+        }
+    }
 
-            String jamo = VOWELS.substring(vowelIndex, vowelIndex + 1);
-            for (String values : COMBINED_VOWELS) {
-                if (values.indexOf(jamo) == 0) {
-                    vowelIndex = VOWELS.indexOf(values.substring(1, 2));
-                    return true;
-                }
-            }
-            return false;
+    private static int jamoSlot(char aChar) {
+        if (aChar >= CONJOINING_JAMO_START && aChar < CONJOINING_JAMO_START + JAMO_TABLE_SIZE) {
+            return aChar - CONJOINING_JAMO_START;
+        } else if (aChar >= COMPATIBILITY_JAMO_START && aChar < COMPATIBILITY_JAMO_START + JAMO_TABLE_SIZE) {
+            return JAMO_TABLE_SIZE + aChar - COMPATIBILITY_JAMO_START;
         }
+        return NONE;
+    }
 
-        boolean removeCombinedTail() {
-            if (!isCompleteHangul()) {
-                return false;
-            }
+    private static int pack(int aInitial, int aVowel, int aTail) {
+        return (aInitial + 1) | ((aVowel + 1) << 8) | ((aTail + 1) << 16);
+    }
 
-            String jamo = TAILS.substring(tailIndex, tailIndex + 1);
-            for (String values : COMBINED_CONSONANTS) {
-                if (values.indexOf(jamo) == 0) {
-                    tailIndex = TAILS.indexOf(values.substring(1, 2));
-                    return true;
-                }
-            }
-            return false;
+    private static int initialOf(int aState) {
+        return (aState & 0xFF) - 1;
+    }
+
+    private static int vowelOf(int aState) {
+        return ((aState >> 8) & 0xFF) - 1;
+    }
+
+    private static int tailOf(int aState) {
+        return ((aState >> 16) & 0xFF) - 1;
+    }
+
+    private static int withVowel(int aState, int aVowel) {
+        return pack(initialOf(aState), aVowel, tailOf(aState));
+    }
+
+    private static int withTail(int aState, int aTail) {
+        return pack(initialOf(aState), vowelOf(aState), aTail);
+    }
+
+    private static boolean isInitial(int aState) {
+        return initialOf(aState) >= 0 && vowelOf(aState) < 0;
+    }
+
+    private static boolean isVowel(int aState) {
+        return vowelOf(aState) >= 0 && initialOf(aState) < 0 && tailOf(aState) < 0;
+    }
+
+    private static boolean isTail(int aState) {
+        return tailOf(aState) >= 0 && vowelOf(aState) < 0;
+    }
+
+    private static boolean isCompleteHangul(int aState) {
+        return initialOf(aState) >= 0 && vowelOf(aState) >= 0 && tailOf(aState) >= 0;
+    }
+
+    private static boolean isInitialAndVowel(int aState) {
+        return initialOf(aState) >= 0 && vowelOf(aState) >= 0 && tailOf(aState) < 0;
+    }
+
+    /**
+     * Decomposes a Hangul syllable or jamo into its packed initial/vowel/tail indexes.
+     */
+    private static int decompose(char aChar) {
+        // Check if it's a Hangul character
+        if (aChar >= HANGUL_UNICODE_START_VALUE && aChar <= HANGUL_UNICODE_LAST_VALUE) {
+            final int offset = aChar - HANGUL_UNICODE_START_VALUE;
+            final int tail = (offset % AMOUNT_OF_TAILS) - 1;
+            return pack(offset / AMOUNT_OF_TAILS_THE_AMOUNT_OF_VOWELS,
+                    ((offset - tail) % AMOUNT_OF_TAILS_THE_AMOUNT_OF_VOWELS) / AMOUNT_OF_TAILS,
+                    tail);
         }
 
-        String getHangul() {
-            if (isVowel()) {
-                return VOWELS.substring(vowelIndex, vowelIndex + 1);
-            } else if (isInitial()) {
-                return INITIALS.substring(initialIndex, initialIndex + 1);
-            } else if (isTail()) {
-                return TAILS.substring(tailIndex, tailIndex + 1);
-            } else if (isInitialAndVowel() || isCompleteHangul()) {
-                // Compose Hangul syllable using Unicode math (initial + vowel + tail)
-                int charValue = HANGUL_UNICODE_START_VALUE + initialIndex * AMOUNT_OF_TAILS_THE_AMOUNT_OF_VOWELS;
-                if (vowelIndex >= 0) {
-                    charValue += vowelIndex * AMOUNT_OF_TAILS;
-                    if (tailIndex >= 0) {
-                        charValue += tailIndex + 1;
-                    }
-                }
+        // Check if it is a Jamo character
+        final int slot = jamoSlot(aChar);
+        if (slot < 0) {
+            return 0;
+        }
+        return pack(INITIAL_INDEX[slot], VOWEL_INDEX[slot], TAIL_INDEX[slot]);
+    }
 
-                return new String(Character.toChars(charValue));
-            }
+    /**
+     * Returns the character represented by a packed state or 0 if there is none.
+     */
+    private static char compose(int aState) {
+        if (isVowel(aState)) {
+            return VOWELS.charAt(vowelOf(aState));
+        } else if (isInitial(aState)) {
+            return INITIALS.charAt(initialOf(aState));
+        } else if (isTail(aState)) {
+            return TAILS.charAt(tailOf(aState));
+        } else if (isInitialAndVowel(aState) || isCompleteHangul(aState)) {
+            // Compose Hangul syllable using Unicode math (initial + vowel + tail)
+            int charValue = HANGUL_UNICODE_START_VALUE + initialOf(aState) * AMOUNT_OF_TAILS_THE_AMOUNT_OF_VOWELS;
+            charValue += vowelOf(aState) * AMOUNT_OF_TAILS;
+            charValue += tailOf(aState) + 1;
+            return (char) charValue;
+        }
 
-            return "";
+        return 0;
+    }
+
+    /**
+     * Replaces the last aRemove characters of aText with the given characters, skipping the 0 ones.
+     */
+    private static String replaceLast(String aText, int aRemove, char aFirst, char aSecond) {
+        final int keep = aText.length() - aRemove;
+        StringBuilder builder = new StringBuilder(keep + 2);
+        builder.append(aText, 0, keep);
+        if (aFirst != 0) {
+            builder.append(aFirst);
+        }
+        if (aSecond != 0) {
+            builder.append(aSecond);
         }
+        return builder.toString();
     }
 
     class CustomKoreanKeyboard extends CustomKeyboard {
@@ -229,50 +318,51 @@ public class KoreanKeyboard extends BaseKeyboard {
             return null;
         }
 
-        DecomposedHangul before = decompose(StringUtils.getLastCharacter(aTextBeforeCursor));
-        DecomposedHangul after = decompose(StringUtils.getLastCharacter(aNextText));
+        final int before = decompose(aTextBeforeCursor.charAt(aTextBeforeCursor.length() - 1));
+        final int after = decompose(aNextText.charAt(aNextText.length() - 1));
 
-        String result = null;
-
-        if (before.isInitial() && after.isInitial() && before.initialIndex == after.initialIndex && SINGLE_CONSONANTS.contains(getInitial(before.initialIndex))) {
+        if (isInitial(before) && isInitial(after) && initialOf(before) == initialOf(after) && INITIAL_TO_DOUBLE[initialOf(before)] != 0) {
             // Generate double consonant from single consonants.
             // Example: ㅅㅅ will convert to ㅆ
-            result = StringUtils.removeLastCharacter(aTextBeforeCursor);
-            result += getDoubleConsonant(SINGLE_CONSONANTS.indexOf(getInitial(before.initialIndex)));
-        } else if (after.isVowel() && before.combineVowel(getVowel(after.vowelIndex))) {
+            return replaceLast(aTextBeforeCursor, 1, INITIAL_TO_DOUBLE[initialOf(before)], (char) 0);
+        }
+
+        if (isVowel(after) && (isVowel(before) || isInitialAndVowel(before))) {
             // Combine vowels.
             // Example: ᅥᅵ will convert to ᅦ
-            result = StringUtils.removeLastCharacter(aTextBeforeCursor);
-            result += before.getHangul();
-        } else if (after.isTail() && before.combineTail(getTail(after.tailIndex))) {
+            final int combined = COMBINE_VOWEL[vowelOf(before)][vowelOf(after)];
+            if (combined != NONE) {
+                return replaceLast(aTextBeforeCursor, 1, compose(withVowel(before, combined)), (char) 0);
+            }
+        }
+
+        if (isTail(after) && isCompleteHangul(before)) {
             // Combine tails for complete Hanguls.
             // Example: 식 will convert to 싟 (because the ending jamo tail ᄀㅅ will convert to ㄳ)
-            result = StringUtils.removeLastCharacter(aTextBeforeCursor);
-            result += before.getHangul();
-        } else if (before.isInitial() && after.isVowel()) {
+            final int combined = COMBINE_TAIL[tailOf(before)][tailOf(after)];
+            if (combined != NONE) {
+                return replaceLast(aTextBeforeCursor, 1, compose(withTail(before, combined)), (char) 0);
+            }
+        }
+
+        if (isInitial(before) && isVowel(after)) {
             // Combine initial and vowel.
             // Example: ㅂᅩ  will produce 보
-            result = StringUtils.removeLastCharacter(aTextBeforeCursor);
-            before.vowelIndex = after.vowelIndex;
-            before.tailIndex = -1;
-            result += before.getHangul();
-        } else if (before.isInitialAndVowel() && after.isTail()) {
+            return replaceLast(aTextBeforeCursor, 1, compose(pack(initialOf(before), vowelOf(after), NONE)), (char) 0);
+
+        } else if (isInitialAndVowel(before) && isTail(after)) {
             // Add tail to a Hangul with no tail.
             // Example: 보ㅇ  will produce 봉
-            result = StringUtils.removeLastCharacter(aTextBeforeCursor);
-            before.tailIndex = after.tailIndex;
-            result += before.getHangul();
-        } else if (before.isCompleteHangul() && after.isVowel() && INITIALS.contains(getTail(before.tailIndex))) {
+            return replaceLast(aTextBeforeCursor, 1, compose(withTail(before, tailOf(after))), (char) 0);
+
+        } else if (isCompleteHangul(before) && isVowel(after) && TAIL_TO_INITIAL[tailOf(before)] != NONE) {
             // Split Hangul when vowel is added after a complete Hangul.
             // Example: ㅂㅏㅂ  will produce 밥. Another ㅏ will produce 바바 instead of 밥ㅏ
-            result = StringUtils.removeLastCharacter(aTextBeforeCursor);
-            after.initialIndex = INITIALS.indexOf(getTail(before.tailIndex));
-            before.tailIndex = -1;
-            result += before.getHangul();
-            result += after.getHangul();
+            final int split = pack(TAIL_TO_INITIAL[tailOf(before)], vowelOf(after), tailOf(after));
+            return replaceLast(aTextBeforeCursor, 1, compose(withTail(before, NONE)), compose(split));
         }
 
-        return result;
+        return null;
     }
 
     @Nullable
@@ -282,94 +372,42 @@ public class KoreanKeyboard extends BaseKeyboard {
             return null;
         }
 
-        String result = null;
-        DecomposedHangul last = decompose(StringUtils.getLastCharacter(aTextBeforeCursor));
-        if (last.removeCombinedTail()) {
+        final int length = aTextBeforeCursor.length();
+        final int last = decompose(aTextBeforeCursor.charAt(length - 1));
+        if (isCompleteHangul(last) && SPLIT_TAIL[tailOf(last)] != NONE) {
             // Remove the combined tail from a Hangul.
             // Example: 싟 will produce 식 (the ㅅ tail is removed from the combined ㄳ tail)
-            result = StringUtils.removeLastCharacter(aTextBeforeCursor);
-            result += last.getHangul();
-        } else if (last.removeCombinedVowel()) {
+            return replaceLast(aTextBeforeCursor, 1, compose(withTail(last, SPLIT_TAIL[tailOf(last)])), (char) 0);
+
+        } else if ((isVowel(last) || isInitialAndVowel(last)) && SPLIT_VOWEL[vowelOf(last)] != NONE) {
             // Remove the combined vowel from a Hangul or a jamo.
             // Example: ᅦ will produce ᅥ (The ᅵ jamo was removed)
-            result = StringUtils.removeLastCharacter(aTextBeforeCursor);
-            result += last.getHangul();
-        } else if (last.isCompleteHangul()) {
+            return replaceLast(aTextBeforeCursor, 1, compose(withVowel(last, SPLIT_VOWEL[vowelOf(last)])), (char) 0);
+
+        } else if (isCompleteHangul(last)) {
             // Remove the tail from a Hangul.
             // Example: 봉 will produce 보 (the ㅇ tail is removed)
-            last.tailIndex = -1;
-            result = StringUtils.removeLastCharacter(aTextBeforeCursor);
-            result += last.getHangul();
-        } else if (last.isInitialAndVowel()) {
-            result = StringUtils.removeLastCharacter(aTextBeforeCursor);
-            DecomposedHangul before = decompose(StringUtils.getLastCharacter(result));
-            if (before.isInitialAndVowel() && TAILS.contains(getInitial(last.initialIndex))) {
+            return replaceLast(aTextBeforeCursor, 1, compose(withTail(last, NONE)), (char) 0);
+
+        } else if (isInitialAndVowel(last)) {
+            final int before = length > 1 ? decompose(aTextBeforeCursor.charAt(length - 2)) : 0;
+            final int tail = INITIAL_TO_TAIL[initialOf(last)];
+            if (isInitialAndVowel(before) && tail != NONE) {
                 // Remove the vowel from a Hangul and use the remaining initial as tail for the previous Hangul.
                 // Example: 바바 will produce 밥 (The ㅏ vowel is removed and ㅂㅏㅂ is combined into a single Hangul)
-                result = StringUtils.removeLastCharacter(result);
-                before.tailIndex = TAILS.indexOf(getInitial(last.initialIndex));
-                result += before.getHangul();
-            } else {
-                // Remove the vowel from a Hangul.
-                // Example: 보 will produce ㅂ (the ᅩ vowel is removed)
-                result += getInitial(last.initialIndex);
+                return replaceLast(aTextBeforeCursor, 2, compose(withTail(before, tail)), (char) 0);
             }
-        } else if (last.isInitial() && DOUBLE_CONSONANTS.contains(getInitial(last.initialIndex))) {
+            // Remove the vowel from a Hangul.
+            // Example: 보 will produce ㅂ (the ᅩ vowel is removed)
+            return replaceLast(aTextBeforeCursor, 1, INITIALS.charAt(initialOf(last)), (char) 0);
+
+        } else if (isInitial(last) && INITIAL_TO_SINGLE[initialOf(last)] != 0) {
             // Generate single consonant from double consonants.
             // Example: ㅆ will convert to ㅅ
-            result = StringUtils.removeLastCharacter(aTextBeforeCursor);
-            result += getSingleConsonant(DOUBLE_CONSONANTS.indexOf(getInitial(last.initialIndex)));
+            return replaceLast(aTextBeforeCursor, 1, INITIAL_TO_SINGLE[initialOf(last)], (char) 0);
         }
 
-        return result;
-    }
-
-    private DecomposedHangul decompose(String aCharacter) {
-        DecomposedHangul result = new DecomposedHangul();
-        if (StringUtils.isEmpty(aCharacter)) {
-            return result;
-        }
-
-        // Check if it's a Hangul character
-        final int charValue = aCharacter.codePointAt(0); // Unicode value
-        if (charValue >= HANGUL_UNICODE_START_VALUE &&  charValue <= HANGUL_UNICODE_LAST_VALUE) {
-            result.initialIndex = (charValue - HANGUL_UNICODE_START_VALUE) / AMOUNT_OF_TAILS_THE_AMOUNT_OF_VOWELS;
-            result.tailIndex = ((charValue - HANGUL_UNICODE_START_VALUE) % AMOUNT_OF_TAILS) - 1;
-            result.vowelIndex = ((charValue - HANGUL_UNICODE_START_VALUE - result.tailIndex) % AMOUNT_OF_TAILS_THE_AMOUNT_OF_VOWELS) / AMOUNT_OF_TAILS;
-            return result;
-        }
-
-        // Check if it is a Jamo character
-        result.initialIndex = INITIALS.indexOf(aCharacter);
-        result.vowelIndex = VOWELS.indexOf(aCharacter);
-        result.tailIndex = TAILS.indexOf(aCharacter);
-
-        return result;
-    }
-
-    private String getVowel(int aIndex) {
-        if (aIndex < 0 || aIndex >= VOWELS.length()) {
-            return "";
-        }
-
-        return VOWELS.substring(aIndex, aIndex + 1);
-    }
-
-
-    private String getTail(int aIndex) {
-        if (aIndex < 0 || aIndex >= TAILS.length()) {
-            return "";
-        }
-
-        return TAILS.substring(aIndex, aIndex + 1);
-    }
-
-    private String getInitial(int aIndex) {
-        if (aIndex < 0 || aIndex >= INITIALS.length()) {
-            return "";
-        }
-
-        return INITIALS.substring(aIndex, aIndex + 1);
+        return null;
     }
 
     private String getSingleConsonant(int aIndex) {
@@ -1,6 +1,8 @@
 package org.mozilla.vrbrowser.ui.viewmodel;
 
 import android.app.Application;
+import android.os.SystemClock;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.databinding.ObservableBoolean;
@@ -15,6 +17,7 @@ import org.mozilla.geckoview.ContentBlocking;
 import org.mozilla.vrbrowser.BuildConfig;
 import org.mozilla.vrbrowser.browser.SettingsStore;
 import org.mozilla.vrbrowser.utils.RemoteProperties;
+import org.mozilla.vrbrowser.utils.SystemUtils;
 
 import java.lang.reflect.Type;
 import java.util.Collections;
@@ -22,6 +25,8 @@ import java.util.Map;
 
 public class SettingsViewModel extends AndroidViewModel {
 
+    private static final String LOGTAG = SystemUtils.createLogtag(SettingsViewModel.class);
+
     private MutableLiveData<ObservableBoolean> isTrackingProtectionEnabled;
     private MutableLiveData<ObservableBoolean> isDRMEnabled;
     private MutableLiveData<ObservableBoolean> isPopupBlockingEnabled;
@@ -110,9 +115,12 @@ public class SettingsViewModel extends AndroidViewModel {
     }
 
     public void setProps(String json) {
+        long start = SystemClock.elapsedRealtime();
         Gson gson = new GsonBuilder().create();
         Type type = new TypeToken<Map<String, RemoteProperties>>() {}.getType();
-        this.props.postValue(gson.fromJson(json, type));
+        Map<String, RemoteProperties> parsed = gson.fromJson(json, type);
+        Log.d(LOGTAG, "Remote properties parsed in " + (SystemClock.elapsedRealtime() - start) + "ms");
+        this.props.postValue(parsed);
     }
 
     public MutableLiveData<Map<String, RemoteProperties>> getProps() {
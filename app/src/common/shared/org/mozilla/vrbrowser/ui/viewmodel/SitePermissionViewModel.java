@@ -55,6 +55,10 @@ public class SitePermissionViewModel extends AndroidViewModel {
         mRepository.insertSitePermission(site);
     }
 
+    public void replaceAll(@SitePermission.Category int category, @NonNull List<SitePermission> sites) {
+        mRepository.replaceSitePermissions(category, sites);
+    }
+
     public void deleteSite(@NonNull SitePermission site) {
         mRepository.deleteSitePermission(site);
     }
@@ -7,6 +7,7 @@ package org.mozilla.vrbrowser.ui.views;
 
 import android.content.Context;
 import android.util.AttributeSet;
+import android.util.LruCache;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.FrameLayout;
@@ -18,11 +19,17 @@ import org.mozilla.vrbrowser.ui.keyboards.KeyboardInterface.Words;
 import org.mozilla.vrbrowser.ui.widgets.WidgetPlacement;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import static android.view.Gravity.CENTER_VERTICAL;
 
 public class AutoCompletionView extends FrameLayout {
+    // Rows of the extended view laid out at once, more are added when scrolling close to the end.
+    private static final int EXTENDED_PAGE_ROWS = 8;
+    // Measured item widths by item text, so long emoji/symbol lists are not measured again every time they are shown.
+    private static final LruCache<String, Integer> sItemWidths = new LruCache<>(2048);
+
     private LinearLayout mFirstLine;
     private LinearLayout mExtendContent;
     private ScrollView mScrollView;
@@ -35,7 +42,9 @@ public class AutoCompletionView extends FrameLayout {
     private int mItemPadding;
     private UIButton mExtendButton;
     private int mExtendedHeight;
-    private ArrayList<Words> mExtraItems = new ArrayList<>();
+    private List<Words> mExtraItems = Collections.emptyList();
+    private int mExtraItemsLaidOut;
+    private ArrayList<UITextButton> mRecycledButtons = new ArrayList<>();
     private boolean mIsExtended;
     private Delegate mDelegate;
     private List<Words> mItems;
@@ -82,6 +91,11 @@ public class AutoCompletionView extends FrameLayout {
         mLineHeight = WidgetPlacement.pixelDimension(getContext(), R.dimen.autocompletion_widget_line_height);
         mItemPadding = WidgetPlacement.pixelDimension(getContext(), R.dimen.autocompletion_widget_item_padding);
         mExtendedHeight = mLineHeight * 6;
+        mScrollView.setOnScrollChangeListener((v, scrollX, scrollY, oldScrollX, oldScrollY) -> {
+            if (scrollY + mScrollView.getHeight() >= mExtendContent.getHeight() - mLineHeight * 2) {
+                layoutExtendedItems(EXTENDED_PAGE_ROWS);
+            }
+        });
         setFocusable(false);
     }
 
@@ -94,7 +108,12 @@ public class AutoCompletionView extends FrameLayout {
     }
 
     private UITextButton createButton(Words aWords, OnClickListener aHandler) {
-        UITextButton key = new UITextButton(getContext());
+        UITextButton key;
+        if (mRecycledButtons.isEmpty()) {
+            key = new UITextButton(getContext());
+        } else {
+            key = mRecycledButtons.remove(mRecycledButtons.size() - 1);
+        }
         key.setTintColorList(R.drawable.main_button_icon_color);
         key.setBackground(getContext().getDrawable(R.drawable.autocompletion_item_background));
         if (aHandler != null) {
@@ -113,6 +132,31 @@ public class AutoCompletionView extends FrameLayout {
         return key;
     }
 
+    private void recycleButtons(ViewGroup aParent) {
+        for (int i = aParent.getChildCount() - 1; i >= 0; i--) {
+            View child = aParent.getChildAt(i);
+            if (child instanceof UITextButton) {
+                mRecycledButtons.add((UITextButton) child);
+            } else if (child instanceof ViewGroup) {
+                recycleButtons((ViewGroup) child);
+            }
+        }
+        aParent.removeAllViews();
+    }
+
+    private int measureButton(UITextButton aButton, boolean aCached) {
+        String text = ((Words) aButton.getTag()).value;
+        Integer width = aCached && text != null ? sItemWidths.get(text) : null;
+        if (width == null) {
+            aButton.measure(MeasureSpec.UNSPECIFIED, MeasureSpec.UNSPECIFIED);
+            width = aButton.getMeasuredWidth();
+            if (aCached && text != null) {
+                sItemWidths.put(text, width);
+            }
+        }
+        return width;
+    }
+
     private LinearLayout createRow() {
         LinearLayout row = new LinearLayout(getContext());
         LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, mLineHeight);
@@ -128,7 +172,7 @@ public class AutoCompletionView extends FrameLayout {
             mLineWidth = width;
             layoutItems();
             if (mIsExtended) {
-                layoutExtendedItems();
+                layoutExtendedItems(EXTENDED_PAGE_ROWS);
             }
         }
     }
@@ -144,9 +188,10 @@ public class AutoCompletionView extends FrameLayout {
     }
 
     private void layoutItems() {
-        mFirstLine.removeAllViews();
-        mExtraItems.clear();
-        mExtendContent.removeAllViews();
+        recycleButtons(mFirstLine);
+        recycleButtons(mExtendContent);
+        mExtraItems = Collections.emptyList();
+        mExtraItemsLaidOut = 0;
         if (mItems == null || mItems.size() == 0) {
             exitExtend();
             mExtendButton.setVisibility(View.GONE);
@@ -154,28 +199,30 @@ public class AutoCompletionView extends FrameLayout {
             return;
         }
 
-        int n = 0;
         int currentWidth = 0;
         int extendButtonWidth =  mExtendButton.getWidth();
 
-        for (Words item : mItems) {
+        // Only the items that fit in the first line get a view, the rest are laid out on demand
+        // when the extended view is shown.
+        for (int n = 0; n < mItems.size(); n++) {
+            Words item = mItems.get(n);
             UITextButton textBtn = createButton(item, clickHandler);
             if (n == 0) {
                 textBtn.setBackground(getContext().getDrawable(R.drawable.autocompletion_item_background_first));
                 textBtn.setTintColorList(R.drawable.autocompletion_item_active_color);
             }
-            textBtn.measure(MeasureSpec.UNSPECIFIED, MeasureSpec.UNSPECIFIED);
-            currentWidth += textBtn.getMeasuredWidth();
+            currentWidth += measureButton(textBtn, n > 0);
 
             if (currentWidth < (mLineWidth - extendButtonWidth)) {
                 mFirstLine.addView(textBtn);
             } else {
-                mExtraItems.add(item);
+                mRecycledButtons.add(textBtn);
+                mExtraItems = mItems.subList(n, mItems.size());
+                break;
             }
-            n++;
         }
 
-        mExtendButton.setVisibility(currentWidth >= mLineWidth ? View.VISIBLE : View.GONE);
+        mExtendButton.setVisibility(mExtraItems.isEmpty() ? View.GONE : View.VISIBLE);
         mExtendButtonSeparator.setVisibility(mExtendButton.getVisibility());
     }
 
@@ -193,28 +240,29 @@ public class AutoCompletionView extends FrameLayout {
         }
     };
 
-    private void layoutExtendedItems() {
-        int index = 0;
+    private void layoutExtendedItems(int aMaxRows) {
+        int rows = 0;
         int currentWidth = 0;
         LinearLayout current = createRow();
         int padding = mScrollView.getPaddingStart() + mScrollView.getPaddingEnd();
 
-        for (Words item: mExtraItems) {
-            UITextButton textBtn = createButton(item, clickHandler);
-            textBtn.measure(MeasureSpec.UNSPECIFIED, MeasureSpec.UNSPECIFIED);
-            currentWidth += textBtn.getMeasuredWidth();
+        while (mExtraItemsLaidOut < mExtraItems.size() && rows < aMaxRows) {
+            UITextButton textBtn = createButton(mExtraItems.get(mExtraItemsLaidOut), clickHandler);
+            int width = measureButton(textBtn, true);
 
-            if (currentWidth < (mLineWidth - padding)) {
+            if (current.getChildCount() == 0 || currentWidth + width < (mLineWidth - padding)) {
                 current.addView(textBtn);
-                index++;
+                currentWidth += width;
+                mExtraItemsLaidOut++;
             } else {
+                mRecycledButtons.add(textBtn);
                 mExtendContent.addView(current);
+                rows++;
                 current = createRow();
-                index = 0;
                 currentWidth = 0;
             }
         }
-        if (index > 0) {
+        if (current.getChildCount() > 0) {
             mExtendContent.addView(current);
         }
     }
@@ -227,7 +275,7 @@ public class AutoCompletionView extends FrameLayout {
         mScrollView.setVisibility(View.VISIBLE);
         mSeparator.setVisibility(View.VISIBLE);
         if (mExtendContent.getChildCount() == 0) {
-            layoutExtendedItems();
+            layoutExtendedItems(EXTENDED_PAGE_ROWS);
         }
 
         mExtendButton.setScaleY(-1);
@@ -62,6 +62,7 @@ import mozilla.components.ui.autocomplete.InlineAutocompleteEditText;
 public class NavigationURLBar extends FrameLayout {
 
     private static final String LOGTAG = SystemUtils.createLogtag(NavigationURLBar.class);
+    private static final String AUTOCOMPLETE_HISTORY_SOURCE = "history";
 
     private WindowViewModel mViewModel;
     private SettingsViewModel mSettingsViewModel;
@@ -78,6 +79,17 @@ public class NavigationURLBar extends FrameLayout {
     private int lastTouchDownOffset = 0;
 
     private Unit domainAutocompleteFilter(String text) {
+        // Visited hosts take precedence over the shipped domain list.
+        String visited = SessionStore.get().getHistoryStore().getDomainAutocompleteIndex().getAutocompleteSuggestion(text);
+        if (visited != null) {
+            mBinding.urlEditText.applyAutocompleteResult(new InlineAutocompleteEditText.AutocompleteResult(
+                    visited,
+                    AUTOCOMPLETE_HISTORY_SOURCE,
+                    SessionStore.get().getHistoryStore().getDomainAutocompleteIndex().size(),
+                    null));
+            return Unit.INSTANCE;
+        }
+
         DomainAutocompleteResult result = mAutocompleteProvider.getAutocompleteSuggestion(text);
         if (result != null) {
             mBinding.urlEditText.applyAutocompleteResult(new InlineAutocompleteEditText.AutocompleteResult(
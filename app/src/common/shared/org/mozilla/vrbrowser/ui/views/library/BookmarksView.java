@@ -25,6 +25,7 @@ import org.mozilla.vrbrowser.VRBrowserActivity;
 import org.mozilla.vrbrowser.VRBrowserApplication;
 import org.mozilla.vrbrowser.browser.Accounts;
 import org.mozilla.vrbrowser.browser.BookmarksStore;
+import org.mozilla.vrbrowser.browser.PlacesChangeSet;
 import org.mozilla.vrbrowser.browser.SettingsStore;
 import org.mozilla.vrbrowser.browser.engine.Session;
 import org.mozilla.vrbrowser.browser.engine.SessionStore;
@@ -408,7 +409,8 @@ public class BookmarksView extends LibraryView implements BookmarksStore.Bookmar
     // BookmarksStore.BookmarksViewListener
 
     @Override
-    public void onBookmarksUpdated() {
+    public void onBookmarksUpdated(@Nullable PlacesChangeSet changes) {
+        // The tree comes from the store snapshot and the adapter only applies the differences.
         updateBookmarks();
     }
 
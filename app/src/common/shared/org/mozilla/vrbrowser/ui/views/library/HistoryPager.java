@@ -0,0 +1,355 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.ui.views.library;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.mozilla.vrbrowser.browser.HistoryStore;
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+import mozilla.components.concept.storage.VisitInfo;
+import mozilla.components.concept.storage.VisitType;
+
+/**
+ * Paged history model for the library panel.
+ *
+ * Visits are loaded from Places in pages, newest first. Deduplication by url and the section headers
+ * are computed on a background executor and pages are appended to the rows without re-sorting.
+ * When the history changes only the first page is queried again: new visits are moved to the top and a
+ * single deleted url is removed in place. Changed urls that are no longer in history are removed
+ * wherever they were loaded. Any other change resets the model to its first page.
+ *
+ * All the model state is only accessed from the background executor, the delegate is called on the UI thread.
+ */
+class HistoryPager {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(HistoryPager.class);
+
+    static final int PAGE_SIZE = 200;
+
+    interface Delegate {
+        void onHistoryRows(@NonNull List<VisitInfo> aRows, boolean aHasMore);
+    }
+
+    private HistoryStore mHistoryStore;
+    private String[] mSectionTitles;
+    private Delegate mDelegate;
+    private Executor mBackgroundExecutor;
+    private Executor mUIThreadExecutor;
+
+    // Background state
+    private List<VisitInfo> mVisits = new ArrayList<>();
+    private List<VisitInfo> mRows = new ArrayList<>();
+    private HashMap<String, Integer> mRawVisitCounts = new HashMap<>();
+    private long mOffset;
+    private boolean mHasMore = true;
+    private long[] mSectionLimits;
+    private int mLastSection = -1;
+
+    // UI thread state
+    private boolean mLoading;
+    private boolean mRefreshPending;
+    private Set<String> mPendingChangedUrls;
+    private boolean mCanLoadMore = true;
+
+    /**
+     * @param aSectionTitles Titles of the today, yesterday, last week and older sections.
+     */
+    HistoryPager(@NonNull HistoryStore aHistoryStore, @NonNull String[] aSectionTitles, @NonNull Delegate aDelegate,
+                 @NonNull Executor aBackgroundExecutor, @NonNull Executor aUIThreadExecutor) {
+        mHistoryStore = aHistoryStore;
+        mSectionTitles = aSectionTitles;
+        mDelegate = aDelegate;
+        mBackgroundExecutor = aBackgroundExecutor;
+        mUIThreadExecutor = aUIThreadExecutor;
+    }
+
+    /**
+     * Loads the next page of visits, if any.
+     */
+    void loadMore() {
+        if (mLoading || !mCanLoadMore) {
+            return;
+        }
+        mLoading = true;
+        mBackgroundExecutor.execute(() -> {
+            final long offset = mOffset;
+            mHistoryStore.getVisitsPaginated(offset, PAGE_SIZE).thenAcceptAsync(visits -> {
+                if (offset != mOffset) {
+                    // The model was reset or refreshed in the meantime.
+                    publish();
+                    return;
+                }
+                if (mSectionLimits == null) {
+                    mSectionLimits = computeSectionLimits();
+                }
+                appendPage(visits != null ? visits : Collections.emptyList());
+                publish();
+
+            }, mBackgroundExecutor).exceptionally(this::onError);
+        });
+    }
+
+    /**
+     * Checks the first page for added or deleted visits.
+     * @param aChangedUrls Urls changed since the last refresh, or null if anything might have changed.
+     */
+    void refresh(@Nullable Set<String> aChangedUrls) {
+        if (mLoading) {
+            if (!mRefreshPending) {
+                mRefreshPending = true;
+                mPendingChangedUrls = aChangedUrls != null ? new HashSet<>(aChangedUrls) : null;
+            } else if (mPendingChangedUrls != null) {
+                if (aChangedUrls != null) {
+                    mPendingChangedUrls.addAll(aChangedUrls);
+                } else {
+                    mPendingChangedUrls = null;
+                }
+            }
+            return;
+        }
+        mLoading = true;
+        final Set<String> changedUrls = aChangedUrls != null ? new HashSet<>(aChangedUrls) : null;
+        mBackgroundExecutor.execute(() -> {
+            // Deleted urls can be anywhere in the loaded visits, not only in the first page.
+            final List<String> loadedUrls = changedUrls != null ?
+                    changedUrls.stream().filter(mRawVisitCounts::containsKey).collect(Collectors.toList()) :
+                    Collections.emptyList();
+            CompletableFuture<List<Boolean>> visited = loadedUrls.isEmpty() ?
+                    CompletableFuture.completedFuture(Collections.emptyList()) :
+                    mHistoryStore.getVisited(loadedUrls);
+            visited.thenAcceptAsync(result -> removeDeleted(loadedUrls, result), mBackgroundExecutor)
+                    .thenCompose(aVoid -> mHistoryStore.getVisitsPaginated(0, PAGE_SIZE))
+                    .thenAcceptAsync(this::applyFirstPage, mBackgroundExecutor)
+                    .exceptionally(this::onError);
+        });
+    }
+
+    private void applyFirstPage(@Nullable List<VisitInfo> aVisits) {
+        if (aVisits == null || !applyHead(aVisits)) {
+            reset();
+            if (aVisits != null) {
+                appendPage(aVisits);
+            }
+        }
+        publish();
+    }
+
+    /**
+     * Removes the loaded urls that are no longer in history. The rows are rebuilt once the first
+     * page has been applied.
+     */
+    private void removeDeleted(@NonNull List<String> aUrls, @Nullable List<Boolean> aVisited) {
+        Set<String> deleted = new HashSet<>();
+        for (int i = 0; aVisited != null && i < aUrls.size() && i < aVisited.size(); i++) {
+            if (!aVisited.get(i)) {
+                deleted.add(aUrls.get(i));
+            }
+        }
+        for (String url : deleted) {
+            Integer count = mRawVisitCounts.remove(url);
+            mOffset -= count != null ? count : 0;
+        }
+        if (!deleted.isEmpty()) {
+            mVisits.removeIf(visit -> deleted.contains(visit.getUrl()));
+        }
+    }
+
+    private Void onError(Throwable aThrowable) {
+        Log.d(LOGTAG, "Error getting history: " + aThrowable.getLocalizedMessage());
+        aThrowable.printStackTrace();
+        mUIThreadExecutor.execute(() -> mLoading = false);
+        return null;
+    }
+
+    private void publish() {
+        final List<VisitInfo> rows = new ArrayList<>(mRows);
+        final boolean hasMore = mHasMore;
+        mUIThreadExecutor.execute(() -> {
+            mLoading = false;
+            mCanLoadMore = hasMore;
+            mDelegate.onHistoryRows(rows, hasMore);
+            if (mRefreshPending) {
+                mRefreshPending = false;
+                refresh(mPendingChangedUrls);
+            }
+        });
+    }
+
+    private void reset() {
+        mVisits.clear();
+        mRows.clear();
+        mRawVisitCounts.clear();
+        mOffset = 0;
+        mHasMore = true;
+        mSectionLimits = computeSectionLimits();
+        mLastSection = -1;
+    }
+
+    private void appendPage(@NonNull List<VisitInfo> aVisits) {
+        for (VisitInfo visit : aVisits) {
+            mOffset++;
+            Integer count = mRawVisitCounts.get(visit.getUrl());
+            mRawVisitCounts.put(visit.getUrl(), count != null ? count + 1 : 1);
+            if (count == null) {
+                mVisits.add(visit);
+                appendRow(visit);
+            }
+        }
+        mHasMore = aVisits.size() >= PAGE_SIZE;
+    }
+
+    private void appendRow(@NonNull VisitInfo aVisit) {
+        int section = getSection(aVisit.getVisitTime());
+        if (section != mLastSection) {
+            mLastSection = section;
+            mRows.add(new VisitInfo(
+                    mSectionTitles[section],
+                    mSectionTitles[section],
+                    section == 0 ? Long.MAX_VALUE : mSectionLimits[section - 1],
+                    VisitType.NOT_A_VISIT));
+        }
+        mRows.add(aVisit);
+    }
+
+    private void rebuildRows() {
+        mRows.clear();
+        mLastSection = -1;
+        mSectionLimits = computeSectionLimits();
+        for (VisitInfo visit : mVisits) {
+            appendRow(visit);
+        }
+    }
+
+    /**
+     * Applies the changes found in the first page of visits to the loaded ones.
+     * @return false if the changes can't be applied incrementally.
+     */
+    private boolean applyHead(@NonNull List<VisitInfo> aHead) {
+        if (mVisits.isEmpty()) {
+            return false;
+        }
+        long newest = mVisits.get(0).getVisitTime();
+
+        // Visits newer than the loaded ones
+        List<VisitInfo> added = new ArrayList<>();
+        Set<String> addedUrls = new HashSet<>();
+        HashMap<String, Integer> addedRawCounts = new HashMap<>();
+        int addedRawCount = 0;
+        int index = 0;
+        for (; index < aHead.size() && aHead.get(index).getVisitTime() > newest; index++) {
+            VisitInfo visit = aHead.get(index);
+            addedRawCount++;
+            addedRawCounts.merge(visit.getUrl(), 1, Integer::sum);
+            if (addedUrls.add(visit.getUrl())) {
+                added.add(visit);
+            }
+        }
+        if (index == aHead.size()) {
+            // There might be more new visits than fit in a page.
+            return false;
+        }
+
+        // The rest of the page must match the loaded visits, except for at most one deleted url.
+        List<VisitInfo> rest = new ArrayList<>();
+        Set<String> restUrls = new HashSet<>(addedUrls);
+        for (; index < aHead.size(); index++) {
+            VisitInfo visit = aHead.get(index);
+            if (restUrls.add(visit.getUrl())) {
+                rest.add(visit);
+            }
+        }
+        List<VisitInfo> expected = new ArrayList<>(mVisits.size());
+        for (VisitInfo visit : mVisits) {
+            if (!addedUrls.contains(visit.getUrl())) {
+                expected.add(visit);
+            }
+        }
+
+        String deletedUrl = null;
+        int mismatch = firstMismatch(rest, expected);
+        if (mismatch >= 0) {
+            if (mismatch >= expected.size()) {
+                return false;
+            }
+            deletedUrl = expected.get(mismatch).getUrl();
+            expected.remove(mismatch);
+            if (firstMismatch(rest, expected) >= 0) {
+                return false;
+            }
+        }
+
+        // Pick up title changes of the visits in the first page.
+        for (int i = 0; i < rest.size(); i++) {
+            expected.set(i, rest.get(i));
+        }
+
+        // The previous visits of these urls were already counted in the offset.
+        addedRawCounts.forEach((url, count) -> mRawVisitCounts.merge(url, count, Integer::sum));
+        if (deletedUrl != null) {
+            Integer count = mRawVisitCounts.remove(deletedUrl);
+            mOffset -= count != null ? count : 0;
+        }
+        mOffset += addedRawCount;
+        added.addAll(expected);
+        mVisits = added;
+        rebuildRows();
+        return true;
+    }
+
+    private static int firstMismatch(@NonNull List<VisitInfo> aRest, @NonNull List<VisitInfo> aExpected) {
+        for (int i = 0; i < aRest.size(); i++) {
+            if (i >= aExpected.size()) {
+                return i;
+            }
+            VisitInfo visit = aRest.get(i);
+            VisitInfo other = aExpected.get(i);
+            if (visit.getVisitTime() != other.getVisitTime() || !Objects.equals(visit.getUrl(), other.getUrl())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int getSection(long aVisitTime) {
+        for (int i = 0; i < mSectionLimits.length; i++) {
+            if (aVisitTime > mSectionLimits[i]) {
+                return i;
+            }
+        }
+        return mSectionLimits.length;
+    }
+
+    private static long[] computeSectionLimits() {
+        Calendar date = new GregorianCalendar();
+        date.set(Calendar.HOUR_OF_DAY, 0);
+        date.set(Calendar.MINUTE, 0);
+        date.set(Calendar.SECOND, 0);
+        date.set(Calendar.MILLISECOND, 0);
+
+        long todayLimit = date.getTimeInMillis();
+        long yesterdayLimit = todayLimit - SystemUtils.ONE_DAY_MILLIS;
+        long oneWeekLimit = todayLimit - SystemUtils.ONE_WEEK_MILLIS;
+
+        return new long[] { todayLimit, yesterdayLimit, oneWeekLimit };
+    }
+}
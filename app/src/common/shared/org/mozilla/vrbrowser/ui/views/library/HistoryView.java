@@ -25,6 +25,7 @@ import org.mozilla.vrbrowser.VRBrowserActivity;
 import org.mozilla.vrbrowser.VRBrowserApplication;
 import org.mozilla.vrbrowser.browser.Accounts;
 import org.mozilla.vrbrowser.browser.HistoryStore;
+import org.mozilla.vrbrowser.browser.PlacesChangeSet;
 import org.mozilla.vrbrowser.browser.SettingsStore;
 import org.mozilla.vrbrowser.browser.engine.Session;
 import org.mozilla.vrbrowser.browser.engine.SessionStore;
@@ -43,19 +44,11 @@ import org.mozilla.vrbrowser.ui.widgets.menus.library.HistoryContextMenuWidget;
 import org.mozilla.vrbrowser.ui.widgets.menus.library.LibraryContextMenuWidget;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 
-import java.util.Calendar;
-import java.util.Comparator;
-import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.Function;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 import mozilla.components.concept.storage.VisitInfo;
-import mozilla.components.concept.storage.VisitType;
 import mozilla.components.concept.sync.AccountObserver;
 import mozilla.components.concept.sync.AuthType;
 import mozilla.components.concept.sync.OAuthAccount;
@@ -72,11 +65,15 @@ public class HistoryView extends LibraryView implements HistoryStore.HistoryList
 
     private static final boolean ACCOUNTS_UI_ENABLED = false;
 
+    // Number of rows left before the end of the list that trigger loading the next page.
+    private static final int PAGING_THRESHOLD = 50;
+
     private HistoryBinding mBinding;
     private Accounts mAccounts;
     private HistoryAdapter mHistoryAdapter;
     private ClearHistoryDialogWidget mClearHistoryDialog;
     private HistoryViewModel mViewModel;
+    private HistoryPager mHistoryPager;
 
     public HistoryView(Context aContext) {
         super(aContext);
@@ -107,6 +104,18 @@ public class HistoryView extends LibraryView implements HistoryStore.HistoryList
                 ViewModelProvider.AndroidViewModelFactory.getInstance(((VRBrowserActivity) getContext()).getApplication()))
                 .get(HistoryViewModel.class);
 
+        mHistoryPager = new HistoryPager(
+                SessionStore.get().getHistoryStore(),
+                new String[] {
+                        getResources().getString(R.string.history_section_today),
+                        getResources().getString(R.string.history_section_yesterday),
+                        getResources().getString(R.string.history_section_last_week),
+                        getResources().getString(R.string.history_section_older)
+                },
+                this::showHistory,
+                ((VRBrowserApplication) getContext().getApplicationContext()).getExecutors().diskIO(),
+                mUIThreadExecutor);
+
         SessionStore.get().getHistoryStore().addListener(this);
 
         updateUI();
@@ -130,6 +139,7 @@ public class HistoryView extends LibraryView implements HistoryStore.HistoryList
             return false;
         });
         mBinding.historyList.addOnScrollListener(mScrollListener);
+        mBinding.historyList.addOnScrollListener(mPagingScrollListener);
         mBinding.historyList.setHasFixedSize(true);
         mBinding.historyList.setItemViewCacheSize(20);
         mBinding.historyList.setDrawingCacheEnabled(true);
@@ -161,6 +171,7 @@ public class HistoryView extends LibraryView implements HistoryStore.HistoryList
         SessionStore.get().getHistoryStore().removeListener(this);
 
         mBinding.historyList.removeOnScrollListener(mScrollListener);
+        mBinding.historyList.removeOnScrollListener(mPagingScrollListener);
 
         if (ACCOUNTS_UI_ENABLED) {
             mAccounts.removeAccountListener(mAccountListener);
@@ -218,6 +229,19 @@ public class HistoryView extends LibraryView implements HistoryStore.HistoryList
         }
     };
 
+    // Load the next page of visits when the list gets close to the end of the loaded ones.
+    private RecyclerView.OnScrollListener mPagingScrollListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+            if (recyclerView.getLayoutManager() instanceof LinearLayoutManager) {
+                LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+                if (layoutManager.findLastVisibleItemPosition() >= mHistoryAdapter.getItemCount() - PAGING_THRESHOLD) {
+                    mHistoryPager.loadMore();
+                }
+            }
+        }
+    };
+
     private HistoryCallback mHistoryCallback = new HistoryCallback() {
         @Override
         public void onClearHistory(@NonNull View view) {
@@ -352,66 +376,23 @@ public class HistoryView extends LibraryView implements HistoryStore.HistoryList
         }
     };
 
-    @NonNull
-    public static <T> Predicate<T> distinctByUrl(Function<? super T, ?> keyExtractor) {
-        Set<Object> seen = ConcurrentHashMap.newKeySet();
-        return t -> seen.add(keyExtractor.apply(t));
-    }
-
     private void updateHistory() {
-        Calendar date = new GregorianCalendar();
-        date.set(Calendar.HOUR_OF_DAY, 0);
-        date.set(Calendar.MINUTE, 0);
-        date.set(Calendar.SECOND, 0);
-        date.set(Calendar.MILLISECOND, 0);
-
-        long todayLimit = date.getTimeInMillis();
-        long yesterdayLimit = todayLimit - SystemUtils.ONE_DAY_MILLIS;
-        long oneWeekLimit = todayLimit - SystemUtils.ONE_WEEK_MILLIS;
-
-        SessionStore.get().getHistoryStore().getDetailedHistory().thenAcceptAsync((items) -> {
-            List<VisitInfo> orderedItems = items.stream()
-                    .sorted(Comparator.comparing(VisitInfo::getVisitTime)
-                            .reversed())
-                    .filter(distinctByUrl(VisitInfo::getUrl))
-                    .collect(Collectors.toList());
-
-            addSection(orderedItems, getResources().getString(R.string.history_section_today), Long.MAX_VALUE, todayLimit);
-            addSection(orderedItems, getResources().getString(R.string.history_section_yesterday), todayLimit, yesterdayLimit);
-            addSection(orderedItems, getResources().getString(R.string.history_section_last_week), yesterdayLimit, oneWeekLimit);
-            addSection(orderedItems, getResources().getString(R.string.history_section_older), oneWeekLimit, 0);
-
-            showHistory(orderedItems);
-
-        }, mUIThreadExecutor).exceptionally(throwable -> {
-            Log.d(LOGTAG, "Error getting history: " + throwable.getLocalizedMessage());
-            throwable.printStackTrace();
-            return null;
-        });
+        updateHistory(null);
     }
 
-    private void addSection(final @NonNull List<VisitInfo> items, @NonNull String section, long rangeStart, long rangeEnd) {
-        for (int i = 0; i < items.size(); i++) {
-            if (items.get(i).getVisitTime() == rangeStart && items.get(i).getVisitType() == VisitType.NOT_A_VISIT)
-                break;
-
-            if (items.get(i).getVisitTime() < rangeStart && items.get(i).getVisitTime() > rangeEnd) {
-                items.add(i, new VisitInfo(
-                        section,
-                        section,
-                        rangeStart,
-                        VisitType.NOT_A_VISIT
-                ));
-                break;
-            }
-        }
+    private void updateHistory(@Nullable Set<String> aChangedUrls) {
+        mHistoryPager.refresh(aChangedUrls);
     }
 
-    private void showHistory(List<VisitInfo> historyItems) {
-        if (historyItems == null || historyItems.size() == 0) {
+    private void showHistory(List<VisitInfo> historyItems, boolean hasMore) {
+        if ((historyItems == null || historyItems.size() == 0) && !hasMore) {
             mViewModel.setIsEmpty(true);
             mViewModel.setIsLoading(false);
 
+        } else if (historyItems == null || historyItems.size() == 0) {
+            // Every visit in the page was a duplicate, keep loading.
+            mHistoryPager.loadMore();
+
         } else {
             mViewModel.setIsEmpty(false);
             mViewModel.setIsLoading(false);
@@ -478,7 +459,9 @@ public class HistoryView extends LibraryView implements HistoryStore.HistoryList
     // HistoryStore.HistoryListener
 
     @Override
-    public void onHistoryUpdated() {
-        updateHistory();
+    public void onHistoryUpdated(@Nullable PlacesChangeSet changes) {
+        // The pager only queries the first page again, new and updated visits are always there.
+        // Deleted urls are looked up in all the loaded pages.
+        updateHistory(changes != null ? changes.getUrls() : null);
     }
 }
@@ -6,11 +6,9 @@
 package org.mozilla.vrbrowser.ui.widgets;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.content.res.Configuration;
 import android.graphics.Canvas;
 import android.graphics.Rect;
-import android.preference.PreferenceManager;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.util.Pair;
@@ -35,13 +33,14 @@ import org.mozilla.vrbrowser.VRBrowserApplication;
 import org.mozilla.vrbrowser.audio.AudioEngine;
 import org.mozilla.vrbrowser.browser.Media;
 import org.mozilla.vrbrowser.browser.SessionChangeListener;
+import org.mozilla.vrbrowser.browser.SettingsEngine;
 import org.mozilla.vrbrowser.browser.SettingsStore;
 import org.mozilla.vrbrowser.browser.content.TrackingProtectionStore;
 import org.mozilla.vrbrowser.browser.engine.Session;
 import org.mozilla.vrbrowser.browser.engine.SessionStore;
 import org.mozilla.vrbrowser.databinding.NavigationBarBinding;
 import org.mozilla.vrbrowser.db.SitePermission;
-import org.mozilla.vrbrowser.search.suggestions.SuggestionsProvider;
+import org.mozilla.vrbrowser.search.suggestions.SuggestionsSession;
 import org.mozilla.vrbrowser.telemetry.GleanMetricsService;
 import org.mozilla.vrbrowser.telemetry.TelemetryWrapper;
 import org.mozilla.vrbrowser.ui.viewmodel.SettingsViewModel;
@@ -64,6 +63,7 @@ import org.mozilla.vrbrowser.utils.RemoteProperties;
 import org.mozilla.vrbrowser.utils.UrlUtils;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -76,7 +76,7 @@ public class NavigationBarWidget extends UIWidget implements GeckoSession.Naviga
         GeckoSession.ContentDelegate, WidgetManagerDelegate.WorldClickListener,
         WidgetManagerDelegate.UpdateListener, SessionChangeListener,
         NavigationURLBar.NavigationURLBarDelegate, VoiceSearchWidget.VoiceSearchDelegate,
-        SharedPreferences.OnSharedPreferenceChangeListener, SuggestionsWidget.URLBarPopupDelegate,
+        SettingsEngine.SettingListener, SuggestionsWidget.URLBarPopupDelegate,
         TrayListener, WindowWidget.WindowListener {
 
     private static final int TAB_ADDED_NOTIFICATION_ID = 0;
@@ -103,9 +103,9 @@ public class NavigationBarWidget extends UIWidget implements GeckoSession.Naviga
     private Runnable mVRVideoBackHandler;
     private VoiceSearchWidget mVoiceSearchWidget;
     private Context mAppContext;
-    private SharedPreferences mPrefs;
+    private SettingsEngine mSettings;
     private SuggestionsWidget mAwesomeBar;
-    private SuggestionsProvider mSuggestionsProvider;
+    private SuggestionsSession mSuggestionsSession;
     private VideoProjectionMenuWidget mProjectionMenu;
     private WidgetPlacement mProjectionMenuPlacement;
     private BrightnessMenuWidget mBrightnessWidget;
@@ -172,12 +172,12 @@ public class NavigationBarWidget extends UIWidget implements GeckoSession.Naviga
         mWidgetManager.addWorldClickListener(this);
         mWidgetManager.addConnectivityListener(mConnectivityDelegate);
 
-        mSuggestionsProvider = new SuggestionsProvider(getContext());
+        mSuggestionsSession = new SuggestionsSession(getContext());
 
         mTrackingDelegate = SessionStore.get().getTrackingProtectionStore();
 
-        mPrefs = PreferenceManager.getDefaultSharedPreferences(mAppContext);
-        mPrefs.registerOnSharedPreferenceChangeListener(this);
+        mSettings = SettingsStore.getInstance(mAppContext).getSettings();
+        mSettings.addListener(mAppContext.getString(R.string.settings_key_user_agent_version), this);
     }
 
     private void updateUI() {
@@ -445,7 +445,8 @@ public class NavigationBarWidget extends UIWidget implements GeckoSession.Naviga
         mWidgetManager.removeUpdateListener(this);
         mWidgetManager.removeWorldClickListener(this);
         mWidgetManager.removeConnectivityListener(mConnectivityDelegate);
-        mPrefs.unregisterOnSharedPreferenceChangeListener(this);
+        mSettings.removeListener(mAppContext.getString(R.string.settings_key_user_agent_version), this);
+        mSuggestionsSession.cancel();
         
         if (mAttachedWindow != null && mAttachedWindow.isFullScreen()) {
             // Workaround for https://issuetracker.google.com/issues/37123764
@@ -979,33 +980,31 @@ public class NavigationBarWidget extends UIWidget implements GeckoSession.Naviga
         final String text = mBinding.navigationBarNavigation.urlBar.getText().trim();
         final String originalText = mBinding.navigationBarNavigation.urlBar.getOriginalText().trim();
         if (originalText.length() <= 0) {
+            mSuggestionsSession.cancel();
             mAwesomeBar.hide(UIWidget.KEEP_WIDGET);
             return;
         }
 
-        mSuggestionsProvider.setText(text);
-        mSuggestionsProvider.setFilterText(originalText);
-        mSuggestionsProvider.getSuggestions()
-                .whenCompleteAsync((items, ex) -> {
-                    if (mBinding.navigationBarNavigation.urlBar.hasFocus()) {
-                        mAwesomeBar.updateItems(items);
-                        mAwesomeBar.setHighlightedText(originalText);
-
-                        if (!mAwesomeBar.isVisible()) {
-                            mAwesomeBar.updatePlacement((int) WidgetPlacement.convertPixelsToDp(getContext(), mBinding.navigationBarNavigation.urlBar.getWidth()));
-                            mAwesomeBar.show(CLEAR_FOCUS);
-                        }
-                    }
+        // Partial results are shown as soon as each source answers, the final list arrives the same way.
+        mSuggestionsSession.update(text, originalText, items -> showSuggestions(items, originalText));
+    }
 
-                }, mUIThreadExecutor).exceptionally(throwable -> {
-                    Log.d(LOGTAG, "Error getting suggestions: " + throwable.getLocalizedMessage());
-                    throwable.printStackTrace();
-                    return null;
-        });
+    private void showSuggestions(@NonNull List<SuggestionsWidget.SuggestionItem> aItems, @NonNull String aHighlightedText) {
+        if (mAwesomeBar == null || !mBinding.navigationBarNavigation.urlBar.hasFocus()) {
+            return;
+        }
+        mAwesomeBar.updateItems(aItems);
+        mAwesomeBar.setHighlightedText(aHighlightedText);
+
+        if (!mAwesomeBar.isVisible()) {
+            mAwesomeBar.updatePlacement((int) WidgetPlacement.convertPixelsToDp(getContext(), mBinding.navigationBarNavigation.urlBar.getWidth()));
+            mAwesomeBar.show(CLEAR_FOCUS);
+        }
     }
 
     @Override
     public void onHideAwesomeBar() {
+        mSuggestionsSession.finish();
         if (mAwesomeBar != null) {
             mAwesomeBar.hide(UIWidget.KEEP_WIDGET);
         }
@@ -1059,8 +1058,8 @@ public class NavigationBarWidget extends UIWidget implements GeckoSession.Naviga
     }
 
     @Override
-    public void onSharedPreferenceChanged(@NonNull SharedPreferences sharedPreferences, String key) {
-        if (key.equals(mAppContext.getString(R.string.settings_key_user_agent_version))) {
+    public void onSettingChanged(@NonNull String aKey) {
+        if (aKey.equals(mAppContext.getString(R.string.settings_key_user_agent_version))) {
             if (mHamburgerMenu != null) {
                 mHamburgerMenu.setUAMode(SettingsStore.getInstance(getContext()).getUaMode());
             }
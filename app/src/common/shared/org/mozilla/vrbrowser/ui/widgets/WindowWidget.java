@@ -7,7 +7,6 @@ package org.mozilla.vrbrowser.ui.widgets;
 
 import android.content.ActivityNotFoundException;
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.content.res.Configuration;
@@ -17,7 +16,6 @@ import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.SurfaceTexture;
 import android.net.Uri;
-import android.preference.PreferenceManager;
 import android.util.Log;
 import android.util.Pair;
 import android.view.KeyEvent;
@@ -46,8 +44,10 @@ import org.mozilla.vrbrowser.VRBrowserActivity;
 import org.mozilla.vrbrowser.VRBrowserApplication;
 import org.mozilla.vrbrowser.browser.BookmarksStore;
 import org.mozilla.vrbrowser.browser.Media;
+import org.mozilla.vrbrowser.browser.PlacesChangeSet;
 import org.mozilla.vrbrowser.browser.PromptDelegate;
 import org.mozilla.vrbrowser.browser.SessionChangeListener;
+import org.mozilla.vrbrowser.browser.SettingsEngine;
 import org.mozilla.vrbrowser.browser.SettingsStore;
 import org.mozilla.vrbrowser.browser.VideoAvailabilityListener;
 import org.mozilla.vrbrowser.browser.engine.Session;
@@ -88,7 +88,7 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
         GeckoSession.ContentDelegate, GeckoSession.NavigationDelegate, VideoAvailabilityListener,
         GeckoSession.HistoryDelegate, GeckoSession.ProgressDelegate, GeckoSession.SelectionActionDelegate,
         Session.WebXRStateChangedListener, Session.PopUpStateChangedListener,
-        Session.DrmStateChangedListener, SharedPreferences.OnSharedPreferenceChangeListener {
+        Session.DrmStateChangedListener, SettingsEngine.SettingListener {
 
     @IntDef(value = { SESSION_RELEASE_DISPLAY, SESSION_DO_NOT_RELEASE_DISPLAY})
     public @interface OldSessionDisplayAction {}
@@ -141,7 +141,7 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
     private Executor mUIThreadExecutor;
     private WindowViewModel mViewModel;
     private CopyOnWriteArrayList<Runnable> mSetViewQueuedCalls;
-    private SharedPreferences mPrefs;
+    private SettingsEngine mSettings;
     private DownloadsManager mDownloadsManager;
     private Windows.PanelType mVisiblePanelType;
 
@@ -154,8 +154,8 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
     }
 
     @Override
-    public void onSharedPreferenceChanged(@NonNull SharedPreferences sharedPreferences, String key) {
-        if (key.equals(getContext().getString(R.string.settings_key_drm_playback))) {
+    public void onSettingChanged(@NonNull String aKey) {
+        if (aKey.equals(getContext().getString(R.string.settings_key_drm_playback))) {
             if (mViewModel.getIsDrmUsed().getValue().get() && getSession() != null) {
                 getSession().reload(GeckoSession.LOAD_FLAGS_BYPASS_CACHE);
             }
@@ -179,8 +179,8 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
     private void initialize(Context aContext) {
         mSetViewQueuedCalls = new CopyOnWriteArrayList<>();
 
-        mPrefs = PreferenceManager.getDefaultSharedPreferences(getContext());
-        mPrefs.registerOnSharedPreferenceChangeListener(this);
+        mSettings = SettingsStore.getInstance(getContext()).getSettings();
+        mSettings.addListener(getContext().getString(R.string.settings_key_drm_playback), this);
 
         mWidgetManager = (WidgetManagerDelegate) aContext;
         mBorderWidth = SettingsStore.getInstance(aContext).getTransparentBorderWidth();
@@ -1029,7 +1029,7 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
         cleanListeners(mSession);
         GeckoSession session = mSession.getGeckoSession();
 
-        mPrefs.unregisterOnSharedPreferenceChangeListener(this);
+        mSettings.removeListener(getContext().getString(R.string.settings_key_drm_playback), this);
 
         mSetViewQueuedCalls.clear();
         if (mSession != null) {
@@ -1451,10 +1451,11 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
                         getContext().getString(R.string.drm_first_use_allow),
                 },
                 (index, isChecked) -> {
-                    // We remove the prefs listener before the first DRM update to avoid reloading the session
-                    mPrefs.unregisterOnSharedPreferenceChangeListener(this);
+                    // We remove the settings listener before the first DRM update to avoid reloading the session
+                    String key = getContext().getString(R.string.settings_key_drm_playback);
+                    mSettings.removeListener(key, this);
                     SettingsStore.getInstance(getContext()).setDrmContentPlaybackEnabled(index == PromptDialogWidget.POSITIVE);
-                    mPrefs.registerOnSharedPreferenceChangeListener(this);
+                    mSettings.addListener(key, this);
                     callback.run();
                 }
         );
@@ -1533,8 +1534,10 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
 
     private BookmarksStore.BookmarkListener mBookmarksListener = new BookmarksStore.BookmarkListener() {
         @Override
-        public void onBookmarksUpdated() {
-            updateBookmarked();
+        public void onBookmarksUpdated(@Nullable PlacesChangeSet changes) {
+            if (changes == null || changes.getUrls().contains(mViewModel.getUrl().getValue().toString())) {
+                updateBookmarked();
+            }
         }
 
         @Override
@@ -1828,10 +1831,16 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
             mViewModel.setIsBookmarked(false);
 
         } else {
-            SessionStore.get().getBookmarkStore().isBookmarked(url).thenAcceptAsync(aBoolean -> mViewModel.setIsBookmarked(aBoolean), mUIThreadExecutor).exceptionally(throwable -> {
-                throwable.printStackTrace();
-                return null;
-            });
+            Boolean isBookmarked = SessionStore.get().getBookmarkStore().isBookmarkedSync(url);
+            if (isBookmarked != null) {
+                mViewModel.setIsBookmarked(isBookmarked);
+
+            } else {
+                SessionStore.get().getBookmarkStore().isBookmarked(url).thenAcceptAsync(aBoolean -> mViewModel.setIsBookmarked(aBoolean), mUIThreadExecutor).exceptionally(throwable -> {
+                    throwable.printStackTrace();
+                    return null;
+                });
+            }
         }
     }
 
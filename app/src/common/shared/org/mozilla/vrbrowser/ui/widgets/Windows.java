@@ -9,7 +9,11 @@ import androidx.annotation.Nullable;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
 import org.mozilla.geckoview.GeckoSession;
 import org.mozilla.vrbrowser.R;
@@ -36,10 +40,11 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
-import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -74,7 +79,7 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
       "https://accounts.firefox.com/oauth/"
     ).collect(Collectors.toList());
 
-    class WindowState {
+    static class WindowState {
         WindowPlacement placement;
         int textureWidth;
         int textureHeight;
@@ -114,13 +119,151 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
         }
     }
 
-    class WindowsState {
+    @JsonAdapter(WindowsStateAdapter.class)
+    static class WindowsState {
         WindowPlacement focusedWindowPlacement = WindowPlacement.FRONT;
         ArrayList<WindowState> regularWindowsState = new ArrayList<>();
         ArrayList<SessionState> tabs = new ArrayList<>();
         boolean privateMode = false;
     }
 
+    /**
+     * Writes and reads the windows state by field name, without reflection. The tabs are streamed
+     * with the {@link SessionState} adapter.
+     */
+    static class WindowsStateAdapter extends TypeAdapter<WindowsState> {
+        private final TypeAdapter<SessionState> mSessionStateAdapter = new SessionState.SessionStateAdapter();
+
+        @Override
+        public void write(JsonWriter out, WindowsState state) throws IOException {
+            if (state == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("focusedWindowPlacement").value(enumName(state.focusedWindowPlacement));
+            out.name("regularWindowsState");
+            out.beginArray();
+            for (WindowState windowState : state.regularWindowsState) {
+                out.beginObject();
+                out.name("placement").value(enumName(windowState.placement));
+                out.name("textureWidth").value(windowState.textureWidth);
+                out.name("textureHeight").value(windowState.textureHeight);
+                out.name("worldWidth").value((Number) windowState.worldWidth);
+                out.name("tabIndex").value(windowState.tabIndex);
+                out.name("panelType").value(enumName(windowState.panelType));
+                out.endObject();
+            }
+            out.endArray();
+            out.name("tabs");
+            out.beginArray();
+            for (SessionState tab : state.tabs) {
+                mSessionStateAdapter.write(out, tab);
+            }
+            out.endArray();
+            out.name("privateMode").value(state.privateMode);
+            out.endObject();
+        }
+
+        @Override
+        public WindowsState read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            WindowsState state = new WindowsState();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "focusedWindowPlacement":
+                        state.focusedWindowPlacement = readEnum(in, WindowPlacement.class, state.focusedWindowPlacement);
+                        break;
+                    case "regularWindowsState":
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            state.regularWindowsState.add(readWindowState(in));
+                        }
+                        in.endArray();
+                        break;
+                    case "tabs":
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            SessionState tab = mSessionStateAdapter.read(in);
+                            if (tab != null) {
+                                state.tabs.add(tab);
+                            }
+                        }
+                        in.endArray();
+                        break;
+                    case "privateMode":
+                        state.privateMode = in.nextBoolean();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return state;
+        }
+
+        private WindowState readWindowState(JsonReader in) throws IOException {
+            WindowState windowState = new WindowState();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "placement":
+                        windowState.placement = readEnum(in, WindowPlacement.class, null);
+                        break;
+                    case "textureWidth":
+                        windowState.textureWidth = in.nextInt();
+                        break;
+                    case "textureHeight":
+                        windowState.textureHeight = in.nextInt();
+                        break;
+                    case "worldWidth":
+                        windowState.worldWidth = (float) in.nextDouble();
+                        break;
+                    case "tabIndex":
+                        windowState.tabIndex = in.nextInt();
+                        break;
+                    case "panelType":
+                        windowState.panelType = readEnum(in, PanelType.class, null);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return windowState;
+        }
+
+        @Nullable
+        private static String enumName(@Nullable Enum<?> aValue) {
+            return aValue != null ? aValue.name() : null;
+        }
+
+        private static <T extends Enum<T>> T readEnum(JsonReader in, Class<T> aClass, T aDefault) throws IOException {
+            String name = in.nextString();
+            try {
+                return Enum.valueOf(aClass, name);
+
+            } catch (IllegalArgumentException e) {
+                Log.w(LOGTAG, "Unknown " + aClass.getSimpleName() + " in windows state: " + name);
+                return aDefault;
+            }
+        }
+    }
+
     private Context mContext;
     private WidgetManagerDelegate mWidgetManager;
     private Delegate mDelegate;
@@ -221,6 +364,8 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
             }
             Gson gson = new GsonBuilder().setPrettyPrinting().create();
             gson.toJson(state, writer);
+            writer.flush();
+            SessionStore.get().onWindowsStateSaved();
 
             Log.d(LOGTAG, "Windows state saved");
 
@@ -236,8 +381,7 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
         File file = new File(mContext.getFilesDir(), WINDOWS_SAVE_FILENAME);
         try (Reader reader = new FileReader(file)) {
             Gson gson = new GsonBuilder().create();
-            Type type = new TypeToken<WindowsState>() {}.getType();
-            restored = gson.fromJson(reader, type);
+            restored = gson.fromJson(reader, WindowsState.class);
 
             Log.d(LOGTAG, "Windows state restored");
 
@@ -248,9 +392,74 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
             file.delete();
         }
 
+        // The session snapshots hold the changes made after the state was saved if the browser
+        // crashed. They are loaded on their own thread while the saved state is read.
+        SessionStore.get().getSessionSnapshotsLoaded().join();
+        List<SessionState> snapshots = SessionStore.get().getSessionSnapshots();
+        Set<String> closed = SessionStore.get().getClosedSessionSnapshots();
+        if (!snapshots.isEmpty() || (restored != null && !closed.isEmpty())) {
+            restored = mergeSessionSnapshots(restored, snapshots, closed);
+            Log.d(LOGTAG, "Windows state restored from " + snapshots.size() + " session snapshots");
+        }
+
         return restored;
     }
 
+    /**
+     * Updates the tabs of the saved state with the session snapshots. The tabs closed since the state
+     * was saved are dropped. Snapshots of saved tabs replace them in place, so the windows keep showing
+     * the same sessions, and the sessions opened since the state was saved are appended. Other saved
+     * tabs are kept, the snapshots only hold a limited number of sessions.
+     */
+    @NonNull
+    private WindowsState mergeSessionSnapshots(@Nullable WindowsState aState, @NonNull List<SessionState> aSnapshots,
+                                               @NonNull Set<String> aClosed) {
+        WindowsState state = aState != null ? aState : new WindowsState();
+        if (state.tabs == null) {
+            state.tabs = new ArrayList<>();
+        }
+        if (!aClosed.isEmpty()) {
+            int[] tabIndexes = new int[state.tabs.size()];
+            ArrayList<SessionState> tabs = new ArrayList<>();
+            for (int i = 0; i < state.tabs.size(); i++) {
+                SessionState tab = state.tabs.get(i);
+                tabIndexes[i] = aClosed.contains(tab.mId) ? -1 : tabs.size();
+                if (tabIndexes[i] >= 0) {
+                    tabs.add(tab);
+                }
+            }
+            for (WindowState windowState : state.regularWindowsState) {
+                if (windowState.tabIndex >= 0 && windowState.tabIndex < tabIndexes.length) {
+                    windowState.tabIndex = tabIndexes[windowState.tabIndex];
+                }
+            }
+            state.tabs = tabs;
+        }
+        HashMap<String, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < state.tabs.size(); i++) {
+            indexes.put(state.tabs.get(i).mId, i);
+        }
+        for (SessionState snapshot : aSnapshots) {
+            if (aClosed.contains(snapshot.mId) ||
+                    SAVE_BLOCKLIST.stream().anyMatch(uri -> snapshot.mUri != null && snapshot.mUri.startsWith(uri))) {
+                continue;
+            }
+            Integer index = indexes.get(snapshot.mId);
+            if (index != null) {
+                SessionState saved = state.tabs.get(index);
+                if (snapshot.mSessionState == null && snapshot.mUri != null && snapshot.mUri.equals(saved.mUri)) {
+                    // The snapshot history didn't fit in its slot, the saved one is still current.
+                    snapshot.mSessionState = saved.mSessionState;
+                }
+                state.tabs.set(index, snapshot);
+            } else {
+                indexes.put(snapshot.mId, state.tabs.size());
+                state.tabs.add(snapshot);
+            }
+        }
+        return state;
+    }
+
     public void setDelegate(Delegate aDelegate) {
         mDelegate = aDelegate;
     }
@@ -766,6 +975,15 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
                 }
             }
 
+            // Restored from the session snapshots without a saved windows layout.
+            if (mWindowsState.regularWindowsState.isEmpty() && !restoredSessions.isEmpty() && mFocusedWindow != null) {
+                Session defaultSession = mFocusedWindow.getSession();
+                Session session = restoredSessions.get(0);
+                mFocusedWindow.setSession(session, WindowWidget.DEACTIVATE_CURRENT_SESSION);
+                session.setActive(true);
+                SessionStore.get().destroySession(defaultSession);
+            }
+
             if (mWindowsState.privateMode) {
                 enterPrivateMode();
             } else {
@@ -778,6 +996,7 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
             mAddedTabUri = null;
         }
 
+        SessionStore.get().discardStaleSessionSnapshots();
         mAfterRestore = true;
     }
 
@@ -15,6 +15,7 @@ import org.mozilla.vrbrowser.R;
 import org.mozilla.vrbrowser.browser.HistoryStore;
 import org.mozilla.vrbrowser.browser.engine.SessionStore;
 import org.mozilla.vrbrowser.databinding.ClearHistoryDialogBinding;
+import org.mozilla.vrbrowser.search.SearchEngineWrapper;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 
 import java.util.Calendar;
@@ -94,6 +95,8 @@ public class ClearHistoryDialogWidget extends SettingDialogWidget {
                     break;
             }
             SessionStore.get().purgeSessionHistory();
+            // The cached suggestions keep the prefixes typed in the URL bar.
+            SearchEngineWrapper.get(getContext()).clearSuggestionsCache();
             onDismiss();
         }));
     }
@@ -6,10 +6,8 @@
 package org.mozilla.vrbrowser.ui.widgets.settings;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.graphics.Point;
 import android.graphics.Typeface;
-import android.preference.PreferenceManager;
 import android.text.Spannable;
 import android.text.SpannableStringBuilder;
 import android.text.style.StyleSpan;
@@ -20,6 +18,8 @@ import androidx.annotation.NonNull;
 import androidx.databinding.DataBindingUtil;
 
 import org.mozilla.vrbrowser.R;
+import org.mozilla.vrbrowser.browser.SettingsEngine;
+import org.mozilla.vrbrowser.browser.SettingsStore;
 import org.mozilla.vrbrowser.databinding.OptionsLanguageBinding;
 import org.mozilla.vrbrowser.ui.adapters.Language;
 import org.mozilla.vrbrowser.ui.widgets.WidgetManagerDelegate;
@@ -30,7 +30,13 @@ import java.util.List;
 
 class LanguageOptionsView extends SettingsView {
 
-    private SharedPreferences mPrefs;
+    private static final int[] LISTENED_KEYS = {
+            R.string.settings_key_content_languages,
+            R.string.settings_key_voice_search_language,
+            R.string.settings_key_display_language
+    };
+
+    private SettingsEngine mSettings;
     private OptionsLanguageBinding mBinding;
     private SettingsView mContentLanguage;
     private SettingsView mVoiceLanguage;
@@ -48,7 +54,7 @@ class LanguageOptionsView extends SettingsView {
         mVoiceLanguage = new VoiceSearchLanguageOptionsView(getContext(), mWidgetManager);
         mDisplayLanguage = new DisplayLanguageOptionsView(getContext(), mWidgetManager);
 
-        mPrefs = PreferenceManager.getDefaultSharedPreferences(aContext);
+        mSettings = SettingsStore.getInstance(aContext).getSettings();
     }
 
     @Override
@@ -81,14 +87,18 @@ class LanguageOptionsView extends SettingsView {
     public void onShown() {
         super.onShown();
 
-        mPrefs.registerOnSharedPreferenceChangeListener(mPreferencesListener);
+        for (int key : LISTENED_KEYS) {
+            mSettings.addListener(getContext().getString(key), mSettingListener);
+        }
     }
 
     @Override
     protected void onDismiss() {
         super.onDismiss();
 
-        mPrefs.unregisterOnSharedPreferenceChangeListener(mPreferencesListener);
+        for (int key : LISTENED_KEYS) {
+            mSettings.removeListener(getContext().getString(key), mSettingListener);
+        }
     }
 
     private OnClickListener mResetListener = (view) -> {
@@ -141,7 +151,7 @@ class LanguageOptionsView extends SettingsView {
 
     private OnClickListener mDisplayListener = v -> mDelegate.showView(SettingViewType.LANGUAGE_DISPLAY);
 
-    private SharedPreferences.OnSharedPreferenceChangeListener mPreferencesListener = (sharedPreferences, key) -> {
+    private SettingsEngine.SettingListener mSettingListener = key -> {
         if (key.equals(getContext().getString(R.string.settings_key_content_languages))) {
             setContentLanguage();
 
@@ -26,6 +26,7 @@ import org.mozilla.vrbrowser.browser.engine.SessionState;
 import org.mozilla.vrbrowser.browser.engine.SessionStore;
 import org.mozilla.vrbrowser.databinding.OptionsPrivacyBinding;
 import org.mozilla.vrbrowser.db.SitePermission;
+import org.mozilla.vrbrowser.search.SearchEngineWrapper;
 import org.mozilla.vrbrowser.ui.views.settings.RadioGroupSetting;
 import org.mozilla.vrbrowser.ui.views.settings.SwitchSetting;
 import org.mozilla.vrbrowser.ui.widgets.WidgetManagerDelegate;
@@ -79,10 +80,12 @@ class PrivacyOptionsView extends SettingsView {
                     StorageController.ClearFlags.SITE_DATA |
                             StorageController.ClearFlags.COOKIES |
                             StorageController.ClearFlags.SITE_SETTINGS);
+            SearchEngineWrapper.get(getContext()).clearSuggestionsCache();
         });
 
         mBinding.clearWebContent.setOnClickListener(v -> {
             SessionStore.get().clearCache(StorageController.ClearFlags.ALL_CACHES);
+            SearchEngineWrapper.get(getContext()).clearSuggestionsCache();
         });
 
         TextView permissionsTitleText = findViewById(R.id.permissionsTitle);
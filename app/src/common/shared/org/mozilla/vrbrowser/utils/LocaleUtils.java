@@ -16,12 +16,12 @@ import org.mozilla.vrbrowser.ui.adapters.Language;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static android.os.Build.VERSION_CODES.N;
@@ -32,7 +32,52 @@ public class LocaleUtils {
     private static final String FALLBACK_LANGUAGE_TAG = "en-US";
 
     private static HashMap<String, Language> mLanguagesCache;
+    private static IdentityHashMap<Language, String> mLanguageIdsCache;
     private static Map<String, Language> mSupportedLanguagesCache;
+    private static volatile LocaleConfiguration mConfiguration;
+    private static int mConfigurationVersion;
+    private static boolean mListeningForChanges;
+
+    /**
+     * Immutable snapshot of the preferred content languages. It's computed the first time it's used
+     * and replaced when the content languages setting or the languages list change, so the lists
+     * can be read without allocating or parsing the setting again.
+     */
+    public static class LocaleConfiguration {
+        private final int mVersion;
+        private final List<String> mLanguageIds;
+        private final List<Language> mLanguages;
+        private final List<String> mLanguageTags;
+
+        private LocaleConfiguration(int aVersion, @NonNull List<String> aLanguageIds, @NonNull List<Language> aLanguages) {
+            mVersion = aVersion;
+            mLanguageIds = Collections.unmodifiableList(aLanguageIds);
+            mLanguages = Collections.unmodifiableList(aLanguages);
+            mLanguageTags = Collections.unmodifiableList(getLanguageTagsForLanguages(aLanguages));
+        }
+
+        /**
+         * Incremented every time the configuration is computed again.
+         */
+        public int getVersion() {
+            return mVersion;
+        }
+
+        @NonNull
+        public List<String> getPreferredLanguageIds() {
+            return mLanguageIds;
+        }
+
+        @NonNull
+        public List<Language> getPreferredLanguages() {
+            return mLanguages;
+        }
+
+        @NonNull
+        public List<String> getPreferredLanguageTags() {
+            return mLanguageTags;
+        }
+    }
 
     public static Context init(@NonNull Context aContext) {
         getLanguages(aContext);
@@ -66,8 +111,8 @@ public class LocaleUtils {
 
     private static HashMap<String, Language> getLanguages(@NonNull Context context) {
         Locale[] locales = Locale.getAvailableLocales();
-        mLanguagesCache = new LinkedHashMap<>();
-        mLanguagesCache.put(DEFAULT_LANGUAGE_ID, new Language(
+        HashMap<String, Language> languages = new LinkedHashMap<>();
+        languages.put(DEFAULT_LANGUAGE_ID, new Language(
                 getDeviceLocale(),
                 context.getString(R.string.settings_language_follow_device)));
 
@@ -75,9 +120,16 @@ public class LocaleUtils {
                 .sorted((o1, o2) -> o1.getDisplayName().compareTo(o2.getDisplayName()))
                 .forEachOrdered(item -> {
                     Language locale = new Language(item);
-                    mLanguagesCache.put(item.toLanguageTag(), locale);
+                    languages.put(item.toLanguageTag(), locale);
                 });
 
+        IdentityHashMap<Language, String> ids = new IdentityHashMap<>();
+        languages.forEach((id, language) -> ids.put(language, id));
+        mLanguagesCache = languages;
+        mLanguageIdsCache = ids;
+        // The configuration references the previous Language instances.
+        invalidateConfiguration();
+
         return mLanguagesCache;
     }
 
@@ -114,32 +166,32 @@ public class LocaleUtils {
 
     @NonNull
     private static List<String> getIdsForLanguages(final List<Language> languages) {
+        List<String> result = new ArrayList<>();
         if (languages != null) {
-            return mLanguagesCache
-                    .entrySet()
-                    .stream()
-                    .filter(entry -> languages.contains(entry.getValue()))
-                    .sorted((o1, o2) -> languages.indexOf(o1.getValue()) - languages.indexOf(o2.getValue()))
-                    .map(Map.Entry::getKey)
-                    .collect(Collectors.toList());
+            for (Language language : languages) {
+                String id = mLanguageIdsCache.get(language);
+                if (id != null && !result.contains(id)) {
+                    result.add(id);
+                }
+            }
         }
 
-        return new ArrayList<>();
+        return result;
     }
 
     @NonNull
     private static List<Language> getLanguagesForIds(final List<String> languageIds) {
+        List<Language> result = new ArrayList<>();
         if (languageIds != null) {
-            return mLanguagesCache
-                    .entrySet()
-                    .stream()
-                    .filter(entry -> languageIds.contains(entry.getKey()))
-                    .sorted((o1, o2) -> languageIds.indexOf(o1.getKey()) - languageIds.indexOf(o2.getKey()))
-                    .map(Map.Entry::getValue)
-                    .collect(Collectors.toList());
+            for (String id : languageIds) {
+                Language language = mLanguagesCache.get(id);
+                if (language != null && !result.contains(language)) {
+                    result.add(language);
+                }
+            }
         }
 
-        return new ArrayList<>();
+        return result;
     }
 
     @NonNull
@@ -151,38 +203,77 @@ public class LocaleUtils {
 
     @NonNull
     public static List<String> getPreferredLanguageTags(@NonNull Context context) {
-        return LocaleUtils.getLanguageTagsForLanguages(LocaleUtils.getPreferredLanguages(context));
+        return getConfiguration(context).getPreferredLanguageTags();
     }
 
+    /**
+     * Preferred languages, marked as preferred. The list can be modified by the caller.
+     */
     @NonNull
     public static List<Language> getPreferredLanguages(@NonNull Context aContext) {
+        List<Language> preferredLanguages = new ArrayList<>(getConfiguration(aContext).getPreferredLanguages());
         // We can't us stream here because an Android 24/25 bug the makes the stream implementation not top respect the order when iterating
         // https://android.googlesource.com/platform/libcore/+/7ae7ae73754c8b82a2e396098e35553d404c69ef%5E%21/#F0
-        List<String> savedLanguageIds = SettingsStore.getInstance(aContext).getContentLocales();
-        List<Language> preferredLanguages = getLanguagesForIds(savedLanguageIds);
-        preferredLanguages.forEach(language -> language.setPreferred(true));
-
-        if (savedLanguageIds == null || savedLanguageIds.isEmpty()) {
-            Language lang = mLanguagesCache.get(DEFAULT_LANGUAGE_ID);
-            if (lang != null) {
-                lang.setPreferred(true);
-                preferredLanguages.add(lang);
-            }
+        for (Language language : preferredLanguages) {
+            language.setPreferred(true);
         }
 
         return preferredLanguages;
     }
 
+    /**
+     * Current preferred languages snapshot.
+     */
+    @NonNull
+    public static LocaleConfiguration getConfiguration(@NonNull Context aContext) {
+        LocaleConfiguration configuration = mConfiguration;
+        if (configuration != null) {
+            return configuration;
+        }
+
+        synchronized (LocaleUtils.class) {
+            if (mConfiguration == null) {
+                listenForChanges(aContext);
+                List<String> savedLanguageIds = SettingsStore.getInstance(aContext).getContentLocales();
+                List<Language> preferredLanguages = getLanguagesForIds(savedLanguageIds);
+                if (savedLanguageIds == null || savedLanguageIds.isEmpty()) {
+                    Language lang = mLanguagesCache.get(DEFAULT_LANGUAGE_ID);
+                    if (lang != null) {
+                        preferredLanguages.add(lang);
+                    }
+                }
+                mConfiguration = new LocaleConfiguration(++mConfigurationVersion,
+                        getIdsForLanguages(preferredLanguages), preferredLanguages);
+            }
+            return mConfiguration;
+        }
+    }
+
+    private static void listenForChanges(@NonNull Context aContext) {
+        if (!mListeningForChanges) {
+            mListeningForChanges = true;
+            SettingsStore.getInstance(aContext).getSettings().addListener(
+                    aContext.getString(R.string.settings_key_content_languages),
+                    key -> invalidateConfiguration());
+        }
+    }
+
+    private static synchronized void invalidateConfiguration() {
+        mConfiguration = null;
+    }
+
     public static void setPreferredLanguages(@NonNull Context context, List<Language> languages) {
         SessionStore.get().setLocales(
                 LocaleUtils.getLanguageTagsForLanguages(languages));
         SettingsStore.getInstance(context).setContentLocales(
                 LocaleUtils.getIdsForLanguages(languages));
+        invalidateConfiguration();
     }
 
     public static void resetPreferredLanguages(@NonNull Context context) {
         SettingsStore.getInstance(context).setContentLocales(Collections.emptyList());
         SessionStore.get().setLocales(Collections.emptyList());
+        invalidateConfiguration();
         resetLanguages();
     }
 
@@ -15,6 +15,7 @@ public class ServoUtils {
     private static final String ALLOWLIST_CLASSNAME = "org.mozilla.servo.ServoAllowList";
     private static final String LOGTAG = "ServoUtils";
     private static Object mServoAllowList = null;
+    private static Method mIsAllowed = null;
     private static long mVRContext;
 
     public static boolean isServoAvailable() {
@@ -53,13 +54,13 @@ public class ServoUtils {
     public static boolean isUrlInServoAllowList(Context context, String url) {
         if (isServoAvailable()) {
             try {
-                Class clazz = Class.forName(ALLOWLIST_CLASSNAME);
                 if (mServoAllowList == null) {
+                    Class clazz = Class.forName(ALLOWLIST_CLASSNAME);
                     Constructor<?> constructor = clazz.getConstructor(Context.class);
                     mServoAllowList = constructor.newInstance(context);
+                    mIsAllowed = clazz.getMethod("isAllowed", String.class);
                 }
-                Method isAllowed = clazz.getMethod("isAllowed", String.class);
-                return (boolean) isAllowed.invoke(mServoAllowList, url);
+                return (boolean) mIsAllowed.invoke(mServoAllowList, url);
             } catch (Exception e) {
                 Log.e(LOGTAG, "Failed to call ServoAllowList::isAllowed: " + e);
                 return false;
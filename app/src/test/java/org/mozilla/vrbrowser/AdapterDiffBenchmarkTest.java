@@ -0,0 +1,317 @@
+package org.mozilla.vrbrowser;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.mozilla.vrbrowser.ui.adapters.BackgroundDiffer;
+import org.mozilla.vrbrowser.ui.adapters.Bookmark;
+import org.mozilla.vrbrowser.ui.adapters.BookmarkAdapter;
+import org.mozilla.vrbrowser.ui.adapters.HistoryAdapter;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+
+import mozilla.components.concept.storage.BookmarkNode;
+import mozilla.components.concept.storage.BookmarkNodeType;
+import mozilla.components.concept.storage.VisitInfo;
+import mozilla.components.concept.storage.VisitType;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Library adapters diffing tests. Diffs 10k item lists with inserted, removed, changed and moved items,
+ * replays the dispatched updates over the old list and checks the result matches the new list. Also
+ * checks that the background differ only applies the latest submitted list. The diff timings only run
+ * in the {@link Benchmark} category.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class AdapterDiffBenchmarkTest {
+
+    private static final int ITEMS = 10000;
+    private static final int CHANGES = 100;
+    private static final int MOVES = 5;
+    private static final int ROUNDS = 5;
+    private static final Object INSERTED = new Object();
+
+    private static class CountingAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        int size;
+
+        @NonNull
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(@NonNull android.view.ViewGroup parent, int viewType) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+        }
+
+        @Override
+        public int getItemCount() {
+            return size;
+        }
+    }
+
+    private static class Changed {
+        final Object item;
+
+        Changed(Object aItem) {
+            item = aItem;
+        }
+    }
+
+    /**
+     * Applies the dispatched updates to a copy of the old list. Inserted items are replaced by
+     * {@link #INSERTED} and changed ones are wrapped in {@link Changed}.
+     */
+    private static class ReplayCallback implements ListUpdateCallback {
+        final List<Object> items;
+        int inserted;
+        int removed;
+        int moved;
+        int changed;
+
+        ReplayCallback(List<?> aOldList) {
+            items = new ArrayList<>(aOldList);
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            for (int i = 0; i < count; i++) {
+                items.add(position, INSERTED);
+            }
+            inserted += count;
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            for (int i = 0; i < count; i++) {
+                items.remove(position);
+            }
+            removed += count;
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            items.add(toPosition, items.remove(fromPosition));
+            moved++;
+        }
+
+        @Override
+        public void onChanged(int position, int count, @Nullable Object payload) {
+            for (int i = position; i < position + count; i++) {
+                Object item = items.get(i);
+                assertFalse("Item changed twice at " + i, item instanceof Changed);
+                items.set(i, new Changed(item));
+            }
+            changed += count;
+        }
+    }
+
+    @Test
+    public void historyDiffMatchesNewList() {
+        List<VisitInfo> oldList = historyList(ITEMS, 0);
+        List<VisitInfo> newList = mutateHistory(oldList);
+
+        checkDiff(oldList, newList, HistoryAdapter.DIFF_CALLBACK, 0);
+    }
+
+    @Test
+    public void bookmarksDiffMatchesNewList() {
+        List<Bookmark> oldList = bookmarkList();
+        List<Bookmark> newList = mutateBookmarks(oldList);
+
+        checkDiff(oldList, newList, BookmarkAdapter.DIFF_CALLBACK, MOVES);
+    }
+
+    @Test
+    @Category(Benchmark.class)
+    public void benchmarkHistoryDiff() {
+        List<VisitInfo> oldList = historyList(ITEMS, 0);
+        benchmark("history", oldList, mutateHistory(oldList), HistoryAdapter.DIFF_CALLBACK);
+    }
+
+    @Test
+    @Category(Benchmark.class)
+    public void benchmarkBookmarksDiff() {
+        List<Bookmark> oldList = bookmarkList();
+        benchmark("bookmarks", oldList, mutateBookmarks(oldList), BookmarkAdapter.DIFF_CALLBACK);
+    }
+
+    @Test
+    public void dropsStaleDiffs() {
+        CountingAdapter adapter = new CountingAdapter();
+        Queue<Runnable> background = new ArrayDeque<>();
+        Queue<Runnable> ui = new ArrayDeque<>();
+        BackgroundDiffer<VisitInfo> differ = new BackgroundDiffer<>(adapter, HistoryAdapter.DIFF_CALLBACK, background::add, ui::add);
+
+        differ.submitList(historyList(ITEMS, 0), null);
+        assertEquals(ITEMS, differ.getList().size());
+
+        List<VisitInfo> stale = historyList(ITEMS / 2, 0);
+        List<VisitInfo> latest = historyList(ITEMS, 1);
+        differ.submitList(stale, null);
+        differ.submitList(latest, null);
+
+        // Nothing is diffed on the calling thread.
+        assertEquals(ITEMS, differ.getList().size());
+        assertEquals(2, background.size());
+        while (!background.isEmpty()) {
+            background.poll().run();
+        }
+        while (!ui.isEmpty()) {
+            ui.poll().run();
+        }
+        assertEquals(latest, differ.getList());
+    }
+
+    private interface ItemFactory<T> {
+        T create(int aIndex);
+    }
+
+    private interface ItemUpdater<T> {
+        T update(T aItem);
+    }
+
+    private static List<VisitInfo> mutateHistory(List<VisitInfo> aList) {
+        return mutate(aList, index -> new VisitInfo(
+                "https://new.example.com/" + index, "New " + index, Long.MAX_VALUE - index, VisitType.LINK),
+                item -> new VisitInfo(item.getUrl(), item.getTitle() + " (updated)", item.getVisitTime(), item.getVisitType()));
+    }
+
+    private static List<Bookmark> bookmarkList() {
+        List<Bookmark> list = new ArrayList<>();
+        for (int i = 0; i < ITEMS; i++) {
+            list.add(bookmark("guid" + i, "Bookmark " + i, i));
+        }
+        return list;
+    }
+
+    /**
+     * Bookmarks can also be reordered, so MOVES unchanged items are moved to the end of the list.
+     */
+    private static List<Bookmark> mutateBookmarks(List<Bookmark> aList) {
+        List<Bookmark> result = mutate(aList, index -> bookmark("new" + index, "New " + index, index),
+                item -> bookmark(item.getGuid(), item.getTitle() + " (updated)", item.getPosition()));
+        Set<String> updated = new HashSet<>();
+        for (Bookmark bookmark : result) {
+            if (bookmark.getTitle().endsWith(" (updated)")) {
+                updated.add(bookmark.getGuid());
+            }
+        }
+        int moved = 0;
+        for (int i = result.size() / 2; moved < MOVES; i += result.size() / 20) {
+            if (!updated.contains(result.get(i).getGuid()) && !result.get(i).getGuid().startsWith("new")) {
+                result.add(result.remove(i));
+                moved++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Inserts CHANGES items at the top, removes CHANGES random items and updates CHANGES other items.
+     */
+    private static <T> List<T> mutate(List<T> aList, ItemFactory<T> aFactory, ItemUpdater<T> aUpdater) {
+        Random random = new Random(42);
+        Set<Integer> removed = new HashSet<>();
+        while (removed.size() < CHANGES) {
+            removed.add(random.nextInt(aList.size()));
+        }
+        Set<Integer> updated = new HashSet<>();
+        while (updated.size() < CHANGES) {
+            int index = random.nextInt(aList.size());
+            if (!removed.contains(index)) {
+                updated.add(index);
+            }
+        }
+
+        List<T> result = new ArrayList<>();
+        for (int i = 0; i < CHANGES; i++) {
+            result.add(aFactory.create(i));
+        }
+        for (int i = 0; i < aList.size(); i++) {
+            if (updated.contains(i)) {
+                result.add(aUpdater.update(aList.get(i)));
+            } else if (!removed.contains(i)) {
+                result.add(aList.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Replays the diff over the old list: kept items must be the same items as the new list ones at
+     * the same position, changed exactly when their contents differ, and the rest must be inserted.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> void checkDiff(List<T> aOldList, List<T> aNewList, DiffUtil.ItemCallback<T> aCallback, int aMoves) {
+        ReplayCallback replay = new ReplayCallback(aOldList);
+        BackgroundDiffer.calculateDiff(aOldList, aNewList, aCallback).dispatchUpdatesTo(replay);
+
+        assertEquals(aNewList.size(), replay.items.size());
+        for (int i = 0; i < aNewList.size(); i++) {
+            T expected = aNewList.get(i);
+            Object item = replay.items.get(i);
+            if (item == INSERTED) {
+                assertFalse("Existing item inserted at " + i,
+                        aOldList.stream().anyMatch(old -> aCallback.areItemsTheSame(old, expected)));
+                continue;
+            }
+            boolean changed = item instanceof Changed;
+            T old = (T) (changed ? ((Changed) item).item : item);
+            assertTrue("Wrong item at " + i, aCallback.areItemsTheSame(old, expected));
+            assertEquals("Wrong change at " + i, !aCallback.areContentsTheSame(old, expected), changed);
+        }
+        assertEquals(CHANGES, replay.inserted);
+        assertEquals(CHANGES, replay.removed);
+        assertEquals(CHANGES, replay.changed);
+        assertEquals(aMoves, replay.moved);
+    }
+
+    private static <T> void benchmark(String aName, List<T> aOldList, List<T> aNewList, DiffUtil.ItemCallback<T> aCallback) {
+        CountingAdapter adapter = new CountingAdapter();
+        long[] times = new long[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            DiffUtil.DiffResult result = BackgroundDiffer.calculateDiff(aOldList, aNewList, aCallback);
+            times[i] = System.nanoTime() - start;
+            adapter.size = aOldList.size();
+            result.dispatchUpdatesTo(adapter);
+        }
+        Arrays.sort(times);
+        System.out.println(String.format(Locale.US, "%-10s items=%d diff median=%.2fms max=%.2fms",
+                aName, aOldList.size(), times[ROUNDS / 2] / 1e6, times[ROUNDS - 1] / 1e6));
+    }
+
+    private static List<VisitInfo> historyList(int aSize, int aSeed) {
+        List<VisitInfo> list = new ArrayList<>();
+        for (int i = 0; i < aSize; i++) {
+            list.add(new VisitInfo("https://example.com/" + i, "Page " + i + " " + aSeed, aSize - i, VisitType.LINK));
+        }
+        return list;
+    }
+
+    private static Bookmark bookmark(String aGuid, String aTitle, int aPosition) {
+        return new Bookmark(new BookmarkNode(BookmarkNodeType.ITEM, aGuid, "mobile______", aPosition, aTitle,
+                "https://example.com/" + aGuid, null), 0, false);
+    }
+}
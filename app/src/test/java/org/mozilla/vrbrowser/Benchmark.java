@@ -0,0 +1,8 @@
+package org.mozilla.vrbrowser;
+
+/**
+ * JUnit category of the timing benchmarks. They are excluded from the regular unit test tasks and only
+ * run with <code>./gradlew app:benchmark</code>, wall clock budgets are too noisy on shared CI machines.
+ */
+public interface Benchmark {
+}
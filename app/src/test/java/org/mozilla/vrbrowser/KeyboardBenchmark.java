@@ -0,0 +1,232 @@
+package org.mozilla.vrbrowser;
+
+import androidx.annotation.NonNull;
+
+import org.mozilla.vrbrowser.ui.keyboards.KeyboardInterface;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Replays a recorded keystroke corpus against a keyboard engine the same way KeyboardWidget drives it
+ * and collects per keystroke latency and allocations, and the time and I/O of the dictionary load.
+ *
+ * Corpus format: one typed sequence per line, lines starting with # are ignored. Each character is a
+ * key press and {@link #BACKSPACE} is a backspace. The composing text is committed at the end of each line.
+ */
+class KeyboardBenchmark {
+
+    static final String BACKSPACE = "<BS>";
+
+    static class Result {
+        final String name;
+        final int keystrokes;
+        final double p50Ms;
+        final double p95Ms;
+        final double p99Ms;
+        final double maxMs;
+        final long allocatedBytesPerKey;
+        final double loadMs;
+        final long loadBytesRead;
+
+        Result(String aName, long[] aLatencies, long aAllocatedBytes, long aLoadNanos, long aLoadBytesRead) {
+            name = aName;
+            keystrokes = aLatencies.length;
+            long[] sorted = Arrays.copyOf(aLatencies, aLatencies.length);
+            Arrays.sort(sorted);
+            p50Ms = percentile(sorted, 0.50);
+            p95Ms = percentile(sorted, 0.95);
+            p99Ms = percentile(sorted, 0.99);
+            maxMs = sorted.length > 0 ? sorted[sorted.length - 1] / 1e6 : 0;
+            allocatedBytesPerKey = aAllocatedBytes >= 0 && keystrokes > 0 ? aAllocatedBytes / keystrokes : -1;
+            loadMs = aLoadNanos / 1e6;
+            loadBytesRead = aLoadBytesRead;
+        }
+
+        private static double percentile(long[] aSorted, double aPercentile) {
+            if (aSorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(aPercentile * aSorted.length) - 1;
+            return aSorted[Math.max(0, Math.min(aSorted.length - 1, index))] / 1e6;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%-12s keys=%-6d p50=%.3fms p95=%.3fms p99=%.3fms max=%.3fms alloc/key=%dB load=%.3fms io=%dB",
+                    name, keystrokes, p50Ms, p95Ms, p99Ms, maxMs, allocatedBytesPerKey, loadMs, loadBytesRead);
+        }
+    }
+
+    private final String mName;
+    private final Supplier<KeyboardInterface> mFactory;
+    private final List<List<String>> mCorpus;
+    private KeyboardInterface mKeyboard;
+
+    KeyboardBenchmark(String aName, Supplier<KeyboardInterface> aFactory, InputStream aCorpus) throws IOException {
+        mName = aName;
+        mFactory = aFactory;
+        mCorpus = parseCorpus(aCorpus);
+    }
+
+    Result run(int aWarmupRounds, int aRounds) {
+        long readBefore = bytesRead();
+        long loadStart = System.nanoTime();
+        load();
+        long loadNanos = System.nanoTime() - loadStart;
+        long loadRead = readBefore >= 0 ? bytesRead() - readBefore : -1;
+
+        for (int i = 0; i < aWarmupRounds; i++) {
+            replay(null, 0);
+        }
+
+        long[] latencies = new long[keystrokes() * aRounds];
+        int offset = 0;
+        long allocatedBefore = allocatedBytes();
+        for (int i = 0; i < aRounds; i++) {
+            offset += replay(latencies, offset);
+        }
+        long allocated = allocatedBefore >= 0 ? allocatedBytes() - allocatedBefore : -1;
+
+        return new Result(mName, latencies, allocated, loadNanos, loadRead);
+    }
+
+    /**
+     * Creates the engine and loads its layout and dictionaries. The databases are opened lazily,
+     * so the first key of the corpus is looked up too.
+     */
+    private void load() {
+        mKeyboard = mFactory.get();
+        mKeyboard.getAlphabeticKeyboard();
+        if (!mCorpus.isEmpty() && !mCorpus.get(0).isEmpty()) {
+            mKeyboard.getCandidates(mCorpus.get(0).get(0));
+        }
+        mKeyboard.clear();
+    }
+
+    private int keystrokes() {
+        int count = 0;
+        for (List<String> line : mCorpus) {
+            count += line.size();
+        }
+        return count;
+    }
+
+    private int replay(long[] aLatencies, int aOffset) {
+        int index = aOffset;
+        for (List<String> line : mCorpus) {
+            String composing = "";
+            String text = "";
+            for (String key : line) {
+                long start = System.nanoTime();
+                if (mKeyboard.usesComposingText()) {
+                    if (BACKSPACE.equals(key)) {
+                        composing = composing.isEmpty() ? composing : composing.substring(0, composing.length() - 1);
+                    } else {
+                        composing += key;
+                    }
+                    KeyboardInterface.CandidatesResult candidates = mKeyboard.getCandidates(composing);
+                    if (candidates == null || candidates.action == KeyboardInterface.CandidatesResult.Action.AUTO_COMPOSE) {
+                        composing = "";
+                    }
+
+                } else if (mKeyboard.usesTextOverride()) {
+                    String result = BACKSPACE.equals(key) ? mKeyboard.overrideBackspace(text) : mKeyboard.overrideAddText(text, key);
+                    if (result != null) {
+                        text = result;
+                    } else if (BACKSPACE.equals(key)) {
+                        text = text.isEmpty() ? text : text.substring(0, text.length() - 1);
+                    } else {
+                        text += key;
+                    }
+
+                } else {
+                    if (BACKSPACE.equals(key)) {
+                        text = text.isEmpty() ? text : text.substring(0, text.length() - 1);
+                    } else {
+                        text += key;
+                    }
+                    mKeyboard.getCandidates(text);
+                }
+                long elapsed = System.nanoTime() - start;
+                if (aLatencies != null && index < aLatencies.length) {
+                    aLatencies[index] = elapsed;
+                }
+                index++;
+            }
+            mKeyboard.clear();
+        }
+        return index - aOffset;
+    }
+
+    private static List<List<String>> parseCorpus(InputStream aCorpus) throws IOException {
+        List<List<String>> corpus = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(aCorpus, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                List<String> keys = new ArrayList<>();
+                int i = 0;
+                while (i < line.length()) {
+                    if (line.startsWith(BACKSPACE, i)) {
+                        keys.add(BACKSPACE);
+                        i += BACKSPACE.length();
+                    } else {
+                        int codePoint = line.codePointAt(i);
+                        keys.add(new String(Character.toChars(codePoint)));
+                        i += Character.charCount(codePoint);
+                    }
+                }
+                corpus.add(keys);
+            }
+        }
+        return corpus;
+    }
+
+    /**
+     * Bytes allocated by the current thread, or -1 if the JVM doesn't expose it.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Bytes read by the process, or -1 when not running on Linux. The counter is process wide, so it
+     * is only sampled around the dictionary load, while the test thread is the only one reading.
+     */
+    private static long bytesRead() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/io"))) {
+                if (line.startsWith("rchar:")) {
+                    return Long.parseLong(line.substring("rchar:".length()).trim());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            return -1;
+        }
+        return -1;
+    }
+}
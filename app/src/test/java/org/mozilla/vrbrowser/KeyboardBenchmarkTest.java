@@ -0,0 +1,180 @@
+package org.mozilla.vrbrowser;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.mozilla.vrbrowser.ui.keyboards.ChinesePinyinKeyboard;
+import org.mozilla.vrbrowser.ui.keyboards.ChineseZhuyinKeyboard;
+import org.mozilla.vrbrowser.ui.keyboards.EnglishKeyboard;
+import org.mozilla.vrbrowser.ui.keyboards.FrenchKeyboard;
+import org.mozilla.vrbrowser.ui.keyboards.GermanKeyboard;
+import org.mozilla.vrbrowser.ui.keyboards.JapaneseKeyboard;
+import org.mozilla.vrbrowser.ui.keyboards.KeyboardInterface;
+import org.mozilla.vrbrowser.ui.keyboards.KoreanKeyboard;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Keyboard engine benchmarks, run with <code>./gradlew app:benchmark</code>. Each engine replays the
+ * corpus in keyboards/corpora/<name>.txt and the results are compared with the baselines recorded in
+ * keyboards/benchmark_baseline.properties. A run fails when a metric exceeds its baseline by more than
+ * the allowed threshold (-PkeyboardBenchmarkThreshold, 0.5 by default). Metrics without a baseline are
+ * only reported, unless -PkeyboardBenchmarkRequireBaseline is set as it is in CI. -PkeyboardBenchmarkRecord
+ * replaces the baselines with the results of the run, so they should be recorded on the machine class
+ * that runs the benchmarks. The load metrics cover creating the engine and loading its dictionaries.
+ * Results are written to build/reports/keyboard-benchmark.properties so they can be compared across builds.
+ */
+@Category(Benchmark.class)
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class KeyboardBenchmarkTest {
+
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int ROUNDS = 5;
+
+    private static Properties sBaseline;
+    private static List<KeyboardBenchmark.Result> sResults = new ArrayList<>();
+
+    @BeforeClass
+    public static void loadBaseline() throws IOException {
+        sBaseline = new Properties();
+        try (InputStream stream = resource("keyboards/benchmark_baseline.properties")) {
+            sBaseline.load(stream);
+        }
+    }
+
+    @AfterClass
+    public static void writeReport() throws IOException {
+        File report = new File("build/reports/keyboard-benchmark.properties");
+        if (!report.getParentFile().exists() && !report.getParentFile().mkdirs()) {
+            return;
+        }
+        Properties properties = new Properties();
+        for (KeyboardBenchmark.Result result : sResults) {
+            properties.setProperty(result.name + ".p50", String.valueOf(result.p50Ms));
+            properties.setProperty(result.name + ".p95", String.valueOf(result.p95Ms));
+            properties.setProperty(result.name + ".p99", String.valueOf(result.p99Ms));
+            properties.setProperty(result.name + ".alloc", String.valueOf(result.allocatedBytesPerKey));
+            properties.setProperty(result.name + ".load", String.valueOf(result.loadMs));
+            properties.setProperty(result.name + ".io", String.valueOf(result.loadBytesRead));
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(report), StandardCharsets.UTF_8)) {
+            properties.store(writer, "Keyboard benchmark results");
+        }
+
+        String record = System.getProperty("keyboardBenchmark.record");
+        if (record != null) {
+            recordBaseline(new File(record));
+        }
+    }
+
+    private static void recordBaseline(File aFile) throws IOException {
+        Properties baseline = new Properties();
+        for (KeyboardBenchmark.Result result : sResults) {
+            baseline.setProperty(result.name + ".p95", String.valueOf(result.p95Ms));
+            baseline.setProperty(result.name + ".p99", String.valueOf(result.p99Ms));
+            if (result.allocatedBytesPerKey >= 0) {
+                baseline.setProperty(result.name + ".alloc", String.valueOf(result.allocatedBytesPerKey));
+            }
+            baseline.setProperty(result.name + ".load", String.valueOf(result.loadMs));
+            if (result.loadBytesRead >= 0) {
+                baseline.setProperty(result.name + ".io", String.valueOf(result.loadBytesRead));
+            }
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(aFile), StandardCharsets.UTF_8)) {
+            baseline.store(writer, "Keyboard engine baselines recorded by KeyboardBenchmarkTest with -PkeyboardBenchmarkRecord");
+        }
+    }
+
+    @Test
+    public void benchmarkPinyin() throws IOException {
+        benchmark("pinyin", "pinyin", () -> new ChinesePinyinKeyboard(context()));
+    }
+
+    @Test
+    public void benchmarkZhuyin() throws IOException {
+        benchmark("zhuyin", "zhuyin", () -> new ChineseZhuyinKeyboard(context()));
+    }
+
+    @Test
+    public void benchmarkJapanese() throws IOException {
+        benchmark("japanese", "japanese", () -> new JapaneseKeyboard(context()));
+    }
+
+    @Test
+    public void benchmarkKorean() throws IOException {
+        benchmark("korean", "korean", () -> new KoreanKeyboard(context()));
+    }
+
+    @Test
+    public void benchmarkAlphabetic() throws IOException {
+        benchmark("english", "alphabetic", () -> new EnglishKeyboard(context()));
+        benchmark("french", "alphabetic", () -> new FrenchKeyboard(context()));
+        benchmark("german", "alphabetic", () -> new GermanKeyboard(context()));
+    }
+
+    private void benchmark(String aName, String aCorpus, Supplier<KeyboardInterface> aKeyboard) throws IOException {
+        KeyboardBenchmark.Result result;
+        try (InputStream corpus = resource("keyboards/corpora/" + aCorpus + ".txt")) {
+            result = new KeyboardBenchmark(aName, aKeyboard, corpus).run(WARMUP_ROUNDS, ROUNDS);
+        }
+        sResults.add(result);
+        System.out.println(result);
+
+        if (System.getProperty("keyboardBenchmark.record") != null) {
+            // The results replace the baselines.
+            return;
+        }
+        float threshold = Float.parseFloat(System.getProperty("keyboardBenchmark.threshold", "0.5"));
+        checkBudget(aName + ".p95", result.p95Ms, threshold);
+        checkBudget(aName + ".p99", result.p99Ms, threshold);
+        if (result.allocatedBytesPerKey >= 0) {
+            checkBudget(aName + ".alloc", result.allocatedBytesPerKey, threshold);
+        }
+        checkBudget(aName + ".load", result.loadMs, threshold);
+        if (result.loadBytesRead >= 0) {
+            checkBudget(aName + ".io", result.loadBytesRead, threshold);
+        }
+    }
+
+    private void checkBudget(String aKey, double aValue, float aThreshold) {
+        String budget = sBaseline.getProperty(aKey);
+        if (budget == null) {
+            assertTrue("Missing baseline for " + aKey, System.getProperty("keyboardBenchmark.requireBaseline") == null);
+            return;
+        }
+        double limit = Double.parseDouble(budget) * (1 + aThreshold);
+        assertTrue(aKey + " regressed: " + aValue + " > " + limit, aValue <= limit);
+    }
+
+    private static InputStream resource(String aPath) {
+        InputStream stream = KeyboardBenchmarkTest.class.getClassLoader().getResourceAsStream(aPath);
+        assertNotNull("Missing test resource " + aPath, stream);
+        return stream;
+    }
+
+    private static Context context() {
+        return ApplicationProvider.getApplicationContext();
+    }
+}
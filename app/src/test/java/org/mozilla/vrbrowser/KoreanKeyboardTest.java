@@ -0,0 +1,364 @@
+package org.mozilla.vrbrowser;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.mozilla.vrbrowser.ui.keyboards.KoreanKeyboard;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class KoreanKeyboardTest {
+
+    private static final String KEYS = "ㅂㅈㄷᄀㅅᅭᅧᅣᅢᅦㅁㄴㅇㄹㅎᅩᅥᅡᅵㅋㅌㅊㅍᅲᅮᅳㅃㅉㄸㄲㅆᅤᅨ";
+
+    private KoreanKeyboard mKeyboard;
+    private List<String> mCharacters;
+    private List<String> mNextCharacters;
+
+    @Before
+    public void setUp() {
+        mKeyboard = new KoreanKeyboard(ApplicationProvider.getApplicationContext());
+        // Typed characters: every jamo known by the composer plus a few non Korean ones.
+        mNextCharacters = new ArrayList<>();
+        String jamos = LegacyKoreanComposer.INITIALS + LegacyKoreanComposer.VOWELS + LegacyKoreanComposer.TAILS + KEYS;
+        for (int i = 0; i < jamos.length(); i++) {
+            mNextCharacters.add(jamos.substring(i, i + 1));
+        }
+        for (int c = 0x1100; c <= 0x11FF; c++) {
+            mNextCharacters.add(String.valueOf((char) c));
+        }
+        for (int c = 0x3131; c <= 0x318E; c++) {
+            mNextCharacters.add(String.valueOf((char) c));
+        }
+        mNextCharacters.add("a");
+        mNextCharacters.add(" ");
+        mNextCharacters.add("1");
+        mNextCharacters.add("가");
+        mNextCharacters.add("ab");
+
+        // Characters before the cursor: all of the above plus every precomposed syllable.
+        mCharacters = new ArrayList<>(mNextCharacters);
+        for (int c = 0xAC00; c <= 0xD7A3; c++) {
+            mCharacters.add(String.valueOf((char) c));
+        }
+    }
+
+    @Test
+    public void testAddTextMatchesLegacyComposition() {
+        for (String before : mCharacters) {
+            String text = "x" + before;
+            for (String after : mNextCharacters) {
+                assertEquals(text + " + " + after,
+                        LegacyKoreanComposer.overrideAddText(text, after),
+                        mKeyboard.overrideAddText(text, after));
+            }
+            assertEquals(LegacyKoreanComposer.overrideAddText(before, before), mKeyboard.overrideAddText(before, before));
+        }
+        assertEquals(null, mKeyboard.overrideAddText("", "ㅂ"));
+        assertEquals(null, mKeyboard.overrideAddText("ㅂ", ""));
+    }
+
+    @Test
+    public void testBackspaceMatchesLegacyComposition() {
+        for (String last : mCharacters) {
+            assertEquals(last, LegacyKoreanComposer.overrideBackspace(last), mKeyboard.overrideBackspace(last));
+            assertEquals(last, LegacyKoreanComposer.overrideBackspace("x" + last), mKeyboard.overrideBackspace("x" + last));
+        }
+        // Initial + vowel syllables preceded by any other character exercise the tail recombination.
+        for (int initial = 0; initial < 19; initial++) {
+            for (int vowel = 0; vowel < 21; vowel++) {
+                String last = String.valueOf((char) (0xAC00 + initial * 588 + vowel * 28));
+                for (String before : mCharacters) {
+                    String text = before + last;
+                    assertEquals(text, LegacyKoreanComposer.overrideBackspace(text), mKeyboard.overrideBackspace(text));
+                }
+            }
+        }
+        assertEquals(null, mKeyboard.overrideBackspace(""));
+    }
+
+    @Test
+    public void testTypingSequences() {
+        assertEquals("밥", type("ㅂᅡㅂ"));
+        assertEquals("바바", type("ㅂᅡㅂᅡ"));
+        assertEquals("싟", type("ㅅᅵᄀㅅ"));
+        assertEquals("ㅆ", type("ㅅㅅ"));
+        assertEquals("ᅦ", type("ᅥᅵ"));
+        assertEquals("밥", mKeyboard.overrideBackspace("바바"));
+        assertEquals("식", mKeyboard.overrideBackspace("싟"));
+        assertEquals("ㅅ", mKeyboard.overrideBackspace("ㅆ"));
+    }
+
+    @Test
+    @Category(Benchmark.class)
+    public void testCompositionThroughput() {
+        final String sequence = "ㅂᅡㅂᅡㄴᅡㄴᅡㅅᅵᄀㅅㅎᅡㄴ그ㄹ";
+        final int iterations = 20000;
+        String expected = "";
+        for (int j = 0; j < sequence.length(); j++) {
+            String key = sequence.substring(j, j + 1);
+            String result = LegacyKoreanComposer.overrideAddText(expected, key);
+            expected = result != null ? result : expected + key;
+        }
+
+        long keys = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            String text = "";
+            for (int j = 0; j < sequence.length(); j++) {
+                String key = sequence.substring(j, j + 1);
+                String result = mKeyboard.overrideAddText(text, key);
+                text = result != null ? result : text + key;
+                keys++;
+            }
+            assertEquals(expected, text);
+            while (!text.isEmpty()) {
+                String result = mKeyboard.overrideBackspace(text);
+                text = result != null ? result : text.substring(0, text.length() - 1);
+                keys++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.println("KoreanKeyboard composition: " + (keys * 1000000000L / Math.max(1, elapsed)) + " keys/s");
+    }
+
+    private String type(String aKeys) {
+        String text = "";
+        for (int i = 0; i < aKeys.length(); i++) {
+            String key = aKeys.substring(i, i + 1);
+            String result = mKeyboard.overrideAddText(text, key);
+            text = result != null ? result : text + key;
+        }
+        return text;
+    }
+
+    /**
+     * String based composition used before KoreanKeyboard moved to the table driven state machine.
+     * Kept as the reference behaviour.
+     */
+    private static class LegacyKoreanComposer {
+        static final String INITIALS = "ᄀㄲㄴㄷㄸㄹㅁㅂㅃㅅㅆㅇㅈㅉㅊㅋㅌㅍㅎ";
+        static final String VOWELS = "ᅡᅢᅣᅤᅥᅦᅧᅨᅩᅪᅫᅬᅭᅮᅯᅰᅱᅲᅳᅴᅵ";
+        static final String TAILS = "ᄀㄲㄳㄴㄵㄶㄷㄹㄺㄻㄼㄽㄾㄿㅀㅁㅂㅄㅅㅆㅇㅈㅊㅋㅌㅍㅎ";
+        static final String SINGLE_CONSONANTS = "ㅂㅈㄷᄀㅅ";
+        static final String DOUBLE_CONSONANTS = "ㅃㅉㄸㄲㅆ";
+        static final String[] COMBINED_CONSONANTS = new String[] {
+                "ㄳᄀㅅ", "ㄵㄴㅈ", "ㄶㄴㅎ", "ㄺㄹᄀ", "ㄻㄹㅁ", "ㄼㄹㅂ", "ㄽㄹㅅ", "ㄾㄹㅌ", "ㄿㄹㅍ", "ㅀㄹㅎ", "ㅄㅂㅅ"
+        };
+        static final String[] COMBINED_VOWELS = new String[] {
+                "ᅦᅥᅵ", "ᅪᅩᅡ", "ᅫᅩᅢ", "ᅬᅩᅵ", "ᅯᅮᅥ", "ᅰᅮᅦ", "ᅱᅮᅵ", "ᅴᅳᅵ"
+        };
+        static final int HANGUL_UNICODE_START_VALUE = 44032;
+        static final int HANGUL_UNICODE_LAST_VALUE = 55203;
+        static final int AMOUNT_OF_TAILS = TAILS.length() + 1;
+        static final int AMOUNT_OF_TAILS_THE_AMOUNT_OF_VOWELS = AMOUNT_OF_TAILS * VOWELS.length();
+
+        static class DecomposedHangul {
+            int initialIndex = -1;
+            int vowelIndex = -1;
+            int tailIndex = -1;
+
+            boolean isInitial() { return initialIndex >= 0 && vowelIndex < 0; }
+            boolean isVowel() { return vowelIndex >= 0 && initialIndex < 0 && tailIndex < 0; }
+            boolean isTail() { return tailIndex >= 0 && vowelIndex < 0; }
+            boolean isCompleteHangul() { return initialIndex >= 0 && vowelIndex >= 0 && tailIndex >= 0; }
+            boolean isInitialAndVowel() { return initialIndex >= 0 && vowelIndex >= 0 && tailIndex < 0; }
+
+            boolean combineVowel(String aSufix) {
+                if (!isVowel() && !isInitialAndVowel()) {
+                    return false;
+                }
+                String prefix = VOWELS.substring(vowelIndex, vowelIndex + 1);
+                for (String values : COMBINED_VOWELS) {
+                    if (values.indexOf(prefix) == 1 && values.indexOf(aSufix) == 2) {
+                        vowelIndex = VOWELS.indexOf(values.substring(0, 1));
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            boolean combineTail(String aSufix) {
+                if (!isCompleteHangul()) {
+                    return false;
+                }
+                String prefix = TAILS.substring(tailIndex, tailIndex + 1);
+                for (String values : COMBINED_CONSONANTS) {
+                    if (values.indexOf(prefix) == 1 && values.indexOf(aSufix) == 2) {
+                        tailIndex = TAILS.indexOf(values.substring(0, 1));
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            boolean removeCombinedVowel() {
+                if (!isVowel() && !isInitialAndVowel()) {
+                    return false;
+                }
+                String jamo = VOWELS.substring(vowelIndex, vowelIndex + 1);
+                for (String values : COMBINED_VOWELS) {
+                    if (values.indexOf(jamo) == 0) {
+                        vowelIndex = VOWELS.indexOf(values.substring(1, 2));
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            boolean removeCombinedTail() {
+                if (!isCompleteHangul()) {
+                    return false;
+                }
+                String jamo = TAILS.substring(tailIndex, tailIndex + 1);
+                for (String values : COMBINED_CONSONANTS) {
+                    if (values.indexOf(jamo) == 0) {
+                        tailIndex = TAILS.indexOf(values.substring(1, 2));
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            String getHangul() {
+                if (isVowel()) {
+                    return VOWELS.substring(vowelIndex, vowelIndex + 1);
+                } else if (isInitial()) {
+                    return INITIALS.substring(initialIndex, initialIndex + 1);
+                } else if (isTail()) {
+                    return TAILS.substring(tailIndex, tailIndex + 1);
+                } else if (isInitialAndVowel() || isCompleteHangul()) {
+                    int charValue = HANGUL_UNICODE_START_VALUE + initialIndex * AMOUNT_OF_TAILS_THE_AMOUNT_OF_VOWELS;
+                    if (vowelIndex >= 0) {
+                        charValue += vowelIndex * AMOUNT_OF_TAILS;
+                        if (tailIndex >= 0) {
+                            charValue += tailIndex + 1;
+                        }
+                    }
+                    return new String(Character.toChars(charValue));
+                }
+                return "";
+            }
+        }
+
+        static String overrideAddText(String aTextBeforeCursor, String aNextText) {
+            if (isEmpty(aTextBeforeCursor) || isEmpty(aNextText)) {
+                return null;
+            }
+
+            DecomposedHangul before = decompose(last(aTextBeforeCursor));
+            DecomposedHangul after = decompose(last(aNextText));
+            String result = null;
+
+            if (before.isInitial() && after.isInitial() && before.initialIndex == after.initialIndex && SINGLE_CONSONANTS.contains(get(INITIALS, before.initialIndex))) {
+                result = removeLast(aTextBeforeCursor);
+                result += get(DOUBLE_CONSONANTS, SINGLE_CONSONANTS.indexOf(get(INITIALS, before.initialIndex)));
+            } else if (after.isVowel() && before.combineVowel(get(VOWELS, after.vowelIndex))) {
+                result = removeLast(aTextBeforeCursor);
+                result += before.getHangul();
+            } else if (after.isTail() && before.combineTail(get(TAILS, after.tailIndex))) {
+                result = removeLast(aTextBeforeCursor);
+                result += before.getHangul();
+            } else if (before.isInitial() && after.isVowel()) {
+                result = removeLast(aTextBeforeCursor);
+                before.vowelIndex = after.vowelIndex;
+                before.tailIndex = -1;
+                result += before.getHangul();
+            } else if (before.isInitialAndVowel() && after.isTail()) {
+                result = removeLast(aTextBeforeCursor);
+                before.tailIndex = after.tailIndex;
+                result += before.getHangul();
+            } else if (before.isCompleteHangul() && after.isVowel() && INITIALS.contains(get(TAILS, before.tailIndex))) {
+                result = removeLast(aTextBeforeCursor);
+                after.initialIndex = INITIALS.indexOf(get(TAILS, before.tailIndex));
+                before.tailIndex = -1;
+                result += before.getHangul();
+                result += after.getHangul();
+            }
+
+            return result;
+        }
+
+        static String overrideBackspace(String aTextBeforeCursor) {
+            if (isEmpty(aTextBeforeCursor)) {
+                return null;
+            }
+
+            String result = null;
+            DecomposedHangul last = decompose(last(aTextBeforeCursor));
+            if (last.removeCombinedTail()) {
+                result = removeLast(aTextBeforeCursor);
+                result += last.getHangul();
+            } else if (last.removeCombinedVowel()) {
+                result = removeLast(aTextBeforeCursor);
+                result += last.getHangul();
+            } else if (last.isCompleteHangul()) {
+                last.tailIndex = -1;
+                result = removeLast(aTextBeforeCursor);
+                result += last.getHangul();
+            } else if (last.isInitialAndVowel()) {
+                result = removeLast(aTextBeforeCursor);
+                DecomposedHangul before = decompose(last(result));
+                if (before.isInitialAndVowel() && TAILS.contains(get(INITIALS, last.initialIndex))) {
+                    result = removeLast(result);
+                    before.tailIndex = TAILS.indexOf(get(INITIALS, last.initialIndex));
+                    result += before.getHangul();
+                } else {
+                    result += get(INITIALS, last.initialIndex);
+                }
+            } else if (last.isInitial() && DOUBLE_CONSONANTS.contains(get(INITIALS, last.initialIndex))) {
+                result = removeLast(aTextBeforeCursor);
+                result += get(SINGLE_CONSONANTS, DOUBLE_CONSONANTS.indexOf(get(INITIALS, last.initialIndex)));
+            }
+
+            return result;
+        }
+
+        static DecomposedHangul decompose(String aCharacter) {
+            DecomposedHangul result = new DecomposedHangul();
+            if (isEmpty(aCharacter)) {
+                return result;
+            }
+            final int charValue = aCharacter.codePointAt(0);
+            if (charValue >= HANGUL_UNICODE_START_VALUE && charValue <= HANGUL_UNICODE_LAST_VALUE) {
+                result.initialIndex = (charValue - HANGUL_UNICODE_START_VALUE) / AMOUNT_OF_TAILS_THE_AMOUNT_OF_VOWELS;
+                result.tailIndex = ((charValue - HANGUL_UNICODE_START_VALUE) % AMOUNT_OF_TAILS) - 1;
+                result.vowelIndex = ((charValue - HANGUL_UNICODE_START_VALUE - result.tailIndex) % AMOUNT_OF_TAILS_THE_AMOUNT_OF_VOWELS) / AMOUNT_OF_TAILS;
+                return result;
+            }
+            result.initialIndex = INITIALS.indexOf(aCharacter);
+            result.vowelIndex = VOWELS.indexOf(aCharacter);
+            result.tailIndex = TAILS.indexOf(aCharacter);
+            return result;
+        }
+
+        static String get(String aValues, int aIndex) {
+            if (aIndex < 0 || aIndex >= aValues.length()) {
+                return "";
+            }
+            return aValues.substring(aIndex, aIndex + 1);
+        }
+
+        static boolean isEmpty(String aText) {
+            return aText == null || aText.length() == 0;
+        }
+
+        static String last(String aText) {
+            return isEmpty(aText) ? "" : aText.substring(aText.length() - 1);
+        }
+
+        static String removeLast(String aText) {
+            return isEmpty(aText) ? "" : aText.substring(0, aText.length() - 1);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package org.mozilla.vrbrowser;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.mozilla.vrbrowser.browser.engine.SessionState;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Session state serialization tests. Checks the streaming adapters against a saved profile of two
+ * hundred tabs with their Gecko history; the timed read and write passes only run as a benchmark.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class SessionStateAdapterBenchmarkTest {
+
+    private static final int TABS = 200;
+    private static final int HISTORY_ENTRIES = 10;
+    private static final int PASSES = 20;
+    private static final Type TABS_TYPE = new TypeToken<ArrayList<SessionState>>() {}.getType();
+
+    private Gson mGson;
+    private String mProfile;
+
+    @Before
+    public void setUp() {
+        mGson = new Gson();
+        mProfile = profile(TABS, HISTORY_ENTRIES);
+    }
+
+    @Test
+    @Category(Benchmark.class)
+    public void benchmarkReadWrite() {
+        // Warm up so the first pass doesn't include the class loading.
+        List<SessionState> tabs = mGson.fromJson(mProfile, TABS_TYPE);
+        mGson.toJson(tabs, TABS_TYPE);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < PASSES; i++) {
+            tabs = mGson.fromJson(mProfile, TABS_TYPE);
+        }
+        long readNs = (System.nanoTime() - start) / PASSES;
+
+        start = System.nanoTime();
+        for (int i = 0; i < PASSES; i++) {
+            mGson.toJson(tabs, TABS_TYPE);
+        }
+        long writeNs = (System.nanoTime() - start) / PASSES;
+
+        System.out.println(String.format(Locale.US, "tabs=%d size=%dKB read=%.2fms write=%.2fms",
+                TABS, mProfile.length() / 1024, readNs / 1000000.0, writeNs / 1000000.0));
+    }
+
+    @Test
+    public void roundTripsProfile() {
+        List<SessionState> tabs = mGson.fromJson(mProfile, TABS_TYPE);
+
+        assertEquals(TABS, tabs.size());
+        for (int i = 0; i < TABS; i++) {
+            SessionState tab = tabs.get(i);
+            assertEquals("tab" + i, tab.mId);
+            assertEquals("https://site" + i + ".example.com/page" + (HISTORY_ENTRIES - 1), tab.mUri);
+            assertEquals(1585000000000L + i, tab.mLastUse);
+            assertNotNull(tab.mSessionState);
+        }
+        List<SessionState> reread = mGson.fromJson(mGson.toJson(tabs, TABS_TYPE), TABS_TYPE);
+        assertEquals(TABS, reread.size());
+        for (int i = 0; i < TABS; i++) {
+            assertEquals(tabs.get(i).mId, reread.get(i).mId);
+            assertEquals(tabs.get(i).mTitle, reread.get(i).mTitle);
+            assertEquals(tabs.get(i).mSessionState.toString(), reread.get(i).mSessionState.toString());
+        }
+    }
+
+    @Test
+    public void skipsMalformedValues() {
+        String json = "[" +
+                "{\"mUri\":\"https://a.example.com\",\"mId\":\"a\",\"mLastUse\":\"yesterday\"," +
+                "\"mSettings\":{\"userAgentMode\":\"desktop\",\"isPrivateBrowsingEnabled\":false}," +
+                "\"mCanGoBack\":{\"value\":true},\"mTitle\":\"A\"}," +
+                "\"not a tab\"," +
+                "{\"mUri\":\"https://b.example.com\",\"mId\":\"b\",\"mSettings\":[1,2]}" +
+                "]";
+        List<SessionState> tabs = mGson.fromJson(json, TABS_TYPE);
+
+        // Values that aren't tabs are read as null, the windows state drops them.
+        assertEquals(3, tabs.size());
+        assertEquals("a", tabs.get(0).mId);
+        assertEquals("A", tabs.get(0).mTitle);
+        assertFalse(tabs.get(0).mCanGoBack);
+        assertNotNull(tabs.get(0).mSettings);
+        assertNull(tabs.get(1));
+        assertEquals("b", tabs.get(2).mId);
+        assertEquals("https://b.example.com", tabs.get(2).mUri);
+    }
+
+    @Test
+    public void readsSavedStateFormats() {
+        String json = "[" +
+                // Older files wrote the settings twice.
+                "{\"mUri\":\"https://a.example.com\",\"mId\":\"a\",\"mLastUse\":1585000000000," +
+                "\"mSettings\":{\"isPrivateBrowsingEnabled\":false,\"userAgentMode\":1}," +
+                "\"mSessionState\":" + geckoState("https://a.example.com", 1) + "," +
+                "\"mSettings\":{\"isPrivateBrowsingEnabled\":false,\"userAgentMode\":1}," +
+                "\"mUnknownField\":[1,{\"nested\":true}]}," +
+                "{\"mUri\":\"https://b.example.com\",\"mId\":\"b\",\"mTitle\":null,\"mSessionState\":null}," +
+                "{\"mUri\":\"https://private.example.com\",\"mId\":\"p\"," +
+                "\"mSettings\":{\"isPrivateBrowsingEnabled\":true,\"isTrackingProtectionEnabled\":true}," +
+                "\"mSessionState\":" + geckoState("https://private.example.com", 1) + "}" +
+                "]";
+        List<SessionState> tabs = mGson.fromJson(json, TABS_TYPE);
+
+        assertEquals(3, tabs.size());
+        assertEquals("https://a.example.com", tabs.get(0).mUri);
+        assertEquals(1585000000000L, tabs.get(0).mLastUse);
+        assertNotNull(tabs.get(0).mSessionState);
+        assertEquals("", tabs.get(1).mTitle);
+        assertNull(tabs.get(1).mSessionState);
+
+        // The Gecko state of private sessions is never written.
+        String written = mGson.toJson(tabs, TABS_TYPE);
+        List<SessionState> reread = mGson.fromJson(written, TABS_TYPE);
+        assertNotNull(reread.get(0).mSessionState);
+        assertNull(reread.get(2).mSessionState);
+        assertFalse(written.contains("mUnknownField"));
+    }
+
+    private static String profile(int aTabs, int aEntries) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < aTabs; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            String uri = "https://site" + i + ".example.com/page" + (aEntries - 1);
+            json.append("{\"mCanGoBack\":true,\"mCanGoForward\":false,\"mIsLoading\":false,\"mIsInputActive\":false")
+                    .append(",\"mUri\":\"").append(uri).append('"')
+                    .append(",\"mTitle\":\"Site ").append(i).append(" \\\"page\\\"\"")
+                    .append(",\"mSettings\":{\"isPrivateBrowsingEnabled\":false,\"isTrackingProtectionEnabled\":true,")
+                    .append("\"isSuspendMediaWhenInactiveEnabled\":true,\"userAgentMode\":0,\"viewportMode\":0,\"isServoEnabled\":false}")
+                    .append(",\"mLastUse\":").append(1585000000000L + i)
+                    .append(",\"mId\":\"tab").append(i).append('"')
+                    .append(",\"mSessionState\":").append(geckoState("https://site" + i + ".example.com", aEntries))
+                    .append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    private static String geckoState(String aSite, int aEntries) {
+        StringBuilder json = new StringBuilder("{\"history\":{\"entries\":[");
+        for (int i = 0; i < aEntries; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"url\":\"").append(aSite).append("/page").append(i).append('"')
+                    .append(",\"title\":\"Page ").append(i).append('"')
+                    .append(",\"cacheKey\":0,\"ID\":").append(i)
+                    .append(",\"docshellUUID\":\"{6b0ec5a1-3f2c-4a54-9e21-").append(String.format(Locale.US, "%012d", i)).append("}\"")
+                    .append(",\"resultPrincipalURI\":null,\"hasUserInteraction\":true")
+                    .append(",\"triggeringPrincipal_base64\":\"eyIzIjp7fX0=\",\"docIdentifier\":").append(i * 2)
+                    .append(",\"persist\":true}");
+        }
+        return json.append("],\"index\":").append(aEntries - 1).append(",\"requestedIndex\":0,\"fromIdx\":-1}}").toString();
+    }
+}
@@ -0,0 +1,129 @@
+package org.mozilla.vrbrowser;
+
+import android.content.Context;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.mozilla.vrbrowser.db.AppDatabase;
+import org.mozilla.vrbrowser.db.SitePermission;
+import org.mozilla.vrbrowser.db.SitePermissionDao;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Site permission writes tests. Checks that the bulk replace only writes the changed rows, and in the
+ * {@link Benchmark} category compares replacing thousands of tracking protection exceptions row by
+ * row, like the store used to do, with the diffing bulk replace.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class SitePermissionDaoBenchmarkTest {
+
+    private static final int SITES = 5000;
+    private static final int CHANGES = 10;
+
+    private AppDatabase mDatabase;
+    private SitePermissionDao mDao;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        mDatabase = Room.inMemoryDatabaseBuilder(context, AppDatabase.class)
+                .allowMainThreadQueries()
+                .build();
+        mDao = mDatabase.sitePermissionDao();
+    }
+
+    @After
+    public void tearDown() {
+        mDatabase.close();
+    }
+
+    @Test
+    public void replaceAllWritesOnlyChanges() {
+        mDao.replaceAll(SitePermission.SITE_PERMISSION_TRACKING, sites(SITES, 0));
+
+        // The first CHANGES sites are replaced by new ones: as many inserts and deletes.
+        assertEquals(CHANGES * 2, mDao.replaceAll(SitePermission.SITE_PERMISSION_TRACKING, sites(SITES, CHANGES)));
+        List<SitePermission> sites = mDao.getAll(SitePermission.SITE_PERMISSION_TRACKING);
+        assertEquals(SITES, sites.size());
+        assertEquals(0, sites.stream().filter(site -> site.url.equals("https://site0.example.com")).count());
+        assertEquals(1, sites.stream().filter(site -> site.url.equals("https://site" + (SITES + CHANGES - 1) + ".example.com")).count());
+    }
+
+    @Test
+    @Category(Benchmark.class)
+    public void benchmarkReplaceAll() {
+        mDao.replaceAll(SitePermission.SITE_PERMISSION_TRACKING, sites(SITES, 0));
+        List<SitePermission> changed = sites(SITES, CHANGES);
+
+        long start = System.nanoTime();
+        mDao.deleteAll(SitePermission.SITE_PERMISSION_TRACKING);
+        for (SitePermission site : changed) {
+            mDao.insert(site);
+        }
+        long rowByRowMs = (System.nanoTime() - start) / 1000000;
+        assertEquals(SITES, mDao.getAll(SitePermission.SITE_PERMISSION_TRACKING).size());
+
+        // Back to the original list so the diff has the same changes to apply.
+        mDao.replaceAll(SitePermission.SITE_PERMISSION_TRACKING, sites(SITES, 0));
+        changed = sites(SITES, CHANGES);
+        start = System.nanoTime();
+        int written = mDao.replaceAll(SitePermission.SITE_PERMISSION_TRACKING, changed);
+        long bulkMs = (System.nanoTime() - start) / 1000000;
+
+        System.out.println(String.format(Locale.US, "sites=%d row by row=%dms replaceAll=%dms rows written=%d",
+                SITES, rowByRowMs, bulkMs, written));
+
+        // The first CHANGES sites are replaced by new ones: as many inserts and deletes.
+        assertEquals(CHANGES * 2, written);
+        assertEquals(SITES, mDao.getAll(SitePermission.SITE_PERMISSION_TRACKING).size());
+    }
+
+    @Test
+    public void replaceAllKeepsUnchangedRows() {
+        List<SitePermission> sites = sites(100, 0);
+        mDao.replaceAll(SitePermission.SITE_PERMISSION_TRACKING, sites);
+        int id = sites.get(50).id;
+
+        assertEquals(0, mDao.replaceAll(SitePermission.SITE_PERMISSION_TRACKING, sites(100, 0)));
+        SitePermission site = mDao.getAll(SitePermission.SITE_PERMISSION_TRACKING).stream()
+                .filter(item -> item.url.equals(sites.get(50).url))
+                .findFirst().orElse(null);
+        assertEquals(id, site.id);
+
+        List<SitePermission> updated = sites(100, 0);
+        updated.get(10).principal = "changed";
+        assertEquals(1, mDao.replaceAll(SitePermission.SITE_PERMISSION_TRACKING, updated));
+
+        // Other categories are not touched.
+        mDao.insert(new SitePermission("popup.example.com", "", SitePermission.SITE_PERMISSION_POPUP));
+        mDao.replaceAll(SitePermission.SITE_PERMISSION_TRACKING, new ArrayList<>());
+        assertEquals(0, mDao.getAll(SitePermission.SITE_PERMISSION_TRACKING).size());
+        assertEquals(1, mDao.getAll(SitePermission.SITE_PERMISSION_POPUP).size());
+    }
+
+    /**
+     * Sites number aOffset to aOffset + aCount, so lists with different offsets share all but aOffset sites.
+     */
+    private static List<SitePermission> sites(int aCount, int aOffset) {
+        List<SitePermission> sites = new ArrayList<>();
+        for (int i = aOffset; i < aOffset + aCount; i++) {
+            String url = "https://site" + i + ".example.com";
+            sites.add(new SitePermission(url, "{\"uri\":\"" + url + "\"}", SitePermission.SITE_PERMISSION_TRACKING));
+        }
+        return sites;
+    }
+}
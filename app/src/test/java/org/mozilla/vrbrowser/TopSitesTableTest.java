@@ -0,0 +1,78 @@
+package org.mozilla.vrbrowser;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mozilla.vrbrowser.browser.TopSitesTable;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import mozilla.components.concept.storage.VisitInfo;
+import mozilla.components.concept.storage.VisitType;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Top sites table tests: visit weights, incremental updates against a rebuild and removals.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class TopSitesTableTest {
+
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+
+    @Test
+    public void ranksByVisitTypeAndAge() {
+        long now = System.currentTimeMillis();
+        List<VisitInfo> visits = new ArrayList<>();
+        visits.add(new VisitInfo("https://link.example.com/", "Link", now, VisitType.LINK));
+        visits.add(new VisitInfo("https://typed.example.com/", "Typed", now, VisitType.TYPED));
+        // Two old typed visits weigh less than a recent one.
+        visits.add(new VisitInfo("https://old.example.com/", "Old", now - 60 * DAY_MS, VisitType.TYPED));
+        visits.add(new VisitInfo("https://old.example.com/", "Old", now - 61 * DAY_MS, VisitType.TYPED));
+        visits.add(new VisitInfo("https://reload.example.com/", "Reload", now, VisitType.RELOAD));
+        visits.add(new VisitInfo("about:blank", "Blank", now, VisitType.TYPED));
+
+        TopSitesTable table = new TopSitesTable();
+        table.rebuild(visits);
+        List<TopSitesTable.Site> sites = table.getTopSites(TopSitesTable.MAX_TOP_SITES);
+
+        assertEquals(3, sites.size());
+        assertEquals("https://typed.example.com/", sites.get(0).url);
+        assertEquals("https://link.example.com/", sites.get(1).url);
+        assertEquals("https://old.example.com/", sites.get(2).url);
+        assertEquals("Typed", sites.get(0).title);
+    }
+
+    @Test
+    public void recordedVisitsUpdateTheTopList() {
+        TopSitesTable table = new TopSitesTable();
+        for (int i = 0; i < TopSitesTable.MAX_TOP_SITES + 10; i++) {
+            table.recordVisit("https://site" + i + ".example.com/", VisitType.LINK);
+        }
+        for (int i = 0; i < 3; i++) {
+            table.recordVisit("https://frequent.example.com/", VisitType.LINK);
+        }
+        table.setTitle("https://frequent.example.com/", "Frequent");
+
+        List<TopSitesTable.Site> sites = table.getTopSites(TopSitesTable.MAX_TOP_SITES);
+        assertEquals(TopSitesTable.MAX_TOP_SITES, sites.size());
+        assertEquals("https://frequent.example.com/", sites.get(0).url);
+        assertEquals("Frequent", sites.get(0).title);
+        for (int i = 1; i < sites.size(); i++) {
+            assertTrue(sites.get(i - 1).score >= sites.get(i).score);
+        }
+        assertEquals(5, table.getTopSites(5).size());
+
+        table.remove("https://frequent.example.com/");
+        assertTrue(table.getTopSites(TopSitesTable.MAX_TOP_SITES).stream()
+                .noneMatch(site -> site.url.equals("https://frequent.example.com/")));
+        assertEquals(TopSitesTable.MAX_TOP_SITES + 10, table.size());
+
+        table.clear();
+        assertEquals(0, table.getTopSites(TopSitesTable.MAX_TOP_SITES).size());
+    }
+}
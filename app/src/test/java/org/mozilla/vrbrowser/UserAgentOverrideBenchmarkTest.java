@@ -0,0 +1,92 @@
+package org.mozilla.vrbrowser;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.mozilla.vrbrowser.browser.UserAgentOverride;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * User agent override lookups tests, against a table of a thousand overridden domains. In the
+ * {@link Benchmark} category, looks up urls whose hosts miss the LRU cache and reports the lookups per second.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class UserAgentOverrideBenchmarkTest {
+
+    private static final int DOMAINS = 1000;
+    private static final int LOOKUPS = 20000;
+
+    private UserAgentOverride mOverride;
+
+    @Before
+    public void setUp() throws Exception {
+        JSONObject json = new JSONObject();
+        for (int i = 0; i < DOMAINS; i++) {
+            json.put(hash("site" + i + ".example.com"), "UA " + i);
+        }
+        json.put(hash("example.org"), "UA org");
+        mOverride = new UserAgentOverride();
+        mOverride.loadOverrides(json.toString());
+    }
+
+    @Test
+    @Category(Benchmark.class)
+    public void benchmarkLookups() {
+        long start = System.nanoTime();
+        int found = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            // Every host is different so each lookup hashes all the suffixes.
+            String url = "https://www" + i + ".site" + (i % (DOMAINS * 2)) + ".example.com/path?q=" + i;
+            if (mOverride.lookupOverride(url) != null) {
+                found++;
+            }
+        }
+        long elapsedNs = System.nanoTime() - start;
+
+        System.out.println(String.format(Locale.US, "domains=%d lookups=%d time=%dms lookups/s=%d",
+                DOMAINS, LOOKUPS, elapsedNs / 1000000, LOOKUPS * 1000000000L / elapsedNs));
+        assertEquals(LOOKUPS / 2, found);
+    }
+
+    @Test
+    public void lookupMatchesParentDomains() {
+        assertEquals("UA org", mOverride.lookupOverride("https://example.org"));
+        assertEquals("UA org", mOverride.lookupOverride("http://user@WWW.Example.org:8080/index.html"));
+        assertEquals("UA 7", mOverride.lookupOverride("https://a.b.site7.example.com/#top"));
+        assertNull(mOverride.lookupOverride("https://example.com/"));
+        assertNull(mOverride.lookupOverride("https://notexample.org/"));
+        assertNull(mOverride.lookupOverride("about:blank"));
+        assertNull(mOverride.lookupOverride(null));
+        // Cached results.
+        assertEquals("UA org", mOverride.lookupOverride("https://example.org/other"));
+        assertNull(mOverride.lookupOverride("https://example.com/other"));
+    }
+
+    @Test
+    public void lookupFindsEveryOverriddenDomain() {
+        for (int i = 0; i < DOMAINS * 2; i++) {
+            String override = mOverride.lookupOverride("https://www" + i + ".site" + i + ".example.com/");
+            assertEquals(i < DOMAINS ? "UA " + i : null, override);
+        }
+    }
+
+    private static String hash(String aDomain) throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-512").digest(aDomain.getBytes(StandardCharsets.UTF_8));
+        StringBuilder sb = new StringBuilder();
+        for (byte value : digest) {
+            sb.append(String.format(Locale.US, "%02x", value & 0xff));
+        }
+        return sb.toString();
+    }
+}
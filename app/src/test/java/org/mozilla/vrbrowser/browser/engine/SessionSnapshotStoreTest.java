@@ -0,0 +1,126 @@
+package org.mozilla.vrbrowser.browser.engine;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Session snapshot tests: torn records, saves and closed sessions. The store runs on the test
+ * thread and every check reads the file back with a new store, like the next run would.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class SessionSnapshotStoreTest {
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("session_snapshots", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void tornRecordFallsBackToThePreviousOne() throws IOException {
+        SessionSnapshotStore store = load();
+        SessionState state = state("https://example.com/first");
+        store.update(state);
+        state.mUri = "https://example.com/second";
+        store.update(state);
+
+        // The first record went to slot 0 and the second one to slot 1, tear the second one.
+        corrupt(SessionSnapshotStore.HEADER_SIZE + SessionSnapshotStore.SLOT_SIZE + SessionSnapshotStore.RECORD_HEADER_SIZE + 8);
+
+        List<SessionState> restored = load().getRestoredSessions();
+        assertEquals(1, restored.size());
+        assertEquals(state.mId, restored.get(0).mId);
+        assertEquals("https://example.com/first", restored.get(0).mUri);
+    }
+
+    @Test
+    public void latestRecordIsRestored() {
+        SessionSnapshotStore store = load();
+        SessionState state = state("https://example.com/first");
+        store.update(state);
+        state.mUri = "https://example.com/second";
+        store.update(state);
+        state.mUri = "https://example.com/third";
+        store.update(state);
+
+        List<SessionState> restored = load().getRestoredSessions();
+        assertEquals(1, restored.size());
+        assertEquals("https://example.com/third", restored.get(0).mUri);
+    }
+
+    @Test
+    public void updatesAfterSaveOnlyCountWhenNavigating() {
+        SessionSnapshotStore store = load();
+        SessionState state = state("https://example.com/");
+        store.update(state);
+        store.markSaved();
+        state.mTitle = "Example";
+        state.mLastUse = System.currentTimeMillis();
+        store.update(state);
+
+        assertTrue(load().getRestoredSessions().isEmpty());
+
+        state.mUri = "https://example.com/next";
+        store.update(state);
+        assertEquals(1, load().getRestoredSessions().size());
+    }
+
+    @Test
+    public void closedSessionsAreReportedUntilTheNextSave() {
+        SessionSnapshotStore store = load();
+        SessionState state = state("https://example.com/");
+        store.update(state);
+        store.markSaved();
+        store.remove(state.mId);
+
+        SessionSnapshotStore next = load();
+        assertTrue(next.getRestoredSessions().isEmpty());
+        assertTrue(next.getClosedSessions().contains(state.mId));
+
+        store.markSaved();
+        assertTrue(load().getClosedSessions().isEmpty());
+    }
+
+    private SessionSnapshotStore load() {
+        SessionSnapshotStore store = new SessionSnapshotStore(mFile, Runnable::run);
+        store.load();
+        return store;
+    }
+
+    private void corrupt(long aOffset) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.seek(aOffset);
+            int value = file.read();
+            file.seek(aOffset);
+            file.write(value ^ 0xff);
+        }
+    }
+
+    private static SessionState state(String aUri) {
+        SessionState state = new SessionState();
+        state.mUri = aUri;
+        state.mTitle = aUri;
+        state.mLastUse = System.currentTimeMillis();
+        state.mSettings = new SessionSettings.Builder().withPrivateBrowsing(false).build();
+        return state;
+    }
+}
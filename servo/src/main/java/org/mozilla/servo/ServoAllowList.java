@@ -1,23 +1,58 @@
 package org.mozilla.servo;
 
 import android.content.Context;
-import android.content.res.Resources;
-import android.util.Log;
 
-import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.regex.Pattern;
-import java.util.stream.Stream;
 
+/**
+ * Urls that are loaded with Servo. The allow list rules are compiled into a single union pattern
+ * so a url is checked in one pass, and recent results are memoised by url.
+ */
 public class ServoAllowList {
-    private final Pattern[] mRules;
+    private static final int MAX_CACHED_URLS = 64;
+
+    private final Pattern mRules;
+    private final Map<String, Boolean> mCache = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_CACHED_URLS;
+        }
+    };
 
     public ServoAllowList(Context context) {
-        Resources res = context.getResources();
-        Stream<String> rules = Stream.of(res.getStringArray(R.array.servo_white_list));
-        mRules = rules.map(Pattern::compile).toArray(Pattern[]::new);
+        this(context.getResources().getStringArray(R.array.servo_white_list));
+    }
+
+    /**
+     * @param rules Regular expressions matching the whole url. They can't use back references as
+     *              their groups are renumbered in the union pattern.
+     */
+    public ServoAllowList(String[] rules) {
+        if (rules.length == 0) {
+            mRules = null;
+            return;
+        }
+        StringBuilder union = new StringBuilder();
+        for (String rule : rules) {
+            if (union.length() > 0) {
+                union.append('|');
+            }
+            union.append("(?:").append(rule).append(')');
+        }
+        mRules = Pattern.compile(union.toString());
     }
 
-    public boolean isAllowed(String url) {
-        return url != null && Stream.of(mRules).anyMatch(r -> r.matcher(url).matches());
+    public synchronized boolean isAllowed(String url) {
+        if (url == null || mRules == null) {
+            return false;
+        }
+        Boolean allowed = mCache.get(url);
+        if (allowed == null) {
+            allowed = mRules.matcher(url).matches();
+            mCache.put(url, allowed);
+        }
+        return allowed;
     }
 }
@@ -0,0 +1,8 @@
+package org.mozilla.servo;
+
+/**
+ * JUnit category of the timing benchmarks. They are excluded from the regular unit test tasks and only
+ * run with <code>./gradlew app:benchmark</code>, like the app benchmarks.
+ */
+public interface Benchmark {
+}
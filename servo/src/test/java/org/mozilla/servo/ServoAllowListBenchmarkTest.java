@@ -0,0 +1,115 @@
+package org.mozilla.servo;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Allow list matching tests. Checks that the union pattern gives the same results as one pattern per
+ * rule, and in the {@link Benchmark} category compares their timings against growing rule lists.
+ */
+public class ServoAllowListBenchmarkTest {
+
+    private static final String[] DEFAULT_RULES = {
+            "https:\\/\\/(.+\\.)?servo\\.org(\\/.*)?$",
+            "https:\\/\\/threejs\\.org\\/examples\\/.*"
+    };
+    private static final int URLS = 5000;
+    private static final int REPEATED_URLS = 16;
+
+    @Test
+    public void defaultRules() {
+        ServoAllowList allowList = new ServoAllowList(DEFAULT_RULES);
+        assertTrue(allowList.isAllowed("https://servo.org"));
+        assertTrue(allowList.isAllowed("https://download.servo.org"));
+        assertTrue(allowList.isAllowed("https://servo.org/ddd"));
+        assertTrue(allowList.isAllowed("https://threejs.org/examples/webxr_vr_cubes.html"));
+        assertFalse(allowList.isAllowed("https://.servo.org/ddd"));
+        assertFalse(allowList.isAllowed("https://servo.orgd"));
+        assertFalse(allowList.isAllowed("http://servo.org"));
+        assertFalse(allowList.isAllowed("https://threejs.org/docs/"));
+        assertFalse(allowList.isAllowed(null));
+        assertFalse(new ServoAllowList(new String[0]).isAllowed("https://servo.org"));
+    }
+
+    @Test
+    public void unionMatchesPerRulePatterns() {
+        for (int count : new int[] { 2, 10, 100 }) {
+            String[] rules = rules(count);
+            Pattern[] patterns = Stream.of(rules).map(Pattern::compile).toArray(Pattern[]::new);
+            ServoAllowList allowList = new ServoAllowList(rules);
+            int allowed = 0;
+            for (String url : urls(count)) {
+                boolean expected = Stream.of(patterns).anyMatch(r -> r.matcher(url).matches());
+                assertEquals(url, expected, allowList.isAllowed(url));
+                // Cached results.
+                assertEquals(url, expected, allowList.isAllowed(url));
+                allowed += expected ? 1 : 0;
+            }
+            // Only the default rules match none of the generated urls.
+            assertEquals(count > DEFAULT_RULES.length, allowed > 0);
+        }
+    }
+
+    @Test
+    @Category(Benchmark.class)
+    public void benchmarkGrowingRules() {
+        for (int count : new int[] { 2, 10, 100, 1000 }) {
+            String[] rules = rules(count);
+            Pattern[] patterns = Stream.of(rules).map(Pattern::compile).toArray(Pattern[]::new);
+            ServoAllowList allowList = new ServoAllowList(rules);
+            String[] urls = urls(count);
+
+            boolean[] expected = new boolean[urls.length];
+            long start = System.nanoTime();
+            for (int i = 0; i < urls.length; i++) {
+                String url = urls[i];
+                expected[i] = Stream.of(patterns).anyMatch(r -> r.matcher(url).matches());
+            }
+            long perRuleMs = (System.nanoTime() - start) / 1000000;
+
+            start = System.nanoTime();
+            for (int i = 0; i < urls.length; i++) {
+                assertEquals(expected[i], allowList.isAllowed(urls[i]));
+            }
+            long unionMs = (System.nanoTime() - start) / 1000000;
+
+            // The same few urls checked again, like the url changes of the open windows.
+            start = System.nanoTime();
+            for (int i = 0; i < urls.length; i++) {
+                allowList.isAllowed(urls[i % REPEATED_URLS]);
+            }
+            long cachedMs = (System.nanoTime() - start) / 1000000;
+
+            System.out.println(String.format(Locale.US, "rules=%d urls=%d per rule=%dms union=%dms repeated=%dms",
+                    count, urls.length, perRuleMs, unionMs, cachedMs));
+        }
+    }
+
+    private static String[] rules(int aCount) {
+        String[] rules = new String[aCount];
+        System.arraycopy(DEFAULT_RULES, 0, rules, 0, DEFAULT_RULES.length);
+        for (int i = DEFAULT_RULES.length; i < aCount; i++) {
+            rules[i] = "https:\\/\\/(.+\\.)?site" + i + "\\.example\\.com(\\/.*)?$";
+        }
+        return rules;
+    }
+
+    private static String[] urls(int aRules) {
+        String[] urls = new String[URLS];
+        for (int i = 0; i < URLS; i++) {
+            // A quarter of the urls are allowed, the rest use hosts no rule matches.
+            urls[i] = i % 4 == 0 ?
+                    "https://www.site" + (i % aRules) + ".example.com/page/" + i :
+                    "https://www.other" + i + ".example.com/page/" + i;
+        }
+        return urls;
+    }
+}